@@ -43,6 +43,18 @@ public class Ar
         return new ArReader( file );
     }
 
+    public static ArIndex index( File file )
+        throws IOException
+    {
+        return new ArIndex( file );
+    }
+
+    public static ArWriter write( File file )
+        throws IOException
+    {
+        return new ArWriter( file );
+    }
+
     public static class NewAr
     {
         private final List<ArFile> files = new ArrayList<ArFile>();
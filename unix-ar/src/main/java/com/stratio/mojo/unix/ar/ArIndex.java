@@ -0,0 +1,323 @@
+ package com.stratio.mojo.unix.ar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * Random access to the members of an archive.
+ * <p/>
+ * The archive is indexed by reading only the member headers, so opening a member never has to read through the members
+ * before it. Both GNU (<code>//</code> table) and BSD (<code>#1/</code>) style long names are supported, symbol tables
+ * are skipped.
+ * <p/>
+ * The streams returned by {@link #open(String)} use positional reads, so several members can be read at once, also by
+ * different threads.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class ArIndex
+    implements Closeable, Iterable<IndexedArFile>
+{
+    private static final String GNU_NAME_TABLE = "//";
+
+    private static final String BSD_LONG_NAME = "#1/";
+
+    private final FileChannel channel;
+
+    private final List<IndexedArFile> files = new ArrayList<IndexedArFile>();
+
+    private final Map<String, IndexedArFile> index = new HashMap<String, IndexedArFile>();
+
+    public ArIndex( File file )
+        throws IOException
+    {
+        channel = new RandomAccessFile( file, "r" ).getChannel();
+
+        boolean ok = false;
+        try
+        {
+            readIndex();
+            ok = true;
+        }
+        finally
+        {
+            if ( !ok )
+            {
+                ArUtil.close( channel );
+            }
+        }
+    }
+
+    public Iterator<IndexedArFile> iterator()
+    {
+        return Collections.unmodifiableList( files ).iterator();
+    }
+
+    public List<IndexedArFile> getFiles()
+    {
+        return Collections.unmodifiableList( files );
+    }
+
+    /**
+     * Returns the member with the given name or null.
+     */
+    public IndexedArFile get( String name )
+    {
+        return index.get( name );
+    }
+
+    /**
+     * Returns the first member which name starts with the given prefix or null, useful for finding members like
+     * <code>data.tar.*</code>.
+     */
+    public IndexedArFile find( String prefix )
+    {
+        for ( IndexedArFile file : files )
+        {
+            if ( file.name.startsWith( prefix ) )
+            {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @throws NoSuchFileInArchiveException if there is no member with the given name.
+     */
+    public InputStream open( String name )
+    {
+        IndexedArFile file = get( name );
+
+        if ( file == null )
+        {
+            throw new NoSuchFileInArchiveException();
+        }
+
+        return open( file );
+    }
+
+    public InputStream open( IndexedArFile file )
+    {
+        return new MemberInputStream( file.offset, file.size );
+    }
+
+    public void close()
+        throws IOException
+    {
+        channel.close();
+    }
+
+    private void readIndex()
+        throws IOException
+    {
+        long archiveSize = channel.size();
+
+        if ( archiveSize < 8 ||
+            !new String( read( 0, 8 ), ArUtil.US_ASCII ).equals( ArUtil.AR_ARCHIVE_MAGIC ) )
+        {
+            throw new InvalidArchiveMagicException();
+        }
+
+        byte[] longNames = null;
+        long position = 8;
+
+        while ( position < archiveSize )
+        {
+            // Some tools pad the archive with a trailing newline
+            if ( archiveSize - position < 60 )
+            {
+                break;
+            }
+
+            IndexedArFile file = new IndexedArFile();
+            ArUtil.parseHeader( read( position, 60 ), file );
+            file.offset = position + 60;
+
+            long next = file.offset + file.size + file.size % 2;
+
+            if ( next > archiveSize )
+            {
+                throw new EOFException( "Member " + file.name + " extends past the end of the archive." );
+            }
+
+            position = next;
+
+            String name = file.name;
+
+            if ( name.equals( GNU_NAME_TABLE ) )
+            {
+                longNames = read( file.offset, (int) file.size );
+                continue;
+            }
+
+            // The GNU (/ and /SYM64/) and BSD (__.SYMDEF) symbol tables
+            if ( name.equals( "/" ) || name.equals( "/SYM64/" ) || name.startsWith( "__.SYMDEF" ) )
+            {
+                continue;
+            }
+
+            if ( name.startsWith( BSD_LONG_NAME ) )
+            {
+                int length = Integer.parseInt( name.substring( BSD_LONG_NAME.length() ) );
+                file.name = trimNul( new String( read( file.offset, length ), ArUtil.US_ASCII ) );
+                file.offset += length;
+                file.size -= length;
+            }
+            else if ( name.length() > 1 && name.charAt( 0 ) == '/' && Character.isDigit( name.charAt( 1 ) ) )
+            {
+                file.name = gnuLongName( longNames, Integer.parseInt( name.substring( 1 ) ) );
+            }
+            else if ( name.endsWith( "/" ) )
+            {
+                file.name = name.substring( 0, name.length() - 1 );
+            }
+
+            files.add( file );
+
+            if ( !index.containsKey( file.name ) )
+            {
+                index.put( file.name, file );
+            }
+        }
+    }
+
+    private static String gnuLongName( byte[] longNames, int offset )
+        throws IOException
+    {
+        if ( longNames == null || offset >= longNames.length )
+        {
+            throw new IOException( "Invalid GNU long name reference: /" + offset );
+        }
+
+        int end = offset;
+
+        while ( end < longNames.length && longNames[end] != '\n' )
+        {
+            end++;
+        }
+
+        if ( end > offset && longNames[end - 1] == '/' )
+        {
+            end--;
+        }
+
+        return new String( longNames, offset, end - offset, ArUtil.US_ASCII );
+    }
+
+    private static String trimNul( String s )
+    {
+        int i = s.indexOf( 0 );
+
+        return i == -1 ? s : s.substring( 0, i );
+    }
+
+    private byte[] read( long position, int count )
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( count );
+
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, position + buffer.position() ) == -1 )
+            {
+                throw new EOFException();
+            }
+        }
+
+        return buffer.array();
+    }
+
+    private class MemberInputStream
+        extends InputStream
+    {
+        private long position;
+
+        private final long end;
+
+        private MemberInputStream( long position, long size )
+        {
+            this.position = position;
+            this.end = position + size;
+        }
+
+        public int read()
+            throws IOException
+        {
+            byte[] b = new byte[1];
+
+            return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read( byte b[], int off, int len )
+            throws IOException
+        {
+            if ( position >= end )
+            {
+                return -1;
+            }
+
+            if ( len > end - position )
+            {
+                len = (int) ( end - position );
+            }
+
+            int read = channel.read( ByteBuffer.wrap( b, off, len ), position );
+
+            if ( read == -1 )
+            {
+                throw new EOFException();
+            }
+
+            position += read;
+
+            return read;
+        }
+
+        public long skip( long n )
+        {
+            if ( n <= 0 )
+            {
+                return 0;
+            }
+
+            long skipped = Math.min( n, end - position );
+
+            position += skipped;
+
+            return skipped;
+        }
+
+        public int available()
+        {
+            return (int) Math.min( Integer.MAX_VALUE, end - position );
+        }
+    }
+}
@@ -30,6 +30,8 @@ import java.io.*;
 import java.util.*;
 
 /**
+ * Reads an archive sequentially. Use {@link ArIndex} to read members directly.
+ *
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
  */
 public class ArReader
@@ -71,25 +73,13 @@ public class ArReader
         }
 
         ReadableArFile arFile = new ReadableArFile( is );
-        arFile.name = ArUtil.convertString( bytes, 0, 16 );
-        arFile.lastModified = Long.parseLong( ArUtil.convertString( bytes, 16, 12 ) );
-        arFile.ownerId = Integer.parseInt( ArUtil.convertString( bytes, 28, 6 ) );
-        arFile.groupId = Integer.parseInt( ArUtil.convertString( bytes, 34, 6 ) );
-        arFile.mode = Integer.parseInt( ArUtil.convertString( bytes, 40, 8 ), 8 );
-        arFile.size = Long.parseLong( ArUtil.convertString( bytes, 48, 10 ) );
+        ArUtil.parseHeader( bytes, arFile );
 
         if ( arFile.name.endsWith( "/" ) )
         {
             arFile.name = arFile.name.substring( 0, arFile.name.length() - 1 );
         }
 
-        String fileMagic = ArUtil.convertString( bytes, 58, 2 );
-
-        if ( !fileMagic.equals( ArUtil.AR_FILE_MAGIC ) )
-        {
-            throw new InvalidFileMagicException();
-        }
-
         return arFile;
     }
 
@@ -53,6 +53,34 @@ public class ArUtil
         return s;
     }
 
+    /**
+     * Parses a 60 byte member header. The name is returned as is, without removing the GNU terminator or resolving
+     * long names. Empty numeric fields, as in GNU name tables, are read as zero.
+     */
+    public static void parseHeader( byte[] bytes, ArFile file )
+        throws IOException
+    {
+        if ( !convertString( bytes, 58, 2 ).equals( AR_FILE_MAGIC ) )
+        {
+            throw new InvalidFileMagicException();
+        }
+
+        file.name = convertString( bytes, 0, 16 );
+        file.lastModified = parseLong( bytes, 16, 12, 10 );
+        file.ownerId = (int) parseLong( bytes, 28, 6, 10 );
+        file.groupId = (int) parseLong( bytes, 34, 6, 10 );
+        file.mode = (int) parseLong( bytes, 40, 8, 8 );
+        file.size = parseLong( bytes, 48, 10, 10 );
+    }
+
+    private static long parseLong( byte[] bytes, int start, int count, int radix )
+        throws IOException
+    {
+        String s = new String( bytes, start, count, US_ASCII ).trim();
+
+        return s.length() == 0 ? 0 : Long.parseLong( s, radix );
+    }
+
     public static byte[] readBytes( InputStream is, long count )
         throws IOException
     {
@@ -88,13 +116,23 @@ public class ArUtil
     {
         long left = count;
 
-        do
+        while ( left > 0 )
         {
             long read = is.skip( left );
 
+            // skip() may return 0 without being at the end of the stream
+            if ( read <= 0 )
+            {
+                if ( is.read() == -1 )
+                {
+                    throw new EOFException();
+                }
+
+                read = 1;
+            }
+
             left -= read;
         }
-        while ( left > 0 );
     }
 
     public static void copy( InputStream input, OutputStream output, int bufferSize )
@@ -28,14 +28,33 @@ import org.codehaus.plexus.util.*;
 
 import java.io.*;
 import java.nio.*;
+import java.nio.channels.*;
 import java.nio.charset.*;
 
 /**
+ * Writes <code>ar</code> archives. Members can be added from a file, from a stream of a known size or streamed through
+ * an {@link OutputStream} when their size isn't known up front, in which case the size field of the member header is
+ * patched when the stream is closed.
+ * <p/>
+ * The archive is written through a {@link FileChannel}. Headers are formatted into a single buffer and written with
+ * one call, and members read from files are copied with {@link FileChannel#transferTo(long, long,
+ * WritableByteChannel)} so their content doesn't pass through the Java heap.
+ *
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
  */
-class ArWriter
+public class ArWriter
 {
-    private OutputStream output;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer header = ByteBuffer.allocate( 60 );
+
+    private final ByteBuffer newline = ByteBuffer.wrap( new byte[]{ '\n' } );
+
+    private ByteBuffer buffer;
+
+    private MemberOutputStream currentMember;
 
     static final Charset charset;
 
@@ -49,29 +68,39 @@ class ArWriter
     public ArWriter( File file )
         throws IOException
     {
-        output = new FileOutputStream( file );
+        channel = new FileOutputStream( file ).getChannel();
 
-        output.write( toBytes( ArUtil.AR_ARCHIVE_MAGIC ) );
-        output.flush();
+        write( ByteBuffer.wrap( ArUtil.AR_ARCHIVE_MAGIC.getBytes( ArUtil.US_ASCII ) ) );
     }
 
+    /**
+     * Adds the file of <code>arFile</code>. The size is taken from the file itself.
+     */
     public void add( ArFile arFile )
         throws IOException
     {
-        output.write( toBytes( arFile.name, 16 ) );
-        output.write( toBytes( Long.toString( arFile.lastModified ), 12 ) );
-        output.write( toBytes( Integer.toString( arFile.ownerId ), 6 ) );
-        output.write( toBytes( Integer.toString( arFile.groupId ), 6 ) );
-        output.write( toBytes( Integer.toOctalString( arFile.mode ), 8 ) );
-        output.write( toBytes( Long.toString( arFile.size ), 10 ) );
-        output.write( toBytes( ArUtil.AR_FILE_MAGIC ) );
-        output.flush();
+        assertNoOpenMember();
 
-        InputStream is = null;
+        FileInputStream is = null;
         try
         {
             is = new FileInputStream( arFile.file );
-            ArUtil.copy( is, output, 8192 );
+            FileChannel source = is.getChannel();
+            long size = source.size();
+
+            long start = channel.position();
+            try
+            {
+                writeHeader( arFile.name, arFile.lastModified, arFile.ownerId, arFile.groupId, arFile.mode, size );
+                transfer( source, 0, size );
+            }
+            catch ( EOFException e )
+            {
+                channel.truncate( start );
+                throw e;
+            }
+
+            pad( size );
         }
         finally
         {
@@ -79,32 +108,282 @@ class ArWriter
         }
     }
 
-    private byte[] toBytes( String value )
+    /**
+     * Adds a member with exactly <code>size</code> bytes read from <code>content</code>. The stream is not closed. If
+     * the stream ends too early the member is removed again and an {@link EOFException} is thrown.
+     *
+     * @param lastModified Seconds since the epoch.
+     */
+    public void add( String name, long lastModified, int ownerId, int groupId, int mode, long size,
+                     InputStream content )
+        throws IOException
+    {
+        assertNoOpenMember();
+        assertNameLength( name );
+
+        long start = channel.position();
+        try
+        {
+            writeHeader( name, lastModified, ownerId, groupId, mode, size );
+            copy( name, size, content );
+        }
+        catch ( EOFException e )
+        {
+            channel.truncate( start );
+            throw e;
+        }
+
+        pad( size );
+    }
+
+    private void copy( String name, long size, InputStream content )
+        throws IOException
+    {
+        if ( content instanceof FileInputStream )
+        {
+            FileChannel source = ( (FileInputStream) content ).getChannel();
+            long position = source.position();
+            transfer( source, position, size );
+            source.position( position + size );
+            return;
+        }
+
+        ByteBuffer buffer = buffer();
+        byte[] bytes = buffer.array();
+        long left = size;
+
+        while ( left > 0 )
+        {
+            int read = content.read( bytes, 0, (int) Math.min( bytes.length, left ) );
+
+            if ( read == -1 )
+            {
+                throw new EOFException( "Expected " + size + " bytes for member " + name + ", got " +
+                    ( size - left ) + "." );
+            }
+
+            buffer.clear();
+            buffer.limit( read );
+            write( buffer );
+            left -= read;
+        }
+    }
+
+    /**
+     * Starts a new member and returns the stream to write its content to. The member is completed when the stream is
+     * closed, and only one member can be open at a time.
+     *
+     * @param lastModified Seconds since the epoch.
+     */
+    public OutputStream add( String name, long lastModified, int ownerId, int groupId, int mode )
+        throws IOException
+    {
+        assertNoOpenMember();
+        assertNameLength( name );
+
+        long headerPosition = channel.position();
+
+        writeHeader( name, lastModified, ownerId, groupId, mode, 0 );
+
+        currentMember = new MemberOutputStream( headerPosition );
+
+        return currentMember;
+    }
+
+    private void writeHeader( String name, long lastModified, int ownerId, int groupId, int mode, long size )
+        throws IOException
     {
-        return toBytes( value, value.length() );
+        header.clear();
+        put( name, 16 );
+        put( Long.toString( lastModified ), 12 );
+        put( Integer.toString( ownerId ), 6 );
+        put( Integer.toString( groupId ), 6 );
+        put( Integer.toOctalString( mode ), 8 );
+        put( Long.toString( size ), 10 );
+        put( ArUtil.AR_FILE_MAGIC, 2 );
+        header.flip();
+
+        write( header );
     }
 
-    private byte[] toBytes( String value, int size )
+    private void put( String value, int size )
     {
-        String s = value;
+        if ( value.length() > size )
+        {
+            throw new RuntimeException( "Internal error. Field size (" + value.length() + ") > max size (" + size + ")" );
+        }
 
-        if ( s.length() > size )
+        for ( int i = 0; i < size; i++ )
         {
-            throw new RuntimeException( "Internal error. Field size (" + s.length() + ") > max size (" + size + ")" );
+            char c = i < value.length() ? value.charAt( i ) : ' ';
+            header.put( (byte) ( c < 128 ? c : '?' ) );
         }
+    }
 
-        if ( s.length() < size )
+    private void transfer( FileChannel source, long position, long size )
+        throws IOException
+    {
+        long done = 0;
+
+        while ( done < size )
         {
-            s += BLANKS.substring( 0, size - s.length() );
+            long count = source.transferTo( position + done, size - done, channel );
+
+            if ( count <= 0 )
+            {
+                throw new EOFException( "Expected " + size + " bytes, got " + done + "." );
+            }
+
+            done += count;
         }
+    }
 
-        ByteBuffer byteBuffer = charset.encode( s );
-        return byteBuffer.array();
+    private void write( ByteBuffer buffer )
+        throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            channel.write( buffer );
+        }
+    }
+
+    /**
+     * Members are aligned on even offsets.
+     */
+    private void pad( long size )
+        throws IOException
+    {
+        if ( size % 2 == 1 )
+        {
+            newline.clear();
+            write( newline );
+        }
+    }
+
+    private ByteBuffer buffer()
+    {
+        if ( buffer == null )
+        {
+            buffer = ByteBuffer.allocate( BUFFER_SIZE );
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    private void assertNameLength( String name )
+    {
+        if ( name.length() > 16 )
+        {
+            throw new FileNameTooLongException();
+        }
+    }
+
+    private void assertNoOpenMember()
+        throws IOException
+    {
+        if ( currentMember != null )
+        {
+            throw new IOException( "The previous member has not been closed." );
+        }
     }
 
     public void close()
         throws IOException
     {
-        output.close();
+        try
+        {
+            if ( currentMember != null )
+            {
+                currentMember.close();
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private class MemberOutputStream
+        extends OutputStream
+    {
+        private final long headerPosition;
+
+        private final ByteBuffer buffer = buffer();
+
+        private long size;
+
+        private boolean closed;
+
+        private MemberOutputStream( long headerPosition )
+        {
+            this.headerPosition = headerPosition;
+        }
+
+        public void write( int b )
+            throws IOException
+        {
+            if ( !buffer.hasRemaining() )
+            {
+                flush();
+            }
+
+            buffer.put( (byte) b );
+            size++;
+        }
+
+        public void write( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( len > buffer.remaining() )
+            {
+                flush();
+            }
+
+            if ( len >= buffer.capacity() )
+            {
+                ArWriter.this.write( ByteBuffer.wrap( b, off, len ) );
+            }
+            else
+            {
+                buffer.put( b, off, len );
+            }
+
+            size += len;
+        }
+
+        public void flush()
+            throws IOException
+        {
+            buffer.flip();
+            ArWriter.this.write( buffer );
+            buffer.clear();
+        }
+
+        public void close()
+            throws IOException
+        {
+            if ( closed )
+            {
+                return;
+            }
+
+            closed = true;
+            currentMember = null;
+
+            flush();
+            pad( size );
+
+            // Go back and fill in the size of the member, it starts 48 bytes into the header
+            header.clear();
+            put( Long.toString( size ), 10 );
+            header.flip();
+
+            long position = headerPosition + 48;
+            while ( header.hasRemaining() )
+            {
+                position += channel.write( header, position );
+            }
+        }
     }
 }
@@ -118,7 +118,16 @@ public class ReadableArFile
         public long skip( long n )
             throws IOException
         {
-            throw new IOException( "Not supported" );
+            if ( n <= 0 || left <= 0 )
+            {
+                return 0;
+            }
+
+            long skipped = inputStream.skip( Math.min( n, left ) );
+
+            left -= skipped;
+
+            return skipped;
         }
 
         public int available()
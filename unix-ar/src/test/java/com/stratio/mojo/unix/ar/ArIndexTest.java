@@ -0,0 +1,213 @@
+ package com.stratio.mojo.unix.ar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import junit.framework.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class ArIndexTest
+    extends TestCase
+{
+    private static final String longName = "a-file-name-longer-than-sixteen-characters.txt";
+
+    public void testRandomAccess()
+        throws Exception
+    {
+        File file = new File( System.getProperty( "basedir" ), "target/index.a" );
+
+        ArWriter writer = Ar.write( file );
+        add( writer, "odd", "abc" );
+        add( writer, "even", "ab" );
+        add( writer, "last", "Hello World" );
+        writer.close();
+
+        ArIndex index = Ar.index( file );
+        try
+        {
+            List<IndexedArFile> files = index.getFiles();
+            assertEquals( 3, files.size() );
+            assertEquals( "odd", files.get( 0 ).getName() );
+            assertEquals( 8 + 60, files.get( 0 ).getOffset() );
+            assertEquals( 8 + 60 + 4 + 60, files.get( 1 ).getOffset() );
+            assertEquals( 0644, files.get( 1 ).getMode() );
+
+            // Read backwards and interleaved
+            InputStream last = index.open( "last" );
+            InputStream odd = index.open( "odd" );
+            assertEquals( 'H', last.read() );
+            assertEquals( "abc", read( odd ) );
+            assertEquals( 5, last.skip( 5 ) );
+            assertEquals( "World", read( last ) );
+            assertEquals( "ab", read( index.open( "even" ) ) );
+
+            assertEquals( "even", index.find( "ev" ).getName() );
+            assertNull( index.get( "missing" ) );
+
+            try
+            {
+                index.open( "missing" );
+                fail( "Expected NoSuchFileInArchiveException" );
+            }
+            catch ( NoSuchFileInArchiveException e )
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    public void testGnuLongNames()
+        throws Exception
+    {
+        String names = longName + "/\nshort-but-in-table/\n";
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write( ArUtil.AR_ARCHIVE_MAGIC.getBytes( ArUtil.US_ASCII ) );
+        member( bytes, "/", "\0\0\0\0" );
+        member( bytes, "//", names );
+        member( bytes, "/0", "long" );
+        member( bytes, "/" + ( longName.length() + 2 ), "table" );
+        member( bytes, "short/", "short" );
+
+        ArIndex index = index( "gnu.a", bytes );
+        try
+        {
+            assertEquals( 3, index.getFiles().size() );
+            assertEquals( "long", read( index.open( longName ) ) );
+            assertEquals( "table", read( index.open( "short-but-in-table" ) ) );
+            assertEquals( "short", read( index.open( "short" ) ) );
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    public void testBsdLongNames()
+        throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write( ArUtil.AR_ARCHIVE_MAGIC.getBytes( ArUtil.US_ASCII ) );
+        // BSD ar pads the name with NULs
+        member( bytes, "#1/48", longName + "\0\0" + "odd" );
+        member( bytes, "short", "short" );
+
+        ArIndex index = index( "bsd.a", bytes );
+        try
+        {
+            assertEquals( 2, index.getFiles().size() );
+            IndexedArFile file = index.get( longName );
+            assertEquals( 3, file.getSize() );
+            assertEquals( "odd", read( index.open( file ) ) );
+            assertEquals( "short", read( index.open( "short" ) ) );
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    public void testInvalidMagic()
+        throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write( "!<arch!\n".getBytes( ArUtil.US_ASCII ) );
+
+        try
+        {
+            index( "invalid.a", bytes );
+            fail( "Expected InvalidArchiveMagicException" );
+        }
+        catch ( InvalidArchiveMagicException e )
+        {
+            // expected
+        }
+    }
+
+    private static ArIndex index( String name, ByteArrayOutputStream bytes )
+        throws IOException
+    {
+        File file = new File( System.getProperty( "basedir" ), "target/" + name );
+        FileUtils.fileWrite( file.getAbsolutePath(), "ISO-8859-1", bytes.toString( "ISO-8859-1" ) );
+        return Ar.index( file );
+    }
+
+    /**
+     * Writes a member the same way as GNU ar, with only the size field filled in for the special members.
+     */
+    private static void member( ByteArrayOutputStream bytes, String name, String content )
+        throws IOException
+    {
+        boolean special = name.startsWith( "/" ) && !Character.isDigit( name.charAt( name.length() - 1 ) );
+        String header = pad( name, 16 ) +
+            pad( special ? "" : "1234567890", 12 ) +
+            pad( special ? "" : "0", 6 ) +
+            pad( special ? "" : "0", 6 ) +
+            pad( special ? "" : "100644", 8 ) +
+            pad( String.valueOf( content.length() ), 10 ) +
+            ArUtil.AR_FILE_MAGIC;
+
+        bytes.write( header.getBytes( ArUtil.US_ASCII ) );
+        bytes.write( content.getBytes( ArUtil.US_ASCII ) );
+
+        if ( content.length() % 2 == 1 )
+        {
+            bytes.write( '\n' );
+        }
+    }
+
+    private static String pad( String s, int length )
+    {
+        StringBuilder b = new StringBuilder( s );
+        while ( b.length() < length )
+        {
+            b.append( ' ' );
+        }
+        return b.toString();
+    }
+
+    private static void add( ArWriter writer, String name, String content )
+        throws IOException
+    {
+        OutputStream os = writer.add( name, 1234567890, 0, 0, 0644 );
+        os.write( content.getBytes( ArUtil.US_ASCII ) );
+        os.close();
+    }
+
+    private static String read( InputStream is )
+        throws IOException
+    {
+        return new String( IOUtil.toByteArray( is ), ArUtil.US_ASCII );
+    }
+}
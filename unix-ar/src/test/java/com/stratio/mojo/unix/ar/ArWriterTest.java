@@ -25,8 +25,10 @@
  */
 
 import junit.framework.*;
+import org.codehaus.plexus.util.*;
 
 import java.io.*;
+import java.util.*;
 
 /**
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
@@ -101,4 +103,90 @@ public class ArWriterTest
                 60 + 26;
         assertEquals( expectedSize, yo2.length() );
     }
+
+    public void testStreamedMembers()
+        throws Exception
+    {
+        File file = new File( System.getProperty( "basedir" ), "target/streamed.a" );
+
+        ArWriter writer = Ar.write( file );
+        OutputStream os = writer.add( "odd", 1234567890, 0, 0, 0644 );
+        os.write( "abc".getBytes( "US-ASCII" ) );
+        os.close();
+        os = writer.add( "even", 1234567890, 0, 0, 0644 );
+        os.write( "ab".getBytes( "US-ASCII" ) );
+        os.close();
+        writer.close();
+
+        assertEquals( 8 + 60 + 3 + 1 + 60 + 2, file.length() );
+
+        ArReader reader = Ar.read( file );
+        ReadableArFile odd = reader.readFile();
+        assertEquals( "odd", odd.getName() );
+        assertEquals( 3, odd.getSize() );
+        assertEquals( 0644, odd.getMode() );
+        odd.close();
+        ReadableArFile even = reader.readFile();
+        assertEquals( "even", even.getName() );
+        assertEquals( 2, even.getSize() );
+        even.close();
+        assertNull( reader.readFile() );
+        reader.close();
+    }
+
+    public void testSizedMembers()
+        throws Exception
+    {
+        File file = new File( System.getProperty( "basedir" ), "target/sized.a" );
+        File source = new File( System.getProperty( "basedir" ), "target/sized.txt" );
+
+        FileOutputStream fos = new FileOutputStream( source );
+        fos.write( "skipped:from file".getBytes( "US-ASCII" ) );
+        fos.close();
+
+        byte[] big = new byte[200 * 1024 + 1];
+        for ( int i = 0; i < big.length; i++ )
+        {
+            big[i] = (byte) i;
+        }
+
+        ArWriter writer = Ar.write( file );
+        writer.add( "stream", 1234567890, 0, 0, 0644, 3, new ByteArrayInputStream( "abcdef".getBytes( "US-ASCII" ) ) );
+
+        FileInputStream fis = new FileInputStream( source );
+        assertEquals( 8, fis.skip( 8 ) );
+        writer.add( "file", 1234567890, 0, 0, 0644, 4, fis );
+        assertEquals( " file", new String( IOUtil.toByteArray( fis ), "US-ASCII" ) );
+        fis.close();
+
+        OutputStream os = writer.add( "big", 1234567890, 0, 0, 0644 );
+        os.write( big, 0, 10 );
+        os.write( big[10] );
+        os.write( big, 11, big.length - 11 );
+        os.close();
+
+        try
+        {
+            writer.add( "short", 1234567890, 0, 0, 0644, 10, new ByteArrayInputStream( new byte[5] ) );
+            fail( "Expected EOFException" );
+        }
+        catch ( EOFException e )
+        {
+            // expected
+        }
+        writer.close();
+
+        ArIndex index = Ar.index( file );
+        try
+        {
+            assertEquals( "abc", new String( IOUtil.toByteArray( index.open( "stream" ) ), "US-ASCII" ) );
+            assertEquals( "from", new String( IOUtil.toByteArray( index.open( "file" ) ), "US-ASCII" ) );
+            assertEquals( big.length, index.get( "big" ).getSize() );
+            assertTrue( Arrays.equals( big, IOUtil.toByteArray( index.open( "big" ) ) ) );
+        }
+        finally
+        {
+            index.close();
+        }
+    }
 }
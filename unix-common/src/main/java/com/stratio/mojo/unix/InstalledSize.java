@@ -0,0 +1,125 @@
+ package com.stratio.mojo.unix;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.UnixFsObject.*;
+import com.stratio.mojo.unix.util.*;
+
+import java.util.*;
+
+/**
+ * The disk space a package uses when it is installed, added up as the objects of the assembled package are seen.
+ * <p/>
+ * The size in kilobytes is rounded the same way as dpkg calculates <code>Installed-Size</code>: each regular file
+ * counts its size rounded up to the next kilobyte and every other object, like directories and symlinks, counts as
+ * one kilobyte.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class InstalledSize
+{
+    private long bytes;
+
+    private long kilobytes;
+
+    /**
+     * The number of bytes in regular files below each directory.
+     */
+    private final Map<RelativePath, Long> directories = new HashMap<RelativePath, Long>();
+
+    public InstalledSize add( UnixFsObject object )
+    {
+        return add( object.path, object instanceof RegularFile, object.size );
+    }
+
+    /**
+     * @param size The size of the file as it is written to the package, which may differ from the size of the source
+     *             file when it is filtered.
+     */
+    public InstalledSize add( RelativePath path, boolean regularFile, long size )
+    {
+        if ( path.isBase() )
+        {
+            return this;
+        }
+
+        if ( !regularFile )
+        {
+            kilobytes++;
+            return this;
+        }
+
+        bytes += size;
+        kilobytes += ( size + 1023 ) / 1024;
+
+        RelativePath directory = path;
+        do
+        {
+            directory = directory.parent();
+            Long current = directories.get( directory );
+            directories.put( directory, current == null ? size : current + size );
+        }
+        while ( !directory.isBase() );
+
+        return this;
+    }
+
+    /**
+     * The total size of all regular files.
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * The total size of all regular files below the directory.
+     */
+    public long getBytes( RelativePath directory )
+    {
+        Long bytes = directories.get( directory );
+        return bytes == null ? 0 : bytes;
+    }
+
+    /**
+     * The installed size in kilobytes, rounded like dpkg does it.
+     */
+    public long getKilobytes()
+    {
+        return kilobytes;
+    }
+
+    public static InstalledSize installedSize( Iterable<? extends UnixFsObject> objects )
+    {
+        InstalledSize installedSize = new InstalledSize();
+
+        for ( UnixFsObject object : objects )
+        {
+            installedSize.add( object );
+        }
+
+        return installedSize;
+    }
+}
@@ -27,56 +27,59 @@
 import static fj.Bottom.*;
 import fj.*;
 import fj.data.*;
-import fj.Function;
-import static fj.Function.compose;
-import static fj.Function.*;
-import static fj.P.*;
-import static fj.Ord.*;
-import static fj.data.Either.*;
 import static fj.data.Option.*;
-import static fj.data.Tree.*;
-import static fj.data.TreeZipper.*;
 import com.stratio.mojo.unix.UnixFsObject.*;
 import com.stratio.mojo.unix.util.*;
-import static com.stratio.mojo.unix.util.fj.FunctionF.*;
-import com.stratio.mojo.unix.util.fj.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
+ * A tree of package objects, keyed by path.
+ * <p/>
+ * While a package is being assembled the file system is mutable: the <code>add*</code> and <code>apply</code> methods
+ * update the tree in place and return <code>this</code>, so callers should always use the returned instance. Each
+ * directory keeps its children in a hash map so a lookup is O(depth). Calling {@link #freeze()} or
+ * {@link #prettify()} makes the tree immutable; modifying a frozen file system will work on a copy of it.
+ * <p/>
+ * The functions given to {@link #apply(F)} are not run right away, they are recorded and run on each object the
+ * first time it is read. Each node remembers how many of the functions it has seen, so an object only gets the
+ * functions that were applied after it was added, just like if they were run eagerly.
+ *
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
  */
 public class PackageFileSystem<A>
 {
-    private final Fs fs = new Fs();
-
-    private final TreeZipper<PackageFileSystemObject<A>> root;
+    private final Node<A> root;
 
     private final PackageFileSystemObject<A> defaultDirectory;
 
+    private final java.util.List<F<UnixFsObject, Option<UnixFsObject>>> applications;
+
+    private final boolean pretty;
+
+    private boolean frozen;
+
     public static <A> PackageFileSystem<A> create( PackageFileSystemObject<A> root,
                                                    PackageFileSystemObject<A> defaultDirectory )
     {
-        return new PackageFileSystem<A>( fromTree( leaf( root ) ), defaultDirectory );
+        return new PackageFileSystem<A>( new Node<A>( root, 0 ), defaultDirectory,
+                                         new ArrayList<F<UnixFsObject, Option<UnixFsObject>>>(), false, false );
     }
 
-    private PackageFileSystem( TreeZipper<PackageFileSystemObject<A>> root, PackageFileSystemObject<A> defaultDirectory )
+    private PackageFileSystem( Node<A> root, PackageFileSystemObject<A> defaultDirectory,
+                               java.util.List<F<UnixFsObject, Option<UnixFsObject>>> applications, boolean pretty,
+                               boolean frozen )
     {
         Validate.validateNotNull( root, defaultDirectory );
         this.root = root;
         this.defaultDirectory = defaultDirectory;
-    }
-
-    private class PrettyPackageFileSystem
-        extends PackageFileSystem<A>
-    {
-        public PrettyPackageFileSystem()
-        {
-            super( fromTree( prettyTree( root.toTree() ) ), defaultDirectory );
-        }
-
-        public PackageFileSystem<A> prettify()
-        {
-            return this;
-        }
+        this.applications = applications;
+        this.pretty = pretty;
+        this.frozen = frozen;
     }
 
     // -----------------------------------------------------------------------
@@ -85,35 +88,24 @@ public class PackageFileSystem<A>
 
     public boolean hasPath( final RelativePath path )
     {
-        List<String> paths = path.toList();
-
-        return paths.isEmpty() || find( root, paths ).isRight();
+        return path.isBase() || find( path.toList() ) != null;
     }
 
     public Option<PackageFileSystemObject<A>> getObject( final RelativePath path )
     {
         if ( path.isBase() )
         {
-            return some( root.getLabel() );
+            return some( root.object( applications ) );
         }
 
-        return find( root, path.toList() ).right().
-            map( TreeZipperF.<PackageFileSystemObject<A>>getLabel_() ).right().toOption();
+        Node<A> node = find( path.toList() );
+
+        return node == null ? Option.<PackageFileSystemObject<A>>none() : some( node.object( applications ) );
     }
 
     public PackageFileSystem<A> addDirectory( PackageFileSystemObject<A> object )
     {
-        List<String> names = object.getUnixFsObject().path.toList();
-//        String name = names.isEmpty() ? root.getLabel().name : names.reverse().head();
-
-//        PackageFileSystemObject<A> settings = p( (UnixFsObject) directory, a );
-        Tree<PackageFileSystemObject<A>> newChild = leaf( object );
-
-        Either<TreeZipper<PackageFileSystemObject<A>>, TreeZipper<PackageFileSystemObject<A>>> either = findAndCreateParentsFor( names );
-
-        return either.
-            either( compose( fs.navigateToRootAndCreatePackageFileSystem, curry( flip2( fs.addChild ), newChild ) ),
-                    compose( fs.navigateToRootAndCreatePackageFileSystem, curry( fs.mutateExisting, object ) ) );
+        return add( object );
     }
 
     public PackageFileSystem<A> addFile( PackageFileSystemObject<A> file )
@@ -123,12 +115,7 @@ public class PackageFileSystem<A>
             throw error( "addFile on base path." );
         }
 
-        List<String> names = file.getUnixFsObject().path.toList();
-        Tree<PackageFileSystemObject<A>> newChild = leaf( file );
-
-        return findAndCreateParentsFor( names ).
-            either( compose( fs.navigateToRootAndCreatePackageFileSystem, curry( flip2( fs.addChild ), newChild ) ),
-                    compose( fs.navigateToRootAndCreatePackageFileSystem, curry( fs.mutateExisting, file ) ) );
+        return add( file );
     }
 
     public PackageFileSystem<A> addSymlink( PackageFileSystemObject<A> symlink )
@@ -138,39 +125,50 @@ public class PackageFileSystem<A>
             throw error( "addSymlink on base path." );
         }
 
-        List<String> names = symlink.getUnixFsObject().path.toList();
-        Tree<PackageFileSystemObject<A>> newChild = leaf( symlink );
+        return add( symlink );
+    }
+
+    /**
+     * Adds all the objects, in order. Directories, files and symlinks are added like with the individual methods.
+     */
+    public PackageFileSystem<A> addAll( Iterable<? extends PackageFileSystemObject<A>> objects )
+    {
+        PackageFileSystem<A> fs = mutable();
+
+        for ( PackageFileSystemObject<A> object : objects )
+        {
+            UnixFsObject unixFsObject = object.getUnixFsObject();
+
+            if ( unixFsObject instanceof Directory )
+            {
+                fs.addDirectory( object );
+            }
+            else if ( unixFsObject instanceof Symlink )
+            {
+                fs.addSymlink( object );
+            }
+            else
+            {
+                fs.addFile( object );
+            }
+        }
 
-        return findAndCreateParentsFor( names ).
-            either( compose( fs.navigateToRootAndCreatePackageFileSystem, curry( flip2( fs.addChild ), newChild ) ),
-                compose( fs.navigateToRootAndCreatePackageFileSystem, curry( fs.mutateExisting, symlink ) ) );
+        return fs;
     }
 
     /**
-     * Applies the <code>f</code> to all objects in this filesystem.
+     * Applies the <code>f</code> to all objects in this filesystem. If <code>f</code> returns none, the object is
+     * left as is.
      * <p/>
      * TODO: Shouldn't it just return a new UnixFsObject?
      */
     public PackageFileSystem<A> apply( final F<UnixFsObject, Option<UnixFsObject>> f )
     {
-        TreeZipper<PackageFileSystemObject<A>> root = this.root.map( new F<PackageFileSystemObject<A>, PackageFileSystemObject<A>>()
-        {
-            public PackageFileSystemObject<A> f( PackageFileSystemObject<A> node )
-            {
-                Option<UnixFsObject> result = f.f( node.getUnixFsObject() );
+        PackageFileSystem<A> fs = mutable();
 
-                if ( result.isSome() )
-                {
-                    return node.withUnixFsObject( result.some() );
-                }
-                else
-                {
-                    return node;
-                }
-            }
-        } );
+        fs.applications.add( f );
 
-        return new PackageFileSystem<A>( root, defaultDirectory );
+        return fs;
     }
 
     // -----------------------------------------------------------------------
@@ -179,133 +177,135 @@ public class PackageFileSystem<A>
 
     public Stream<PackageFileSystemObject<A>> toList()
     {
-        return root.toTree().flatten();
+        ArrayList<PackageFileSystemObject<A>> list = new ArrayList<PackageFileSystemObject<A>>();
+
+        root.flatten( list, applications, pretty );
+
+        return Stream.iterableStream( list );
     }
 
     Tree<PackageFileSystemObject<A>> getTree()
     {
-        return root.toTree();
+        return root.toTree( applications, pretty );
     }
 
+    /**
+     * Returns a frozen file system where the children of each directory are sorted by their path.
+     */
     public PackageFileSystem<A> prettify()
     {
-        return new PrettyPackageFileSystem();
+        if ( pretty )
+        {
+            return this;
+        }
+
+        frozen = true;
+
+        return new PackageFileSystem<A>( root, defaultDirectory, applications, true, true );
+    }
+
+    /**
+     * Makes this file system immutable. Any changes made after this will be done on a copy.
+     */
+    public PackageFileSystem<A> freeze()
+    {
+        frozen = true;
+
+        return this;
     }
 
     // -----------------------------------------------------------------------
     //
     // -----------------------------------------------------------------------
 
-    /**
-     * Returns right with the node if it was just created, or left with the parent and the remaining path
-     */
-    private Either<TreeZipper<PackageFileSystemObject<A>>, TreeZipper<PackageFileSystemObject<A>>> findAndCreateParentsFor( List<String> paths )
+    private PackageFileSystem<A> mutable()
     {
-        // If paths is empty, then we're looking for the root
-        if ( paths.isEmpty() )
+        if ( !frozen )
         {
-            return right( root );
+            return this;
         }
 
-        return find( root, paths ).left().
-            map( fs.createParentsFor );
+        return new PackageFileSystem<A>( root.copy(), defaultDirectory,
+                                         new ArrayList<F<UnixFsObject, Option<UnixFsObject>>>( applications ), false,
+                                         false );
     }
 
-    private TreeZipper<PackageFileSystemObject<A>> createParentsFor( P2<TreeZipper<PackageFileSystemObject<A>>, List<String>> p2 )
+    private PackageFileSystem<A> add( PackageFileSystemObject<A> object )
     {
-        TreeZipper<PackageFileSystemObject<A>> zipper = p2._1();
-        List<String> paths = p2._2();
-        RelativePath path = zipper.getLabel().getUnixFsObject().path;
+        PackageFileSystem<A> fs = mutable();
 
-        // Create all but the last path element
-        while ( paths.isNotEmpty() && paths.tail().isNotEmpty() )
-        {
-            path = path.add( paths.head() );
-            zipper = addChild( zipper, leaf( defaultDirectory.withUnixFsObject( defaultDirectory.getUnixFsObject().setPath( path ) ) ) );
-            paths = paths.tail();
-        }
+        fs.insert( object );
 
-        return zipper;
+        return fs;
     }
 
-    /**
-     * @param parent A zipper focused on the closest, existing parent
-     * @param node   The node to insert
-     */
-    public TreeZipper<PackageFileSystemObject<A>> addChild( TreeZipper<PackageFileSystemObject<A>> parent, Tree<PackageFileSystemObject<A>> node )
+    private void insert( PackageFileSystemObject<A> object )
     {
-        if ( parent.getLabel().getUnixFsObject() instanceof Directory )
+        List<String> names = object.getUnixFsObject().path.toList();
+
+        if ( names.isEmpty() )
         {
-            return parent.insertDownFirst( node );
+            root.set( object, applications.size() );
+            return;
         }
 
-        throw error( "Parent has to be a directory, parent: " + parent.getLabel().getUnixFsObject().path );
-    }
-
-    /**
-     * Returns right with the node, or left with the closest parent and the remaining path.
-     */
-    private Either<P2<TreeZipper<PackageFileSystemObject<A>>, List<String>>, TreeZipper<PackageFileSystemObject<A>>> find(
-        final TreeZipper<PackageFileSystemObject<A>> parent,
-        final List<String> paths )
-    {
-        String head = paths.head();
-        List<String> tail = paths.tail();
-
-        Option<TreeZipper<PackageFileSystemObject<A>>> option = parent.firstChild();
+        Node<A> parent = root;
+        RelativePath path = root.object.getUnixFsObject().path;
 
-        while ( option.isSome() )
+        // Find or create all but the last path element
+        while ( names.tail().isNotEmpty() )
         {
-            TreeZipper<PackageFileSystemObject<A>> zipper = option.some();
+            String name = names.head();
+            path = path.add( name );
 
-            if ( zipper.getLabel().getUnixFsObject().path.name().equals( head ) )
+            Node<A> child = parent.child( name );
+
+            if ( child == null )
             {
-                if ( tail.isEmpty() )
-                {
-                    // We found the parent
-                    // TODO: or did this actually find the child?
-                    return right( zipper );
-                }
-                else
-                {
-                    return find( zipper, tail );
-                }
+                child = new Node<A>( defaultDirectory.withUnixFsObject( defaultDirectory.getUnixFsObject().setPath( path ) ),
+                                     applications.size() );
+                parent.addChild( name, child );
             }
 
-            option = zipper.right();
+            parent = child;
+            names = names.tail();
         }
 
-        return left( p( parent, paths ) );
-    }
+        Node<A> existing = parent.child( names.head() );
 
-    public static <A> Ordering compareTreeNodes( Tree<PackageFileSystemObject<A>> a, Tree<PackageFileSystemObject<A>> b )
-    {
-        return RelativePath.ord.compare( a.root().getUnixFsObject().path, b.root().getUnixFsObject().path );
+        if ( existing != null )
+        {
+            existing.set( object, applications.size() );
+        }
+        else
+        {
+            parent.addChild( names.head(), new Node<A>( object, applications.size() ) );
+        }
     }
 
-    private static <A> Tree<PackageFileSystemObject<A>> prettyTree( Tree<PackageFileSystemObject<A>> root )
+    /**
+     * Returns the node at the path or null.
+     */
+    private Node<A> find( List<String> names )
     {
-        Stream<Tree<PackageFileSystemObject<A>>> forest = root.subForest()._1().
-            sort( PackageFileSystem.<A>treeOrd() ).
-            map( new F<Tree<PackageFileSystemObject<A>>, Tree<PackageFileSystemObject<A>>>()
-            {
-                public Tree<PackageFileSystemObject<A>> f( Tree<PackageFileSystemObject<A>> child )
-                {
-                    return prettyTree( child );
-                }
-            } );
+        Node<A> node = root;
 
-        return Tree.node( root.root(), forest );
-    }
+        for ( String name : names )
+        {
+            node = node.child( name );
 
-    public PackageFileSystem<A> navigateToRootAndCreatePackageFileSystem( TreeZipper<PackageFileSystemObject<A>> zipper )
-    {
-        return new PackageFileSystem<A>( zipper.root(), defaultDirectory );
+            if ( node == null )
+            {
+                return null;
+            }
+        }
+
+        return node;
     }
 
-    private static <A> Ord<Tree<PackageFileSystemObject<A>>> treeOrd()
+    public static <A> Ordering compareTreeNodes( Tree<PackageFileSystemObject<A>> a, Tree<PackageFileSystemObject<A>> b )
     {
-        return ord( curry( PackageFileSystem.<A>compareTreeNodes() ) );
+        return RelativePath.ord.compare( a.root().getUnixFsObject().path, b.root().getUnixFsObject().path );
     }
 
     static <A> F2<Tree<PackageFileSystemObject<A>>, Tree<PackageFileSystemObject<A>>, Ordering> compareTreeNodes()
@@ -319,47 +319,135 @@ public class PackageFileSystem<A>
         };
     }
 
-    /**
-     * First-order versions
-     */
-    private class Fs
+    private static final Comparator<Node<?>> nodeComparator = new Comparator<Node<?>>()
+    {
+        public int compare( Node<?> a, Node<?> b )
+        {
+            return RelativePath.comparator.compare( a.object.getUnixFsObject().path, b.object.getUnixFsObject().path );
+        }
+    };
+
+    private static final class Node<A>
     {
-        F<P2<TreeZipper<PackageFileSystemObject<A>>, List<String>>, TreeZipper<PackageFileSystemObject<A>>> createParentsFor =
-            new F<P2<TreeZipper<PackageFileSystemObject<A>>, List<String>>, TreeZipper<PackageFileSystemObject<A>>>()
+        private PackageFileSystemObject<A> object;
+
+        /**
+         * The number of applications that has been run on the object.
+         */
+        private int applied;
+
+        /**
+         * The children by name, in insertion order. Null until the first child is added.
+         */
+        private LinkedHashMap<String, Node<A>> children;
+
+        private Node( PackageFileSystemObject<A> object, int applied )
+        {
+            this.object = object;
+            this.applied = applied;
+        }
+
+        void set( PackageFileSystemObject<A> object, int applied )
+        {
+            this.object = object;
+            this.applied = applied;
+        }
+
+        /**
+         * Returns the object after running all the pending applications on it.
+         */
+        PackageFileSystemObject<A> object( java.util.List<F<UnixFsObject, Option<UnixFsObject>>> applications )
+        {
+            for ( ; applied < applications.size(); applied++ )
             {
-                public TreeZipper<PackageFileSystemObject<A>> f( P2<TreeZipper<PackageFileSystemObject<A>>, List<String>> p2 )
+                Option<UnixFsObject> result = applications.get( applied ).f( object.getUnixFsObject() );
+
+                if ( result.isSome() )
                 {
-                    return createParentsFor( p2 );
+                    object = object.withUnixFsObject( result.some() );
                 }
-            };
+            }
+
+            return object;
+        }
 
-        F<TreeZipper<PackageFileSystemObject<A>>, PackageFileSystem<A>> navigateToRootAndCreatePackageFileSystem =
-            new F<TreeZipper<PackageFileSystemObject<A>>, PackageFileSystem<A>>()
+        Node<A> child( String name )
+        {
+            return children == null ? null : children.get( name );
+        }
+
+        void addChild( String name, Node<A> child )
+        {
+            if ( !( object.getUnixFsObject() instanceof Directory ) )
             {
-                public PackageFileSystem<A> f( TreeZipper<PackageFileSystemObject<A>> treeZipper )
-                {
-                    return navigateToRootAndCreatePackageFileSystem( treeZipper );
-                }
-            };
+                throw error( "Parent has to be a directory, parent: " + object.getUnixFsObject().path );
+            }
 
-        F2<TreeZipper<PackageFileSystemObject<A>>, Tree<PackageFileSystemObject<A>>, TreeZipper<PackageFileSystemObject<A>>> addChild =
-            new F2<TreeZipper<PackageFileSystemObject<A>>, Tree<PackageFileSystemObject<A>>, TreeZipper<PackageFileSystemObject<A>>>()
+            if ( children == null )
             {
-                public TreeZipper<PackageFileSystemObject<A>> f( TreeZipper<PackageFileSystemObject<A>> parent, Tree<PackageFileSystemObject<A>> node )
-                {
-                    return addChild( parent, node );
-                }
-            };
+                children = new LinkedHashMap<String, Node<A>>();
+            }
 
-        F2<PackageFileSystemObject<A>, TreeZipper<PackageFileSystemObject<A>>, TreeZipper<PackageFileSystemObject<A>>> mutateExisting =
-            new F2<PackageFileSystemObject<A>, TreeZipper<PackageFileSystemObject<A>>, TreeZipper<PackageFileSystemObject<A>>>()
+            children.put( name, child );
+        }
+
+        Node<A> copy()
+        {
+            Node<A> copy = new Node<A>( object, applied );
+
+            if ( children != null )
             {
-                public TreeZipper<PackageFileSystemObject<A>> f( PackageFileSystemObject<A> newSettings,
-                                                                 TreeZipper<PackageFileSystemObject<A>> nodeTreeZipper )
+                copy.children = new LinkedHashMap<String, Node<A>>( children.size() * 4 / 3 + 1 );
+
+                for ( Map.Entry<String, Node<A>> entry : children.entrySet() )
                 {
-                    return nodeTreeZipper.modifyLabel(
-                        Function.<PackageFileSystemObject<A>, PackageFileSystemObject<A>>constant( newSettings ) );
+                    copy.children.put( entry.getKey(), entry.getValue().copy() );
                 }
-            };
+            }
+
+            return copy;
+        }
+
+        void flatten( ArrayList<PackageFileSystemObject<A>> list,
+                      java.util.List<F<UnixFsObject, Option<UnixFsObject>>> applications, boolean sorted )
+        {
+            list.add( object( applications ) );
+
+            for ( Node<A> child : children( sorted ) )
+            {
+                child.flatten( list, applications, sorted );
+            }
+        }
+
+        Tree<PackageFileSystemObject<A>> toTree( java.util.List<F<UnixFsObject, Option<UnixFsObject>>> applications,
+                                                 boolean sorted )
+        {
+            ArrayList<Tree<PackageFileSystemObject<A>>> forest = new ArrayList<Tree<PackageFileSystemObject<A>>>();
+
+            for ( Node<A> child : children( sorted ) )
+            {
+                forest.add( child.toTree( applications, sorted ) );
+            }
+
+            return Tree.node( object( applications ), Stream.iterableStream( forest ) );
+        }
+
+        @SuppressWarnings( "unchecked" )
+        private java.util.List<Node<A>> children( boolean sorted )
+        {
+            if ( children == null )
+            {
+                return java.util.Collections.emptyList();
+            }
+
+            Node<A>[] nodes = children.values().toArray( new Node[children.size()] );
+
+            if ( sorted )
+            {
+                Arrays.sort( nodes, nodeComparator );
+            }
+
+            return Arrays.asList( nodes );
+        }
     }
 }
@@ -24,11 +24,13 @@
  * SOFTWARE.
  */
 
+import com.stratio.mojo.unix.io.*;
 import com.stratio.mojo.unix.io.fs.*;
 import com.stratio.mojo.unix.util.*;
 import org.joda.time.*;
 
 import java.io.*;
+import java.nio.charset.*;
 
 /**
  * Represents a Unix package that has attributes and a set of files to be packaged.
@@ -48,6 +50,12 @@ public abstract class UnixPackage<UP extends UnixPackage<UP, PP>, PP extends Uni
 
     private File basedir;
 
+    protected CompressionPolicy compressionPolicy = new CompressionPolicy();
+
+    protected BlobStore blobStore;
+
+    protected Charset filterEncoding = Charset.defaultCharset();
+
     public UnixPackage( String packageFileExtension )
     {
         this.packageFileExtension = packageFileExtension;
@@ -83,6 +91,38 @@ public abstract class UnixPackage<UP extends UnixPackage<UP, PP>, PP extends Uni
     {
         return (UP)this;
     }
+
+    @SuppressWarnings( "unchecked" )
+    public UP compressionPolicy( CompressionPolicy compressionPolicy )
+    {
+        this.compressionPolicy = compressionPolicy;
+        return (UP)this;
+    }
+
+    /**
+     * Filtered and extracted files are stored in the blob store so they can be shared with other packages.
+     */
+    @SuppressWarnings( "unchecked" )
+    public UP blobStore( BlobStore blobStore )
+    {
+        this.blobStore = blobStore;
+        return (UP)this;
+    }
+
+    /**
+     * The encoding of the files that are filtered.
+     */
+    @SuppressWarnings( "unchecked" )
+    public UP filterEncoding( Charset filterEncoding )
+    {
+        this.filterEncoding = filterEncoding;
+        return (UP)this;
+    }
+
+    public CompressionPolicy getCompressionPolicy()
+    {
+        return compressionPolicy;
+    }
     @SuppressWarnings( "unchecked" )
     public UP setVersion( PackageVersion version )
     {
@@ -0,0 +1,339 @@
+ package com.stratio.mojo.unix.io;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.io.fs.*;
+import com.stratio.mojo.unix.util.line.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.zip.*;
+
+/**
+ * Decides if an entry is worth compressing. Archives, compressed files and most media formats gain next to nothing
+ * from being compressed again, so they are recognized by their extension, by the magic bytes at the start of the
+ * content or by the entropy of the first block of the content.
+ * <p/>
+ * Each decision is remembered and written out by {@link #streamTo(LineStreamWriter)}, up to
+ * {@link #MAX_DECISIONS} of them.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class CompressionPolicy
+    implements LineProducer
+{
+    public static final int SAMPLE_SIZE = 4096;
+
+    public static final double DEFAULT_MAX_ENTROPY = 7.5;
+
+    public static final int MAX_DECISIONS = 10000;
+
+    public static final String[] DEFAULT_EXTENSIONS = {
+        "jar", "war", "ear", "zip", "gz", "tgz", "bz2", "xz", "lzma", "zst", "7z", "rar", "deb", "rpm", "jmod",
+        "png", "jpg", "jpeg", "gif", "webp", "mp3", "mp4", "ogg", "woff", "woff2"};
+
+    private static final byte[][] MAGICS = {
+        {'P', 'K', 3, 4},                                       // zip, jar, war
+        {(byte) 0x1f, (byte) 0x8b},                             // gzip
+        {'B', 'Z', 'h'},                                        // bzip2
+        {(byte) 0xfd, '7', 'z', 'X', 'Z', 0},                   // xz
+        {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd},   // zstd
+        {'7', 'z', (byte) 0xbc, (byte) 0xaf, (byte) 0x27, (byte) 0x1c},
+        {'R', 'a', 'r', '!'},
+        {(byte) 0x89, 'P', 'N', 'G'},
+        {(byte) 0xff, (byte) 0xd8, (byte) 0xff},                // jpeg
+        {'G', 'I', 'F', '8'},
+        {'w', 'O', 'F', 'F'},
+        {'w', 'O', 'F', '2'},
+    };
+
+    private final Set<String> extensions;
+
+    private final boolean detectMagic;
+
+    private final double maxEntropy;
+
+    private final List<String> decisions = new ArrayList<String>();
+
+    private long compressibleBytes;
+
+    private long incompressibleBytes;
+
+    private int droppedDecisions;
+
+    private boolean fastStream;
+
+    public CompressionPolicy()
+    {
+        this( Arrays.asList( DEFAULT_EXTENSIONS ), true, DEFAULT_MAX_ENTROPY );
+    }
+
+    /**
+     * @param extensions  Files with any of these extensions are never compressed.
+     * @param detectMagic If the content should be checked for the magic bytes of well known compressed formats.
+     * @param maxEntropy  Content with more entropy than this, in bits per byte, is not compressed. Anything above 8
+     *                    disables the entropy check.
+     */
+    public CompressionPolicy( Iterable<String> extensions, boolean detectMagic, double maxEntropy )
+    {
+        this.extensions = new HashSet<String>();
+        for ( String extension : extensions )
+        {
+            this.extensions.add( extension.toLowerCase( Locale.ENGLISH ) );
+        }
+        this.detectMagic = detectMagic;
+        this.maxEntropy = maxEntropy;
+    }
+
+    /**
+     * Decides if <code>content</code> should be compressed. The first block of the content is read to look for magic
+     * bytes and to measure its entropy, so the stream has to support {@link InputStream#mark(int)}; it is reset before
+     * returning.
+     */
+    public boolean compress( String path, long size, InputStream content )
+        throws IOException
+    {
+        if ( !content.markSupported() )
+        {
+            throw new IllegalArgumentException( "The stream has to support mark()." );
+        }
+
+        String reason = extensionReason( path );
+
+        if ( reason != null )
+        {
+            return decide( false, path, size, reason );
+        }
+
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int length = 0;
+
+        content.mark( SAMPLE_SIZE );
+        try
+        {
+            int read;
+            while ( length < sample.length && ( read = content.read( sample, length, sample.length - length ) ) != -1 )
+            {
+                length += read;
+            }
+        }
+        finally
+        {
+            content.reset();
+        }
+
+        return decide( sample, length, path, size );
+    }
+
+    /**
+     * Decides if content that starts with <code>sample</code> should be compressed, for when the first block of the
+     * content has already been read.
+     */
+    public boolean compress( String path, long size, byte[] sample, int length )
+    {
+        String reason = extensionReason( path );
+
+        if ( reason != null )
+        {
+            return decide( false, path, size, reason );
+        }
+
+        return decide( sample, Math.min( length, SAMPLE_SIZE ), path, size );
+    }
+
+    /**
+     * Decides if a file should be compressed by looking at its name and the first block of its content.
+     */
+    public boolean compress( String path, Fs<?> file )
+        throws IOException
+    {
+        String reason = extensionReason( path );
+
+        if ( reason != null )
+        {
+            return decide( false, path, file.size(), reason );
+        }
+
+        InputStream is = null;
+        try
+        {
+            is = new BufferedInputStream( file.inputStream(), SAMPLE_SIZE );
+            return compress( path, file.size(), is );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+    }
+
+    /**
+     * Picks the compression level for a stream that contains all the entries seen so far, like the data tar of a
+     * DEB package. If nearly all the bytes are already compressed, the fastest level is used instead of
+     * <code>level</code>. It is meant to be asked again after each entry, so a change of level is only remembered
+     * when it happens.
+     */
+    public synchronized int streamLevel( int level )
+    {
+        long total = compressibleBytes + incompressibleBytes;
+
+        boolean fast = total != 0 && incompressibleBytes >= total / 10 * 9;
+
+        if ( fast != fastStream )
+        {
+            fastStream = fast;
+            remember( "level " + ( fast ? Deflater.BEST_SPEED : level ) + ": " +
+                          ( incompressibleBytes * 100 / total ) + "% of " + total + " bytes are already compressed" );
+        }
+
+        return fast ? Deflater.BEST_SPEED : level;
+    }
+
+    public synchronized void streamTo( LineStreamWriter stream )
+    {
+        stream.addAllLines( new ArrayList<String>( decisions ) );
+
+        if ( droppedDecisions > 0 )
+        {
+            stream.add( "... and " + droppedDecisions + " more" );
+        }
+    }
+
+    private String extensionReason( String path )
+    {
+        int slash = path.lastIndexOf( '/' );
+        int dot = path.lastIndexOf( '.' );
+
+        if ( dot <= slash + 1 )
+        {
+            return null;
+        }
+
+        String extension = path.substring( dot + 1 ).toLowerCase( Locale.ENGLISH );
+
+        return extensions.contains( extension ) ? "extension ." + extension : null;
+    }
+
+    private boolean decide( byte[] sample, int length, String path, long size )
+    {
+        if ( detectMagic )
+        {
+            for ( byte[] magic : MAGICS )
+            {
+                if ( startsWith( sample, length, magic ) )
+                {
+                    return decide( false, path, size, "magic bytes" );
+                }
+            }
+        }
+
+        double entropy = entropy( sample, length );
+        String reason = String.format( Locale.ENGLISH, "entropy %.2f bits/byte", entropy );
+
+        // Too little data to tell
+        if ( length < 256 )
+        {
+            return decide( true, path, size, reason );
+        }
+
+        return decide( entropy <= maxEntropy, path, size, reason );
+    }
+
+    private synchronized boolean decide( boolean compress, String path, long size, String reason )
+    {
+        if ( compress )
+        {
+            compressibleBytes += size;
+        }
+        else
+        {
+            incompressibleBytes += size;
+        }
+
+        remember( ( compress ? "compress " : "store " ) + path + ": " + reason );
+
+        return compress;
+    }
+
+    private void remember( String decision )
+    {
+        if ( decisions.size() < MAX_DECISIONS )
+        {
+            decisions.add( decision );
+        }
+        else
+        {
+            droppedDecisions++;
+        }
+    }
+
+    private static boolean startsWith( byte[] sample, int length, byte[] magic )
+    {
+        if ( length < magic.length )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < magic.length; i++ )
+        {
+            if ( sample[i] != magic[i] )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The Shannon entropy of the bytes, in bits per byte.
+     */
+    static double entropy( byte[] bytes, int length )
+    {
+        if ( length == 0 )
+        {
+            return 0;
+        }
+
+        int[] counts = new int[256];
+        for ( int i = 0; i < length; i++ )
+        {
+            counts[bytes[i] & 0xff]++;
+        }
+
+        double entropy = 0;
+        for ( int count : counts )
+        {
+            if ( count > 0 )
+            {
+                double p = (double) count / length;
+                entropy -= p * Math.log( p );
+            }
+        }
+
+        return entropy / Math.log( 2 );
+    }
+}
@@ -25,13 +25,10 @@
  */
 
 import fj.*;
-import static fj.P.*;
-import fj.data.List;
 import fj.data.*;
-import static fj.data.Option.*;
 import static fj.data.Stream.*;
 import static java.util.Arrays.*;
-import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.io.fs.*;
 import static com.stratio.mojo.unix.io.IncludeExcludeFilter.*;
 import static com.stratio.mojo.unix.util.RelativePath.*;
 
@@ -64,50 +61,31 @@ public class FileScanner
         absolutePath = file.getAbsolutePath();
     }
 
+    /**
+     * Walks the directory lazily with {@link LocalFs#find(IncludeExcludeFilter, boolean)}, so directories that can't
+     * contain any matches are skipped.
+     */
     public Stream<File> toStream()
     {
-        class State
+        Iterable<LocalFs> files;
+        try
         {
-            private List<File> stack;
-
-            public State( File file )
-            {
-                stack = List.single( file );
-            }
+            files = new LocalFs( file ).find( selector, false );
         }
-
-        return unfold( new F<State, Option<P2<File, State>>>()
+        catch ( IOException e )
         {
-            public Option<P2<File, State>> f( State state )
-            {
-                if ( state.stack.isEmpty() )
-                {
-                    return none();
-                }
+            throw new RuntimeException( e );
+        }
 
-                String s;
-                while ( state.stack.isNotEmpty() )
+        // find() always returns the directory itself first
+        return iterableStream( files ).
+            drop( selector.matches( BASE ) ? 0 : 1 ).
+            map( new F<LocalFs, File>()
+            {
+                public File f( LocalFs fs )
                 {
-                    File next = state.stack.head();
-                    state.stack = state.stack.drop( 1 );
-
-                    if ( next.isDirectory() )
-                    {
-                        File[] files = next.listFiles();
-                        for ( File file : files )
-                        {
-                            state.stack = state.stack.cons( file );
-                        }
-                    }
-
-                    if ( selector.matches( relativePathFromFiles( file, next ) ) )
-                    {
-                        return some( p( next, state ) );
-                    }
+                    return fs.file;
                 }
-
-                return none();
-            }
-        }, new State( file ) );
+            } );
     }
 }
@@ -0,0 +1,152 @@
+ package com.stratio.mojo.unix.io;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.UnixFsObject.*;
+
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * Applies a set of {@link Replacer}s to a character stream, one line at a time, and writes each line back out with
+ * the given end of line marker. Only the current line is kept in memory, so arbitrarily large files can be filtered.
+ * <p/>
+ * Like the old in-memory implementation this will always terminate the last line.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class FilteringInputStream
+    extends InputStream
+{
+    private final BufferedReader reader;
+
+    private final Iterable<Replacer> replacers;
+
+    private final byte[] eol;
+
+    private final Charset charset;
+
+    private byte[] line = new byte[0];
+
+    /**
+     * Position in the current line. When it's past the line's length, it's pointing into the eol.
+     */
+    private int position;
+
+    private boolean eof;
+
+    public FilteringInputStream( InputStream inputStream, Charset charset, Iterable<Replacer> replacers, byte[] eol )
+    {
+        this.reader = new BufferedReader( new InputStreamReader( inputStream, charset ), 1024 * 128 );
+        this.charset = charset;
+        this.replacers = replacers;
+        this.eol = eol;
+        this.position = eol.length;
+    }
+
+    public int read()
+        throws IOException
+    {
+        if ( !fill() )
+        {
+            return -1;
+        }
+
+        int b = position < line.length ? line[position] : eol[position - line.length];
+        position++;
+        return b & 0xff;
+    }
+
+    public int read( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+
+        int count = 0;
+
+        while ( count < len && fill() )
+        {
+            if ( position < line.length )
+            {
+                int n = Math.min( len - count, line.length - position );
+                System.arraycopy( line, position, b, off + count, n );
+                position += n;
+                count += n;
+            }
+            else
+            {
+                int i = position - line.length;
+                int n = Math.min( len - count, eol.length - i );
+                System.arraycopy( eol, i, b, off + count, n );
+                position += n;
+                count += n;
+            }
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    public void close()
+        throws IOException
+    {
+        reader.close();
+    }
+
+    /**
+     * Makes sure there is something left to read in the current line, reading the next one if required.
+     */
+    private boolean fill()
+        throws IOException
+    {
+        while ( position >= line.length + eol.length )
+        {
+            if ( eof )
+            {
+                return false;
+            }
+
+            String s = reader.readLine();
+
+            if ( s == null )
+            {
+                eof = true;
+                return false;
+            }
+
+            for ( Replacer replacer : replacers )
+            {
+                s = replacer.replace( s );
+            }
+
+            line = s.getBytes( charset );
+            position = 0;
+        }
+
+        return true;
+    }
+}
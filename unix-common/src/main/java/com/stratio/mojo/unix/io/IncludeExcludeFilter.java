@@ -52,14 +52,12 @@ public class IncludeExcludeFilter
         new PathExpression( "**/META-INF/**" )
     };
 
-    private final Collection<PathExpression> includes;
-    private final Collection<PathExpression> excludes;
+    private final PathAutomaton automaton;
 
     IncludeExcludeFilter( Collection<PathExpression> includes,
                           Collection<PathExpression> excludes )
     {
-        this.includes = includes;
-        this.excludes = excludes;
+        this.automaton = new PathAutomaton( includes, excludes );
     }
 
     /*
@@ -88,41 +86,52 @@ public class IncludeExcludeFilter
         // root .svn directory.
         // -----------------------------------------------------------------------
 
-        String s = path.asAbsolutePath( "/" );
-
-        boolean include;
+        return automaton.initial.step( path.asAbsolutePath( "/" ) ).matches;
+    }
 
-        if ( includes.size() == 0 )
-        {
-            // Default to including the file is the list of includes is empty
-            include = true;
+    /**
+     * Returns a cursor positioned at the base path, for walking a tree one path segment at a time.
+     */
+    public Cursor root()
+    {
+        return new Cursor( automaton.initial.step( '/' ), true );
+    }
 
-            include = matchesAny( include, false, s, excludes );
-        }
-        else
-        {
-            // Default to not including the file if the list of includes is non-empty
-            include = false;
+    /**
+     * The state of the filter after matching a path. Matching a child path only has to look at the child's name.
+     */
+    public static final class Cursor
+    {
+        private final PathAutomaton.State state;
 
-            include = matchesAny( include, true, s, includes );
+        private final boolean root;
 
-            include = matchesAny( include, false, s, excludes );
+        private Cursor( PathAutomaton.State state, boolean root )
+        {
+            this.state = state;
+            this.root = root;
         }
 
-        return include;
-    }
+        public Cursor child( String name )
+        {
+            return new Cursor( ( root ? state : state.step( '/' ) ).step( name ), false );
+        }
 
-    private boolean matchesAny( boolean include, boolean returnIfMatch, String relative, Iterable<PathExpression> pathExpressions )
-    {
-        for ( PathExpression pathExpression : pathExpressions )
+        /**
+         * True if the current path is included.
+         */
+        public boolean matches()
         {
-            if ( pathExpression.matches( relative ) )
-            {
-                return returnIfMatch;
-            }
+            return state.matches;
         }
 
-        return include;
+        /**
+         * True if no path below the current path can be included, so a directory doesn't have to be descended into.
+         */
+        public boolean prune()
+        {
+            return ( root ? state : state.step( '/' ) ).dead;
+        }
     }
 
     public static class TemplateIncludeExcludeFilter
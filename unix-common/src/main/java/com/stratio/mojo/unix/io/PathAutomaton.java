@@ -0,0 +1,339 @@
+ package com.stratio.mojo.unix.io;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A set of include and exclude {@link PathExpression}s compiled into a single automaton.
+ * <p/>
+ * Each expression is turned into a small NFA with one state per token (a literal character, <code>?</code>,
+ * <code>*</code> or <code>**</code>). All the NFAs are run in parallel and the resulting sets of NFA states are cached
+ * as DFA states as they are discovered, so after warming up a path is matched with a single table lookup per
+ * character, regardless of the number of expressions.
+ * <p/>
+ * The semantics are exactly the same as {@link PathExpression#getPattern()}.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+class PathAutomaton
+{
+    private static final int END = 0;
+
+    private static final int LITERAL = 1;
+
+    /**
+     * <code>?</code>, any one character, including '/'.
+     */
+    private static final int ONE = 2;
+
+    /**
+     * <code>*</code>, zero or more characters, not including '/'.
+     */
+    private static final int SEGMENT = 3;
+
+    /**
+     * <code>**</code>, zero or more characters, including '/'.
+     */
+    private static final int ANY = 4;
+
+    private final int[] types;
+
+    private final char[] chars;
+
+    private final boolean[] include;
+
+    /**
+     * True if every string will take the NFA from this state to its end state.
+     */
+    private final boolean[] universal;
+
+    private final boolean hasIncludes;
+
+    private final ConcurrentMap<Key, State> states = new ConcurrentHashMap<Key, State>();
+
+    final State initial;
+
+    PathAutomaton( Collection<PathExpression> includes, Collection<PathExpression> excludes )
+    {
+        int count = 0;
+        for ( PathExpression expression : includes )
+        {
+            count += expression.getNormalizedExpression().length() + 1;
+        }
+        for ( PathExpression expression : excludes )
+        {
+            count += expression.getNormalizedExpression().length() + 1;
+        }
+
+        types = new int[count];
+        chars = new char[count];
+        include = new boolean[count];
+        universal = new boolean[count];
+        hasIncludes = !includes.isEmpty();
+
+        BitSet starts = new BitSet( count );
+        int next = 0;
+        for ( PathExpression expression : includes )
+        {
+            next = compile( expression, true, next, starts );
+        }
+        for ( PathExpression expression : excludes )
+        {
+            next = compile( expression, false, next, starts );
+        }
+
+        BitSet set = new BitSet( count );
+        for ( int i = starts.nextSetBit( 0 ); i >= 0; i = starts.nextSetBit( i + 1 ) )
+        {
+            closure( set, i );
+        }
+
+        initial = state( set );
+    }
+
+    private int compile( PathExpression expression, boolean include, int start, BitSet starts )
+    {
+        String s = expression.getNormalizedExpression();
+
+        starts.set( start );
+
+        int state = start;
+        for ( int i = 0; i < s.length(); i++ )
+        {
+            char c = s.charAt( i );
+
+            if ( c == '*' )
+            {
+                if ( i + 1 < s.length() && s.charAt( i + 1 ) == '*' )
+                {
+                    types[state] = ANY;
+                    i++;
+                }
+                else
+                {
+                    types[state] = SEGMENT;
+                }
+            }
+            else if ( c == '?' )
+            {
+                types[state] = ONE;
+            }
+            else
+            {
+                types[state] = LITERAL;
+                chars[state] = c;
+            }
+
+            this.include[state++] = include;
+        }
+
+        types[state] = END;
+        this.include[state] = include;
+
+        // A state is universal if it and every following state except the end is a **
+        for ( int i = state - 1; i >= start && types[i] == ANY; i-- )
+        {
+            universal[i] = true;
+        }
+
+        return state + 1;
+    }
+
+    private void closure( BitSet set, int state )
+    {
+        while ( !set.get( state ) )
+        {
+            set.set( state );
+
+            if ( types[state] != SEGMENT && types[state] != ANY )
+            {
+                break;
+            }
+
+            state++;
+        }
+    }
+
+    private State state( BitSet set )
+    {
+        Key key = new Key( set );
+
+        State state = states.get( key );
+
+        if ( state != null )
+        {
+            return state;
+        }
+
+        state = new State( set );
+
+        State existing = states.putIfAbsent( key, state );
+
+        return existing != null ? existing : state;
+    }
+
+    private State step( State from, char c )
+    {
+        BitSet set = new BitSet( types.length );
+
+        BitSet nfa = from.nfa;
+        for ( int s = nfa.nextSetBit( 0 ); s >= 0; s = nfa.nextSetBit( s + 1 ) )
+        {
+            switch ( types[s] )
+            {
+                case LITERAL:
+                    if ( chars[s] == c )
+                    {
+                        closure( set, s + 1 );
+                    }
+                    break;
+                case ONE:
+                    closure( set, s + 1 );
+                    break;
+                case SEGMENT:
+                    if ( c != '/' )
+                    {
+                        closure( set, s );
+                    }
+                    break;
+                case ANY:
+                    closure( set, s );
+                    break;
+            }
+        }
+
+        return state( set );
+    }
+
+    final class State
+    {
+        private final BitSet nfa;
+
+        /**
+         * True if the path that lead to this state is included.
+         */
+        final boolean matches;
+
+        /**
+         * True if neither the path that lead to this state or any path starting with it can be included.
+         */
+        final boolean dead;
+
+        private final State[] ascii = new State[128];
+
+        private final ConcurrentMap<Character, State> other = new ConcurrentHashMap<Character, State>();
+
+        private State( BitSet nfa )
+        {
+            this.nfa = nfa;
+
+            boolean included = false;
+            boolean includeAlive = false;
+            boolean excluded = false;
+            boolean excludeAll = false;
+
+            for ( int s = nfa.nextSetBit( 0 ); s >= 0; s = nfa.nextSetBit( s + 1 ) )
+            {
+                if ( include[s] )
+                {
+                    includeAlive = true;
+                    included |= types[s] == END;
+                }
+                else
+                {
+                    excluded |= types[s] == END;
+                    excludeAll |= universal[s];
+                }
+            }
+
+            matches = ( !hasIncludes || included ) && !excluded;
+            dead = excludeAll || hasIncludes && !includeAlive;
+        }
+
+        State step( char c )
+        {
+            State next;
+
+            if ( c < ascii.length )
+            {
+                next = ascii[c];
+
+                if ( next == null )
+                {
+                    next = ascii[c] = PathAutomaton.this.step( this, c );
+                }
+
+                return next;
+            }
+
+            next = other.get( c );
+
+            if ( next == null )
+            {
+                next = PathAutomaton.this.step( this, c );
+                other.put( c, next );
+            }
+
+            return next;
+        }
+
+        State step( String s )
+        {
+            State state = this;
+
+            for ( int i = 0; i < s.length() && !state.dead; i++ )
+            {
+                state = state.step( s.charAt( i ) );
+            }
+
+            return state;
+        }
+    }
+
+    private static final class Key
+    {
+        private final BitSet set;
+
+        private final int hashCode;
+
+        private Key( BitSet set )
+        {
+            this.set = set;
+            this.hashCode = set.hashCode();
+        }
+
+        public boolean equals( Object o )
+        {
+            return o instanceof Key && ( (Key) o ).set.equals( set );
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
@@ -47,6 +47,19 @@ public class PathExpression
         return expression;
     }
 
+    /**
+     * The expression with a leading slash, unless it starts with <code>**</code> or already has one.
+     */
+    public String getNormalizedExpression()
+    {
+        if ( !expression.startsWith( "**" ) && !expression.startsWith( "/" ) )
+        {
+            return "/" + expression;
+        }
+
+        return expression;
+    }
+
     public Pattern getPattern()
     {
         if ( pattern != null )
@@ -0,0 +1,376 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import fj.data.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * A content-addressed store of file contents, usually in <code>target/unix/blobs</code>.
+ * <p/>
+ * Each blob is stored once under the SHA-256 digest of its content, so packages that need the same filtered or
+ * extracted file can hard link to the same blob instead of writing their own copy. The store also remembers the
+ * digests of source files and which blob a source file (optionally with a variant, like its filtering configuration)
+ * produced, keyed by path, size and modification time so unchanged files are only read once.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class BlobStore
+{
+    private static final String INDEX = "index.properties";
+
+    private final LocalFs directory;
+
+    private Properties index;
+
+    private boolean indexChanged;
+
+    public BlobStore( LocalFs directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the digests of the contents of <code>source</code>, reading it only if it has changed since the
+     * digests were last calculated.
+     */
+    public Blob digest( Fs<?> source )
+        throws IOException
+    {
+        String key = "digest:" + source.absolutePath();
+        String stamp = stamp( source );
+
+        Blob blob = lookup( key, stamp );
+
+        if ( blob != null )
+        {
+            return new Blob( null, blob.sha256, blob.md5, blob.size );
+        }
+
+        DigestingInputStream is = new DigestingInputStream( source.inputStream() );
+        try
+        {
+            byte[] buffer = new byte[1024 * 128];
+            while ( is.read( buffer ) != -1 )
+            {
+                // just digest
+            }
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+
+        blob = is.blob( null );
+        remember( key, stamp, blob );
+        return blob;
+    }
+
+    /**
+     * Returns the stored blob that <code>source</code> produced with the same variant, if the source hasn't changed
+     * since and the blob still exists.
+     */
+    public Option<LocalFs> get( Fs<?> source, String variant )
+        throws IOException
+    {
+        Blob blob = lookup( "blob:" + variant + ":" + source.absolutePath(), stamp( source ) );
+
+        if ( blob == null || !blob.file.isFile() || blob.file.size() != blob.size )
+        {
+            return Option.none();
+        }
+
+        return Option.some( blob.file );
+    }
+
+    /**
+     * Stores <code>content</code>, which is produced from <code>source</code>, and returns the blob file. The stream
+     * is closed. The returned file is shared so it must not be modified, only linked to or read.
+     */
+    public LocalFs put( Fs<?> source, String variant, InputStream content )
+        throws IOException
+    {
+        String stamp = stamp( source );
+        Blob blob = write( content );
+        remember( "blob:" + variant + ":" + source.absolutePath(), stamp, blob );
+        return blob.file;
+    }
+
+    /**
+     * Writes the index of remembered digests and blobs.
+     */
+    public synchronized void save()
+        throws IOException
+    {
+        if ( index == null || !indexChanged )
+        {
+            return;
+        }
+
+        directory.mkdir();
+
+        File file = new File( directory.file, INDEX );
+        File tmp = new File( directory.file, INDEX + ".tmp" );
+        OutputStream os = null;
+        try
+        {
+            os = new FileOutputStream( tmp );
+            index.store( os, null );
+        }
+        finally
+        {
+            IOUtil.close( os );
+        }
+
+        Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        indexChanged = false;
+    }
+
+    // -----------------------------------------------------------------------
+    //
+    // -----------------------------------------------------------------------
+
+    private Blob write( InputStream content )
+        throws IOException
+    {
+        directory.mkdir();
+
+        File tmp = File.createTempFile( "blob-", ".tmp", directory.file );
+        DigestingInputStream is = new DigestingInputStream( content );
+        OutputStream os = null;
+        try
+        {
+            os = new FileOutputStream( tmp );
+            IOUtil.copy( is, os, 1024 * 128 );
+            os.close();
+            os = null;
+
+            String sha256 = is.blob( null ).sha256;
+            LocalFs file = directory.resolve( sha256.substring( 0, 2 ) ).resolve( sha256 );
+
+            if ( file.isFile() && file.size() == tmp.length() )
+            {
+                tmp.delete();
+            }
+            else
+            {
+                file.parent().mkdir();
+                tmp.setReadOnly();
+                Files.move( tmp.toPath(), file.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE );
+            }
+            tmp = null;
+
+            return is.blob( file );
+        }
+        finally
+        {
+            IOUtil.close( os );
+            IOUtil.close( is );
+
+            if ( tmp != null )
+            {
+                tmp.delete();
+            }
+        }
+    }
+
+    private synchronized Blob lookup( String key, String stamp )
+        throws IOException
+    {
+        String value = index().getProperty( key );
+
+        if ( value == null || !value.startsWith( stamp ) )
+        {
+            return null;
+        }
+
+        String[] parts = value.substring( stamp.length() ).split( " " );
+
+        if ( parts.length != 3 )
+        {
+            return null;
+        }
+
+        return new Blob( directory.resolve( parts[0].substring( 0, 2 ) ).resolve( parts[0] ), parts[0], parts[1],
+                         Long.parseLong( parts[2] ) );
+    }
+
+    private synchronized void remember( String key, String stamp, Blob blob )
+        throws IOException
+    {
+        index().setProperty( key, stamp + blob.sha256 + " " + blob.md5 + " " + blob.size );
+        indexChanged = true;
+    }
+
+    private Properties index()
+        throws IOException
+    {
+        if ( index != null )
+        {
+            return index;
+        }
+
+        index = new Properties();
+
+        File file = new File( directory.file, INDEX );
+
+        if ( !file.isFile() )
+        {
+            return index;
+        }
+
+        InputStream is = null;
+        try
+        {
+            is = new FileInputStream( file );
+            index.load( is );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+
+        return index;
+    }
+
+    private static String stamp( Fs<?> source )
+    {
+        return source.size() + " " + source.lastModified().toDateTime().getMillis() + " ";
+    }
+
+    /**
+     * The digests and size of some content, and the file it is stored in if it has been stored.
+     */
+    public static class Blob
+    {
+        public final LocalFs file;
+
+        public final String sha256;
+
+        public final String md5;
+
+        public final long size;
+
+        public Blob( LocalFs file, String sha256, String md5, long size )
+        {
+            this.file = file;
+            this.sha256 = sha256;
+            this.md5 = md5;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 and MD5 digests and size of everything read through it.
+     */
+    private static class DigestingInputStream
+        extends FilterInputStream
+    {
+        private final MessageDigest sha256Digest = digest( "SHA-256" );
+
+        private final MessageDigest md5Digest = digest( "MD5" );
+
+        private long size;
+
+        private String sha256;
+
+        private String md5;
+
+        DigestingInputStream( InputStream in )
+        {
+            super( in );
+        }
+
+        public int read()
+            throws IOException
+        {
+            int b = super.read();
+
+            if ( b != -1 )
+            {
+                sha256Digest.update( (byte) b );
+                md5Digest.update( (byte) b );
+                size++;
+            }
+            else
+            {
+                done();
+            }
+
+            return b;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            int read = super.read( b, off, len );
+
+            if ( read > 0 )
+            {
+                sha256Digest.update( b, off, read );
+                md5Digest.update( b, off, read );
+                size += read;
+            }
+            else if ( read == -1 )
+            {
+                done();
+            }
+
+            return read;
+        }
+
+        public long skip( long n )
+            throws IOException
+        {
+            byte[] buffer = new byte[(int) Math.min( n, 8192 )];
+            int read = read( buffer, 0, buffer.length );
+            return read == -1 ? 0 : read;
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        private void done()
+        {
+            if ( sha256 == null )
+            {
+                sha256 = hex( sha256Digest.digest() );
+                md5 = hex( md5Digest.digest() );
+            }
+        }
+
+        Blob blob( LocalFs file )
+        {
+            done();
+            return new Blob( file, sha256, md5, size );
+        }
+    }
+
+    private static MessageDigest digest( String algorithm )
+    {
+        try
+        {
+            return MessageDigest.getInstance( algorithm );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static String hex( byte[] bytes )
+    {
+        StringBuilder s = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            s.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return s.toString();
+    }
+}
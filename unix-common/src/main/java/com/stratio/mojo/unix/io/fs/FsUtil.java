@@ -1,18 +1,27 @@
  package com.stratio.mojo.unix.io.fs;
 
+import org.codehaus.plexus.util.*;
+
 import java.io.*;
 import java.util.*;
 
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
 public class FsUtil
 {
     private final static String[] zipFileTypes = { "zip", "jar", "war", "ear", "sar", };
 
+    private final static String[] tarFileTypes = { "tar", "tar.gz", "tgz", "tar.bz2", "tbz", "tbz2", "tar.xz", "txz", };
+
     static {
         Arrays.sort( zipFileTypes );
     }
 
     /**
      * Remember to close() the Fs-es after use.
+     * <p/>
+     * An archive inside another archive can be resolved by separating the paths with "!/", for example
+     * <code>app.ear!/web.war</code>.
      */
     public static Fs<?> resolve( File file )
         throws IOException
@@ -22,22 +31,98 @@ public class FsUtil
             return new LocalFs( file );
         }
 
-        int i = file.getName().lastIndexOf( '.' );
+        String path = file.getPath();
+        int i = path.lastIndexOf( "!/" );
+
+        if ( !file.exists() && i > 0 )
+        {
+            Fs<?> archive = resolve( new File( path.substring( 0, i ) ) );
+            try
+            {
+                return resolve( archive.resolve( relativePath( path.substring( i + 2 ) ) ) );
+            }
+            finally
+            {
+                archive.close();
+            }
+        }
+
+        return open( file, file, file.getPath(), false );
+    }
+
+    /**
+     * Resolves a file inside an archive as an archive of its own. The file is copied to a temporary file that is
+     * deleted when the returned Fs is closed, so the archive it came from may be closed independently.
+     */
+    public static Fs<?> resolve( Fs<?> file )
+        throws IOException
+    {
+        if ( file instanceof LocalFs )
+        {
+            return resolve( ( (LocalFs) file ).file );
+        }
+
+        if ( !file.isFile() )
+        {
+            throw new IOException( "Not a file: " + file.absolutePath() );
+        }
+
+        String name = file.relativePath().name();
+        File tmp = File.createTempFile( "unix-", "-" + name );
+        tmp.deleteOnExit();
+
+        InputStream is = null;
+        OutputStream os = null;
+        try
+        {
+            is = file.inputStream();
+            os = new FileOutputStream( tmp );
+            IOUtil.copy( is, os, 1024 * 128 );
+            os.close();
+            os = null;
+
+            Fs<?> fs = open( tmp, file.basedir(), file.absolutePath(), true );
+            tmp = null;
+            return fs;
+        }
+        finally
+        {
+            IOUtil.close( is );
+            IOUtil.close( os );
+
+            if ( tmp != null )
+            {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static Fs<?> open( File file, File basedir, String name, boolean temporary )
+        throws IOException
+    {
+        String fileName = file.getName();
+        int i = fileName.lastIndexOf( '.' );
 
         if ( i < 1 )
         {
-            throw new IOException( "Unable to resolve file type of file: " + file.getAbsolutePath() );
+            throw new IOException( "Unable to resolve file type of file: " + name );
         }
 
-        String ending = file.getName().substring( i + 1 );
+        String ending = fileName.substring( i + 1 );
 
         if ( Arrays.binarySearch( zipFileTypes, ending ) >= 0 )
         {
-            return new ZipFsRoot( file );
+            return new ZipFsRoot( file, basedir, name, temporary );
         }
-        else
+
+        for ( String type : tarFileTypes )
         {
-            throw new IOException( "Unable to resolve file type of file: " + file.getAbsolutePath() );
+            if ( fileName.endsWith( "." + type ) )
+            {
+                return new TarFsRoot( file, basedir, name, temporary, TarFsRoot.DEFAULT_SPILL_LIMIT );
+            }
         }
+
+        throw new IOException( "Unable to resolve file type of file: " + name );
     }
 }
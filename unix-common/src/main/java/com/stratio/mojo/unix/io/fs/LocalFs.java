@@ -6,13 +6,13 @@ import org.codehaus.plexus.util.*;
 import org.joda.time.LocalDateTime;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-
-import static com.stratio.mojo.unix.util.RelativePath.relativePathFromFiles;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
 
 /**
- * These can in theory be cached in something with very fast lookup to conserve objects.
+ * A file or directory on the local file system. Files found with {@link #find} remember the attributes that were read
+ * while walking, so querying them doesn't touch the file system again until they are invalidated.
  */
 public class LocalFs
     implements Fs<LocalFs>
@@ -23,6 +23,12 @@ public class LocalFs
 
     public final File file;
 
+    /**
+     * The attributes that were read when the file was found by {@link #find}, null if the file system has to be
+     * queried.
+     */
+    private volatile BasicFileAttributes attributes;
+
     public LocalFs( File basedir )
     {
         this.basedir = basedir.getAbsoluteFile();
@@ -30,11 +36,17 @@ public class LocalFs
         this.file = this.basedir;
     }
 
-    private LocalFs( File basedir, RelativePath relativePath, File file )
+    LocalFs( File basedir, RelativePath relativePath, File file )
+    {
+        this( basedir, relativePath, file, null );
+    }
+
+    LocalFs( File basedir, RelativePath relativePath, File file, BasicFileAttributes attributes )
     {
         this.basedir = basedir.getAbsoluteFile();
         this.relativePath = relativePath;
         this.file = file.getAbsoluteFile();
+        this.attributes = attributes;
     }
 
     public void close()
@@ -44,27 +56,43 @@ public class LocalFs
 
     public boolean exists()
     {
-        return file.exists();
+        return attributes != null || file.exists();
     }
 
     public boolean isFile()
     {
-        return file.isFile();
+        BasicFileAttributes attributes = this.attributes;
+        return attributes != null ? attributes.isRegularFile() : file.isFile();
     }
 
     public boolean isDirectory()
     {
-        return file.isDirectory();
+        BasicFileAttributes attributes = this.attributes;
+        return attributes != null ? attributes.isDirectory() : file.isDirectory();
     }
 
     public LocalDateTime lastModified()
     {
-        return new LocalDateTime( file.lastModified() );
+        BasicFileAttributes attributes = this.attributes;
+        return new LocalDateTime( attributes != null ? attributes.lastModifiedTime().toMillis() : file.lastModified() );
     }
 
     public long size()
     {
-        return file.length();
+        BasicFileAttributes attributes = this.attributes;
+        return attributes != null ? attributes.size() : file.length();
+    }
+
+    /**
+     * Forgets the attributes that were read when the file was found, so the next query goes to the file system.
+     * Files found by {@link #find} answer <code>exists()</code>, <code>isFile()</code>, <code>isDirectory()</code>,
+     * <code>lastModified()</code> and <code>size()</code> from the attributes read while walking the directory, so
+     * this has to be called if the file is changed by other means than this object.
+     */
+    public LocalFs invalidate()
+    {
+        attributes = null;
+        return this;
     }
 
     public LocalFs resolve( String relativePath )
@@ -98,24 +126,23 @@ public class LocalFs
         return find( filter, false );
     }
 
+    /**
+     * Finds the files, and directories unless <code>filesOnly</code> is set, that match the filter. Unless
+     * <code>filesOnly</code> is set this file is the first result. The tree is walked as the result is iterated, with
+     * a bounded number of directories listed ahead in the background, and directories that the filter prunes are not
+     * walked.
+     */
     public Iterable<LocalFs> find( IncludeExcludeFilter filter, boolean filesOnly )
         throws IOException
     {
-        ArrayList<LocalFs> list = new ArrayList<LocalFs>();
-
-        if ( !filesOnly )
-        {
-            list.add( this );
-        }
-
-        find( file, list, filter, filesOnly );
-
-        return list;
+        return new LocalFsWalker( this, filter, filesOnly );
     }
 
     public void mkdir()
         throws IOException
     {
+        invalidate();
+
         if ( file.isDirectory() )
         {
             return;
@@ -136,8 +163,12 @@ public class LocalFs
     public void copyFrom( Fs from, InputStream is )
         throws IOException
     {
+        invalidate();
         parent().mkdir();
 
+        // The file might be a link to another file from an earlier run, don't overwrite that file.
+        Files.deleteIfExists( file.toPath() );
+
         FileOutputStream os = null;
         try
         {
@@ -156,37 +187,60 @@ public class LocalFs
         }
     }
 
-    private void find( File directory, List<LocalFs> list, IncludeExcludeFilter filter, boolean filesOnly )
+    /**
+     * Makes this file a hard link to <code>from</code>. If the file system won't allow a link, like when linking
+     * across devices, the file is copied with {@link FileChannel#transferTo} so the kernel can do the copying.
+     * <p/>
+     * A linked file shares its contents and attributes with the original so it can't be modified afterwards.
+     */
+    public void linkFrom( LocalFs from )
         throws IOException
     {
-        if ( !directory.isDirectory() )
+        invalidate();
+        parent().mkdir();
+
+        Path target = file.toPath();
+        Files.deleteIfExists( target );
+
+        try
         {
+            Files.createLink( target, from.file.toPath() );
             return;
         }
-
-        File[] files = directory.listFiles();
-
-        if ( files == null )
+        catch ( UnsupportedOperationException e )
+        {
+            // fall through
+        }
+        catch ( FileSystemException e )
         {
-            throw new IOException( "Unable to list contents: " + directory.getAbsolutePath() );
+            // fall through
         }
 
-        for ( File file : files )
+        FileInputStream is = null;
+        FileOutputStream os = null;
+        try
         {
-            RelativePath relativePath = relativePathFromFiles( this.file, file );
+            is = new FileInputStream( from.file );
+            os = new FileOutputStream( file );
+            FileChannel in = is.getChannel();
+            FileChannel out = os.getChannel();
 
-            if ( file.isFile() || file.isDirectory() && !filesOnly )
+            long size = in.size();
+            long position = 0;
+            while ( position < size )
             {
-                if ( filter.matches( relativePath ) )
-                {
-                    list.add( new LocalFs( basedir, relativePath, file ) );
-                }
+                position += in.transferTo( position, size - position, out );
             }
+        }
+        finally
+        {
+            IOUtil.close( os );
+            IOUtil.close( is );
+        }
 
-            if ( file.isDirectory() )
-            {
-                find( file, list, filter, filesOnly );
-            }
+        if ( !file.setLastModified( from.file.lastModified() ) )
+        {
+            throw new IOException( "Unable to set last modified on " + file.getAbsolutePath() );
         }
     }
 
@@ -0,0 +1,328 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Walks a directory tree, yielding the files in the same order as a recursive walk, an entry before its contents.
+ * <p/>
+ * Each directory is listed by a task on a thread pool that reads the attributes of each entry with a single stat. The
+ * listings are started as the iterator gets close to them: for every directory on the path to the current entry, the
+ * next {@link #LOOK_AHEAD} sub directories are listed in the background. Wide trees are listed in parallel while the
+ * caller consumes the result, but only a bounded part of the tree is read ahead of the caller and nothing more is
+ * started once the caller stops iterating. Directories that the filter prunes are never listed.
+ */
+class LocalFsWalker
+    implements Iterable<LocalFs>
+{
+    /**
+     * Listing directories is I/O bound, especially on network file systems, so use more threads than processors.
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool( Math.max( 8, Runtime.getRuntime().
+        availableProcessors() * 2 ) );
+
+    /**
+     * The number of sub directories of each directory on the current path that are listed ahead of the iterator.
+     */
+    static final int LOOK_AHEAD = 16;
+
+    private final LocalFs root;
+
+    private final IncludeExcludeFilter filter;
+
+    private final boolean filesOnly;
+
+    LocalFsWalker( LocalFs root, IncludeExcludeFilter filter, boolean filesOnly )
+    {
+        this.root = root;
+        this.filter = filter;
+        this.filesOnly = filesOnly;
+    }
+
+    public Iterator<LocalFs> iterator()
+    {
+        IncludeExcludeFilter.Cursor cursor = filter.root();
+
+        Listing listing = null;
+        if ( root.file.isDirectory() && !cursor.prune() )
+        {
+            listing = new Listing( root, RelativePath.BASE, cursor );
+        }
+
+        return new WalkIterator( listing );
+    }
+
+    private class WalkIterator
+        implements Iterator<LocalFs>
+    {
+        private final LinkedList<Frame> stack = new LinkedList<Frame>();
+
+        private LocalFs next;
+
+        WalkIterator( Listing listing )
+        {
+            if ( !filesOnly )
+            {
+                next = root;
+            }
+
+            if ( listing != null )
+            {
+                push( listing );
+            }
+        }
+
+        public boolean hasNext()
+        {
+            if ( next == null )
+            {
+                next = advance();
+            }
+
+            return next != null;
+        }
+
+        public LocalFs next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+
+            LocalFs fs = next;
+            next = null;
+            return fs;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private LocalFs advance()
+        {
+            while ( !stack.isEmpty() )
+            {
+                Frame frame = stack.getFirst();
+
+                if ( frame.entries == null )
+                {
+                    frame.entries = get( frame.listing );
+                    startListings( frame );
+                }
+
+                if ( frame.index == frame.entries.size() )
+                {
+                    stack.removeFirst();
+                    continue;
+                }
+
+                Entry entry = frame.entries.get( frame.index++ );
+
+                // The contents of a directory come right after the directory
+                if ( entry.listing != null )
+                {
+                    frame.ahead--;
+                    startListings( frame );
+                    push( entry.listing );
+                }
+
+                if ( ( entry.isDirectory && !filesOnly || entry.isFile ) && entry.cursor.matches() )
+                {
+                    return entry.fs;
+                }
+            }
+
+            return null;
+        }
+
+        private void push( Listing listing )
+        {
+            listing.start();
+            stack.addFirst( new Frame( listing ) );
+        }
+
+        /**
+         * Starts listing the next sub directories of the frame that are not yet being listed.
+         */
+        private void startListings( Frame frame )
+        {
+            while ( frame.ahead < LOOK_AHEAD && frame.started < frame.entries.size() )
+            {
+                Listing listing = frame.entries.get( frame.started++ ).listing;
+
+                if ( listing != null )
+                {
+                    listing.start();
+                    frame.ahead++;
+                }
+            }
+        }
+    }
+
+    private static List<Entry> get( Listing listing )
+    {
+        try
+        {
+            return listing.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while listing " + listing.directory.absolutePath() );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new RuntimeException( e.getCause().getMessage(), e.getCause() );
+        }
+    }
+
+    private static class Frame
+    {
+        final Listing listing;
+
+        List<Entry> entries;
+
+        int index;
+
+        /**
+         * The entries before this index have had their listings started.
+         */
+        int started;
+
+        /**
+         * The number of started listings of the entries from <code>index</code>.
+         */
+        int ahead;
+
+        Frame( Listing listing )
+        {
+            this.listing = listing;
+        }
+    }
+
+    private static class Entry
+    {
+        final LocalFs fs;
+
+        final IncludeExcludeFilter.Cursor cursor;
+
+        final boolean isDirectory;
+
+        final boolean isFile;
+
+        /**
+         * The listing of this directory, null if this is not a directory or it is pruned.
+         */
+        final Listing listing;
+
+        Entry( LocalFs fs, IncludeExcludeFilter.Cursor cursor, boolean isDirectory, boolean isFile, Listing listing )
+        {
+            this.fs = fs;
+            this.cursor = cursor;
+            this.isDirectory = isDirectory;
+            this.isFile = isFile;
+            this.listing = listing;
+        }
+    }
+
+    private static class Listing
+        extends RecursiveTask<List<Entry>>
+    {
+        final LocalFs directory;
+
+        /**
+         * The path of the directory relative to the root of the walk.
+         */
+        private final RelativePath path;
+
+        private final IncludeExcludeFilter.Cursor cursor;
+
+        private boolean started;
+
+        Listing( LocalFs directory, RelativePath path, IncludeExcludeFilter.Cursor cursor )
+        {
+            this.directory = directory;
+            this.path = path;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Starts listing the directory unless it has been started already. Only called by the iterator.
+         */
+        void start()
+        {
+            if ( !started )
+            {
+                started = true;
+                pool.execute( this );
+            }
+        }
+
+        protected List<Entry> compute()
+        {
+            List<Entry> entries = new ArrayList<Entry>();
+
+            DirectoryStream<Path> stream = null;
+            try
+            {
+                stream = Files.newDirectoryStream( directory.file.toPath() );
+
+                for ( Path path : stream )
+                {
+                    String name = path.getFileName().toString();
+
+                    BasicFileAttributes attributes;
+                    try
+                    {
+                        attributes = Files.readAttributes( path, BasicFileAttributes.class );
+                    }
+                    catch ( NoSuchFileException e )
+                    {
+                        // A dangling symlink or the file was removed while listing
+                        continue;
+                    }
+
+                    RelativePath relativePath = this.path.add( name );
+                    LocalFs fs = new LocalFs( directory.basedir, relativePath, path.toFile(), attributes );
+                    IncludeExcludeFilter.Cursor child = cursor.child( name );
+
+                    // Listed when the iterator gets close to it
+                    Listing listing = null;
+                    if ( attributes.isDirectory() && !child.prune() )
+                    {
+                        listing = new Listing( fs, relativePath, child );
+                    }
+
+                    entries.add( new Entry( fs, child, attributes.isDirectory(), attributes.isRegularFile(), listing ) );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to list contents: " + directory.absolutePath(), e );
+            }
+            finally
+            {
+                if ( stream != null )
+                {
+                    try
+                    {
+                        stream.close();
+                    }
+                    catch ( IOException e )
+                    {
+                        // ignore
+                    }
+                }
+            }
+
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+
+/**
+ * An entry in a tar archive. Symbolic links and other special files exist but are neither files nor directories.
+ */
+public class TarFs
+    implements Fs<TarFs>
+{
+    public final TarFsRoot root;
+
+    public final RelativePath relativePath;
+
+    private final boolean exists;
+
+    private final boolean directory;
+
+    private final boolean file;
+
+    private final long lastModified;
+
+    private final long size;
+
+    /**
+     * The position of the content in the uncompressed archive.
+     */
+    final long offset;
+
+    TarFs( TarFsRoot root, RelativePath relativePath )
+    {
+        this( root, relativePath, false, false, false, 0, 0, -1 );
+    }
+
+    TarFs( TarFsRoot root, RelativePath relativePath, boolean exists, boolean directory, boolean file,
+           long lastModified, long size, long offset )
+    {
+        this.root = root;
+        this.relativePath = relativePath;
+        this.exists = exists;
+        this.directory = directory;
+        this.file = file;
+        this.lastModified = lastModified;
+        this.size = size;
+        this.offset = offset;
+    }
+
+    public void close()
+        throws IOException
+    {
+        root.close();
+    }
+
+    public boolean exists()
+    {
+        return exists;
+    }
+
+    public boolean isFile()
+    {
+        return file;
+    }
+
+    public boolean isDirectory()
+    {
+        return directory;
+    }
+
+    public LocalDateTime lastModified()
+    {
+        return new LocalDateTime( lastModified );
+    }
+
+    public long size()
+    {
+        return size;
+    }
+
+    public TarFs resolve( RelativePath relativePath )
+    {
+        return root.resolve( this.relativePath.add( relativePath ) );
+    }
+
+    public File basedir()
+    {
+        return root.basedir();
+    }
+
+    public RelativePath relativePath()
+    {
+        return relativePath;
+    }
+
+    public String absolutePath()
+    {
+        return root.absolutePath( relativePath );
+    }
+
+    public InputStream inputStream()
+        throws IOException
+    {
+        if ( !file )
+        {
+            throw new FileNotFoundException( "Not a file: " + absolutePath() );
+        }
+
+        return root.inputStream( offset, size, absolutePath() );
+    }
+
+    public Iterable<TarFs> find( IncludeExcludeFilter filter )
+        throws IOException
+    {
+        throw new IOException( "Not supported" );
+    }
+
+    public void mkdir()
+        throws IOException
+    {
+        throw new IOException( "Not supported" );
+    }
+
+    public void copyFrom( Fs<?> from )
+        throws IOException
+    {
+        throw new IOException( "Not supported" );
+    }
+
+    public void copyFrom( Fs from, InputStream is )
+        throws IOException
+    {
+        throw new RuntimeException( "Not supported" );
+    }
+
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        TarFs tarFs = (TarFs) o;
+
+        return root == tarFs.root && relativePath.equals( tarFs.relativePath );
+    }
+
+    public int hashCode()
+    {
+        return 31 * root.hashCode() + relativePath.hashCode();
+    }
+
+    public String toString()
+    {
+        return "TarFs{" + absolutePath() + '}';
+    }
+}
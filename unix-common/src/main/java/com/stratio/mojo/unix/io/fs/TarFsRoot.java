@@ -0,0 +1,579 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+import org.apache.commons.compress.archivers.tar.*;
+import org.apache.commons.compress.compressors.bzip2.*;
+import org.apache.commons.compress.compressors.gzip.*;
+import org.apache.commons.compress.compressors.xz.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A tar archive, optionally compressed with gzip, bzip2 or xz. The compression is detected from the content of the
+ * file.
+ * <p/>
+ * The entries are indexed in a single sequential pass when the archive is opened, remembering where the content of
+ * each file starts in the uncompressed archive. The content of uncompressed archives is read directly from the file.
+ * As a compressed archive can only be read sequentially, it is decompressed to a temporary file the first time a
+ * file is read, unless the uncompressed archive is larger than the spill limit. Then each read decompresses the
+ * archive up to the file instead.
+ */
+public class TarFsRoot
+    implements Fs<TarFs>
+{
+    /**
+     * The largest uncompressed archive that is decompressed to a temporary file.
+     */
+    public static final long DEFAULT_SPILL_LIMIT = 1024L * 1024 * 1024;
+
+    private enum Compression
+    {
+        NONE, GZIP, BZIP2, XZ
+    }
+
+    final File file;
+
+    private final File basedir;
+
+    private final String name;
+
+    private final boolean temporary;
+
+    private final long spillLimit;
+
+    private final Compression compression;
+
+    private final SortedMap<RelativePath, TarFs> entries = new TreeMap<RelativePath, TarFs>( RelativePath.comparator );
+
+    /**
+     * The size of the uncompressed archive up to the end of the last entry.
+     */
+    private long length;
+
+    private File spill;
+
+    public TarFsRoot( File file )
+        throws IOException
+    {
+        this( file, file, file.getPath(), false, DEFAULT_SPILL_LIMIT );
+    }
+
+    /**
+     * @param basedir    The outermost archive if this is a copy of an entry in another archive.
+     * @param name       The name of the archive used as the prefix of the absolute paths.
+     * @param temporary  If true the file is deleted when this is closed.
+     * @param spillLimit The largest uncompressed archive that is decompressed to a temporary file.
+     */
+    TarFsRoot( File file, File basedir, String name, boolean temporary, long spillLimit )
+        throws IOException
+    {
+        this.file = file;
+        this.basedir = basedir;
+        this.name = name;
+        this.temporary = temporary;
+        this.spillLimit = spillLimit;
+        compression = detectCompression( file );
+
+        // Hard links refer to an earlier entry so they are resolved when the whole archive has been seen
+        Map<RelativePath, RelativePath> links = new LinkedHashMap<RelativePath, RelativePath>();
+
+        CountingInputStream counter = new CountingInputStream( open() );
+        TarArchiveInputStream tar = new TarArchiveInputStream( counter );
+        try
+        {
+            TarArchiveEntry entry;
+            while ( ( entry = tar.getNextTarEntry() ) != null )
+            {
+                RelativePath path = RelativePath.relativePath( entry.getName() );
+
+                if ( path.isBase() )
+                {
+                    continue;
+                }
+
+                long offset = entry.isSparse() ? -1 : counter.count;
+                long lastModified = entry.getModTime().getTime();
+
+                if ( entry.isLink() )
+                {
+                    links.put( path, RelativePath.relativePath( entry.getLinkName() ) );
+                    entries.put( path, new TarFs( this, path, true, false, true, lastModified, 0, -1 ) );
+                }
+                else
+                {
+                    boolean isFile = entry.isFile() && !entry.isSymbolicLink();
+                    long size = isFile ? entry.getRealSize() : 0;
+                    entries.put( path, new TarFs( this, path, true, entry.isDirectory(), isFile, lastModified, size,
+                                                  offset ) );
+                    length = Math.max( length, counter.count + entry.getSize() );
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( tar );
+        }
+
+        for ( Map.Entry<RelativePath, RelativePath> link : links.entrySet() )
+        {
+            TarFs target = entries.get( link.getValue() );
+            TarFs fs = entries.get( link.getKey() );
+
+            if ( target == null || !target.isFile() )
+            {
+                continue;
+            }
+
+            entries.put( link.getKey(), new TarFs( this, link.getKey(), true, false, true, fs.lastModified().
+                toDateTime().getMillis(), target.size(), target.offset ) );
+        }
+    }
+
+    public synchronized void close()
+        throws IOException
+    {
+        if ( spill != null )
+        {
+            spill.delete();
+            spill = null;
+        }
+
+        if ( temporary )
+        {
+            file.delete();
+        }
+    }
+
+    public boolean exists()
+    {
+        return true;
+    }
+
+    public boolean isFile()
+    {
+        return false;
+    }
+
+    public boolean isDirectory()
+    {
+        return true;
+    }
+
+    public LocalDateTime lastModified()
+    {
+        return new LocalDateTime( file.lastModified() );
+    }
+
+    public long size()
+    {
+        return 0;
+    }
+
+    public TarFs resolve( RelativePath relativePath )
+    {
+        TarFs tarFs = entries.get( relativePath );
+
+        if ( tarFs == null )
+        {
+            return new TarFs( this, relativePath );
+        }
+
+        return tarFs;
+    }
+
+    public File basedir()
+    {
+        return basedir;
+    }
+
+    public RelativePath relativePath()
+    {
+        return RelativePath.BASE;
+    }
+
+    public String absolutePath()
+    {
+        return absolutePath( RelativePath.BASE );
+    }
+
+    public InputStream inputStream()
+        throws IOException
+    {
+        throw new RuntimeException( "Not supported" );
+    }
+
+    public Iterable<TarFs> find( IncludeExcludeFilter filter )
+        throws IOException
+    {
+        List<TarFs> list = new ArrayList<TarFs>();
+
+        // Cursors for each directory that has been seen, null if the directory has been pruned
+        Map<RelativePath, IncludeExcludeFilter.Cursor> cursors = new HashMap<RelativePath, IncludeExcludeFilter.Cursor>();
+        cursors.put( RelativePath.BASE, filter.root() );
+
+        for ( Map.Entry<RelativePath, TarFs> entry : entries.entrySet() )
+        {
+            IncludeExcludeFilter.Cursor cursor = cursor( cursors, entry.getKey() );
+
+            if ( cursor == null || !cursor.matches() )
+            {
+                continue;
+            }
+
+            list.add( entry.getValue() );
+        }
+
+        return list;
+    }
+
+    private static IncludeExcludeFilter.Cursor cursor( Map<RelativePath, IncludeExcludeFilter.Cursor> cursors,
+                                                       RelativePath path )
+    {
+        IncludeExcludeFilter.Cursor cursor = cursors.get( path );
+
+        if ( cursor != null || cursors.containsKey( path ) )
+        {
+            return cursor;
+        }
+
+        IncludeExcludeFilter.Cursor parent = cursor( cursors, path.parent() );
+
+        cursor = parent == null || parent.prune() ? null : parent.child( path.name() );
+
+        cursors.put( path, cursor );
+
+        return cursor;
+    }
+
+    public void mkdir()
+        throws IOException
+    {
+        throw new RuntimeException( "Not supported" );
+    }
+
+    public void copyFrom( Fs<?> from )
+        throws IOException
+    {
+        throw new RuntimeException( "Not supported" );
+    }
+
+    public void copyFrom( Fs from, InputStream is )
+        throws IOException
+    {
+        throw new RuntimeException( "Not supported" );
+    }
+
+    public String absolutePath( RelativePath relativePath )
+    {
+        return name + "!/" + relativePath.string;
+    }
+
+    // -----------------------------------------------------------------------
+    //
+    // -----------------------------------------------------------------------
+
+    /**
+     * Opens the content of a file in the archive.
+     */
+    InputStream inputStream( long offset, long size, String path )
+        throws IOException
+    {
+        if ( offset == -1 )
+        {
+            throw new IOException( "Sparse tar entries are not supported: " + path );
+        }
+
+        File file = randomAccessFile();
+
+        if ( file != null )
+        {
+            FileInputStream is = new FileInputStream( file );
+            try
+            {
+                is.getChannel().position( offset );
+                return new BoundedInputStream( new BufferedInputStream( is, 1024 * 128 ), size );
+            }
+            catch ( IOException e )
+            {
+                IOUtil.close( is );
+                throw e;
+            }
+        }
+
+        InputStream is = open();
+        try
+        {
+            skipFully( is, offset );
+            return new BoundedInputStream( is, size );
+        }
+        catch ( IOException e )
+        {
+            IOUtil.close( is );
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the uncompressed archive, decompressing it to a temporary file if required and allowed, or null if the
+     * archive has to be read sequentially.
+     */
+    private synchronized File randomAccessFile()
+        throws IOException
+    {
+        if ( compression == Compression.NONE )
+        {
+            return file;
+        }
+
+        if ( spill != null || length > spillLimit )
+        {
+            return spill;
+        }
+
+        File tmp = File.createTempFile( "unix-", ".tar" );
+        tmp.deleteOnExit();
+
+        InputStream is = open();
+        OutputStream os = null;
+        try
+        {
+            os = new FileOutputStream( tmp );
+            IOUtil.copy( is, os, 1024 * 128 );
+            os.close();
+            os = null;
+            spill = tmp;
+            tmp = null;
+        }
+        finally
+        {
+            IOUtil.close( is );
+            IOUtil.close( os );
+
+            if ( tmp != null )
+            {
+                tmp.delete();
+            }
+        }
+
+        return spill;
+    }
+
+    /**
+     * Opens the uncompressed archive.
+     */
+    private InputStream open()
+        throws IOException
+    {
+        InputStream is = new BufferedInputStream( new FileInputStream( file ), 1024 * 128 );
+        try
+        {
+            switch ( compression )
+            {
+                case GZIP:
+                    return new GzipCompressorInputStream( is, true );
+                case BZIP2:
+                    return new BZip2CompressorInputStream( is, true );
+                case XZ:
+                    return new XZCompressorInputStream( is, true );
+                default:
+                    return is;
+            }
+        }
+        catch ( IOException e )
+        {
+            IOUtil.close( is );
+            throw e;
+        }
+    }
+
+    private static Compression detectCompression( File file )
+        throws IOException
+    {
+        byte[] magic = new byte[6];
+        int read = 0;
+        InputStream is = new FileInputStream( file );
+        try
+        {
+            int n;
+            while ( read < magic.length && ( n = is.read( magic, read, magic.length - read ) ) != -1 )
+            {
+                read += n;
+            }
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+
+        if ( GzipCompressorInputStream.matches( magic, read ) )
+        {
+            return Compression.GZIP;
+        }
+        else if ( BZip2CompressorInputStream.matches( magic, read ) )
+        {
+            return Compression.BZIP2;
+        }
+        else if ( XZCompressorInputStream.matches( magic, read ) )
+        {
+            return Compression.XZ;
+        }
+
+        return Compression.NONE;
+    }
+
+    private static void skipFully( InputStream is, long n )
+        throws IOException
+    {
+        byte[] buffer = null;
+        while ( n > 0 )
+        {
+            long skipped = is.skip( n );
+
+            if ( skipped <= 0 )
+            {
+                if ( buffer == null )
+                {
+                    buffer = new byte[1024 * 128];
+                }
+
+                int read = is.read( buffer, 0, (int) Math.min( n, buffer.length ) );
+
+                if ( read == -1 )
+                {
+                    throw new EOFException();
+                }
+
+                skipped = read;
+            }
+
+            n -= skipped;
+        }
+    }
+
+    /**
+     * Counts the bytes read and skipped.
+     */
+    private static class CountingInputStream
+        extends FilterInputStream
+    {
+        long count;
+
+        CountingInputStream( InputStream in )
+        {
+            super( in );
+        }
+
+        public int read()
+            throws IOException
+        {
+            int b = super.read();
+
+            if ( b != -1 )
+            {
+                count++;
+            }
+
+            return b;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            int read = super.read( b, off, len );
+
+            if ( read > 0 )
+            {
+                count += read;
+            }
+
+            return read;
+        }
+
+        public long skip( long n )
+            throws IOException
+        {
+            long skipped = super.skip( n );
+            count += skipped;
+            return skipped;
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads at most <code>size</code> bytes, closing the underlying stream when closed.
+     */
+    private static class BoundedInputStream
+        extends FilterInputStream
+    {
+        private long remaining;
+
+        BoundedInputStream( InputStream in, long size )
+        {
+            super( in );
+            remaining = size;
+        }
+
+        public int read()
+            throws IOException
+        {
+            if ( remaining <= 0 )
+            {
+                return -1;
+            }
+
+            int b = super.read();
+
+            if ( b != -1 )
+            {
+                remaining--;
+            }
+
+            return b;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( remaining <= 0 )
+            {
+                return -1;
+            }
+
+            int read = super.read( b, off, (int) Math.min( len, remaining ) );
+
+            if ( read > 0 )
+            {
+                remaining -= read;
+            }
+
+            return read;
+        }
+
+        public long skip( long n )
+            throws IOException
+        {
+            long skipped = super.skip( Math.min( n, remaining ) );
+            remaining -= skipped;
+            return skipped;
+        }
+
+        public int available()
+            throws IOException
+        {
+            return (int) Math.min( super.available(), remaining );
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+}
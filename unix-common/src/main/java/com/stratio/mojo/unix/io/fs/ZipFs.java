@@ -61,7 +61,7 @@ public class ZipFs
 
     public File basedir()
     {
-        return root.file;
+        return root.basedir();
     }
 
     public RelativePath relativePath()
@@ -77,7 +77,7 @@ public class ZipFs
     public InputStream inputStream()
         throws IOException
     {
-        return root.zipFile.getInputStream( entry );
+        return root.inputStream( entry );
     }
 
     public Iterable<ZipFs> find( IncludeExcludeFilter filter )
@@ -103,4 +103,30 @@ public class ZipFs
     {
         throw new RuntimeException( "Not supported" );
     }
+
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        ZipFs zipFs = (ZipFs) o;
+
+        return root == zipFs.root && relativePath.equals( zipFs.relativePath );
+    }
+
+    public int hashCode()
+    {
+        return 31 * root.hashCode() + relativePath.hashCode();
+    }
+
+    public String toString()
+    {
+        return "ZipFs{" + absolutePath() + '}';
+    }
 }
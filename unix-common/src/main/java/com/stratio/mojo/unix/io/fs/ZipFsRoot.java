@@ -5,42 +5,176 @@ import com.stratio.mojo.unix.util.*;
 import org.joda.time.*;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
 import java.util.*;
 import java.util.zip.*;
 
+/**
+ * A ZIP file. Only the central directory is read when the file is opened, into a sorted index that refers to the
+ * names in the raw central directory instead of creating objects for every entry. {@link ZipFs} objects are created
+ * on demand when an entry is resolved or found, so large archives are cheap to open and look up entries in. The
+ * contents of an entry are read from its local header with positional reads on the file's channel.
+ * <p/>
+ * Like {@link ZipFile}, data in front of the archive, like the launch script of an executable jar or the program of a
+ * self-extracting archive, is allowed.
+ * <p/>
+ * The index is never modified after the constructor so lookups are thread safe without locking.
+ */
 public class ZipFsRoot
     implements Fs<ZipFs>
 {
+    private static final int EOCD = 0x06054b50;
+
+    private static final int ZIP64_EOCD_LOCATOR = 0x07064b50;
+
+    private static final int ZIP64_EOCD = 0x06064b50;
+
+    private static final int CENTRAL_HEADER = 0x02014b50;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
     final File file;
 
-    final ZipFile zipFile;
+    private final FileChannel channel;
+
+    private final File basedir;
 
-    private final SortedMap<RelativePath, ZipFs> entries = new TreeMap<RelativePath, ZipFs>( RelativePath.comparator );
+    private final String name;
+
+    private final boolean temporary;
+
+    /**
+     * The raw central directory.
+     */
+    private final byte[] directory;
+
+    /**
+     * The number of bytes in front of the archive. The offsets in the archive are relative to the start of the
+     * archive, not the start of the file.
+     */
+    private final long bias;
+
+    /**
+     * The offsets of the central directory headers, sorted by their normalized name.
+     */
+    private final int[] headers;
 
     /**
-     * This scans the entire ZIP file which may or may not be an issue. Most likely the file will be accessed so parts
-     * of it will have to be read, but it might be possible to skip parts of the file.
+     * The offset and length of the normalized name of each entry in the central directory, in the same order as
+     * <code>headers</code>. The name is the entry name without any leading "/" or "./" and trailing "/".
      */
+    private final int[] nameStarts;
+
+    private final int[] nameLengths;
+
     public ZipFsRoot( File file )
         throws IOException
+    {
+        this( file, file, file.getPath(), false );
+    }
+
+    /**
+     * Opens a ZIP file that is a copy of an entry in another archive.
+     *
+     * @param basedir   The outermost archive.
+     * @param name      The name of the archive used as the prefix of the absolute paths.
+     * @param temporary If true the file is deleted when this is closed.
+     */
+    ZipFsRoot( File file, File basedir, String name, boolean temporary )
+        throws IOException
     {
         this.file = file;
-        zipFile = new ZipFile( file );
+        this.basedir = basedir;
+        this.name = name;
+        this.temporary = temporary;
+        channel = new RandomAccessFile( file, "r" ).getChannel();
+
+        long[] bias = new long[1];
+        try
+        {
+            directory = readCentralDirectory( channel, file, bias );
+        }
+        catch ( IOException e )
+        {
+            channel.close();
+            throw e;
+        }
+        this.bias = bias[0];
+
+        if ( directory.length > 0 && ( directory.length < CENTRAL_HEADER_SIZE || int32( 0 ) != CENTRAL_HEADER ) )
+        {
+            channel.close();
+            throw new IOException( "Invalid ZIP central directory: " + file.getAbsolutePath() );
+        }
+
+        int count = 0;
+        for ( int position = 0; position + CENTRAL_HEADER_SIZE <= directory.length &&
+            int32( position ) == CENTRAL_HEADER; position += headerSize( position ) )
+        {
+            count++;
+        }
 
-        Enumeration<? extends ZipEntry> en = zipFile.entries();
+        int[] headers = new int[count];
+        int[] nameStarts = new int[count];
+        int[] nameLengths = new int[count];
 
-        while ( en.hasMoreElements() )
+        int position = 0;
+        for ( int i = 0; i < count; i++ )
         {
-            ZipEntry entry = en.nextElement();
-            RelativePath path = RelativePath.relativePath( entry.getName() );
-            entries.put( path, new ZipFs( this, entry, path ) );
+            int start = position + CENTRAL_HEADER_SIZE;
+            int end = start + int16( position + 28 );
+
+            if ( end > directory.length )
+            {
+                channel.close();
+                throw new IOException( "Invalid ZIP central directory: " + file.getAbsolutePath() );
+            }
+
+            while ( start < end && directory[start] == '/' )
+            {
+                start++;
+            }
+            while ( start + 1 < end && directory[start] == '.' && directory[start + 1] == '/' )
+            {
+                start += 2;
+            }
+            while ( end > start && directory[end - 1] == '/' )
+            {
+                end--;
+            }
+
+            headers[i] = position;
+            nameStarts[i] = start;
+            nameLengths[i] = end - start;
+            position += headerSize( position );
         }
+
+        sort( headers, nameStarts, nameLengths );
+
+        this.headers = headers;
+        this.nameStarts = nameStarts;
+        this.nameLengths = nameLengths;
     }
 
     public void close()
         throws IOException
     {
-        zipFile.close();
+        channel.close();
+
+        if ( temporary )
+        {
+            file.delete();
+        }
     }
 
     public boolean exists()
@@ -68,22 +202,21 @@ public class ZipFsRoot
         return 0;
     }
 
-    public synchronized ZipFs resolve( RelativePath relativePath )
+    public ZipFs resolve( RelativePath relativePath )
     {
-        ZipFs zipFs = entries.get( relativePath );
+        int i = indexOf( relativePath.string.getBytes( UTF_8 ) );
 
-        if ( zipFs == null )
+        if ( i < 0 )
         {
-            zipFs = new ZipFs( this, null, relativePath );
-            entries.put( relativePath, zipFs );
+            return new ZipFs( this, null, relativePath );
         }
 
-        return zipFs;
+        return new ZipFs( this, entry( i ), relativePath );
     }
 
     public File basedir()
     {
-        return file;
+        return basedir;
     }
 
     public RelativePath relativePath()
@@ -102,26 +235,85 @@ public class ZipFsRoot
         throw new RuntimeException( "Not supported" );
     }
 
+    /**
+     * Finds the entries that match the filter. As each directory's contents are sorted right after the directory in
+     * the index, the index is walked like a directory tree and pruned directories are skipped without looking at the
+     * entries below them.
+     */
     public Iterable<ZipFs> find( IncludeExcludeFilter filter )
         throws IOException
     {
-        List<ZipFs> list = new ArrayList<ZipFs>(  );
+        List<ZipFs> list = new ArrayList<ZipFs>();
 
-        for ( Map.Entry<RelativePath, ZipFs> entry : entries.entrySet() )
+        // The directories from the root to the current entry's parent, as the length of the directory's name, the
+        // index of an entry whose name starts with the directory's name and the cursor, null if pruned.
+        int[] lengths = new int[16];
+        int[] entries = new int[16];
+        IncludeExcludeFilter.Cursor[] cursors = new IncludeExcludeFilter.Cursor[16];
+        int depth = 0;
+        cursors[0] = filter.root();
+
+        int i = 0;
+        while ( i < headers.length )
         {
-            ZipFs value = entry.getValue();
+            int start = nameStarts[i];
+            int length = nameLengths[i];
 
-            if ( !value.exists() )
+            if ( length == 0 )
             {
+                i++;
                 continue;
             }
 
-            if ( !filter.matches( entry.getKey() ) )
+            while ( depth > 0 && !isBelow( i, entries[depth], lengths[depth] ) )
+            {
+                depth--;
+            }
+
+            // Enter the directories between the current directory and the entry's parent
+            int end = lastSlash( start, length );
+            while ( lengths[depth] < end )
+            {
+                int from = depth == 0 ? start : start + lengths[depth] + 1;
+                int to = nextSlash( from, start + end );
+
+                IncludeExcludeFilter.Cursor parent = cursors[depth];
+                IncludeExcludeFilter.Cursor cursor = parent == null || parent.prune() ? null :
+                    parent.child( new String( directory, from, to - from, UTF_8 ) );
+
+                depth++;
+                if ( depth == lengths.length )
+                {
+                    lengths = Arrays.copyOf( lengths, depth * 2 );
+                    entries = Arrays.copyOf( entries, depth * 2 );
+                    cursors = Arrays.copyOf( cursors, depth * 2 );
+                }
+                lengths[depth] = to - start;
+                entries[depth] = i;
+                cursors[depth] = cursor;
+            }
+
+            IncludeExcludeFilter.Cursor parent = cursors[depth];
+
+            if ( parent == null || parent.prune() )
             {
+                // Skip everything in the parent directory
+                i++;
+                while ( i < headers.length && isBelow( i, entries[depth], lengths[depth] ) )
+                {
+                    i++;
+                }
                 continue;
             }
 
-            list.add( value );
+            int from = depth == 0 ? start : start + lengths[depth] + 1;
+            if ( parent.child( new String( directory, from, start + length - from, UTF_8 ) ).matches() )
+            {
+                list.add( new ZipFs( this, entry( i ),
+                                     RelativePath.relativePath( new String( directory, start, length, UTF_8 ) ) ) );
+            }
+
+            i++;
         }
 
         return list;
@@ -147,6 +339,517 @@ public class ZipFsRoot
 
     public String absolutePath( RelativePath relativePath )
     {
-        return file + "!/" + relativePath.string;
+        return name + "!/" + relativePath.string;
+    }
+
+    // -----------------------------------------------------------------------
+    // Entries
+    // -----------------------------------------------------------------------
+
+    /**
+     * Creates the ZipEntry of entry <code>i</code> in the index from its central directory header.
+     */
+    private ZipEntry entry( int i )
+    {
+        int header = headers[i];
+
+        ZipEntry entry = new ZipEntry( rawName( i ) );
+
+        int method = int16( header + 10 );
+        if ( method == ZipEntry.STORED || method == ZipEntry.DEFLATED )
+        {
+            entry.setMethod( method );
+        }
+        entry.setTime( dosTime( int16( header + 14 ), int16( header + 12 ) ) );
+        entry.setCrc( int32( header + 16 ) & 0xffffffffL );
+
+        long[] zip64 = zip64( header );
+        entry.setCompressedSize( zip64[1] );
+        entry.setSize( zip64[0] );
+
+        return entry;
+    }
+
+    /**
+     * Opens the contents of an entry. The local header is read to find where the data starts as its extra field may
+     * differ from the one in the central directory.
+     */
+    InputStream inputStream( ZipEntry entry )
+        throws IOException
+    {
+        int i = indexOf( normalize( entry.getName() ) );
+
+        if ( i < 0 )
+        {
+            throw new FileNotFoundException( absolutePath( RelativePath.relativePath( entry.getName() ) ) );
+        }
+
+        int header = headers[i];
+        int method = int16( header + 10 );
+
+        if ( ( int16( header + 8 ) & 1 ) != 0 )
+        {
+            throw new ZipException( "Encrypted entries are not supported: " + entry.getName() );
+        }
+
+        if ( method != ZipEntry.STORED && method != ZipEntry.DEFLATED )
+        {
+            throw new ZipException( "Unsupported compression method " + method + ": " + entry.getName() );
+        }
+
+        long[] zip64 = zip64( header );
+        long position = bias + zip64[2];
+
+        byte[] local = new byte[LOCAL_HEADER_SIZE];
+        readFully( channel, local, position );
+
+        if ( le32( local, 0 ) != LOCAL_HEADER )
+        {
+            throw new ZipException( "Invalid local header of entry " + entry.getName() + ": " +
+                                        file.getAbsolutePath() );
+        }
+
+        InputStream is = new ChannelInputStream( channel, position + LOCAL_HEADER_SIZE + le16( local, 26 ) +
+            le16( local, 28 ), zip64[1] );
+
+        if ( method == ZipEntry.STORED )
+        {
+            return is;
+        }
+
+        final Inflater inflater = new Inflater( true );
+
+        // The inflater needs an extra dummy byte after the deflated data when the nowrap option is used
+        is = new SequenceInputStream( is, new ByteArrayInputStream( new byte[1] ) );
+
+        return new InflaterInputStream( is, inflater, 8192 )
+        {
+            private boolean closed;
+
+            public void close()
+                throws IOException
+            {
+                if ( !closed )
+                {
+                    closed = true;
+                    inflater.end();
+                    super.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * The uncompressed size, compressed size and local header offset of the entry, from the ZIP64 extra field if
+     * they don't fit in the header.
+     */
+    private long[] zip64( int header )
+    {
+        long[] values = { int32( header + 24 ) & 0xffffffffL, int32( header + 20 ) & 0xffffffffL,
+            int32( header + 42 ) & 0xffffffffL };
+
+        int position = header + CENTRAL_HEADER_SIZE + int16( header + 28 );
+        int end = position + int16( header + 30 );
+
+        while ( position + 4 <= end )
+        {
+            int id = int16( position );
+            int size = int16( position + 2 );
+            position += 4;
+
+            if ( id == ZIP64_EXTRA )
+            {
+                int offset = position;
+                for ( int i = 0; i < values.length; i++ )
+                {
+                    if ( values[i] == 0xffffffffL && offset + 8 <= position + size )
+                    {
+                        values[i] = le64( directory, offset );
+                        offset += 8;
+                    }
+                }
+                break;
+            }
+
+            position += size;
+        }
+
+        return values;
+    }
+
+    private static long dosTime( int date, int time )
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set( ( ( date >> 9 ) & 0x7f ) + 1980, ( ( date >> 5 ) & 0x0f ) - 1, date & 0x1f,
+                      ( time >> 11 ) & 0x1f, ( time >> 5 ) & 0x3f, ( time << 1 ) & 0x3e );
+        return calendar.getTimeInMillis();
+    }
+
+    // -----------------------------------------------------------------------
+    // Index
+    // -----------------------------------------------------------------------
+
+    /**
+     * The name as it is in the index, without any leading "/" or "./" and trailing "/".
+     */
+    private static byte[] normalize( String name )
+    {
+        int start = 0;
+        int end = name.length();
+
+        while ( start < end && name.charAt( start ) == '/' )
+        {
+            start++;
+        }
+        while ( start + 1 < end && name.charAt( start ) == '.' && name.charAt( start + 1 ) == '/' )
+        {
+            start += 2;
+        }
+        while ( end > start && name.charAt( end - 1 ) == '/' )
+        {
+            end--;
+        }
+
+        return name.substring( start, end ).getBytes( UTF_8 );
+    }
+
+    /**
+     * Returns the position of the entry with the name in the index, or -1. If there are duplicate entries the last
+     * one is used.
+     */
+    private int indexOf( byte[] name )
+    {
+        int low = 0;
+        int high = headers.length - 1;
+        int found = -1;
+
+        while ( low <= high )
+        {
+            int middle = ( low + high ) >>> 1;
+            int c = compare( directory, nameStarts[middle], nameLengths[middle], name, 0, name.length );
+
+            if ( c < 0 )
+            {
+                low = middle + 1;
+            }
+            else if ( c > 0 )
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                found = middle;
+                low = middle + 1;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * True if the name of entry <code>i</code> is below the directory that is the first <code>length</code> bytes of
+     * the name of entry <code>j</code>.
+     */
+    private boolean isBelow( int i, int j, int length )
+    {
+        if ( nameLengths[i] <= length || directory[nameStarts[i] + length] != '/' )
+        {
+            return false;
+        }
+
+        int a = nameStarts[i];
+        int b = nameStarts[j];
+        for ( int k = 0; k < length; k++ )
+        {
+            if ( directory[a + k] != directory[b + k] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The length of the parent directory's part of the name, 0 if the entry is in the root.
+     */
+    private int lastSlash( int start, int length )
+    {
+        for ( int i = start + length - 1; i >= start; i-- )
+        {
+            if ( directory[i] == '/' )
+            {
+                return i - start;
+            }
+        }
+        return 0;
+    }
+
+    private int nextSlash( int from, int end )
+    {
+        while ( from < end && directory[from] != '/' )
+        {
+            from++;
+        }
+        return from;
+    }
+
+    private String rawName( int i )
+    {
+        return new String( directory, headers[i] + CENTRAL_HEADER_SIZE, int16( headers[i] + 28 ), UTF_8 );
+    }
+
+    private int headerSize( int position )
+    {
+        return CENTRAL_HEADER_SIZE + int16( position + 28 ) + int16( position + 30 ) + int16( position + 32 );
+    }
+
+    private int int16( int position )
+    {
+        return ( directory[position] & 0xff ) | ( directory[position + 1] & 0xff ) << 8;
+    }
+
+    private int int32( int position )
+    {
+        return int16( position ) | int16( position + 2 ) << 16;
+    }
+
+    /**
+     * Compares two names byte by byte, with '/' before all other bytes so the contents of a directory are sorted
+     * right after the directory.
+     */
+    private static int compare( byte[] a, int aStart, int aLength, byte[] b, int bStart, int bLength )
+    {
+        int n = Math.min( aLength, bLength );
+        for ( int i = 0; i < n; i++ )
+        {
+            int x = a[aStart + i] == '/' ? -1 : a[aStart + i] & 0xff;
+            int y = b[bStart + i] == '/' ? -1 : b[bStart + i] & 0xff;
+
+            if ( x != y )
+            {
+                return x - y;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * A stable merge sort of the three arrays by name.
+     */
+    private void sort( int[] headers, int[] starts, int[] lengths )
+    {
+        int n = headers.length;
+        int[] order = new int[n];
+        for ( int i = 0; i < n; i++ )
+        {
+            order[i] = i;
+        }
+
+        int[] tmp = new int[n];
+        for ( int width = 1; width < n; width *= 2 )
+        {
+            for ( int low = 0; low < n - width; low += width * 2 )
+            {
+                int middle = low + width;
+                int high = Math.min( low + width * 2, n );
+
+                int i = low;
+                int j = middle;
+                int k = low;
+                while ( i < middle && j < high )
+                {
+                    int a = order[i];
+                    int b = order[j];
+                    if ( compare( directory, starts[b], lengths[b], directory, starts[a], lengths[a] ) < 0 )
+                    {
+                        tmp[k++] = order[j++];
+                    }
+                    else
+                    {
+                        tmp[k++] = order[i++];
+                    }
+                }
+                while ( i < middle )
+                {
+                    tmp[k++] = order[i++];
+                }
+                while ( j < high )
+                {
+                    tmp[k++] = order[j++];
+                }
+                System.arraycopy( tmp, low, order, low, high - low );
+            }
+        }
+
+        int[] h = headers.clone();
+        int[] s = starts.clone();
+        int[] l = lengths.clone();
+        for ( int i = 0; i < n; i++ )
+        {
+            headers[i] = h[order[i]];
+            starts[i] = s[order[i]];
+            lengths[i] = l[order[i]];
+        }
+    }
+
+    /**
+     * Reads the central directory, using the ZIP64 end of central directory record if there is one.
+     *
+     * @param bias Set to the number of bytes in front of the archive, calculated like {@link ZipFile} does it from
+     *             where the central directory actually ends.
+     */
+    private static byte[] readCentralDirectory( FileChannel channel, File file, long[] bias )
+        throws IOException
+    {
+        long length = channel.size();
+        int tailLength = (int) Math.min( length, 22 + 0xffff + 20 );
+        byte[] tail = new byte[tailLength];
+        readFully( channel, tail, length - tailLength );
+
+        int eocd = -1;
+        for ( int i = tailLength - 22; i >= 0; i-- )
+        {
+            if ( le32( tail, i ) == EOCD && i + 22 + le16( tail, i + 20 ) <= tailLength )
+            {
+                eocd = i;
+                break;
+            }
+        }
+
+        if ( eocd == -1 )
+        {
+            throw new IOException( "Could not find the ZIP central directory: " + file.getAbsolutePath() );
+        }
+
+        long size = le32( tail, eocd + 12 ) & 0xffffffffL;
+        long offset = le32( tail, eocd + 16 ) & 0xffffffffL;
+        long end = length - tailLength + eocd;
+
+        int locator = eocd - 20;
+        if ( locator >= 0 && le32( tail, locator ) == ZIP64_EOCD_LOCATOR )
+        {
+            // The locator's offset does not include the bias either, so look right in front of the locator too
+            byte[] zip64 = new byte[56];
+            long position = le64( tail, locator + 8 );
+            if ( position < 0 || position + zip64.length > length || !isZip64Eocd( channel, zip64, position ) )
+            {
+                position = end - 20 - zip64.length;
+                if ( position < 0 || !isZip64Eocd( channel, zip64, position ) )
+                {
+                    throw new IOException( "Invalid ZIP64 end of central directory: " + file.getAbsolutePath() );
+                }
+            }
+
+            size = le64( zip64, 40 );
+            offset = le64( zip64, 48 );
+            end = position;
+        }
+
+        bias[0] = end - size - offset;
+
+        if ( size > Integer.MAX_VALUE || offset < 0 || bias[0] < 0 )
+        {
+            throw new IOException( "Invalid ZIP central directory: " + file.getAbsolutePath() );
+        }
+
+        byte[] directory = new byte[(int) size];
+        readFully( channel, directory, bias[0] + offset );
+        return directory;
+    }
+
+    private static boolean isZip64Eocd( FileChannel channel, byte[] zip64, long position )
+        throws IOException
+    {
+        readFully( channel, zip64, position );
+        return le32( zip64, 0 ) == ZIP64_EOCD;
+    }
+
+    private static void readFully( FileChannel channel, byte[] bytes, long position )
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, position + buffer.position() ) < 0 )
+            {
+                throw new EOFException( "Unexpected end of ZIP file" );
+            }
+        }
+    }
+
+    private static int le16( byte[] bytes, int i )
+    {
+        return ( bytes[i] & 0xff ) | ( bytes[i + 1] & 0xff ) << 8;
+    }
+
+    private static int le32( byte[] bytes, int i )
+    {
+        return le16( bytes, i ) | le16( bytes, i + 2 ) << 16;
+    }
+
+    private static long le64( byte[] bytes, int i )
+    {
+        return ( le32( bytes, i ) & 0xffffffffL ) | ( (long) le32( bytes, i + 4 ) ) << 32;
+    }
+
+    /**
+     * Reads a part of the file with positional reads, so any number of streams can read from the same channel.
+     */
+    private static class ChannelInputStream
+        extends InputStream
+    {
+        private final FileChannel channel;
+
+        private long position;
+
+        private long remaining;
+
+        ChannelInputStream( FileChannel channel, long position, long size )
+        {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = size;
+        }
+
+        public int read()
+            throws IOException
+        {
+            byte[] b = new byte[1];
+            return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( remaining <= 0 )
+            {
+                return -1;
+            }
+
+            int read = channel.read( ByteBuffer.wrap( b, off, (int) Math.min( len, remaining ) ), position );
+
+            if ( read < 0 )
+            {
+                throw new EOFException( "Unexpected end of ZIP file" );
+            }
+
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        public long skip( long n )
+        {
+            long skipped = Math.max( 0, Math.min( n, remaining ) );
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        public int available()
+        {
+            return (int) Math.min( Integer.MAX_VALUE, remaining );
+        }
     }
 }
@@ -35,7 +35,11 @@ import org.joda.time.*;
 import org.joda.time.format.*;
 
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
 import java.security.*;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
@@ -151,8 +155,50 @@ public class UnixUtil
         }
     }
 
+    /**
+     * Changes the mode of the file. Octal modes are applied directly through java.nio, symbolic modes like
+     * <code>u+x</code> are still passed on to <code>chmod</code>.
+     */
     public static void chmod( File file, String mode )
         throws IOException
+    {
+        int octal;
+        try
+        {
+            octal = Integer.parseInt( mode, 8 );
+        }
+        catch ( NumberFormatException e )
+        {
+            chmodCommand( file, mode );
+            return;
+        }
+
+        chmod( file, UnixFileMode.fromInt( octal ) );
+    }
+
+    /**
+     * Sets the permission bits of the file. The setuid, setgid and sticky bits can not be set through
+     * java.nio, so a mode with any of them is passed on to <code>chmod</code>.
+     */
+    public static void chmod( File file, UnixFileMode mode )
+        throws IOException
+    {
+        if ( hasSpecialBits( mode ) )
+        {
+            chmodCommand( file, Integer.toOctalString( mode.toInt() ) );
+            return;
+        }
+
+        Files.setPosixFilePermissions( file.toPath(), toPosixFilePermissions( mode ) );
+    }
+
+    private static boolean hasSpecialBits( UnixFileMode mode )
+    {
+        return ( mode.toInt() & 07000 ) != 0;
+    }
+
+    private static void chmodCommand( File file, String mode )
+        throws IOException
     {
         new SystemCommand().
             setCommand( "chmod" ).
@@ -165,14 +211,28 @@ public class UnixUtil
     public static void symlink( File basedir, String source, RelativePath target )
         throws IOException
     {
-        new SystemCommand().
-            setBasedir( basedir ).
-            setCommand( "ln" ).
-            addArgument( "-s" ).
-            addArgument( source ).
-            addArgument( target.string ).
-            execute().
-            assertSuccess( "Error while running ln -s in " + basedir.getAbsolutePath() );
+        Files.createSymbolicLink( new File( basedir, target.string ).toPath(), Paths.get( source ) );
+    }
+
+    private static final PosixFilePermission[] PERMISSIONS = {
+        PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+        PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+        PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ,
+    };
+
+    public static Set<PosixFilePermission> toPosixFilePermissions( UnixFileMode mode )
+    {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf( PosixFilePermission.class );
+
+        for ( int i = 0; i < PERMISSIONS.length; i++ )
+        {
+            if ( ( mode.toInt() & ( 1 << i ) ) != 0 )
+            {
+                permissions.add( PERMISSIONS[i] );
+            }
+        }
+
+        return permissions;
     }
 
     // -----------------------------------------------------------------------
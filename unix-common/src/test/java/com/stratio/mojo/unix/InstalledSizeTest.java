@@ -0,0 +1,66 @@
+ package com.stratio.mojo.unix;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import junit.framework.*;
+import fj.data.*;
+import static com.stratio.mojo.unix.FileAttributes.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+import org.joda.time.*;
+
+import java.util.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class InstalledSizeTest
+    extends TestCase
+{
+    static LocalDateTime lm = new LocalDateTime( 2009, 2, 24, 9, 42 );
+
+    public void testInstalledSize()
+    {
+        long big = 3L * 1024 * 1024 * 1024;
+
+        InstalledSize size = InstalledSize.installedSize( Arrays.<UnixFsObject>asList(
+            directory( BASE, lm, EMPTY ),
+            directory( relativePath( "opt" ), lm, EMPTY ),
+            directory( relativePath( "opt/app" ), lm, EMPTY ),
+            regularFile( relativePath( "opt/app/empty" ), lm, 0, EMPTY ),
+            regularFile( relativePath( "opt/app/small" ), lm, 1, EMPTY ),
+            regularFile( relativePath( "opt/app/exact" ), lm, 1024, EMPTY ),
+            regularFile( relativePath( "opt/app/lib/big.jar" ), lm, big, EMPTY ),
+            symlink( relativePath( "opt/app/current" ), lm, Option.<String>none(), Option.<String>none(), "app" ) ) );
+
+        // The root isn't counted, the other directories and the symlink count one kilobyte each
+        assertEquals( 3 + 0 + 1 + 1 + big / 1024, size.getKilobytes() );
+        assertEquals( big + 1025, size.getBytes() );
+        assertEquals( big + 1025, size.getBytes( BASE ) );
+        assertEquals( big + 1025, size.getBytes( relativePath( "opt/app" ) ) );
+        assertEquals( big, size.getBytes( relativePath( "opt/app/lib" ) ) );
+        assertEquals( 0, size.getBytes( relativePath( "usr" ) ) );
+    }
+}
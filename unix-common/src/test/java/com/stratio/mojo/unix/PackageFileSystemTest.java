@@ -205,6 +205,67 @@ public class PackageFileSystemTest
         assertEquals( newAttributes, fs.getObject( RelativePath.BASE ).some().getUnixFsObject().getFileAttributes() );
     }
 
+    public void testFrozenFileSystemIsNotModified()
+    {
+        PackageFileSystem<Object> frozen = create( root, root ).
+            addDirectory( a ).
+            freeze();
+
+        PackageFileSystem<Object> fs = frozen.addFile( a_x );
+
+        assertNotSame( frozen, fs );
+        assertFalse( frozen.hasPath( a_x.getUnixFsObject().path ) );
+        assertTrue( fs.hasPath( a_x.getUnixFsObject().path ) );
+
+        PackageFileSystem<Object> pretty = fs.prettify();
+        assertEquals( 3, pretty.toList().length() );
+        fs = fs.addFile( a_y );
+        assertEquals( 3, pretty.toList().length() );
+        assertEquals( 4, fs.toList().length() );
+    }
+
+    public void testAddAllToFlatDirectory()
+    {
+        java.util.List<PlainPackageFileSystemObject> objects = new java.util.ArrayList<PlainPackageFileSystemObject>();
+
+        for ( int i = 9999; i >= 0; i-- )
+        {
+            objects.add( p( regularFile( relativePath( "/lib/" + i + ".jar" ), lm, 10, fileA ) ) );
+        }
+
+        PackageFileSystem<Object> fs = create( root, root ).addAll( objects );
+
+        assertTrue( fs.hasPath( relativePath( "/lib/1234.jar" ) ) );
+        assertEquals( 10, fs.getObject( relativePath( "/lib/1234.jar" ) ).some().getUnixFsObject().size );
+
+        Stream<PackageFileSystemObject<Object>> list = fs.prettify().toList();
+        assertEquals( 10002, list.length() );
+        assertEquals( relativePath( "/lib" ), list.index( 1 ).getUnixFsObject().path );
+        assertEquals( relativePath( "/lib/0.jar" ), list.index( 2 ).getUnixFsObject().path );
+    }
+
+    public void testApplyOnlyAffectsExistingObjects()
+    {
+        FileAttributes tjoho = fileA.user( "tjoho" );
+
+        PackageFileSystem<Object> fs = create( root, root ).
+            addFile( a_x ).
+            apply( filter( "a/", tjoho ) ).
+            addFile( a_y );
+
+        PackageFileSystemObject<Object> x = fs.getObject( a_x.getUnixFsObject().path ).some();
+        assertEquals( "tjoho", x.getUnixFsObject().attributes.user.some() );
+        assertSame( a_y, fs.getObject( a_y.getUnixFsObject().path ).some() );
+
+        // Replacing an object drops the earlier applications
+        fs = fs.addFile( a_x );
+        assertSame( a_x, fs.getObject( a_x.getUnixFsObject().path ).some() );
+
+        fs = fs.apply( filter( "a/a-y", tjoho ) );
+        assertSame( a_x, fs.getObject( a_x.getUnixFsObject().path ).some() );
+        assertEquals( "tjoho", fs.getObject( a_y.getUnixFsObject().path ).some().getUnixFsObject().attributes.user.some() );
+    }
+
     private F<UnixFsObject, Option<UnixFsObject>> filter( final String s,
                                                   final FileAttributes newAttributes )
     {
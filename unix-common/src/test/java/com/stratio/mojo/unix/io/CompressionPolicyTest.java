@@ -0,0 +1,109 @@
+package com.stratio.mojo.unix.io;
+
+import com.stratio.mojo.unix.util.line.*;
+import junit.framework.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class CompressionPolicyTest
+    extends TestCase
+{
+    public void testDecisions()
+        throws Exception
+    {
+        CompressionPolicy policy = new CompressionPolicy();
+
+        byte[] text = new byte[10000];
+        Arrays.fill( text, (byte) 'a' );
+
+        byte[] random = new byte[10000];
+        new Random( 0 ).nextBytes( random );
+
+        byte[] gzip = new byte[10000];
+        gzip[0] = (byte) 0x1f;
+        gzip[1] = (byte) 0x8b;
+
+        assertFalse( policy.compress( "/opt/lib/a.JAR", text.length, stream( text ) ) );
+        assertFalse( policy.compress( "/opt/data", gzip.length, stream( gzip ) ) );
+        assertFalse( policy.compress( "/opt/random", random.length, stream( random ) ) );
+        assertTrue( policy.compress( "/opt/a.txt", text.length, stream( text ) ) );
+        assertTrue( policy.compress( "/opt/jar/README", 3, stream( new byte[]{1, 2, 3} ) ) );
+
+        // The stream has to be reset after sampling
+        InputStream is = stream( random );
+        policy.compress( "/opt/random", random.length, is );
+        assertEquals( random[0] & 0xff, is.read() );
+
+        LineFile lines = new LineFile();
+        policy.streamTo( lines );
+        assertEquals( "store /opt/lib/a.JAR: extension .jar", lines.getLines().get( 0 ) );
+        assertEquals( "store /opt/data: magic bytes", lines.getLines().get( 1 ) );
+        assertTrue( lines.getLines().get( 2 ).startsWith( "store /opt/random: entropy 7.9" ) );
+        assertEquals( "compress /opt/a.txt: entropy 0.00 bits/byte", lines.getLines().get( 3 ) );
+    }
+
+    public void testStreamLevel()
+        throws Exception
+    {
+        CompressionPolicy policy = new CompressionPolicy( Arrays.asList( "jar" ), false, 8 );
+        assertEquals( Deflater.DEFAULT_COMPRESSION, policy.streamLevel( Deflater.DEFAULT_COMPRESSION ) );
+
+        byte[] bytes = new byte[1000];
+        policy.compress( "a.jar", 95000, stream( bytes ) );
+        policy.compress( "a.txt", 5000, stream( bytes ) );
+        assertEquals( Deflater.BEST_SPEED, policy.streamLevel( Deflater.DEFAULT_COMPRESSION ) );
+
+        policy.compress( "b.txt", 10000, stream( bytes ) );
+        assertEquals( Deflater.DEFAULT_COMPRESSION, policy.streamLevel( Deflater.DEFAULT_COMPRESSION ) );
+    }
+
+    public void testStreamLevelIsRememberedWhenItChanges()
+        throws Exception
+    {
+        CompressionPolicy policy = new CompressionPolicy( Arrays.asList( "jar" ), false, 8 );
+
+        byte[] bytes = new byte[1000];
+        policy.compress( "a.jar", 1000, bytes, bytes.length );
+        assertEquals( Deflater.BEST_SPEED, policy.streamLevel( 9 ) );
+        policy.compress( "b.jar", 1000, bytes, bytes.length );
+        assertEquals( Deflater.BEST_SPEED, policy.streamLevel( 9 ) );
+        assertTrue( policy.compress( "a.txt", 1000, bytes, bytes.length ) );
+        assertEquals( 9, policy.streamLevel( 9 ) );
+
+        LineFile lines = new LineFile();
+        policy.streamTo( lines );
+        assertEquals( 5, lines.getLines().size() );
+        assertEquals( "level 1: 100% of 1000 bytes are already compressed", lines.getLines().get( 1 ) );
+        assertEquals( "level 9: 66% of 3000 bytes are already compressed", lines.getLines().get( 4 ) );
+    }
+
+    public void testDecisionsAreBounded()
+    {
+        CompressionPolicy policy = new CompressionPolicy();
+
+        byte[] bytes = new byte[10];
+        for ( int i = 0; i < CompressionPolicy.MAX_DECISIONS + 5; i++ )
+        {
+            policy.compress( "/opt/" + i + ".txt", bytes.length, bytes, bytes.length );
+        }
+
+        LineFile lines = new LineFile();
+        policy.streamTo( lines );
+        assertEquals( CompressionPolicy.MAX_DECISIONS + 1, lines.getLines().size() );
+        assertEquals( "... and 5 more", lines.getLines().get( CompressionPolicy.MAX_DECISIONS ) );
+    }
+
+    public void testEntropy()
+    {
+        assertEquals( 0.0, CompressionPolicy.entropy( new byte[100], 100 ), 0.001 );
+        assertEquals( 1.0, CompressionPolicy.entropy( new byte[]{0, 1, 0, 1}, 4 ), 0.001 );
+        assertEquals( 0.0, CompressionPolicy.entropy( new byte[0], 0 ), 0.001 );
+    }
+
+    private static InputStream stream( byte[] bytes )
+    {
+        return new BufferedInputStream( new ByteArrayInputStream( bytes ) );
+    }
+}
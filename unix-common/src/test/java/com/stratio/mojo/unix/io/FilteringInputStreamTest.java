@@ -0,0 +1,67 @@
+package com.stratio.mojo.unix.io;
+
+import fj.data.*;
+import static fj.data.List.*;
+import com.stratio.mojo.unix.UnixFsObject.*;
+import junit.framework.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.nio.charset.*;
+
+public class FilteringInputStreamTest
+    extends TestCase
+{
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final Charset ISO_8859_1 = Charset.forName( "ISO-8859-1" );
+
+    public void testFiltering()
+        throws Exception
+    {
+        List<Replacer> replacers = list( new Replacer( "\\$\\{name\\}", "w\u00f8rld" ) );
+
+        assertEquals( "hello w\u00f8rld\r\nbye\r\n", filter( "hello ${name}\nbye", UTF_8, replacers, "\r\n" ) );
+        assertEquals( "a\nb\n", filter( "a\r\nb\r\n", UTF_8, List.<Replacer>nil(), "\n" ) );
+        assertEquals( "", filter( "", UTF_8, replacers, "\n" ) );
+
+        byte[] bytes = IOUtil.toByteArray( new FilteringInputStream(
+            new ByteArrayInputStream( "${name}".getBytes( ISO_8859_1 ) ), ISO_8859_1, replacers, "\n".getBytes() ) );
+        assertEquals( 6, bytes.length );
+        assertEquals( (byte) 0xf8, bytes[1] );
+    }
+
+    public void testSingleByteAndBulkReadsAreEqual()
+        throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < 10000; i++ )
+        {
+            text.append( "line " ).append( i ).append( '\n' );
+        }
+
+        List<Replacer> replacers = list( new Replacer( "line", "LINE" ) );
+
+        InputStream is = new FilteringInputStream( new ByteArrayInputStream( text.toString().getBytes( UTF_8 ) ),
+                                                   UTF_8, replacers, "\r\n".getBytes() );
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        int b;
+        while ( ( b = is.read() ) != -1 )
+        {
+            single.write( b );
+        }
+
+        String expected = text.toString().replace( "line", "LINE" ).replace( "\n", "\r\n" );
+        assertEquals( expected, new String( single.toByteArray(), UTF_8 ) );
+        assertEquals( expected, filter( text.toString(), UTF_8, replacers, "\r\n" ) );
+    }
+
+    private static String filter( String text, Charset charset, List<Replacer> replacers, String eol )
+        throws IOException
+    {
+        InputStream is = new FilteringInputStream( new ByteArrayInputStream( text.getBytes( charset ) ), charset,
+                                                   replacers, eol.getBytes() );
+
+        return new String( IOUtil.toByteArray( is, 7 ), charset );
+    }
+}
@@ -0,0 +1,156 @@
+ package com.stratio.mojo.unix.io;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import junit.framework.*;
+import static com.stratio.mojo.unix.io.IncludeExcludeFilter.*;
+import com.stratio.mojo.unix.util.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
+import java.util.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class IncludeExcludeFilterTest
+    extends TestCase
+{
+    private static final String[] EXPRESSIONS = {
+        "**/*.java", "*.java", "/src/main/**", "src/*/unix/**", "**/a?c", "a*b/**", "**", "*", "**/x/**/y",
+        "foo**bar", "**/.svn/**", "a/b", "/a/*/c*", "?"
+    };
+
+    private static final String[] PATHS = {
+        "", "a", "a/b", "a/bc", "abc", "a/b/c", "aXb/c", "ab/x/q/y", "x/y", "x/z/y", ".svn", "q/.svn", "q/.svn/entries",
+        "src/main", "src/main/unix/files/a.java", "Foo.java", "foo/bar", "foobar", "foo/a/bar", "a/q/cat", "a/q/c",
+        "META-INF/MANIFEST.MF", "x/CVS", "x/file~", "a/b/c/d"
+    };
+
+    public void testSameAsRegularExpressions()
+    {
+        Random random = new Random( 1 );
+
+        for ( int i = 0; i < 500; i++ )
+        {
+            List<PathExpression> includes = randomExpressions( random );
+            List<PathExpression> excludes = randomExpressions( random );
+            boolean defaultExcludes = random.nextBoolean();
+
+            TemplateIncludeExcludeFilter template = includeExcludeFilter();
+            for ( PathExpression include : includes )
+            {
+                template.addInclude( include );
+            }
+            for ( PathExpression exclude : excludes )
+            {
+                template.addExclude( exclude );
+            }
+            if ( defaultExcludes )
+            {
+                excludes.addAll( Arrays.asList( DEFAULT_EXCLUDES ) );
+            }
+            else
+            {
+                template.noDefaultExcludes();
+            }
+            IncludeExcludeFilter filter = template.create();
+
+            for ( String p : PATHS )
+            {
+                RelativePath path = relativePath( p );
+                String message = "includes=" + includes + ", excludes=" + excludes + ", path=" + p;
+
+                assertEquals( message, regexMatches( includes, excludes, path ), filter.matches( path ) );
+                assertEquals( message, regexMatches( includes, excludes, path ), cursor( filter, path ).matches() );
+
+                if ( cursor( filter, path ).prune() )
+                {
+                    for ( String child : PATHS )
+                    {
+                        RelativePath childPath = path.add( child );
+                        if ( !childPath.equals( path ) )
+                        {
+                            assertFalse( message + ", child=" + childPath, filter.matches( childPath ) );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testPrune()
+    {
+        IncludeExcludeFilter filter = includeExcludeFilter().
+            addInclude( new PathExpression( "/src/main/**" ) ).
+            create();
+
+        assertFalse( filter.root().prune() );
+        assertFalse( filter.root().child( "src" ).prune() );
+        assertTrue( filter.root().child( "target" ).prune() );
+        assertTrue( filter.root().child( "src" ).child( "main" ).child( ".svn" ).prune() );
+        assertFalse( filter.root().child( "src" ).child( "main" ).child( "java" ).prune() );
+
+        assertTrue( includeExcludeFilter().create().root().child( "CVS" ).prune() );
+        assertFalse( includeExcludeFilter().noDefaultExcludes().create().root().child( "CVS" ).prune() );
+    }
+
+    private static Cursor cursor( IncludeExcludeFilter filter, RelativePath path )
+    {
+        Cursor cursor = filter.root();
+        for ( String name : path.toList() )
+        {
+            cursor = cursor.child( name );
+        }
+        return cursor;
+    }
+
+    private static List<PathExpression> randomExpressions( Random random )
+    {
+        List<PathExpression> list = new ArrayList<PathExpression>();
+        int count = random.nextInt( 4 );
+        for ( int i = 0; i < count; i++ )
+        {
+            list.add( new PathExpression( EXPRESSIONS[random.nextInt( EXPRESSIONS.length )] ) );
+        }
+        return list;
+    }
+
+    private static boolean regexMatches( List<PathExpression> includes, List<PathExpression> excludes,
+                                         RelativePath path )
+    {
+        String s = path.asAbsolutePath( "/" );
+
+        boolean include = includes.isEmpty();
+        for ( PathExpression expression : includes )
+        {
+            include |= expression.matches( s );
+        }
+        for ( PathExpression expression : excludes )
+        {
+            include &= !expression.matches( s );
+        }
+        return include;
+    }
+}
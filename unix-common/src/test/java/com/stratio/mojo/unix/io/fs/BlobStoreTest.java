@@ -0,0 +1,81 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import com.stratio.mojo.unix.util.*;
+import junit.framework.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.nio.file.*;
+
+public class BlobStoreTest
+    extends TestCase
+{
+    TestUtil util = new TestUtil( this );
+
+    public void testPutAndGet()
+        throws Exception
+    {
+        File dir = util.getTestFile( "target/blob-store/put" );
+        FileUtils.deleteDirectory( dir );
+        assertTrue( dir.mkdirs() );
+
+        LocalFs a = write( dir, "a.txt", "Hello World!" );
+        LocalFs b = write( dir, "b.txt", "Hello World!" );
+
+        BlobStore store = new BlobStore( new LocalFs( new File( dir, "blobs" ) ) );
+
+        assertTrue( store.get( a, "" ).isNone() );
+
+        LocalFs blobA = store.put( a, "", a.inputStream() );
+        LocalFs blobB = store.put( b, "", b.inputStream() );
+
+        // Identical content is stored once, under its SHA-256 digest
+        String sha256 = "7f83b1657ff1fc53b92dc18148a1d65dfc2d4b1fa3d677284addd200126d9069";
+        assertEquals( sha256, blobA.file.getName() );
+        assertEquals( blobA.file, blobB.file );
+        assertEquals( "Hello World!", FileUtils.fileRead( blobA.file ) );
+
+        assertEquals( blobA.file, store.get( a, "" ).some().file );
+        assertTrue( store.get( a, "filtered" ).isNone() );
+
+        // The index survives a new instance
+        store.save();
+        store = new BlobStore( new LocalFs( new File( dir, "blobs" ) ) );
+        assertEquals( blobA.file, store.get( a, "" ).some().file );
+
+        // A changed source invalidates the entry
+        FileUtils.fileWrite( a.file.getAbsolutePath(), "Hello Blob!" );
+        assertTrue( store.get( a, "" ).isNone() );
+
+        // A missing blob invalidates the entry too
+        Files.delete( blobB.file.toPath() );
+        assertTrue( store.get( b, "" ).isNone() );
+    }
+
+    public void testDigest()
+        throws Exception
+    {
+        File dir = util.getTestFile( "target/blob-store/digest" );
+        FileUtils.deleteDirectory( dir );
+        assertTrue( dir.mkdirs() );
+
+        LocalFs a = write( dir, "a.txt", "Hello World!" );
+
+        BlobStore store = new BlobStore( new LocalFs( new File( dir, "blobs" ) ) );
+        BlobStore.Blob blob = store.digest( a );
+        assertEquals( "7f83b1657ff1fc53b92dc18148a1d65dfc2d4b1fa3d677284addd200126d9069", blob.sha256 );
+        assertEquals( "ed076287532e86365e841e92bfc50d8c", blob.md5 );
+        assertEquals( 12, blob.size );
+
+        store.save();
+        assertEquals( blob.md5, new BlobStore( new LocalFs( new File( dir, "blobs" ) ) ).digest( a ).md5 );
+    }
+
+    private static LocalFs write( File dir, String name, String content )
+        throws IOException
+    {
+        File file = new File( dir, name );
+        FileUtils.fileWrite( file.getAbsolutePath(), content );
+        return new LocalFs( file );
+    }
+}
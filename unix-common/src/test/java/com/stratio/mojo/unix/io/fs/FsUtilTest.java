@@ -0,0 +1,97 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import com.stratio.mojo.unix.util.*;
+import junit.framework.*;
+import org.apache.commons.compress.archivers.tar.*;
+import org.apache.commons.compress.compressors.gzip.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.util.zip.*;
+
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
+public class FsUtilTest
+    extends TestCase
+{
+    TestUtil util = new TestUtil( this );
+
+    public void testResolve()
+        throws Exception
+    {
+        File dir = util.getTestFile( "target/fs-util" );
+        FileUtils.deleteDirectory( dir );
+        assertTrue( dir.mkdirs() );
+
+        assertTrue( FsUtil.resolve( dir ) instanceof LocalFs );
+
+        File unknown = new File( dir, "file.txt" );
+        FileUtils.fileWrite( unknown.getAbsolutePath(), "Hello" );
+        try
+        {
+            FsUtil.resolve( unknown );
+            fail( "Expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    public void testNestedArchives()
+        throws Exception
+    {
+        File dir = util.getTestFile( "target/fs-util" );
+        dir.mkdirs();
+
+        // A zip inside a tar.gz
+        ByteArrayOutputStream war = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream( war );
+        zip.putNextEntry( new ZipEntry( "WEB-INF/web.xml" ) );
+        zip.write( "<web-app/>".getBytes( "UTF-8" ) );
+        zip.close();
+
+        File tgz = new File( dir, "server.tgz" );
+        TarArchiveOutputStream tar = new TarArchiveOutputStream( new GzipCompressorOutputStream(
+            new FileOutputStream( tgz ) ) );
+        try
+        {
+            TarArchiveEntry entry = new TarArchiveEntry( "webapps/app.war" );
+            entry.setSize( war.size() );
+            tar.putArchiveEntry( entry );
+            tar.write( war.toByteArray(), 0, war.size() );
+            tar.closeArchiveEntry();
+        }
+        finally
+        {
+            IOUtil.close( tar );
+        }
+
+        Fs<?> nested = FsUtil.resolve( new File( tgz.getPath() + "!/webapps/app.war" ) );
+        try
+        {
+            assertTrue( nested instanceof ZipFsRoot );
+            assertEquals( tgz, nested.basedir() );
+
+            Fs<?> webXml = nested.resolve( relativePath( "WEB-INF/web.xml" ) );
+            assertEquals( tgz.getPath() + "!/webapps/app.war!/WEB-INF/web.xml", webXml.absolutePath() );
+            assertEquals( "<web-app/>", TarFsRootTest.read( webXml ) );
+        }
+        finally
+        {
+            nested.close();
+        }
+
+        Fs<?> server = FsUtil.resolve( tgz );
+        try
+        {
+            nested = FsUtil.resolve( server.resolve( relativePath( "webapps/app.war" ) ) );
+            assertTrue( nested.resolve( relativePath( "WEB-INF/web.xml" ) ).isFile() );
+            nested.close();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
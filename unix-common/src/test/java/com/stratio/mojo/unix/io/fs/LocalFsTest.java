@@ -0,0 +1,166 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+import junit.framework.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static com.stratio.mojo.unix.io.IncludeExcludeFilter.*;
+
+public class LocalFsTest
+    extends TestCase
+{
+    TestUtil util = new TestUtil( this );
+
+    public void testFind()
+        throws Exception
+    {
+        File dir = util.getTestFile( "target/local-fs/find" );
+        FileUtils.deleteDirectory( dir );
+
+        // A wide tree
+        Set<String> expected = new HashSet<String>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            for ( int j = 0; j < 5; j++ )
+            {
+                write( dir, "d" + i + "/e" + j + "/file.txt" );
+                expected.add( "d" + i );
+                expected.add( "d" + i + "/e" + j );
+                expected.add( "d" + i + "/e" + j + "/file.txt" );
+            }
+        }
+        write( dir, "CVS/Entries" );
+
+        LocalFs fs = new LocalFs( dir );
+        List<String> paths = paths( fs.find( includeExcludeFilter().create() ) );
+
+        assertEquals( ".", paths.get( 0 ) );
+        assertEquals( expected, new HashSet<String>( paths.subList( 1, paths.size() ) ) );
+        assertEquals( expected.size() + 1, paths.size() );
+
+        // Each directory comes right before its contents
+        for ( int i = 1; i < paths.size(); i++ )
+        {
+            String path = paths.get( i );
+            if ( path.endsWith( "/file.txt" ) )
+            {
+                assertEquals( path.substring( 0, path.lastIndexOf( '/' ) ), paths.get( i - 1 ) );
+            }
+        }
+
+        // Iterating again walks the tree again
+        write( dir, "new.txt" );
+        assertTrue( paths( fs.find( includeExcludeFilter().create(), true ) ).contains( "new.txt" ) );
+
+        assertEquals( Arrays.asList( "d3/e1/file.txt" ), paths( fs.find( includeExcludeFilter().
+            addInclude( new PathExpression( "/d3/e1/*" ) ).
+            create(), true ) ) );
+
+        // The paths of the contents are relative to the directory that is searched
+        assertEquals( Arrays.asList( "d3/e1", "file.txt" ),
+                      paths( fs.resolve( "d3/e1" ).find( includeExcludeFilter().create() ) ) );
+
+        assertEquals( Collections.<String>emptyList(), paths( fs.resolve( "missing" ).find( includeExcludeFilter().
+            create(), true ) ) );
+    }
+
+    public void testFoundFilesRememberTheirAttributes()
+        throws Exception
+    {
+        File dir = util.getTestFile( "target/local-fs/attributes" );
+        FileUtils.deleteDirectory( dir );
+        write( dir, "a.txt" );
+
+        LocalFs fs = new LocalFs( dir );
+        LocalFs a = fs.find( includeExcludeFilter().create(), true ).iterator().next();
+        assertEquals( 5, a.size() );
+
+        FileUtils.fileWrite( a.file.getAbsolutePath(), "Hello World!" );
+        assertTrue( a.file.setLastModified( 1000000000000L ) );
+
+        // The attributes from the walk are used until the file is invalidated
+        assertEquals( 5, a.size() );
+        assertTrue( a.isFile() );
+        assertEquals( 12, a.invalidate().size() );
+        assertEquals( 1000000000000L, a.lastModified().toDateTime().getMillis() );
+
+        // Files that are not found are always queried
+        LocalFs b = fs.resolve( "b.txt" );
+        assertFalse( b.exists() );
+        write( dir, "b.txt" );
+        assertTrue( b.exists() );
+
+        // Modifying a file through it invalidates it
+        a = fs.find( includeExcludeFilter().create(), true ).iterator().next();
+        a.copyFrom( b );
+        assertEquals( 5, a.size() );
+    }
+
+    public void testFindListsDirectoriesAsTheyAreReached()
+        throws Exception
+    {
+        File dir = util.getTestFile( "target/local-fs/lazy" );
+        FileUtils.deleteDirectory( dir );
+        write( dir, "a/b/c/file.txt" );
+
+        Iterator<LocalFs> it = new LocalFs( dir ).find( includeExcludeFilter().create(), false ).iterator();
+        assertEquals( ".", it.next().relativePath().string );
+        assertEquals( "a", it.next().relativePath().string );
+
+        // The contents of a/b are read after the iterator has reached a
+        write( dir, "a/b/late.txt" );
+
+        List<String> paths = new ArrayList<String>();
+        while ( it.hasNext() )
+        {
+            paths.add( it.next().relativePath().string );
+        }
+        Collections.sort( paths );
+        assertEquals( Arrays.asList( "a/b", "a/b/c", "a/b/c/file.txt", "a/b/late.txt" ), paths );
+    }
+
+    public void testLinkFrom()
+        throws Exception
+    {
+        File dir = util.getTestFile( "target/local-fs/link" );
+        FileUtils.deleteDirectory( dir );
+        write( dir, "source.txt" );
+        write( dir, "other.txt" );
+
+        LocalFs fs = new LocalFs( dir );
+        LocalFs source = fs.resolve( "source.txt" );
+        LocalFs a = fs.resolve( "assembly/a" );
+
+        a.linkFrom( source );
+        assertTrue( Files.isSameFile( source.file.toPath(), a.file.toPath() ) );
+
+        // Copying over a link has to replace the link, not write through it
+        a.copyFrom( fs.resolve( "other.txt" ) );
+        assertFalse( Files.isSameFile( source.file.toPath(), a.file.toPath() ) );
+        assertEquals( "other.txt", FileUtils.fileRead( a.file ) );
+        assertEquals( "source.txt", FileUtils.fileRead( source.file ) );
+    }
+
+    private static void write( File dir, String path )
+        throws IOException
+    {
+        File file = new File( dir, path );
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite( file.getAbsolutePath(), path );
+    }
+
+    private static List<String> paths( Iterable<LocalFs> files )
+    {
+        List<String> paths = new ArrayList<String>();
+        for ( LocalFs file : files )
+        {
+            paths.add( file.relativePath().string );
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,186 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+import junit.framework.*;
+import org.apache.commons.compress.archivers.tar.*;
+import org.apache.commons.compress.compressors.bzip2.*;
+import org.apache.commons.compress.compressors.gzip.*;
+import org.apache.commons.compress.compressors.xz.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.util.*;
+
+import static com.stratio.mojo.unix.io.IncludeExcludeFilter.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
+public class TarFsRootTest
+    extends TestCase
+{
+    TestUtil util = new TestUtil( this );
+
+    public void testCompressions()
+        throws Exception
+    {
+        for ( String name : new String[]{ "plain.tar", "gzip.tar.gz", "bzip2.tar.bz2", "xz.tar.xz" } )
+        {
+            File file = tar( name );
+
+            assertContent( new TarFsRoot( file ), file );
+            // Read the compressed archives sequentially
+            assertContent( new TarFsRoot( file, file, file.getPath(), false, 0 ), file );
+        }
+    }
+
+    public void testFind()
+        throws Exception
+    {
+        TarFsRoot root = new TarFsRoot( tar( "find.tar.gz" ) );
+        try
+        {
+            assertEquals( Arrays.asList( "opt", "opt/app", "opt/app/README", "opt/app/bin", "opt/app/bin/app",
+                                         "opt/app/bin/app-link", "opt/app/bin/app.sh", "opt/app/lib",
+                                         "opt/app/lib/app.jar" ),
+                          names( root.find( includeExcludeFilter().create() ) ) );
+
+            assertEquals( Arrays.asList( "opt", "opt/app", "opt/app/README", "opt/app/bin", "opt/app/lib" ),
+                          names( root.find( includeExcludeFilter().
+                              addExclude( new PathExpression( "/opt/app/*/**" ) ).
+                              create() ) ) );
+        }
+        finally
+        {
+            root.close();
+        }
+    }
+
+    private void assertContent( TarFsRoot root, File file )
+        throws IOException
+    {
+        try
+        {
+            assertEquals( file.getPath() + "!/opt/app/README", root.resolve( relativePath( "opt/app/README" ) ).
+                absolutePath() );
+
+            assertTrue( root.resolve( relativePath( "opt/app" ) ).isDirectory() );
+            assertFalse( root.resolve( relativePath( "opt/app" ) ).isFile() );
+
+            // Read out of order
+            assertEquals( "lib", read( root.resolve( relativePath( "opt/app/lib/app.jar" ) ) ) );
+            assertEquals( "Read me!", read( root.resolve( relativePath( "opt/app/README" ) ) ) );
+            assertEquals( 8, root.resolve( relativePath( "/opt/app/README" ) ).size() );
+
+            // Hard links share the content of their target
+            TarFs link = root.resolve( relativePath( "opt/app/bin/app" ) );
+            assertTrue( link.isFile() );
+            assertEquals( 12, link.size() );
+            assertEquals( "#!/bin/sh -e", read( link ) );
+
+            // Symbolic links exist, but are neither files nor directories
+            TarFs symlink = root.resolve( relativePath( "opt/app/bin/app-link" ) );
+            assertTrue( symlink.exists() );
+            assertFalse( symlink.isFile() );
+            assertFalse( symlink.isDirectory() );
+
+            assertFalse( root.resolve( relativePath( "opt/app/missing" ) ).exists() );
+        }
+        finally
+        {
+            root.close();
+        }
+    }
+
+    private File tar( String name )
+        throws IOException
+    {
+        File file = util.getTestFile( "target/tar-fs-root/" + name );
+        file.getParentFile().mkdirs();
+
+        OutputStream os = new FileOutputStream( file );
+        if ( name.endsWith( ".gz" ) )
+        {
+            os = new GzipCompressorOutputStream( os );
+        }
+        else if ( name.endsWith( ".bz2" ) )
+        {
+            os = new BZip2CompressorOutputStream( os );
+        }
+        else if ( name.endsWith( ".xz" ) )
+        {
+            os = new XZCompressorOutputStream( os );
+        }
+
+        TarArchiveOutputStream tar = new TarArchiveOutputStream( os );
+        try
+        {
+            tar.setLongFileMode( TarArchiveOutputStream.LONGFILE_POSIX );
+            directory( tar, "./opt/" );
+            directory( tar, "./opt/app/" );
+            directory( tar, "./opt/app/bin/" );
+            file( tar, "./opt/app/bin/app.sh", "#!/bin/sh -e" );
+            link( tar, "./opt/app/bin/app", TarConstants.LF_LINK, "./opt/app/bin/app.sh" );
+            link( tar, "./opt/app/bin/app-link", TarConstants.LF_SYMLINK, "app.sh" );
+            file( tar, "./opt/app/README", "Read me!" );
+            directory( tar, "./opt/app/lib/" );
+            file( tar, "./opt/app/lib/app.jar", "lib" );
+        }
+        finally
+        {
+            IOUtil.close( tar );
+        }
+
+        return file;
+    }
+
+    private static void directory( TarArchiveOutputStream tar, String name )
+        throws IOException
+    {
+        tar.putArchiveEntry( new TarArchiveEntry( name ) );
+        tar.closeArchiveEntry();
+    }
+
+    private static void file( TarArchiveOutputStream tar, String name, String content )
+        throws IOException
+    {
+        byte[] bytes = content.getBytes( "UTF-8" );
+        TarArchiveEntry entry = new TarArchiveEntry( name );
+        entry.setSize( bytes.length );
+        tar.putArchiveEntry( entry );
+        tar.write( bytes, 0, bytes.length );
+        tar.closeArchiveEntry();
+    }
+
+    private static void link( TarArchiveOutputStream tar, String name, byte type, String target )
+        throws IOException
+    {
+        TarArchiveEntry entry = new TarArchiveEntry( name, type );
+        entry.setLinkName( target );
+        tar.putArchiveEntry( entry );
+        tar.closeArchiveEntry();
+    }
+
+    static String read( Fs<?> fs )
+        throws IOException
+    {
+        InputStream is = fs.inputStream();
+        try
+        {
+            return IOUtil.toString( is, "UTF-8" );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+    }
+
+    private static List<String> names( Iterable<TarFs> files )
+    {
+        List<String> names = new ArrayList<String>();
+        for ( TarFs file : files )
+        {
+            names.add( file.relativePath().string );
+        }
+        return names;
+    }
+}
@@ -0,0 +1,223 @@
+ package com.stratio.mojo.unix.io.fs;
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+import junit.framework.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import static com.stratio.mojo.unix.io.IncludeExcludeFilter.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
+public class ZipFsRootTest
+    extends TestCase
+{
+    TestUtil util = new TestUtil( this );
+
+    public void testResolve()
+        throws Exception
+    {
+        ZipFsRoot root = new ZipFsRoot( zip( "resolve.zip", "a/", "a/b.txt", "a-b.txt", "/c/d.txt", "./e.txt" ) );
+        try
+        {
+            assertTrue( root.resolve( relativePath( "a" ) ).exists() );
+            assertTrue( root.resolve( relativePath( "a/b.txt" ) ).exists() );
+            assertEquals( "a/b.txt", root.resolve( relativePath( "a/b.txt" ) ).entry.getName() );
+            assertTrue( root.resolve( relativePath( "a-b.txt" ) ).exists() );
+            assertTrue( root.resolve( relativePath( "c/d.txt" ) ).exists() );
+            assertTrue( root.resolve( relativePath( "e.txt" ) ).exists() );
+
+            // Directories without an entry of their own and missing files don't exist, and are not remembered
+            assertFalse( root.resolve( relativePath( "c" ) ).exists() );
+            assertFalse( root.resolve( relativePath( "a/x.txt" ) ).exists() );
+            assertFalse( root.resolve( relativePath( "a/x.txt" ) ).exists() );
+            assertEquals( 5, names( root.find( includeExcludeFilter().create() ) ).size() );
+
+            InputStream is = root.resolve( relativePath( "a/b.txt" ) ).inputStream();
+            try
+            {
+                assertEquals( "a/b.txt", IOUtil.toString( is ) );
+            }
+            finally
+            {
+                IOUtil.close( is );
+            }
+        }
+        finally
+        {
+            root.close();
+        }
+    }
+
+    public void testFind()
+        throws Exception
+    {
+        ZipFsRoot root = new ZipFsRoot( zip( "find.zip", "x/y/z.txt", "a/b/c.txt", "a/", "a/b/", "a.txt",
+                                              "a/b.txt", "a/CVS/Entries", "a/c/d/e.txt" ) );
+        try
+        {
+            assertEquals( Arrays.asList( "a", "a/b", "a/b/c.txt", "a/b.txt", "a/c/d/e.txt", "a.txt", "x/y/z.txt" ),
+                          names( root.find( includeExcludeFilter().create() ) ) );
+
+            assertEquals( Arrays.asList( "a/b/c.txt", "a/c/d/e.txt" ),
+                          names( root.find( includeExcludeFilter().
+                              addInclude( new PathExpression( "/a/**/*.txt" ) ).
+                              create() ) ) );
+
+            assertEquals( Arrays.asList( "a", "a/b", "a/b.txt", "a/c/d/e.txt", "a.txt", "x/y/z.txt" ),
+                          names( root.find( includeExcludeFilter().
+                              addExclude( new PathExpression( "/a/b/**" ) ).
+                              create() ) ) );
+        }
+        finally
+        {
+            root.close();
+        }
+    }
+
+    public void testDataInFrontOfTheArchive()
+        throws Exception
+    {
+        // Like an executable jar with a launch script in front of it
+        File jar = zip( "prefixed.jar", "a/", "a/x.txt", "b.txt", "c/d.txt" );
+        byte[] bytes = FileUtils.fileRead( jar, "ISO-8859-1" ).getBytes( "ISO-8859-1" );
+        File prefixed = util.getTestFile( "target/zip-fs-root/prefixed-exec.jar" );
+        OutputStream os = new FileOutputStream( prefixed );
+        try
+        {
+            os.write( "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes( "UTF-8" ) );
+            os.write( bytes );
+        }
+        finally
+        {
+            IOUtil.close( os );
+        }
+
+        ZipFile zipFile = new ZipFile( prefixed );
+        assertEquals( 4, zipFile.size() );
+        zipFile.close();
+
+        ZipFsRoot root = new ZipFsRoot( prefixed );
+        try
+        {
+            assertEquals( Arrays.asList( "a", "a/x.txt", "b.txt", "c/d.txt" ),
+                          names( root.find( includeExcludeFilter().create() ) ) );
+            assertTrue( root.resolve( relativePath( "a/x.txt" ) ).exists() );
+            assertEquals( "c/d.txt", TarFsRootTest.read( root.resolve( relativePath( "c/d.txt" ) ) ) );
+        }
+        finally
+        {
+            root.close();
+        }
+    }
+
+    public void testInvalidCentralDirectory()
+        throws Exception
+    {
+        File zip = zip( "invalid.zip", "a.txt" );
+        RandomAccessFile raf = new RandomAccessFile( zip, "rw" );
+        try
+        {
+            // Break the signature of the first central directory header
+            raf.seek( raf.length() - 22 + 16 );
+            int offset = raf.read() | raf.read() << 8 | raf.read() << 16 | raf.read() << 24;
+            raf.seek( offset );
+            raf.write( 0 );
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        try
+        {
+            new ZipFsRoot( zip );
+            fail( "Expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    public void testStoredAndDeflatedEntries()
+        throws Exception
+    {
+        File file = util.getTestFile( "target/zip-fs-root/methods.zip" );
+        byte[] stored = "stored".getBytes( "UTF-8" );
+        byte[] deflated = StringUtils.repeat( "deflated ", 1000 ).getBytes( "UTF-8" );
+
+        ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            ZipEntry entry = new ZipEntry( "stored.txt" );
+            entry.setMethod( ZipEntry.STORED );
+            entry.setSize( stored.length );
+            CRC32 crc = new CRC32();
+            crc.update( stored );
+            entry.setCrc( crc.getValue() );
+            zos.putNextEntry( entry );
+            zos.write( stored );
+            zos.putNextEntry( new ZipEntry( "deflated.txt" ) );
+            zos.write( deflated );
+            zos.closeEntry();
+        }
+        finally
+        {
+            IOUtil.close( zos );
+        }
+
+        ZipFsRoot root = new ZipFsRoot( file );
+        try
+        {
+            assertEquals( "stored", TarFsRootTest.read( root.resolve( relativePath( "stored.txt" ) ) ) );
+            ZipFs fs = root.resolve( relativePath( "deflated.txt" ) );
+            assertEquals( deflated.length, fs.size() );
+            assertEquals( new String( deflated, "UTF-8" ), TarFsRootTest.read( fs ) );
+        }
+        finally
+        {
+            root.close();
+        }
+    }
+
+    private File zip( String name, String... entries )
+        throws IOException
+    {
+        File file = util.getTestFile( "target/zip-fs-root/" + name );
+        file.getParentFile().mkdirs();
+
+        ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            for ( String entry : entries )
+            {
+                zos.putNextEntry( new ZipEntry( entry ) );
+                if ( !entry.endsWith( "/" ) )
+                {
+                    zos.write( entry.replaceFirst( "^\\.?/", "" ).getBytes( "UTF-8" ) );
+                }
+                zos.closeEntry();
+            }
+        }
+        finally
+        {
+            IOUtil.close( zos );
+        }
+
+        return file;
+    }
+
+    private static List<String> names( Iterable<ZipFs> files )
+    {
+        List<String> names = new ArrayList<String>();
+        for ( ZipFs file : files )
+        {
+            names.add( file.relativePath().string );
+        }
+        return names;
+    }
+}
@@ -0,0 +1,118 @@
+ package com.stratio.mojo.unix.util;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.*;
+import junit.framework.*;
+import static com.stratio.mojo.unix.UnixFileMode.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+import static com.stratio.mojo.unix.util.UnixUtil.*;
+import static org.codehaus.plexus.util.FileUtils.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class UnixUtilTest
+    extends TestCase
+{
+    private final TestUtil testUtil = new TestUtil( this );
+
+    public void testChmodAndSymlink()
+        throws Exception
+    {
+        File dir = clean( "target/unix-util/chmod-and-symlink" );
+        File file = new File( dir, "file" );
+        fileWrite( file.getAbsolutePath(), "yo" );
+
+        chmod( file, "0750" );
+        assertEquals( "rwxr-x---", posix( file ) );
+
+        chmod( file, _0644 );
+        assertEquals( "rw-r--r--", posix( file ) );
+
+        symlink( dir, "file", relativePath( "link" ) );
+        Path link = new File( dir, "link" ).toPath();
+        assertTrue( Files.isSymbolicLink( link ) );
+        assertEquals( "file", Files.readSymbolicLink( link ).toString() );
+
+        try
+        {
+            symlink( dir, "file", relativePath( "link" ) );
+            fail( "Expected an IOException" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    public void testChmodKeepsSpecialBits()
+        throws Exception
+    {
+        File dir = clean( "target/unix-util/chmod-special-bits" );
+        File file = new File( dir, "file" );
+        fileWrite( file.getAbsolutePath(), "yo" );
+
+        chmod( file, "4755" );
+        assertEquals( 04755, mode( file ) );
+
+        chmod( file, fromInt( 02750 ) );
+        assertEquals( 02750, mode( file ) );
+
+        chmod( dir, "1777" );
+        assertEquals( 01777, mode( dir ) );
+    }
+
+    private static int mode( File file )
+        throws IOException
+    {
+        return (Integer) Files.getAttribute( file.toPath(), "unix:mode" ) & 07777;
+    }
+
+    private File clean( String path )
+        throws IOException
+    {
+        File dir = testUtil.getTestFile( path );
+
+        if ( dir.exists() )
+        {
+            deleteDirectory( dir );
+        }
+
+        assertTrue( dir.mkdirs() );
+
+        return dir;
+    }
+
+    private static String posix( File file )
+        throws IOException
+    {
+        return PosixFilePermissions.toString( Files.getPosixFilePermissions( file.toPath() ) );
+    }
+}
@@ -0,0 +1,378 @@
+ package com.stratio.mojo.unix.core;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import fj.*;
+import fj.data.*;
+import com.stratio.mojo.unix.*;
+import com.stratio.mojo.unix.UnixFsObject.*;
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.io.fs.*;
+import com.stratio.mojo.unix.util.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+
+import static com.stratio.mojo.unix.BasicPackageFileSystemObject.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static fj.data.Option.*;
+
+/**
+ * Remembers what each package was built from so a package can be reused when none of its inputs has changed.
+ * <p/>
+ * The key of a package is a SHA-256 digest of the package's configuration, the metadata of every object in the
+ * assembled package (after all operations has been applied) and the digest of the content of every source file. The
+ * digests of source files are remembered by path, size and modification time so unchanged files are only read once.
+ * <p/>
+ * All files are stored under the cache directory, usually <code>target/unix/.cache</code>.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class BuildCache
+{
+    private static final String DIGESTS = "digests.properties";
+
+    private static final IncludeExcludeFilter allFiles = IncludeExcludeFilter.includeExcludeFilter().
+        noDefaultExcludes().
+        create();
+
+    private final LocalFs directory;
+
+    private Properties digests;
+
+    private boolean digestsChanged;
+
+    public BuildCache( LocalFs directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns a collector that passes everything on to <code>fileCollector</code> while keeping track of the package
+     * contents.
+     */
+    public Recorder recorder( FileCollector fileCollector )
+    {
+        return new Recorder( fileCollector );
+    }
+
+    /**
+     * True if the package file was created by this cache with the same key and hasn't been touched since.
+     */
+    public boolean isUpToDate( String name, String key, File packageFile )
+        throws IOException
+    {
+        File file = entryFile( name );
+
+        if ( !file.isFile() || !packageFile.isFile() )
+        {
+            return false;
+        }
+
+        Properties entry = load( file );
+
+        return key.equals( entry.getProperty( "key" ) ) &&
+            String.valueOf( packageFile.length() ).equals( entry.getProperty( "size" ) ) &&
+            String.valueOf( packageFile.lastModified() ).equals( entry.getProperty( "lastModified" ) );
+    }
+
+    public void store( String name, String key, File packageFile )
+        throws IOException
+    {
+        Properties entry = new Properties();
+        entry.setProperty( "key", key );
+        entry.setProperty( "size", String.valueOf( packageFile.length() ) );
+        entry.setProperty( "lastModified", String.valueOf( packageFile.lastModified() ) );
+
+        store( entry, entryFile( name ) );
+    }
+
+    /**
+     * Removes the entry for a package, for example if building it failed.
+     */
+    public void remove( String name )
+    {
+        entryFile( name ).delete();
+    }
+
+    /**
+     * Writes the remembered source file digests.
+     */
+    public synchronized void save()
+        throws IOException
+    {
+        if ( digests != null && digestsChanged )
+        {
+            store( digests, new File( directory.file, DIGESTS ) );
+            digestsChanged = false;
+        }
+    }
+
+    private File entryFile( String name )
+    {
+        return new File( directory.file, name + ".properties" );
+    }
+
+    /**
+     * Returns the SHA-256 digest of the contents of the file, reusing the last digest if the file has the same size
+     * and modification time.
+     */
+    synchronized String digest( Fs<?> file )
+        throws IOException
+    {
+        if ( digests == null )
+        {
+            File f = new File( directory.file, DIGESTS );
+            digests = f.isFile() ? load( f ) : new Properties();
+        }
+
+        String stamp = file.size() + " " + file.lastModified().toDateTime().getMillis() + " ";
+        String path = file.absolutePath();
+        String value = digests.getProperty( path );
+
+        if ( value != null && value.startsWith( stamp ) )
+        {
+            return value.substring( stamp.length() );
+        }
+
+        MessageDigest digest = sha256();
+        InputStream is = file.inputStream();
+        try
+        {
+            byte[] buffer = new byte[1024 * 128];
+            int read;
+            while ( ( read = is.read( buffer ) ) != -1 )
+            {
+                digest.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+
+        String hex = hex( digest.digest() );
+        digests.setProperty( path, stamp + hex );
+        digestsChanged = true;
+        return hex;
+    }
+
+    private void store( Properties properties, File file )
+        throws IOException
+    {
+        directory.mkdir();
+
+        OutputStream os = null;
+        try
+        {
+            os = new FileOutputStream( file );
+            properties.store( os, null );
+        }
+        finally
+        {
+            IOUtil.close( os );
+        }
+    }
+
+    private static Properties load( File file )
+        throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream is = null;
+        try
+        {
+            is = new FileInputStream( file );
+            properties.load( is );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+        return properties;
+    }
+
+    private static MessageDigest sha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static String hex( byte[] bytes )
+    {
+        StringBuilder s = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            s.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return s.toString();
+    }
+
+    /**
+     * fj's lists don't implement toString().
+     */
+    private static void append( StringBuilder s, Iterable<?> values )
+    {
+        s.append( " [" );
+        for ( Object value : values )
+        {
+            s.append( value ).append( ';' );
+        }
+        s.append( ']' );
+    }
+
+    public class Recorder
+        implements FileCollector
+    {
+        private final FileCollector fileCollector;
+
+        private PackageFileSystem<Option<Fs<?>>> fileSystem;
+
+        private final java.util.List<File> extraInputs = new ArrayList<File>();
+
+        private Recorder( FileCollector fileCollector )
+        {
+            this.fileCollector = fileCollector;
+
+            Directory root = directory( RelativePath.BASE, new LocalDateTime( 0 ), FileAttributes.EMPTY );
+            fileSystem = PackageFileSystem.create( basicPackageFSO( root, Option.<Fs<?>>none() ),
+                                                   basicPackageFSO( root, Option.<Fs<?>>none() ) );
+        }
+
+        public void addDirectory( Directory directory )
+            throws IOException
+        {
+            fileCollector.addDirectory( directory );
+            fileSystem = fileSystem.addDirectory( basicPackageFSO( directory, Option.<Fs<?>>none() ) );
+        }
+
+        public void addFile( Fs<?> fromFile, RegularFile file )
+            throws IOException
+        {
+            fileCollector.addFile( fromFile, file );
+            fileSystem = fileSystem.addFile( basicPackageFSO( file, Option.<Fs<?>>some( fromFile ) ) );
+        }
+
+        public void addSymlink( Symlink symlink )
+            throws IOException
+        {
+            fileCollector.addSymlink( symlink );
+            fileSystem = fileSystem.addSymlink( basicPackageFSO( symlink, Option.<Fs<?>>none() ) );
+        }
+
+        public void apply( F<UnixFsObject, Option<UnixFsObject>> f )
+        {
+            fileCollector.apply( f );
+            fileSystem = fileSystem.apply( f );
+        }
+
+        /**
+         * Adds a file or directory that is read while packaging, like the package scripts.
+         */
+        public Recorder addInput( File file )
+        {
+            extraInputs.add( file );
+            return this;
+        }
+
+        /**
+         * Calculates the key of the package from the configuration and everything that was collected.
+         */
+        public String key( String configuration )
+            throws IOException
+        {
+            StringBuilder s = new StringBuilder( configuration ).append( '\n' );
+
+            for ( PackageFileSystemObject<Option<Fs<?>>> object : fileSystem.prettify().toList() )
+            {
+                UnixFsObject o = object.getUnixFsObject();
+                FileAttributes attributes = o.attributes;
+
+                // The timestamps are left out as directories and symlinks often are stamped with the current time.
+                s.append( o.getClass().getSimpleName() ).append( ' ' ).
+                    append( o.path.string ).append( ' ' ).
+                    append( attributes.user.orSome( "-" ) ).append( ' ' ).
+                    append( attributes.group.orSome( "-" ) ).append( ' ' ).
+                    append( attributes.mode.map( UnixFileMode.showOcalString ).orSome( "-" ) );
+                append( s, attributes.tags );
+
+                if ( o instanceof RegularFile )
+                {
+                    s.append( ' ' ).append( o.size ).
+                        append( ' ' ).append( o.lineEnding );
+                    append( s, o.replacers );
+                }
+                else if ( o instanceof Symlink )
+                {
+                    s.append( " -> " ).append( ( (Symlink) o ).value );
+                }
+
+                if ( object.getExtension().isSome() )
+                {
+                    s.append( ' ' ).append( digest( object.getExtension().some() ) );
+                }
+
+                s.append( '\n' );
+            }
+
+            for ( File input : extraInputs )
+            {
+                LocalFs fs = new LocalFs( input );
+
+                if ( !fs.exists() )
+                {
+                    continue;
+                }
+
+                for ( LocalFs file : fs.find( allFiles, true ) )
+                {
+                    s.append( "input " ).append( file.absolutePath() ).append( ' ' ).append( digest( file ) ).append( '\n' );
+                }
+
+                if ( fs.isFile() )
+                {
+                    s.append( "input " ).append( fs.absolutePath() ).append( ' ' ).append( digest( fs ) ).append( '\n' );
+                }
+            }
+
+            try
+            {
+                return hex( sha256().digest( s.toString().getBytes( "UTF-8" ) ) );
+            }
+            catch ( UnsupportedEncodingException e )
+            {
+                throw new RuntimeException( e );
+            }
+        }
+    }
+}
@@ -31,7 +31,10 @@ import com.stratio.mojo.unix.io.*;
 import com.stratio.mojo.unix.io.fs.*;
 import com.stratio.mojo.unix.util.*;
 
+import org.codehaus.plexus.util.*;
+
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
 import java.util.List;
 
@@ -51,8 +54,28 @@ public class FsFileCollector
 
     public final LocalFs root;
 
+    private final BlobStore blobStore;
+
+    private final Charset filterEncoding;
+
+    /**
+     * Filters files with the platform encoding.
+     */
     public FsFileCollector( LocalFs root) throws IOException {
+        this( root, null, FILTER_CHARSET );
+    }
+
+    /**
+     * @param blobStore      If not null, filtered files and files that are not on the local file system are written
+     *                       to the blob store and linked from there.
+     * @param filterEncoding The encoding of the files that are filtered.
+     */
+    public FsFileCollector( LocalFs root, BlobStore blobStore, Charset filterEncoding )
+        throws IOException
+    {
         this.root = root;
+        this.blobStore = blobStore;
+        this.filterEncoding = filterEncoding;
         root.mkdir();
     }
 
@@ -152,21 +175,39 @@ public class FsFileCollector
                 adjustedTo = f.f( adjustedTo ).orSome( adjustedTo );
             }
 
-            P2<InputStream, Option<Long>> p2 =
-                filtersAndLineEndingHandingInputStream( adjustedTo, from.inputStream() );
+            LocalFs target = root.resolve( adjustedTo.path );
 
-            root.resolve( adjustedTo.path ).copyFrom( from, p2._1() );
+            if ( blobStore != null )
+            {
+                target.linkFrom( blob( blobStore, from, adjustedTo, filterEncoding ) );
+                return;
+            }
+
+            target.copyFrom( from, filteringInputStream( adjustedTo, from.inputStream(), filterEncoding ) );
         }
     }
 
     /**
-     * Returns a pair with the new size and an InputStream that will contain the properly filtered data.
+     * The platform encoding, used by {@link #FsFileCollector(LocalFs)}.
+     */
+    public static final Charset FILTER_CHARSET = Charset.defaultCharset();
+
+    /**
+     * Files that are smaller than this after filtering are kept in memory, larger files are spilled to a temporary
+     * file.
+     */
+    private static final int SPILL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Returns a pair with an InputStream that will contain the properly filtered data and the new size, for formats
+     * that has to know the size of an entry before writing it.
      * <p/>
-     * Technically this could be streaming, but *should* only be applied to smaller files. The main problem is only
-     * heap usage so a 100MB file should be easily process in-memory. But not many of them.
+     * The filtered data is buffered in memory if it is small, otherwise it is written to a temporary file which is
+     * deleted when the returned stream is closed.
      */
     public static P2<InputStream, Option<Long>> filtersAndLineEndingHandingInputStream( UnixFsObject file,
-                                                                                        InputStream inputStream )
+                                                                                        InputStream inputStream,
+                                                                                        Charset charset )
         throws IOException
     {
         // With no filters *and* keeping the line endings we can stream the file directly. Like a BOSS!
@@ -175,14 +216,84 @@ public class FsFileCollector
             return p( inputStream, Option.<Long>none() );
         }
 
+        return spill( filteringInputStream( file, inputStream, charset ) );
+    }
+
+    /**
+     * Like {@link #filtersAndLineEndingHandingInputStream(UnixFsObject, InputStream, Charset)}, but a file that has to
+     * be filtered is filtered into the blob store, where it can be reused by other packages, instead of a temporary
+     * file.
+     *
+     * @param blobStore The blob store, or null to spill to a temporary file.
+     */
+    public static P2<InputStream, Option<Long>> filtersAndLineEndingHandingInputStream( UnixFsObject file,
+                                                                                        Fs<?> from,
+                                                                                        BlobStore blobStore,
+                                                                                        Charset charset )
+        throws IOException
+    {
+        if ( blobStore == null || !needsFiltering( file ) )
+        {
+            return filtersAndLineEndingHandingInputStream( file, from.inputStream(), charset );
+        }
+
+        LocalFs blob = blob( blobStore, from, file, charset );
+
+        return p( blob.inputStream(), some( blob.size() ) );
+    }
+
+    /**
+     * Returns the blob with the filtered contents of <code>from</code>, only reading and filtering the file if it has
+     * changed since it was last stored.
+     */
+    public static LocalFs blob( BlobStore blobStore, Fs<?> from, UnixFsObject file, Charset charset )
+        throws IOException
+    {
+        String variant = filterVariant( file, charset );
+
+        Option<LocalFs> blob = blobStore.get( from, variant );
+
+        if ( blob.isSome() )
+        {
+            return blob.some();
+        }
+
+        return blobStore.put( from, variant, filteringInputStream( file, from.inputStream(), charset ) );
+    }
+
+    /**
+     * A string identifying how the file is filtered, empty if it isn't.
+     */
+    private static String filterVariant( UnixFsObject file, Charset charset )
+    {
+        if ( !needsFiltering( file ) )
+        {
+            return "";
+        }
+
+        StringBuilder s = new StringBuilder( file.lineEnding.name() ).append( ';' ).append( charset.name() );
+        for ( Object replacer : file.replacers )
+        {
+            s.append( ';' ).append( replacer );
+        }
+        return s.toString();
+    }
+
+    /**
+     * Returns a stream that filters the file as it is read, for when the size of the filtered file is not needed.
+     */
+    public static InputStream filteringInputStream( UnixFsObject file, InputStream inputStream, Charset charset )
+        throws IOException
+    {
+        if ( !needsFiltering( file ) )
+        {
+            return inputStream;
+        }
+
         // If the file has to be either filtered or have its line endings changed, it has to be read through a Reader.
         // Detecting the line endings and skipping line ending conversion might fail (because of inconsistent line
         // endings) so we'll convert those too.
 
-        // We have to buffer the file in memory. It might be a good idea to check if the file
-        // is big (> 10MB) and copy it to disk. It might be smart to print a warning if that
-        // happens as the user probably has a weird configuration. Like trying to filter a 100MB EAR file.
-
         byte[] eol;
         if ( file.lineEnding.isKeep() )
         {
@@ -195,36 +306,75 @@ public class FsFileCollector
             eol = file.lineEnding.eol();
         }
 
-        // TODO: Ideally create an output stream that doesn't create a new array on
-        // toByteArray, but instead can be used as an InputStream directly.
-        // TODO: This is going to add additional EOL at the end of the file. Fuck it.
-        ByteArrayOutputStream output = new ByteArrayOutputStream( (int) file.size );
-
-        // This implicitly uses the platform encoding. This will probably bite someone.
-        BufferedReader reader = new BufferedReader( new InputStreamReader( inputStream ), 1024 * 128 );
-
-        String line = reader.readLine();
+        return new FilteringInputStream( inputStream, charset, file.replacers, eol );
+    }
 
-        while ( line != null )
+    private static P2<InputStream, Option<Long>> spill( InputStream inputStream )
+        throws IOException
+    {
+        File tmp = null;
+        OutputStream output = null;
+        try
         {
-            Iterable<Replacer> replacers = file.replacers;
+            Buffer buffer = new Buffer();
+            byte[] bytes = new byte[1024 * 8];
 
-            for ( Replacer replacer : replacers )
+            while ( buffer.size() < SPILL_THRESHOLD )
             {
-                line = replacer.replace( line );
+                int read = inputStream.read( bytes );
+
+                if ( read == -1 )
+                {
+                    return p( buffer.inputStream(), some( (long) buffer.size() ) );
+                }
+
+                buffer.write( bytes, 0, read );
             }
 
-            output.write( line.getBytes() );
-            output.write( eol );
+            tmp = File.createTempFile( "unix-filter-", ".tmp" );
+            tmp.deleteOnExit();
+            output = new FileOutputStream( tmp );
+            buffer.writeTo( output );
+            buffer = null;
+            IOUtil.copy( inputStream, output, 1024 * 128 );
+            output.close();
+            output = null;
 
-            line = reader.readLine();
+            final File file = tmp;
+            tmp = null;
+
+            return p( (InputStream) new FileInputStream( file )
+            {
+                public void close()
+                    throws IOException
+                {
+                    super.close();
+                    file.delete();
+                }
+            }, some( file.length() ) );
         }
-        inputStream.close();
+        finally
+        {
+            IOUtil.close( output );
+            IOUtil.close( inputStream );
 
-        inputStream = new ByteArrayInputStream( output.toByteArray() );
-        long size = output.size();
+            if ( tmp != null )
+            {
+                tmp.delete();
+            }
+        }
+    }
 
-        return p( inputStream, some( size ) );
+    /**
+     * A ByteArrayOutputStream that can be read without copying its contents.
+     */
+    private static class Buffer
+        extends ByteArrayOutputStream
+    {
+        public InputStream inputStream()
+        {
+            return new ByteArrayInputStream( buf, 0, count );
+        }
     }
 
     public static boolean needsFiltering( UnixFsObject file )
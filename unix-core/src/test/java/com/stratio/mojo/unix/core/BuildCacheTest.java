@@ -0,0 +1,74 @@
+package com.stratio.mojo.unix.core;
+
+import junit.framework.*;
+import com.stratio.mojo.unix.*;
+import com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import com.stratio.mojo.unix.io.fs.*;
+import com.stratio.mojo.unix.util.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+import static org.codehaus.plexus.util.FileUtils.*;
+import org.joda.time.*;
+
+import java.io.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class BuildCacheTest
+    extends TestCase
+{
+    private final TestUtil testUtil = new TestUtil( this );
+
+    public void testKey()
+        throws Exception
+    {
+        File dir = testUtil.getTestFile( "target/build-cache" );
+        if ( dir.exists() )
+        {
+            deleteDirectory( dir );
+        }
+        assertTrue( dir.mkdirs() );
+
+        File source = new File( dir, "source.txt" );
+        fileWrite( source.getAbsolutePath(), "yo" );
+
+        BuildCache cache = new BuildCache( new LocalFs( new File( dir, "cache" ) ) );
+
+        String key = key( cache, source, "config" );
+        assertEquals( key, key( cache, source, "config" ) );
+        assertFalse( key.equals( key( cache, source, "other config" ) ) );
+
+        File packageFile = new File( dir, "package.deb" );
+        fileWrite( packageFile.getAbsolutePath(), "package" );
+
+        assertFalse( cache.isUpToDate( "package", key, packageFile ) );
+        cache.store( "package", key, packageFile );
+        cache.save();
+        assertTrue( cache.isUpToDate( "package", key, packageFile ) );
+
+        // A new cache has to pick up the remembered state from disk
+        BuildCache cache2 = new BuildCache( new LocalFs( new File( dir, "cache" ) ) );
+        assertEquals( key, key( cache2, source, "config" ) );
+        assertTrue( cache2.isUpToDate( "package", key, packageFile ) );
+
+        // Same size, different content and timestamp
+        fileWrite( source.getAbsolutePath(), "oy" );
+        assertTrue( source.setLastModified( source.lastModified() - 10000 ) );
+        assertFalse( key.equals( key( cache2, source, "config" ) ) );
+
+        cache2.remove( "package" );
+        assertFalse( cache2.isUpToDate( "package", key, packageFile ) );
+    }
+
+    private String key( BuildCache cache, File source, String configuration )
+        throws IOException
+    {
+        BuildCache.Recorder recorder = cache.recorder( new FsFileCollector( new LocalFs( new File( source.getParentFile(), "assembly" ) ) ) );
+        recorder.addDirectory( directory( relativePath( "opt" ), new LocalDateTime(), FileAttributes.EMPTY ) );
+        RegularFile file = regularFile( relativePath( "opt/source.txt" ), new LocalDateTime(), source.length(),
+                                        FileAttributes.EMPTY );
+        recorder.addFile( new LocalFs( source ), file );
+        return recorder.key( configuration );
+    }
+}
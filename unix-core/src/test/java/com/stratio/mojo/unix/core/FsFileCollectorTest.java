@@ -0,0 +1,141 @@
+package com.stratio.mojo.unix.core;
+
+import fj.*;
+import fj.data.*;
+import static fj.data.List.*;
+import junit.framework.*;
+import com.stratio.mojo.unix.*;
+import com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.core.FsFileCollector.*;
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.io.fs.*;
+import com.stratio.mojo.unix.util.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class FsFileCollectorTest
+    extends TestCase
+{
+    private final TestUtil testUtil = new TestUtil( this );
+
+    public void testFilteredFilesAreShared()
+        throws Exception
+    {
+        File dir = testUtil.getTestFile( "target/fs-file-collector/blobs" );
+        if ( dir.exists() )
+        {
+            FileUtils.deleteDirectory( dir );
+        }
+        assertTrue( dir.mkdirs() );
+
+        File source = new File( dir, "source.txt" );
+        FileUtils.fileWrite( source.getAbsolutePath(), "${x}\n" );
+        BlobStore blobStore = new BlobStore( new LocalFs( new File( dir, "blobs" ) ) );
+
+        RegularFile file = regularFile( relativePath( "a" ), new LocalDateTime(), 5, FileAttributes.EMPTY,
+                                        list( new Replacer( "\\$\\{x\\}", "yo" ) ), LineEnding.keep );
+
+        LocalFs one = new LocalFs( new File( dir, "one" ) );
+        FsFileCollector collector = new FsFileCollector( one, blobStore, FILTER_CHARSET );
+        collector.addFile( new LocalFs( source ), file );
+        collector.collect();
+
+        LocalFs two = new LocalFs( new File( dir, "two" ) );
+        collector = new FsFileCollector( two, blobStore, FILTER_CHARSET );
+        collector.addFile( new LocalFs( source ), file );
+        collector.collect();
+
+        assertEquals( "yo\n", FileUtils.fileRead( one.resolve( "a" ).file ) );
+        assertTrue( Files.isSameFile( one.resolve( "a" ).file.toPath(), two.resolve( "a" ).file.toPath() ) );
+
+        P2<InputStream, Option<Long>> p = filtersAndLineEndingHandingInputStream( file, new LocalFs( source ),
+                                                                                  blobStore, FILTER_CHARSET );
+        try
+        {
+            assertEquals( 3L, p._2().some().longValue() );
+            assertEquals( "yo\n", IOUtil.toString( p._1() ) );
+        }
+        finally
+        {
+            IOUtil.close( p._1() );
+        }
+    }
+
+    public void testFilteringEncoding()
+        throws Exception
+    {
+        File dir = testUtil.getTestFile( "target/fs-file-collector/encoding" );
+        if ( dir.exists() )
+        {
+            FileUtils.deleteDirectory( dir );
+        }
+        assertTrue( dir.mkdirs() );
+
+        File source = new File( dir, "source.properties" );
+        FileUtils.fileWrite( source.getAbsolutePath(), "ISO-8859-1", "name=${x} \u00e6\u00f8\u00e5\n" );
+        BlobStore blobStore = new BlobStore( new LocalFs( new File( dir, "blobs" ) ) );
+
+        RegularFile file = regularFile( relativePath( "a" ), new LocalDateTime(), 11, FileAttributes.EMPTY,
+                                        list( new Replacer( "\\$\\{x\\}", "yo" ) ), LineEnding.keep );
+
+        Charset latin1 = Charset.forName( "ISO-8859-1" );
+        LocalFs blob = blob( blobStore, new LocalFs( source ), file, latin1 );
+        assertEquals( "name=yo \u00e6\u00f8\u00e5\n", FileUtils.fileRead( blob.file, "ISO-8859-1" ) );
+
+        // The same file filtered with another encoding is another blob
+        Charset utf8 = Charset.forName( "UTF-8" );
+        assertFalse( blob.file.equals( blob( blobStore, new LocalFs( source ), file, utf8 ).file ) );
+        assertTrue( blob.file.equals( blob( blobStore, new LocalFs( source ), file, latin1 ).file ) );
+
+        // The collector filters with its encoding too
+        LocalFs assembly = new LocalFs( new File( dir, "assembly" ) );
+        FsFileCollector collector = new FsFileCollector( assembly, null, latin1 );
+        collector.addFile( new LocalFs( source ), file );
+        collector.collect();
+        assertEquals( "name=yo \u00e6\u00f8\u00e5\n", FileUtils.fileRead( assembly.resolve( "a" ).file, "ISO-8859-1" ) );
+    }
+
+    public void testFilteredSize()
+        throws Exception
+    {
+        assertFiltered( 10 );
+        assertFiltered( 200 * 1000 );
+    }
+
+    private void assertFiltered( int lines )
+        throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < lines; i++ )
+        {
+            text.append( "${x}\r\n" );
+        }
+
+        RegularFile file = regularFile( relativePath( "a" ), new LocalDateTime(), text.length(), FileAttributes.EMPTY,
+                                        list( new Replacer( "\\$\\{x\\}", "yo" ) ), LineEnding.unix );
+
+        P2<InputStream, Option<Long>> p = filtersAndLineEndingHandingInputStream( file,
+            new ByteArrayInputStream( text.toString().getBytes( "UTF-8" ) ), Charset.forName( "UTF-8" ) );
+
+        try
+        {
+            assertEquals( 3L * lines, p._2().some().longValue() );
+            byte[] bytes = IOUtil.toByteArray( p._1() );
+            assertEquals( 3 * lines, bytes.length );
+            assertEquals( "yo\nyo\n", new String( bytes, 0, 6, "UTF-8" ) );
+        }
+        finally
+        {
+            IOUtil.close( p._1() );
+        }
+    }
+}
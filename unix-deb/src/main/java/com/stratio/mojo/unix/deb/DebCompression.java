@@ -0,0 +1,164 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.github.luben.zstd.*;
+import com.stratio.mojo.unix.io.*;
+import org.tukaani.xz.*;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * The compression formats dpkg supports for the control and data tars.
+ * <p/>
+ * The compression level follows the usual 1-9 scale, -1 means the format's default level. With more than one thread
+ * the stream is split in blocks that are compressed in parallel when the format allows it. gzip, and xz with more than
+ * one thread, can change the level while the stream is written.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public enum DebCompression
+{
+    gzip( ".gz" )
+        {
+            public OutputStream compress( OutputStream out, int level, int threads )
+                throws IOException
+            {
+                int l = level == -1 ? Deflater.DEFAULT_COMPRESSION : level;
+
+                if ( threads > 1 )
+                {
+                    return new ParallelGZIPOutputStream( out, l, threads );
+                }
+
+                return new LeveledGZIPOutputStream( out, 1024 * 128, l );
+            }
+
+            public InputStream decompress( InputStream in )
+                throws IOException
+            {
+                return new GZIPInputStream( in, 1024 * 128 );
+            }
+        },
+
+    xz( ".xz" )
+        {
+            public OutputStream compress( OutputStream out, int level, int threads )
+                throws IOException
+            {
+                int preset = level == -1 ? LZMA2Options.PRESET_DEFAULT : level;
+
+                if ( threads > 1 )
+                {
+                    return new ParallelXZOutputStream( out, preset, threads );
+                }
+
+                return new XZOutputStream( out, new LZMA2Options( preset ) );
+            }
+
+            public InputStream decompress( InputStream in )
+                throws IOException
+            {
+                return new XZInputStream( new BufferedInputStream( in, 1024 * 128 ) );
+            }
+        },
+
+    /**
+     * zstd has its own worker threads.
+     */
+    zstd( ".zst" )
+        {
+            public OutputStream compress( OutputStream out, int level, int threads )
+                throws IOException
+            {
+                ZstdOutputStream zstd = new ZstdOutputStream( out, level == -1 ? Zstd.defaultCompressionLevel() : level );
+
+                if ( threads > 1 )
+                {
+                    zstd.setWorkers( threads );
+                }
+
+                return zstd;
+            }
+
+            public InputStream decompress( InputStream in )
+                throws IOException
+            {
+                return new ZstdInputStream( new BufferedInputStream( in, 1024 * 128 ) );
+            }
+        },
+
+    none( "" )
+        {
+            public OutputStream compress( OutputStream out, int level, int threads )
+            {
+                return out;
+            }
+
+            public InputStream decompress( InputStream in )
+            {
+                return in;
+            }
+        };
+
+    /**
+     * Appended to <code>control.tar</code> and <code>data.tar</code>.
+     */
+    public final String extension;
+
+    DebCompression( String extension )
+    {
+        this.extension = extension;
+    }
+
+    public abstract OutputStream compress( OutputStream out, int level, int threads )
+        throws IOException;
+
+    public abstract InputStream decompress( InputStream in )
+        throws IOException;
+
+    /**
+     * Finds the compression from the name of a member, like <code>data.tar.xz</code>.
+     */
+    public static DebCompression fromFileName( String name )
+        throws IOException
+    {
+        for ( DebCompression compression : values() )
+        {
+            if ( compression != none && name.endsWith( ".tar" + compression.extension ) )
+            {
+                return compression;
+            }
+        }
+
+        if ( name.endsWith( ".tar" ) )
+        {
+            return none;
+        }
+
+        throw new IOException( "Unsupported compression format of tar file: " + name );
+    }
+}
@@ -0,0 +1,405 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.commons.compress.archivers.*;
+import org.apache.commons.compress.archivers.tar.*;
+import com.stratio.mojo.unix.*;
+import static com.stratio.mojo.unix.UnixFileMode.*;
+import com.stratio.mojo.unix.ar.*;
+import com.stratio.mojo.unix.io.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.security.*;
+
+/**
+ * Writes a DEB package directly, without staging the files on disk and running dpkg-deb under fakeroot. The owner,
+ * group and mode of each entry is taken from its {@link FileAttributes} and written straight into the tar headers.
+ * <p/>
+ * The members have to be written in the order dpkg expects them; <code>debian-binary</code> is written when the writer
+ * is created, then the streams from {@link #control()} and {@link #data()} are used. A stream has to be closed before
+ * the next one is opened.
+ * <p/>
+ * The data can also be written first, so the MD5 digests of the files can be calculated while they are written and
+ * put in the control tar with {@link #writeMd5sums}, together with the {@link #installedSize} of what was written. The
+ * data tar is then written to a temporary file next to the package and moved into place when the writer is closed.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class DebWriter
+{
+    public static final String DEBIAN_BINARY = "2.0\n";
+
+    private static final int AR_MODE = 0100644;
+
+    private final File debFile;
+
+    private final ArWriter writer;
+
+    private final long timestamp;
+
+    private final DebCompression compression;
+
+    private final int threads;
+
+    public DebWriter( File debFile, LocalDateTime timestamp )
+        throws IOException
+    {
+        this( debFile, timestamp, DebCompression.gzip, 1 );
+    }
+
+    /**
+     * @param compression The compression of both the control and data tars.
+     * @param threads     The number of threads used to compress the data tar.
+     */
+    public DebWriter( File debFile, LocalDateTime timestamp, DebCompression compression, int threads )
+        throws IOException
+    {
+        this.debFile = debFile;
+        this.timestamp = timestamp.toDateTime().getMillis() / 1000;
+        this.compression = compression;
+        this.threads = threads;
+
+        // The data tar might be written to a temporary file next to the package too
+        File parent = debFile.getAbsoluteFile().getParentFile();
+        if ( !parent.isDirectory() && !parent.mkdirs() )
+        {
+            throw new IOException( "Unable to create directory: " + parent.getAbsolutePath() );
+        }
+
+        writer = Ar.write( debFile );
+
+        try
+        {
+            byte[] bytes = DEBIAN_BINARY.getBytes( "US-ASCII" );
+            writer.add( "debian-binary", this.timestamp, 0, 0, AR_MODE, bytes.length, new ByteArrayInputStream( bytes ) );
+        }
+        catch ( IOException e )
+        {
+            ArUtil.close( writer );
+            throw e;
+        }
+    }
+
+    private boolean controlWritten;
+
+    private File dataFile;
+
+    private Md5sumsTarArchiveOutputStream data;
+
+    public TarArchiveOutputStream control()
+        throws IOException
+    {
+        controlWritten = true;
+        return tar( writer.add( "control.tar" + compression.extension, timestamp, 0, 0, AR_MODE ), -1, 1 );
+    }
+
+    public TarArchiveOutputStream data()
+        throws IOException
+    {
+        return data( -1 );
+    }
+
+    /**
+     * @param level The compression level, -1 for the default level of the compression. A lower level is a lot faster
+     *              if the files are already compressed.
+     */
+    public TarArchiveOutputStream data( int level )
+        throws IOException
+    {
+        return data( level, null );
+    }
+
+    /**
+     * @param level  The compression level, -1 for the default level of the compression.
+     * @param policy Looks at the first block of each regular file as it is written. When nearly all of the data
+     *               written so far is already compressed the rest is written with the fastest level instead of
+     *               <code>level</code>, if the compression can change its level while it is written.
+     */
+    public TarArchiveOutputStream data( int level, CompressionPolicy policy )
+        throws IOException
+    {
+        OutputStream os;
+        if ( controlWritten )
+        {
+            os = writer.add( "data.tar" + compression.extension, timestamp, 0, 0, AR_MODE );
+        }
+        else
+        {
+            dataFile = new File( debFile.getPath() + ".data.tmp" );
+            os = new FileOutputStream( dataFile );
+        }
+
+        data = new Md5sumsTarArchiveOutputStream( compression.compress( os, level, threads ), level, policy );
+        return tar( data );
+    }
+
+    /**
+     * Writes the <code>md5sums</code> file of the regular files in the data tar. The data tar has to be written and
+     * closed first.
+     *
+     * @return false if there were no regular files in the data tar and nothing was written.
+     */
+    public boolean writeMd5sums( TarArchiveOutputStream control, UnixFsObject md5sums )
+        throws IOException
+    {
+        if ( data == null )
+        {
+            throw new IOException( "The data tar has to be written before the md5sums file." );
+        }
+
+        byte[] bytes = data.md5sums.toString().getBytes( "UTF-8" );
+
+        if ( bytes.length == 0 )
+        {
+            return false;
+        }
+
+        writeFile( control, md5sums, bytes.length, new ByteArrayInputStream( bytes ) );
+        return true;
+    }
+
+    /**
+     * The installed size of the entries written to the data tar, counting the bytes that were actually written.
+     */
+    public InstalledSize installedSize()
+        throws IOException
+    {
+        if ( data == null )
+        {
+            throw new IOException( "The data tar has to be written before its installed size is known." );
+        }
+
+        return data.installedSize;
+    }
+
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            if ( dataFile != null && controlWritten )
+            {
+                InputStream is = new FileInputStream( dataFile );
+                try
+                {
+                    writer.add( "data.tar" + compression.extension, timestamp, 0, 0, AR_MODE, dataFile.length(), is );
+                }
+                finally
+                {
+                    IOUtil.close( is );
+                }
+            }
+            writer.close();
+        }
+        finally
+        {
+            if ( dataFile != null )
+            {
+                dataFile.delete();
+            }
+        }
+    }
+
+    private TarArchiveOutputStream tar( OutputStream os, int level, int threads )
+        throws IOException
+    {
+        return tar( new TarArchiveOutputStream( compression.compress( os, level, threads ) ) );
+    }
+
+    private static TarArchiveOutputStream tar( TarArchiveOutputStream tar )
+    {
+        tar.setLongFileMode( TarArchiveOutputStream.LONGFILE_GNU );
+        tar.setBigNumberMode( TarArchiveOutputStream.BIGNUMBER_POSIX );
+        return tar;
+    }
+
+    /**
+     * Calculates the MD5 digest of every regular file while it is written, in the format of
+     * <code>DEBIAN/md5sums</code>, and adds up the installed size of the entries. The first block of each regular
+     * file is kept for the compression policy.
+     */
+    private static class Md5sumsTarArchiveOutputStream
+        extends TarArchiveOutputStream
+    {
+        private final StringBuilder md5sums = new StringBuilder();
+
+        private final InstalledSize installedSize = new InstalledSize();
+
+        private final MessageDigest md5;
+
+        private final OutputStream compressed;
+
+        private final int level;
+
+        private final CompressionPolicy policy;
+
+        private final byte[] sample = new byte[CompressionPolicy.SAMPLE_SIZE];
+
+        private int sampleLength;
+
+        private String name;
+
+        private long size;
+
+        Md5sumsTarArchiveOutputStream( OutputStream compressed, int level, CompressionPolicy policy )
+        {
+            super( compressed );
+            this.compressed = compressed;
+            this.level = level;
+            this.policy = policy;
+
+            try
+            {
+                md5 = MessageDigest.getInstance( "MD5" );
+            }
+            catch ( NoSuchAlgorithmException e )
+            {
+                throw new RuntimeException( e );
+            }
+        }
+
+        public void putArchiveEntry( ArchiveEntry archiveEntry )
+            throws IOException
+        {
+            super.putArchiveEntry( archiveEntry );
+
+            TarArchiveEntry entry = (TarArchiveEntry) archiveEntry;
+            boolean longName = entry.isGNULongNameEntry() || entry.isGNULongLinkEntry();
+            boolean regularFile = entry.isFile() && !entry.isSymbolicLink() && !entry.isLink() && !longName;
+            name = regularFile ? entry.getName() : null;
+            size = entry.getSize();
+            sampleLength = 0;
+            md5.reset();
+
+            if ( !longName )
+            {
+                installedSize.add( relativePath( entry.getName() ), regularFile, entry.getSize() );
+            }
+        }
+
+        public void write( byte[] bytes, int offset, int length )
+            throws IOException
+        {
+            super.write( bytes, offset, length );
+
+            if ( name != null )
+            {
+                md5.update( bytes, offset, length );
+
+                int n = Math.min( length, sample.length - sampleLength );
+                System.arraycopy( bytes, offset, sample, sampleLength, n );
+                sampleLength += n;
+            }
+        }
+
+        public void closeArchiveEntry()
+            throws IOException
+        {
+            super.closeArchiveEntry();
+
+            if ( name == null )
+            {
+                return;
+            }
+
+            for ( byte b : md5.digest() )
+            {
+                md5sums.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+            }
+
+            // dpkg wants the paths without the leading "./"
+            String path = name.startsWith( "./" ) ? name.substring( 2 ) : name;
+            md5sums.append( "  " ).append( path ).append( '\n' );
+            name = null;
+
+            if ( policy != null )
+            {
+                policy.compress( "/" + path, size, sample, sampleLength );
+
+                if ( compressed instanceof LevelAdjustable )
+                {
+                    ( (LevelAdjustable) compressed ).setLevel( policy.streamLevel( level ) );
+                }
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    // Entries
+    // -----------------------------------------------------------------------
+
+    public static void writeDirectory( TarArchiveOutputStream tar, UnixFsObject directory )
+        throws IOException
+    {
+        String name = directory.path.isBase() ? "./" : directory.path.asAbsolutePath( "./" ) + "/";
+
+        tar.putArchiveEntry( entry( directory, name, TarArchiveEntry.LF_DIR, _0755 ) );
+        tar.closeArchiveEntry();
+    }
+
+    public static void writeSymlink( TarArchiveOutputStream tar, UnixFsObject.Symlink symlink )
+        throws IOException
+    {
+        TarArchiveEntry entry = entry( symlink, symlink.path.asAbsolutePath( "./" ), TarArchiveEntry.LF_SYMLINK,
+                                       _SYMLINK );
+        entry.setMode( _SYMLINK.toInt() );
+        entry.setLinkName( symlink.value );
+
+        tar.putArchiveEntry( entry );
+        tar.closeArchiveEntry();
+    }
+
+    /**
+     * Writes a regular file. The <code>size</code> has to be the number of bytes that will be read from
+     * <code>content</code>, which is not necessarily the same as the size of the <code>file</code> object if
+     * the content has been filtered.
+     */
+    public static void writeFile( TarArchiveOutputStream tar, UnixFsObject file, long size, InputStream content )
+        throws IOException
+    {
+        TarArchiveEntry entry = entry( file, file.path.asAbsolutePath( "./" ), TarArchiveEntry.LF_NORMAL, _0644 );
+        entry.setSize( size );
+
+        tar.putArchiveEntry( entry );
+        IOUtil.copy( content, tar, 1024 * 128 );
+        tar.closeArchiveEntry();
+    }
+
+    private static TarArchiveEntry entry( UnixFsObject object, String name, byte linkFlag, UnixFileMode defaultMode )
+    {
+        TarArchiveEntry entry = new TarArchiveEntry( name, linkFlag );
+        entry.setModTime( object.lastModified.toDateTime().getMillis() );
+        entry.setMode( object.attributes.mode.orSome( defaultMode ).toInt() );
+        entry.setUserId( 0 );
+        entry.setGroupId( 0 );
+        entry.setUserName( object.attributes.user.orSome( "root" ) );
+        entry.setGroupName( object.attributes.group.orSome( "root" ) );
+        return entry;
+    }
+}
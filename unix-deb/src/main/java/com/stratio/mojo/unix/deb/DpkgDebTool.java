@@ -32,12 +32,12 @@ import static com.stratio.mojo.unix.UnixFsObject.*;
 import com.stratio.mojo.unix.ar.*;
 import com.stratio.mojo.unix.util.*;
 import static com.stratio.mojo.unix.util.RelativePath.*;
+import org.codehaus.plexus.util.*;
 import org.joda.time.*;
 
 import java.io.*;
 import java.util.*;
 import java.util.List;
-import java.util.zip.*;
 
 /**
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
@@ -47,20 +47,19 @@ public class DpkgDebTool
     public static List<UnixFsObject> contents( File file )
         throws IOException
     {
-        ArReader archive = null;
+        ArIndex archive = null;
         try
         {
-            archive = Ar.read( file );
+            archive = Ar.index( file );
 
-            for ( ReadableArFile arFile : archive )
+            IndexedArFile arFile = archive.find( "data." );
+
+            if ( arFile == null )
             {
-                if ( arFile.getName().startsWith( "data." ) )
-                {
-                    return processCompressedTar( arFile );
-                }
+                throw new IOException( "Could not find data file in: " + file.getAbsolutePath() );
             }
 
-            throw new IOException( "Could not find data file in: " + file.getAbsolutePath() );
+            return process( open( archive, arFile ) );
         }
         finally
         {
@@ -68,21 +67,70 @@ public class DpkgDebTool
         }
     }
 
-    private static List<UnixFsObject> processCompressedTar( ReadableArFile arFile )
+    /**
+     * Reads the control file of a package without reading the data member.
+     */
+    public static ControlFile controlFile( File file )
         throws IOException
     {
-        if ( arFile.getName().endsWith( ".tar.gz" ) )
+        BufferedReader reader = new BufferedReader( new StringReader( control( file ) ) );
+
+        fj.data.List<String> lines = fj.data.List.nil();
+        String line;
+        while ( ( line = reader.readLine() ) != null )
         {
-            // Don't worry about closing the stream, that will be taken care of by the iterator.
+            if ( line.length() > 0 )
+            {
+                lines = lines.cons( line );
+            }
+        }
+
+        return new DebControlParser().parse( lines.reverse() );
+    }
+
+    /**
+     * Returns the raw <code>./control</code> file of a package. Only the control member of the package is read.
+     */
+    public static String control( File file )
+        throws IOException
+    {
+        ArIndex archive = null;
+        try
+        {
+            archive = Ar.index( file );
+
+            IndexedArFile arFile = archive.find( "control." );
 
-            return process( new GZIPInputStream( arFile.open(), 1024 * 128 ) );
+            if ( arFile == null )
+            {
+                throw new IOException( "Could not find control file in: " + file.getAbsolutePath() );
+            }
+
+            TarArchiveInputStream tar = new TarArchiveInputStream( open( archive, arFile ) );
+
+            TarArchiveEntry entry;
+            while ( ( entry = tar.getNextTarEntry() ) != null )
+            {
+                if ( entry.isFile() && relativePath( entry.getName() ).string.equals( "control" ) )
+                {
+                    return new String( IOUtil.toByteArray( tar ), "UTF-8" );
+                }
+            }
+
+            throw new IOException( "Could not find ./control in: " + file.getAbsolutePath() );
         }
-        else
+        finally
         {
-            throw new IOException( "Unsupported compression format of data tar file: " + arFile.getName() );
+            ArUtil.close( archive );
         }
     }
 
+    private static InputStream open( ArIndex archive, IndexedArFile arFile )
+        throws IOException
+    {
+        return DebCompression.fromFileName( arFile.getName() ).decompress( archive.open( arFile ) );
+    }
+
     private static List<UnixFsObject> process( InputStream is )
         throws IOException
     {
@@ -0,0 +1,861 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.io.fs.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.util.Collections.*;
+
+/**
+ * An in-process implementation of <code>dpkg-scanpackages</code>.
+ * <p/>
+ * Only the control member of each package is extracted, and the MD5, SHA-1 and SHA-256 digests are calculated in a
+ * single pass over the file. Packages are read by a pool of threads.
+ * <p/>
+ * If a cache file is given, the fields of every package are remembered by path, size and modification time, and
+ * unchanged packages are not read again on the next scan.
+ * <p/>
+ * The output is the same as <code>dpkg-scanpackages</code> with the packages directory given as <code>.</code>.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class DpkgScanPackagesTool
+{
+    /**
+     * The order of the fields in a <code>Packages</code> file, from dpkg's <code>Dpkg::Control::FieldsCore</code>.
+     * Other fields are written after these, sorted by name.
+     */
+    private static final List<String> FIELD_ORDER = Arrays.asList(
+        "package", "package-type", "source", "version", "kernel-version", "built-for-profiles", "auto-built-package",
+        "architecture", "subarchitecture", "installer-menu-item", "build-essential", "essential", "protected", "origin",
+        "bugs", "maintainer", "installed-size", "pre-depends", "depends", "recommends", "suggests", "enhances",
+        "conflicts", "breaks", "replaces", "provides", "built-using", "static-built-using", "filename", "size",
+        "md5sum", "sha1", "sha256", "section", "priority", "multi-arch", "homepage", "description", "tag", "task" );
+
+    private static final IncludeExcludeFilter debs = IncludeExcludeFilter.includeExcludeFilter().
+        addStringIncludes( singletonList( "**/*.deb" ) ).
+        create();
+
+    private final File root;
+
+    private String pathPrefix = "";
+
+    private boolean multiversion = true;
+
+    private File overrideFile;
+
+    private File cacheFile;
+
+    private int threads = 1;
+
+    private final List<String> warnings = synchronizedList( new ArrayList<String>() );
+
+    public DpkgScanPackagesTool( File root )
+    {
+        this.root = root;
+    }
+
+    public DpkgScanPackagesTool pathPrefix( String pathPrefix )
+    {
+        this.pathPrefix = pathPrefix == null ? "" : pathPrefix;
+        return this;
+    }
+
+    /**
+     * If false, only the newest version of each package is included.
+     */
+    public DpkgScanPackagesTool multiversion( boolean multiversion )
+    {
+        this.multiversion = multiversion;
+        return this;
+    }
+
+    public DpkgScanPackagesTool overrideFile( File overrideFile )
+    {
+        this.overrideFile = overrideFile;
+        return this;
+    }
+
+    public DpkgScanPackagesTool cacheFile( File cacheFile )
+    {
+        this.cacheFile = cacheFile;
+        return this;
+    }
+
+    public DpkgScanPackagesTool threads( int threads )
+    {
+        this.threads = Math.max( 1, threads );
+        return this;
+    }
+
+    /**
+     * The same warnings as <code>dpkg-scanpackages</code> would print.
+     */
+    public List<String> getWarnings()
+    {
+        return unmodifiableList( warnings );
+    }
+
+    /**
+     * Scans the root directory and returns the packages in the order they are written.
+     */
+    public List<Package> scan()
+        throws IOException
+    {
+        Map<String, Package> cache = cacheFile != null && cacheFile.isFile() ? readCache( cacheFile ) :
+            new HashMap<String, Package>();
+
+        List<LocalFs> files = new ArrayList<LocalFs>();
+        for ( LocalFs file : new LocalFs( root ).find( debs, true ) )
+        {
+            files.add( file );
+        }
+
+        List<Future<Package>> futures = new ArrayList<Future<Package>>();
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, Math.max( 1, files.size() ) ) );
+        try
+        {
+            for ( LocalFs file : files )
+            {
+                final String path = "./" + file.relativePath().string;
+                final File f = file.file;
+                final long size = f.length();
+                final long lastModified = f.lastModified();
+
+                final Package cached = cache.get( path );
+
+                if ( cached != null && cached.size == size && cached.lastModified == lastModified )
+                {
+                    futures.add( new CompletedFuture( cached ) );
+                    continue;
+                }
+
+                futures.add( executor.submit( new Callable<Package>()
+                {
+                    public Package call()
+                        throws Exception
+                    {
+                        return read( f, path, size, lastModified );
+                    }
+                } ) );
+            }
+
+            List<Package> packages = new ArrayList<Package>();
+            for ( Future<Package> future : futures )
+            {
+                Package p = get( future );
+
+                if ( p != null )
+                {
+                    packages.add( p );
+                }
+            }
+
+            if ( cacheFile != null )
+            {
+                writeCache( packages, cacheFile );
+            }
+
+            return select( packages );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the packages as a <code>Packages</code> file.
+     */
+    public void write( List<Package> packages, OutputStream os )
+        throws IOException
+    {
+        Writer writer = new BufferedWriter( new OutputStreamWriter( os, "UTF-8" ) );
+
+        for ( Package p : packages )
+        {
+            Map<String, String> fields = new LinkedHashMap<String, String>( p.fields );
+            if ( get( fields, "Filename" ) != null )
+            {
+                warnings.add( "package " + p.name() + " (filename " + p.path + ") has Filename field!" );
+            }
+            fields.put( "Filename", pathPrefix + p.path );
+
+            writeStanza( writer, fields );
+            writer.write( '\n' );
+        }
+
+        writer.flush();
+    }
+
+    // -----------------------------------------------------------------------
+    // Reading packages
+    // -----------------------------------------------------------------------
+
+    private Package read( File file, String path, long size, long lastModified )
+        throws IOException
+    {
+        Map<String, String> fields;
+
+        try
+        {
+            fields = parseStanza( DpkgDebTool.control( file ) );
+        }
+        catch ( IOException e )
+        {
+            warnings.add( "couldn't parse control information from " + path + ", skipping package: " +
+                e.getMessage() );
+            return null;
+        }
+
+        if ( get( fields, "Package" ) == null )
+        {
+            throw new IOException( "no Package field in control file of " + path );
+        }
+
+        MessageDigest md5 = digest( "MD5" );
+        MessageDigest sha1 = digest( "SHA-1" );
+        MessageDigest sha256 = digest( "SHA-256" );
+        long read = 0;
+
+        InputStream is = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[128 * 1024];
+            int count;
+            while ( ( count = is.read( buffer ) ) != -1 )
+            {
+                md5.update( buffer, 0, count );
+                sha1.update( buffer, 0, count );
+                sha256.update( buffer, 0, count );
+                read += count;
+            }
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+
+        fields.put( "Size", String.valueOf( read ) );
+        fields.put( "MD5sum", hex( md5.digest() ) );
+        fields.put( "SHA1", hex( sha1.digest() ) );
+        fields.put( "SHA256", hex( sha256.digest() ) );
+
+        return new Package( path, size, lastModified, fields );
+    }
+
+    /**
+     * Applies the multiversion setting and override file, and sorts the packages like <code>dpkg-scanpackages</code>:
+     * by name and then by version, compared as strings.
+     */
+    private List<Package> select( List<Package> all )
+        throws IOException
+    {
+        SortedMap<String, List<Package>> packages = new TreeMap<String, List<Package>>();
+        List<String> multiInstances = new ArrayList<String>();
+
+        for ( Package p : all )
+        {
+            List<Package> list = packages.get( p.name() );
+
+            if ( list == null )
+            {
+                list = new ArrayList<Package>();
+                packages.put( p.name(), list );
+            }
+            else if ( !multiversion )
+            {
+                Package existing = list.get( 0 );
+
+                if ( multiInstances.isEmpty() )
+                {
+                    multiInstances.add( pathPrefix + existing.path );
+                }
+                multiInstances.add( pathPrefix + p.path );
+
+                if ( compareVersions( p.version(), existing.version() ) > 0 )
+                {
+                    warnings.add( "package " + p.name() + " (filename " + p.path + ") is repeat but newer version; " +
+                        "used that one and ignored data from " + existing.path + "!" );
+                    list.clear();
+                }
+                else
+                {
+                    warnings.add( "package " + p.name() + " (filename " + p.path + ") is repeat; ignored that one " +
+                        "and using data from " + existing.path + "!" );
+                    continue;
+                }
+            }
+
+            list.add( p );
+        }
+
+        if ( overrideFile != null && overrideFile.isFile() )
+        {
+            override( packages );
+        }
+
+        List<Package> result = new ArrayList<Package>();
+
+        for ( List<Package> list : packages.values() )
+        {
+            Collections.sort( list, new Comparator<Package>()
+            {
+                public int compare( Package a, Package b )
+                {
+                    return a.version().compareTo( b.version() );
+                }
+            } );
+
+            result.addAll( list );
+        }
+
+        if ( !multiInstances.isEmpty() )
+        {
+            Collections.sort( multiInstances );
+            warnings.add( "Packages with multiple instances but no --multiversion specified:" );
+            warnings.addAll( multiInstances );
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the override file. Each line is <code>package priority section [maintainer]</code>, where the maintainer
+     * can be given as <code>old =&gt; new</code> to only replace a specific maintainer.
+     */
+    private void override( Map<String, List<Package>> packages )
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( overrideFile ),
+                                                                           "UTF-8" ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                int i = line.indexOf( '#' );
+                line = ( i == -1 ? line : line.substring( 0, i ) ).trim();
+
+                if ( line.length() == 0 )
+                {
+                    continue;
+                }
+
+                String[] parts = line.split( "\\s+", 4 );
+                List<Package> list = packages.get( parts[0] );
+
+                if ( list == null || parts.length < 3 )
+                {
+                    continue;
+                }
+
+                for ( Package p : list )
+                {
+                    if ( parts.length == 4 )
+                    {
+                        String maintainer = parts[3];
+                        int arrow = maintainer.indexOf( "=>" );
+
+                        if ( arrow == -1 )
+                        {
+                            put( p.fields, "Maintainer", maintainer );
+                        }
+                        else if ( Arrays.asList( maintainer.substring( 0, arrow ).trim().split( "\\s*//\\s*" ) ).
+                            contains( get( p.fields, "Maintainer" ) ) )
+                        {
+                            put( p.fields, "Maintainer", maintainer.substring( arrow + 2 ).trim() );
+                        }
+                    }
+
+                    put( p.fields, "Priority", parts[1] );
+                    put( p.fields, "Section", parts[2] );
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    // Cache
+    // -----------------------------------------------------------------------
+
+    private static Map<String, Package> readCache( File file )
+        throws IOException
+    {
+        Map<String, Package> cache = new HashMap<String, Package>();
+
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+        try
+        {
+            String header;
+            while ( ( header = reader.readLine() ) != null )
+            {
+                // #<size> <last modified> <path>
+                String[] parts = header.substring( 1 ).split( " ", 3 );
+
+                StringBuilder stanza = new StringBuilder();
+                String line;
+                while ( ( line = reader.readLine() ) != null && line.length() > 0 )
+                {
+                    stanza.append( line ).append( '\n' );
+                }
+
+                Package p = new Package( parts[2], Long.parseLong( parts[0] ), Long.parseLong( parts[1] ),
+                                         parseStanza( stanza.toString() ) );
+                cache.put( p.path, p );
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            // A broken cache is the same as no cache
+            return new HashMap<String, Package>();
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+
+        return cache;
+    }
+
+    private static void writeCache( List<Package> packages, File file )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+
+        File tmp = new File( file.getPath() + ".tmp" );
+        Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( tmp ), "UTF-8" ) );
+        try
+        {
+            for ( Package p : packages )
+            {
+                writer.write( "#" + p.size + " " + p.lastModified + " " + p.path + "\n" );
+                writeStanza( writer, p.fields );
+                writer.write( '\n' );
+            }
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+
+        if ( !tmp.renameTo( file ) )
+        {
+            file.delete();
+            if ( !tmp.renameTo( file ) )
+            {
+                throw new IOException( "Could not write cache file: " + file.getAbsolutePath() );
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    // Control file syntax
+    // -----------------------------------------------------------------------
+
+    /**
+     * Parses a control file stanza. The value of a field includes its continuation lines, so multi-line fields are
+     * written back as they were read.
+     */
+    static Map<String, String> parseStanza( String s )
+        throws IOException
+    {
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        String field = null;
+
+        for ( String line : s.split( "\n" ) )
+        {
+            if ( line.length() == 0 )
+            {
+                continue;
+            }
+
+            if ( line.charAt( 0 ) == ' ' || line.charAt( 0 ) == '\t' )
+            {
+                if ( field == null )
+                {
+                    throw new IOException( "Continuation line without a field: " + line );
+                }
+
+                fields.put( field, fields.get( field ) + "\n" + trimTrailing( line ) );
+                continue;
+            }
+
+            int i = line.indexOf( ':' );
+
+            if ( i < 1 )
+            {
+                throw new IOException( "Invalid line in control file: " + line );
+            }
+
+            field = line.substring( 0, i );
+            fields.put( field, line.substring( i + 1 ).trim() );
+        }
+
+        return fields;
+    }
+
+    private static void writeStanza( Writer writer, Map<String, String> fields )
+        throws IOException
+    {
+        List<String> names = new ArrayList<String>( fields.keySet() );
+
+        Collections.sort( names, new Comparator<String>()
+        {
+            public int compare( String a, String b )
+            {
+                int i = FIELD_ORDER.indexOf( a.toLowerCase( Locale.ENGLISH ) );
+                int j = FIELD_ORDER.indexOf( b.toLowerCase( Locale.ENGLISH ) );
+
+                if ( i != -1 && j != -1 )
+                {
+                    return i - j;
+                }
+
+                if ( i != -1 || j != -1 )
+                {
+                    return i != -1 ? -1 : 1;
+                }
+
+                return a.compareTo( b );
+            }
+        } );
+
+        for ( String name : names )
+        {
+            String value = fields.get( name );
+
+            writer.write( name );
+            writer.write( ':' );
+            if ( value.length() > 0 && value.charAt( 0 ) != '\n' )
+            {
+                writer.write( ' ' );
+            }
+            writer.write( value );
+            writer.write( '\n' );
+        }
+    }
+
+    private static String get( Map<String, String> fields, String name )
+    {
+        for ( Map.Entry<String, String> entry : fields.entrySet() )
+        {
+            if ( entry.getKey().equalsIgnoreCase( name ) )
+            {
+                return entry.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    private static void put( Map<String, String> fields, String name, String value )
+    {
+        for ( Map.Entry<String, String> entry : fields.entrySet() )
+        {
+            if ( entry.getKey().equalsIgnoreCase( name ) )
+            {
+                entry.setValue( value );
+                return;
+            }
+        }
+
+        fields.put( name, value );
+    }
+
+    private static String trimTrailing( String s )
+    {
+        int end = s.length();
+
+        while ( end > 0 && Character.isWhitespace( s.charAt( end - 1 ) ) )
+        {
+            end--;
+        }
+
+        return s.substring( 0, end );
+    }
+
+    // -----------------------------------------------------------------------
+    // Versions
+    // -----------------------------------------------------------------------
+
+    /**
+     * Compares two Debian versions the same way as dpkg.
+     */
+    static int compareVersions( String a, String b )
+    {
+        int i = a.indexOf( ':' );
+        int j = b.indexOf( ':' );
+        long epochA = i == -1 ? 0 : Long.parseLong( a.substring( 0, i ) );
+        long epochB = j == -1 ? 0 : Long.parseLong( b.substring( 0, j ) );
+
+        if ( epochA != epochB )
+        {
+            return epochA < epochB ? -1 : 1;
+        }
+
+        a = a.substring( i + 1 );
+        b = b.substring( j + 1 );
+
+        i = a.lastIndexOf( '-' );
+        j = b.lastIndexOf( '-' );
+
+        int c = compareFragment( i == -1 ? a : a.substring( 0, i ), j == -1 ? b : b.substring( 0, j ) );
+
+        if ( c != 0 )
+        {
+            return c;
+        }
+
+        return compareFragment( i == -1 ? "" : a.substring( i + 1 ), j == -1 ? "" : b.substring( j + 1 ) );
+    }
+
+    /**
+     * dpkg's <code>verrevcmp</code>: alternating non-digit and digit parts, where '~' sorts before everything, even
+     * the end of the string.
+     */
+    private static int compareFragment( String a, String b )
+    {
+        int i = 0;
+        int j = 0;
+
+        while ( i < a.length() || j < b.length() )
+        {
+            int firstDiff = 0;
+
+            while ( ( i < a.length() && !Character.isDigit( a.charAt( i ) ) ) ||
+                ( j < b.length() && !Character.isDigit( b.charAt( j ) ) ) )
+            {
+                int ac = order( a, i );
+                int bc = order( b, j );
+
+                if ( ac != bc )
+                {
+                    return ac - bc;
+                }
+
+                i++;
+                j++;
+            }
+
+            while ( i < a.length() && a.charAt( i ) == '0' )
+            {
+                i++;
+            }
+
+            while ( j < b.length() && b.charAt( j ) == '0' )
+            {
+                j++;
+            }
+
+            while ( i < a.length() && Character.isDigit( a.charAt( i ) ) &&
+                j < b.length() && Character.isDigit( b.charAt( j ) ) )
+            {
+                if ( firstDiff == 0 )
+                {
+                    firstDiff = a.charAt( i ) - b.charAt( j );
+                }
+
+                i++;
+                j++;
+            }
+
+            if ( i < a.length() && Character.isDigit( a.charAt( i ) ) )
+            {
+                return 1;
+            }
+
+            if ( j < b.length() && Character.isDigit( b.charAt( j ) ) )
+            {
+                return -1;
+            }
+
+            if ( firstDiff != 0 )
+            {
+                return firstDiff;
+            }
+        }
+
+        return 0;
+    }
+
+    private static int order( String s, int i )
+    {
+        if ( i >= s.length() )
+        {
+            return 0;
+        }
+
+        char c = s.charAt( i );
+
+        if ( Character.isDigit( c ) )
+        {
+            return 0;
+        }
+
+        if ( Character.isLetter( c ) )
+        {
+            return c;
+        }
+
+        if ( c == '~' )
+        {
+            return -1;
+        }
+
+        return c + 256;
+    }
+
+    // -----------------------------------------------------------------------
+    // Utils
+    // -----------------------------------------------------------------------
+
+    private static MessageDigest digest( String algorithm )
+    {
+        try
+        {
+            return MessageDigest.getInstance( algorithm );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static String hex( byte[] bytes )
+    {
+        StringBuilder s = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            s.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return s.toString();
+    }
+
+    private static <T> T get( Future<T> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new InterruptedIOException();
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new RuntimeException( e.getCause() );
+        }
+    }
+
+    private static class CompletedFuture
+        implements Future<Package>
+    {
+        private final Package value;
+
+        private CompletedFuture( Package value )
+        {
+            this.value = value;
+        }
+
+        public boolean cancel( boolean mayInterruptIfRunning )
+        {
+            return false;
+        }
+
+        public boolean isCancelled()
+        {
+            return false;
+        }
+
+        public boolean isDone()
+        {
+            return true;
+        }
+
+        public Package get()
+        {
+            return value;
+        }
+
+        public Package get( long timeout, TimeUnit unit )
+        {
+            return value;
+        }
+    }
+
+    public static class Package
+    {
+        /**
+         * The path of the package relative to the root, starting with <code>./</code>.
+         */
+        public final String path;
+
+        public final long size;
+
+        public final long lastModified;
+
+        /**
+         * The fields of the package's control file plus the size and digests.
+         */
+        public final Map<String, String> fields;
+
+        public Package( String path, long size, long lastModified, Map<String, String> fields )
+        {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fields = fields;
+        }
+
+        public String name()
+        {
+            return get( fields, "Package" );
+        }
+
+        public String version()
+        {
+            String version = get( fields, "Version" );
+            return version == null ? "" : version;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.io.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Splits a stream into fixed size blocks that are compressed independently on a thread pool, and writes the
+ * compressed blocks in order. Only a couple of blocks per thread are kept in memory.
+ * <p/>
+ * Implementations decide how the blocks are compressed and framed. The format has to allow blocks that don't
+ * depend on each other, like gzip members or xz blocks. A change of level applies from the next block.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+abstract class ParallelBlockOutputStream
+    extends OutputStream
+    implements LevelAdjustable
+{
+    private final OutputStream out;
+
+    private final ExecutorService executor;
+
+    private final int threads;
+
+    private final LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+
+    private volatile int level;
+
+    private byte[] buffer;
+
+    private int count;
+
+    private boolean closed;
+
+    protected ParallelBlockOutputStream( OutputStream out, int blockSize, int level, int threads )
+    {
+        this.out = out;
+        this.level = level;
+        this.threads = threads;
+        this.buffer = new byte[blockSize];
+        this.executor = Executors.newFixedThreadPool( threads );
+    }
+
+    /**
+     * Compresses a single block with the level that was set when the block was filled. Called concurrently from the
+     * thread pool.
+     */
+    protected abstract Block compress( byte[] bytes, int length, int level )
+        throws IOException;
+
+    /**
+     * Writes a compressed block. Called in order from the writing thread.
+     */
+    protected void writeBlock( OutputStream out, Block block )
+        throws IOException
+    {
+        out.write( block.bytes );
+    }
+
+    /**
+     * Writes whatever the format needs after the last block.
+     */
+    protected void finish( OutputStream out )
+        throws IOException
+    {
+    }
+
+    public void setLevel( int level )
+    {
+        this.level = level;
+    }
+
+    protected int getLevel()
+    {
+        return level;
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        write( new byte[]{(byte) b}, 0, 1 );
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        while ( len > 0 )
+        {
+            int n = Math.min( len, buffer.length - count );
+            System.arraycopy( b, off, buffer, count, n );
+            count += n;
+            off += n;
+            len -= n;
+
+            if ( count == buffer.length )
+            {
+                submit();
+            }
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+
+        try
+        {
+            if ( count > 0 )
+            {
+                submit();
+            }
+
+            while ( !pending.isEmpty() )
+            {
+                writeBlock( out, get( pending.removeFirst() ) );
+            }
+
+            finish( out );
+        }
+        finally
+        {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submit()
+        throws IOException
+    {
+        final byte[] bytes = buffer;
+        final int length = count;
+        final int level = this.level;
+
+        pending.add( executor.submit( new Callable<Block>()
+        {
+            public Block call()
+                throws Exception
+            {
+                return compress( bytes, length, level );
+            }
+        } ) );
+
+        buffer = new byte[buffer.length];
+        count = 0;
+
+        while ( pending.size() > threads * 2 )
+        {
+            writeBlock( out, get( pending.removeFirst() ) );
+        }
+    }
+
+    private static Block get( Future<Block> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new InterruptedIOException( "Interrupted while compressing." );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+
+            throw new IOException( cause );
+        }
+    }
+
+    static class Block
+    {
+        final byte[] bytes;
+
+        final long uncompressedSize;
+
+        final long unpaddedSize;
+
+        Block( byte[] bytes, long uncompressedSize, long unpaddedSize )
+        {
+            this.bytes = bytes;
+            this.uncompressedSize = uncompressedSize;
+            this.unpaddedSize = unpaddedSize;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.io.*;
+
+import java.io.*;
+
+/**
+ * Writes each block as a separate gzip member. Concatenated members are a valid gzip file that gunzip, zlib and dpkg
+ * decompress as a single stream.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+class ParallelGZIPOutputStream
+    extends ParallelBlockOutputStream
+{
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private boolean empty = true;
+
+    ParallelGZIPOutputStream( OutputStream out, int level, int threads )
+    {
+        super( out, BLOCK_SIZE, level, threads );
+    }
+
+    protected Block compress( byte[] bytes, int length, int level )
+        throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream( length / 2 + 64 );
+        LeveledGZIPOutputStream gzip = new LeveledGZIPOutputStream( buffer, 1024 * 64, level );
+        gzip.write( bytes, 0, length );
+        gzip.close();
+        return new Block( buffer.toByteArray(), length, buffer.size() );
+    }
+
+    protected void writeBlock( OutputStream out, Block block )
+        throws IOException
+    {
+        empty = false;
+        super.writeBlock( out, block );
+    }
+
+    protected void finish( OutputStream out )
+        throws IOException
+    {
+        // An empty stream still has to be a valid gzip file
+        if ( empty )
+        {
+            out.write( compress( new byte[0], 0, getLevel() ).bytes );
+        }
+    }
+}
@@ -0,0 +1,196 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.tukaani.xz.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Writes a single xz stream where every block is compressed independently, like <code>xz --threads</code> does.
+ * <p/>
+ * Each block is compressed to a complete xz stream of its own and then taken out of that stream. The index is
+ * written when the stream is closed. A single stream is required as dpkg won't read concatenated xz streams.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+class ParallelXZOutputStream
+    extends ParallelBlockOutputStream
+{
+    private static final byte[] HEADER_MAGIC = {(byte) 0xfd, '7', 'z', 'X', 'Z', 0};
+
+    private static final byte[] FOOTER_MAGIC = {'Y', 'Z'};
+
+    private static final byte[] FLAGS = {0, XZ.CHECK_CRC64};
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int FOOTER_SIZE = 12;
+
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+    private long recordCount;
+
+    ParallelXZOutputStream( OutputStream out, int preset, int threads )
+        throws IOException
+    {
+        super( out, blockSize( preset ), preset, threads );
+
+        out.write( HEADER_MAGIC );
+        out.write( FLAGS );
+        writeInt( out, crc32( FLAGS ) );
+    }
+
+    /**
+     * The dictionary size of the preset, but at least 1MB. A block can't refer to anything outside itself so a block
+     * smaller than the dictionary would waste some of it.
+     */
+    private static int blockSize( int preset )
+        throws UnsupportedOptionsException
+    {
+        return Math.max( 1024 * 1024, new LZMA2Options( preset ).getDictSize() );
+    }
+
+    protected Block compress( byte[] bytes, int length, int preset )
+        throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream( length / 2 + 1024 );
+        // The level is -1 when the default level is asked for again after a faster one
+        LZMA2Options options = new LZMA2Options( preset == -1 ? LZMA2Options.PRESET_DEFAULT : preset );
+        XZOutputStream xz = new XZOutputStream( buffer, options, XZ.CHECK_CRC64 );
+        xz.write( bytes, 0, length );
+        xz.close();
+
+        byte[] stream = buffer.toByteArray();
+
+        int footer = stream.length - FOOTER_SIZE;
+        long indexSize = ( ( readInt( stream, footer + 4 ) & 0xffffffffL ) + 1 ) * 4;
+        int index = (int) ( footer - indexSize );
+
+        int[] position = {index + 1};
+        if ( readVarint( stream, position ) != 1 )
+        {
+            throw new IOException( "Expected a single xz block." );
+        }
+        long unpaddedSize = readVarint( stream, position );
+        long uncompressedSize = readVarint( stream, position );
+
+        return new Block( Arrays.copyOfRange( stream, HEADER_SIZE, index ), uncompressedSize, unpaddedSize );
+    }
+
+    protected void writeBlock( OutputStream out, Block block )
+        throws IOException
+    {
+        super.writeBlock( out, block );
+
+        writeVarint( records, block.unpaddedSize );
+        writeVarint( records, block.uncompressedSize );
+        recordCount++;
+    }
+
+    protected void finish( OutputStream out )
+        throws IOException
+    {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write( 0 );
+        writeVarint( index, recordCount );
+        records.writeTo( index );
+        while ( index.size() % 4 != 0 )
+        {
+            index.write( 0 );
+        }
+
+        byte[] bytes = index.toByteArray();
+        out.write( bytes );
+        writeInt( out, crc32( bytes ) );
+
+        byte[] footer = new byte[6];
+        long backwardSize = ( bytes.length + 4 ) / 4 - 1;
+        for ( int i = 0; i < 4; i++ )
+        {
+            footer[i] = (byte) ( backwardSize >>> ( i * 8 ) );
+        }
+        footer[4] = FLAGS[0];
+        footer[5] = FLAGS[1];
+
+        writeInt( out, crc32( footer ) );
+        out.write( footer );
+        out.write( FOOTER_MAGIC );
+    }
+
+    private static int crc32( byte[] bytes )
+    {
+        CRC32 crc = new CRC32();
+        crc.update( bytes );
+        return (int) crc.getValue();
+    }
+
+    private static void writeInt( OutputStream out, int value )
+        throws IOException
+    {
+        for ( int i = 0; i < 4; i++ )
+        {
+            out.write( value >>> ( i * 8 ) );
+        }
+    }
+
+    private static int readInt( byte[] bytes, int offset )
+    {
+        int value = 0;
+        for ( int i = 0; i < 4; i++ )
+        {
+            value |= ( bytes[offset + i] & 0xff ) << ( i * 8 );
+        }
+        return value;
+    }
+
+    private static void writeVarint( OutputStream out, long value )
+        throws IOException
+    {
+        while ( value >= 0x80 )
+        {
+            out.write( (int) ( value | 0x80 ) );
+            value >>>= 7;
+        }
+        out.write( (int) value );
+    }
+
+    private static long readVarint( byte[] bytes, int[] position )
+    {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = bytes[position[0]++] & 0xff;
+            value |= (long) ( b & 0x7f ) << shift;
+            shift += 7;
+        }
+        while ( ( b & 0x80 ) != 0 );
+        return value;
+    }
+}
@@ -0,0 +1,224 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.*;
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+import org.apache.commons.compress.archivers.tar.*;
+import org.codehaus.plexus.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.util.*;
+
+import static com.stratio.mojo.unix.FileAttributes.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class DebCompressionTest
+    extends PlexusTestCase
+{
+    private static final byte[] data = data( 3 * 1024 * 1024 + 123 );
+
+    public void testRoundTrip()
+        throws Exception
+    {
+        for ( DebCompression compression : DebCompression.values() )
+        {
+            for ( int threads : new int[]{ 1, 4 } )
+            {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                OutputStream os = compression.compress( compressed, 1, threads );
+                os.write( data );
+                os.close();
+
+                InputStream is = compression.decompress( new ByteArrayInputStream( compressed.toByteArray() ) );
+                assertTrue( compression + ", threads=" + threads, Arrays.equals( data, IOUtil.toByteArray( is ) ) );
+            }
+        }
+    }
+
+    public void testLevelChange()
+        throws Exception
+    {
+        for ( DebCompression compression : DebCompression.values() )
+        {
+            for ( int threads : new int[]{ 1, 4 } )
+            {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                OutputStream os = compression.compress( compressed, -1, threads );
+                int third = data.length / 3;
+                os.write( data, 0, third );
+                if ( os instanceof LevelAdjustable )
+                {
+                    ( (LevelAdjustable) os ).setLevel( 1 );
+                }
+                os.write( data, third, third );
+                if ( os instanceof LevelAdjustable )
+                {
+                    ( (LevelAdjustable) os ).setLevel( -1 );
+                }
+                os.write( data, 2 * third, data.length - 2 * third );
+                os.close();
+
+                InputStream is = compression.decompress( new ByteArrayInputStream( compressed.toByteArray() ) );
+                assertTrue( compression + ", threads=" + threads, Arrays.equals( data, IOUtil.toByteArray( is ) ) );
+            }
+        }
+    }
+
+    public void testEmptyStream()
+        throws Exception
+    {
+        for ( DebCompression compression : DebCompression.values() )
+        {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            compression.compress( compressed, -1, 4 ).close();
+
+            InputStream is = compression.decompress( new ByteArrayInputStream( compressed.toByteArray() ) );
+            assertEquals( compression.name(), 0, IOUtil.toByteArray( is ).length );
+        }
+    }
+
+    public void testFromFileName()
+        throws Exception
+    {
+        assertEquals( DebCompression.gzip, DebCompression.fromFileName( "data.tar.gz" ) );
+        assertEquals( DebCompression.xz, DebCompression.fromFileName( "data.tar.xz" ) );
+        assertEquals( DebCompression.zstd, DebCompression.fromFileName( "data.tar.zst" ) );
+        assertEquals( DebCompression.none, DebCompression.fromFileName( "data.tar" ) );
+
+        try
+        {
+            DebCompression.fromFileName( "data.tar.lzma" );
+            fail( "Expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    public void testPackages()
+        throws Exception
+    {
+        boolean dpkgDeb = new DpkgDeb().available();
+
+        if ( !dpkgDeb )
+        {
+            System.err.println( "Skipping dpkg-deb validation: " + super.getName() );
+        }
+
+        for ( DebCompression compression : DebCompression.values() )
+        {
+            File deb = getTestFile( "target/deb-compression/" + compression + ".deb" );
+            deb.getParentFile().mkdirs();
+            writeDeb( deb, compression );
+
+            List<UnixFsObject> contents = DpkgDebTool.contents( deb );
+            assertEquals( 2, contents.size() );
+            assertEquals( relativePath( "data.bin" ), contents.get( 1 ).path );
+            assertEquals( data.length, contents.get( 1 ).size );
+
+            if ( dpkgDeb )
+            {
+                assertTrue( compression.name(), Arrays.equals( data, dpkgDebData( deb ) ) );
+            }
+        }
+    }
+
+    private static void writeDeb( File deb, DebCompression compression )
+        throws IOException
+    {
+        LocalDateTime now = new LocalDateTime( 2012, 1, 1, 0, 0 );
+
+        DebWriter writer = new DebWriter( deb, now, compression, 4 );
+        try
+        {
+            TarArchiveOutputStream control = writer.control();
+            byte[] bytes = "Package: test\nVersion: 1.0\nArchitecture: all\nMaintainer: Nobody\nDescription: test\n".
+                getBytes( "UTF-8" );
+            DebWriter.writeFile( control, regularFile( relativePath( "control" ), now, bytes.length, EMPTY ),
+                                 bytes.length, new ByteArrayInputStream( bytes ) );
+            control.close();
+
+            TarArchiveOutputStream tar = writer.data( 1 );
+            DebWriter.writeDirectory( tar, directory( BASE, now, EMPTY ) );
+            DebWriter.writeFile( tar, regularFile( relativePath( "data.bin" ), now, data.length, EMPTY ), data.length,
+                                 new ByteArrayInputStream( data ) );
+            tar.close();
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static byte[] dpkgDebData( File deb )
+        throws IOException
+    {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        new SystemCommand().
+            withStdoutConsumer( tar ).
+            withStderrConsumer( System.err ).
+            setCommand( "dpkg-deb" ).
+            addArgument( "--fsys-tarfile" ).
+            addArgument( deb.getAbsolutePath() ).
+            execute().
+            assertSuccess();
+
+        TarArchiveInputStream is = new TarArchiveInputStream( new ByteArrayInputStream( tar.toByteArray() ) );
+        TarArchiveEntry entry;
+        while ( ( entry = is.getNextTarEntry() ) != null )
+        {
+            if ( entry.getName().equals( "./data.bin" ) )
+            {
+                return IOUtil.toByteArray( is );
+            }
+        }
+
+        fail( "Could not find ./data.bin in " + deb );
+        return null;
+    }
+
+    /**
+     * Compressible, but not trivially so, to make sure that every block is different.
+     */
+    private static byte[] data( int size )
+    {
+        Random random = new Random( 0 );
+        byte[] bytes = new byte[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            bytes[i] = (byte) ( 'a' + random.nextInt( 16 ) );
+        }
+        return bytes;
+    }
+}
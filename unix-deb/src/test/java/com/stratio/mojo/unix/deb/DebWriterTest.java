@@ -0,0 +1,157 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+import com.stratio.mojo.unix.util.line.*;
+import org.apache.commons.compress.archivers.tar.*;
+import fj.data.*;
+import org.codehaus.plexus.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+
+import static com.stratio.mojo.unix.FileAttributes.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class DebWriterTest
+    extends PlexusTestCase
+{
+    public void testMd5sums()
+        throws Exception
+    {
+        File deb = getTestFile( "target/deb-writer/md5sums.deb" );
+        deb.getParentFile().mkdirs();
+        LocalDateTime now = new LocalDateTime( 2012, 1, 1, 0, 0 );
+
+        DebWriter writer = new DebWriter( deb, now, DebCompression.gzip, 1 );
+        try
+        {
+            TarArchiveOutputStream data = writer.data();
+            DebWriter.writeDirectory( data, directory( BASE, now, EMPTY ) );
+            DebWriter.writeDirectory( data, directory( relativePath( "opt" ), now, EMPTY ) );
+            write( data, "opt/hello.txt", "Hello World!" );
+            DebWriter.writeSymlink( data, symlink( relativePath( "opt/current" ), now, Option.<String>none(), Option.<String>none(),
+                                                            "hello.txt" ) );
+            // Long enough to need a GNU long name entry
+            write( data, "opt/" + StringUtils.repeat( "x", 120 ) + ".txt", "" );
+            data.close();
+
+            // The directory and the symlink count as a kilobyte each, the empty file does not count
+            assertEquals( 12, writer.installedSize().getBytes() );
+            assertEquals( 3, writer.installedSize().getKilobytes() );
+
+            TarArchiveOutputStream control = writer.control();
+            write( control, "control",
+                   "Package: test\nVersion: 1.0\nArchitecture: all\nMaintainer: Nobody\nDescription: test\n" );
+            assertTrue( writer.writeMd5sums( control, regularFile( relativePath( "md5sums" ), now, 0, EMPTY ) ) );
+            control.close();
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        assertFalse( new File( deb.getPath() + ".data.tmp" ).exists() );
+
+        String expected = "ed076287532e86365e841e92bfc50d8c  opt/hello.txt\n" +
+            "d41d8cd98f00b204e9800998ecf8427e  opt/" + StringUtils.repeat( "x", 120 ) + ".txt\n";
+
+        String control = DpkgDebTool.control( deb );
+        assertTrue( control.startsWith( "Package: test\n" ) );
+
+        if ( !new DpkgDeb().available() )
+        {
+            System.err.println( "Skipping dpkg-deb validation: " + super.getName() );
+            return;
+        }
+
+        ByteArrayOutputStream md5sums = new ByteArrayOutputStream();
+        new SystemCommand().
+            withStdoutConsumer( md5sums ).
+            withStderrConsumer( System.err ).
+            setCommand( "dpkg-deb" ).
+            addArgument( "--info" ).
+            addArgument( deb.getAbsolutePath() ).
+            addArgument( "md5sums" ).
+            execute().
+            assertSuccess();
+
+        assertEquals( expected, md5sums.toString( "UTF-8" ) );
+    }
+
+    public void testCompressionPolicy()
+        throws Exception
+    {
+        File deb = getTestFile( "target/deb-writer/compression-policy.deb" );
+        deb.getParentFile().mkdirs();
+        LocalDateTime now = new LocalDateTime( 2012, 1, 1, 0, 0 );
+
+        CompressionPolicy policy = new CompressionPolicy();
+        DebWriter writer = new DebWriter( deb, now, DebCompression.gzip, 1 );
+        try
+        {
+            TarArchiveOutputStream data = writer.data( -1, policy );
+            DebWriter.writeDirectory( data, directory( BASE, now, EMPTY ) );
+            write( data, "opt/a.jar", StringUtils.repeat( "a", 1000 ) );
+            write( data, "opt/a.txt", StringUtils.repeat( "a", 1000 ) );
+            data.close();
+
+            TarArchiveOutputStream control = writer.control();
+            write( control, "control",
+                   "Package: test\nVersion: 1.0\nArchitecture: all\nMaintainer: Nobody\nDescription: test\n" );
+            control.close();
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        // Only the entries of the data tar are looked at, and the level goes back when the text file is written
+        LineFile lines = new LineFile();
+        policy.streamTo( lines );
+        assertEquals( 4, lines.getLines().size() );
+        assertEquals( "store /opt/a.jar: extension .jar", lines.getLines().get( 0 ) );
+        assertEquals( "level 1: 100% of 1000 bytes are already compressed", lines.getLines().get( 1 ) );
+        assertEquals( "compress /opt/a.txt: entropy 0.00 bits/byte", lines.getLines().get( 2 ) );
+        assertEquals( "level -1: 50% of 2000 bytes are already compressed", lines.getLines().get( 3 ) );
+
+        assertEquals( 3, DpkgDebTool.contents( deb ).size() );
+    }
+
+    private static void write( TarArchiveOutputStream tar, String path, String content )
+        throws IOException
+    {
+        byte[] bytes = content.getBytes( "UTF-8" );
+        DebWriter.writeFile( tar, regularFile( relativePath( path ), new LocalDateTime( 2012, 1, 1, 0, 0 ),
+                                               bytes.length, EMPTY ), bytes.length, new ByteArrayInputStream( bytes ) );
+    }
+}
@@ -52,6 +52,17 @@ public class DpkgDebToolTest
         }
     }
 
+    public void testControlFile()
+        throws Exception
+    {
+        ControlFile controlFile = DpkgDebTool.controlFile( getTestFile( "src/test/resources/base-files_4_i386.deb" ) );
+
+        assertEquals( "base-files", controlFile.packageName );
+        assertEquals( "4", controlFile.version.some() );
+        assertEquals( "admin", controlFile.section.some() );
+        assertEquals( "i386", controlFile.architecture.some() );
+    }
+
     private static final RelativePath[] paths = new RelativePath[]
         {
             RelativePath.BASE,
@@ -0,0 +1,202 @@
+ package com.stratio.mojo.unix.deb;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.util.*;
+import org.apache.commons.compress.archivers.tar.*;
+import org.codehaus.plexus.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.util.*;
+
+import static com.stratio.mojo.unix.FileAttributes.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.deb.DpkgScanPackagesTool.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class DpkgScanPackagesToolTest
+    extends PlexusTestCase
+{
+    public void testScanPackages()
+        throws Exception
+    {
+        File root = createRepository( "target/scan-packages" );
+        File cache = getTestFile( "target/scan-packages.cache" );
+        cache.delete();
+
+        String packages = scan( new DpkgScanPackagesTool( root ).cacheFile( cache ).threads( 4 ) );
+
+        assertTrue( packages.startsWith( "Package: a\nVersion: 1.0\nArchitecture: all\n" ) );
+        assertTrue( packages.contains( "Filename: ./a/a_1.0_all.deb\nSize: " ) );
+        assertTrue( packages.contains( "Description: The a package\n This is a\n .\n long description.\n" ) );
+        assertTrue( packages.contains( "\n\nPackage: a\nVersion: 1.0~rc1\n" ) );
+        assertTrue( packages.contains( "Package: base-files\n" ) );
+
+        if ( !SystemCommand.available( "dpkg-scanpackages" ) )
+        {
+            System.err.println( "Skipping dpkg-scanpackages validation: " + super.getName() );
+        }
+        else
+        {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new SystemCommand().
+                withStdoutConsumer( expected ).
+                withStderrConsumer( System.err ).
+                setCommand( "dpkg-scanpackages" ).
+                setBasedir( root ).
+                addArgument( "-m" ).
+                addArgument( "." ).
+                execute().
+                assertSuccess();
+
+            assertEquals( expected.toString( "UTF-8" ), packages );
+        }
+
+        // Nothing has changed, so the cache has to give the same result
+        assertEquals( packages, scan( new DpkgScanPackagesTool( root ).cacheFile( cache ) ) );
+    }
+
+    public void testCache()
+        throws Exception
+    {
+        File root = createRepository( "target/scan-packages-cache" );
+        File cache = getTestFile( "target/scan-packages-cache.cache" );
+        cache.delete();
+
+        String packages = scan( new DpkgScanPackagesTool( root ).cacheFile( cache ) );
+
+        // Prove that the cache is used by changing it
+        String md5 = packages.substring( packages.indexOf( "MD5sum: " ) + 8, packages.indexOf( "MD5sum: " ) + 40 );
+        String s = FileUtils.fileRead( cache, "UTF-8" );
+        assertTrue( s.contains( md5 ) );
+        FileUtils.fileWrite( cache.getAbsolutePath(), "UTF-8", s.replace( md5, "cached" ) );
+
+        assertTrue( scan( new DpkgScanPackagesTool( root ).cacheFile( cache ) ).contains( "MD5sum: cached\n" ) );
+
+        // A package with another modification time is read again
+        File deb = new File( root, "a/a_1.0_all.deb" );
+        assertTrue( deb.setLastModified( deb.lastModified() - 10000 ) );
+
+        assertEquals( packages, scan( new DpkgScanPackagesTool( root ).cacheFile( cache ) ) );
+    }
+
+    public void testNoMultiversion()
+        throws Exception
+    {
+        File root = createRepository( "target/scan-packages-single" );
+
+        DpkgScanPackagesTool tool = new DpkgScanPackagesTool( root ).
+            multiversion( false ).
+            pathPrefix( "pool/" );
+        String packages = scan( tool );
+
+        assertTrue( packages.contains( "Version: 1.0\n" ) );
+        assertFalse( packages.contains( "Version: 1.0~rc1\n" ) );
+        assertTrue( packages.contains( "Filename: pool/./a/a_1.0_all.deb\n" ) );
+        assertFalse( tool.getWarnings().isEmpty() );
+    }
+
+    public void testOverride()
+        throws Exception
+    {
+        File root = createRepository( "target/scan-packages-override" );
+        File override = getTestFile( "target/scan-packages.override" );
+        FileUtils.fileWrite( override.getAbsolutePath(), "UTF-8",
+                             "# comment\na optional devel Nobody => Somebody\nb extra misc\n" );
+
+        String packages = scan( new DpkgScanPackagesTool( root ).overrideFile( override ) );
+
+        assertTrue( packages.contains( "Maintainer: Somebody\n" ) );
+        assertTrue( packages.contains( "Section: devel\nPriority: optional\n" ) );
+    }
+
+    public void testCompareVersions()
+    {
+        assertTrue( compareVersions( "1.0", "1.0" ) == 0 );
+        assertTrue( compareVersions( "1.0", "1.00" ) == 0 );
+        assertTrue( compareVersions( "1.0~rc1", "1.0" ) < 0 );
+        assertTrue( compareVersions( "1.0", "1.0a" ) < 0 );
+        assertTrue( compareVersions( "1.0-1", "1.0-2" ) < 0 );
+        assertTrue( compareVersions( "1.10", "1.9" ) > 0 );
+        assertTrue( compareVersions( "1:0.1", "2.0" ) > 0 );
+        assertTrue( compareVersions( "1.0+b1", "1.0" ) > 0 );
+        assertTrue( compareVersions( "1.0~~", "1.0~" ) < 0 );
+    }
+
+    private static String scan( DpkgScanPackagesTool tool )
+        throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        tool.write( tool.scan(), os );
+        return os.toString( "UTF-8" );
+    }
+
+    private static File createRepository( String path )
+        throws IOException
+    {
+        File root = getTestFile( path );
+        FileUtils.deleteDirectory( root );
+        new File( root, "a" ).mkdirs();
+
+        deb( new File( root, "a/a_1.0_all.deb" ), "Package: a\nVersion: 1.0\nArchitecture: all\n" +
+            "Maintainer: Nobody\nDepends: b\nX-Custom: yes\nDescription: The a package\n This is a\n .\n" +
+            " long description.\n" );
+        deb( new File( root, "a/a_1.0~rc1_all.deb" ), "Package: a\nVersion: 1.0~rc1\nArchitecture: all\n" +
+            "Maintainer: Nobody\nDescription: The a package\n" );
+        FileUtils.copyFile( getTestFile( "src/test/resources/base-files_4_i386.deb" ),
+                            new File( root, "base-files_4_i386.deb" ) );
+
+        return root;
+    }
+
+    private static void deb( File file, String control )
+        throws IOException
+    {
+        LocalDateTime now = new LocalDateTime( 2012, 1, 1, 0, 0 );
+
+        DebWriter writer = new DebWriter( file, now );
+        try
+        {
+            byte[] bytes = control.getBytes( "UTF-8" );
+            TarArchiveOutputStream tar = writer.control();
+            DebWriter.writeFile( tar, regularFile( relativePath( "control" ), now, bytes.length, EMPTY ), bytes.length,
+                                 new ByteArrayInputStream( bytes ) );
+            tar.close();
+
+            tar = writer.data();
+            DebWriter.writeDirectory( tar, directory( BASE, now, EMPTY ) );
+            tar.close();
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+}
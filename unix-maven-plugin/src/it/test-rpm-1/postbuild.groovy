@@ -5,8 +5,6 @@ import com.stratio.mojo.unix.rpm.SpecFile
 boolean success = true
 
 File hudsonWar = findArtifact("org.jvnet.hudson.main", "hudson-war", "1.255", "war")
-// Set this as the rpm command will spit out dates in a different format than what the RpmUtil can handle right now
-hudsonWar.setLastModified(System.currentTimeMillis())
 
 File rpm = findArtifact("bar", "project-rpm-1", "1.1-2", "rpm")
 
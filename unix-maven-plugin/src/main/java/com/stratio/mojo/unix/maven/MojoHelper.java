@@ -40,12 +40,19 @@ import static java.lang.String.format;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.Artifact;
@@ -56,12 +63,15 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
 
 import com.stratio.mojo.unix.FileAttributes;
+import com.stratio.mojo.unix.FileCollector;
 import com.stratio.mojo.unix.MissingSettingException;
 import com.stratio.mojo.unix.PackageParameters;
 import com.stratio.mojo.unix.PackageVersion;
 import com.stratio.mojo.unix.UnixPackage;
 import com.stratio.mojo.unix.core.AssemblyOperation;
+import com.stratio.mojo.unix.core.BuildCache;
 import com.stratio.mojo.unix.core.UnixPlatform;
+import com.stratio.mojo.unix.io.fs.BlobStore;
 import com.stratio.mojo.unix.io.fs.LocalFs;
 import com.stratio.mojo.unix.java.StringF;
 import com.stratio.mojo.unix.maven.plugin.AssemblyOp;
@@ -74,6 +84,7 @@ import com.stratio.mojo.unix.maven.plugin.PackagingMojoParameters;
 import com.stratio.mojo.unix.maven.plugin.UnknownArtifactException;
 import com.stratio.mojo.unix.util.ScriptUtil;
 import com.stratio.mojo.unix.util.line.AbstractLineStreamWriter;
+import com.stratio.mojo.unix.util.line.LineFile;
 
 import fj.F;
 import fj.P1;
@@ -133,6 +144,11 @@ public abstract class MojoHelper
 
         LocalFs buildDirectory = new LocalFs( project.buildDirectory );
 
+        // Shared by all packages, and by the other formats through the files on disk
+        BlobStore blobStore = new BlobStore( buildDirectory.resolve( "unix/blobs" ) );
+
+        Charset filterEncoding = filterEncoding( mojoParameters.encoding, log );
+
         PackageVersion version = PackageVersion.packageVersion( project.version, timestamp,
                                                                 project.artifact.isSnapshot(), mojoParameters.revision );
 
@@ -157,7 +173,10 @@ public abstract class MojoHelper
                     parameters( parameters ).
                     setVersion( version ).                      // TODO: This should go away
                     workingDirectory( packageRoot ).
+                    blobStore( blobStore ).
                     debug( debug ).
+                    compressionPolicy( mojoParameters.compression.policy() ).
+                    filterEncoding( filterEncoding ).
                     basedir( project.basedir );
 
                 // -----------------------------------------------------------------------
@@ -236,7 +255,7 @@ public abstract class MojoHelper
             }
         }
 
-        return new Execution<UP>( packages, project, formatType, attachedMode );
+        return new Execution<UP>( packages, project, formatType, attachedMode, blobStore, log );
     }
 
     public static class Execution<UP extends UnixPackage>
@@ -249,82 +268,268 @@ public abstract class MojoHelper
 
         private final boolean attachedMode;
 
+        private final BlobStore blobStore;
+
+        private BuildCache buildCache;
+
+        private String configuration;
+
+        private final Log log;
+
         public Execution( List<P3<UP, Package, List<AssemblyOperation>>> packages, MavenProjectWrapper project,
-                          String formatType, boolean attachedMode )
+                          String formatType, boolean attachedMode, BlobStore blobStore, Log log )
         {
             this.packages = packages;
             this.project = project;
             this.formatType = formatType;
             this.attachedMode = attachedMode;
+            this.blobStore = blobStore;
+            this.log = log;
+        }
+
+        /**
+         * Enables the build cache in <code>target/unix/.cache</code>. A package is only rebuilt if the configuration
+         * or any of its inputs has changed since the last build.
+         *
+         * @param configuration A string representing everything in the configuration that affects the packages.
+         */
+        public Execution<UP> buildCache( String configuration )
+        {
+            this.buildCache = new BuildCache( new LocalFs( project.buildDirectory ).resolve( "unix/.cache" ) );
+            this.configuration = configuration;
+
+            return this;
         }
 
         public void execute( String artifactType, MavenProject mavenProject, MavenProjectHelper mavenProjectHelper, ScriptUtil.Strategy strategy )
             throws MojoExecutionException, MojoFailureException
         {
-            for ( P3<UP, Package, List<AssemblyOperation>> p : packages )
-            {
-                UnixPackage unixPackage = p._1();
-                Package pakke = p._2();
+            execute( artifactType, mavenProject, mavenProjectHelper, strategy, 1 );
+        }
 
-                try
+        /**
+         * Creates the packages using up to <code>parallelism</code> threads. Each package has its own working
+         * directory so they can be assembled and packaged independently, but the artifacts are always attached to the
+         * project afterwards, one at a time and in the same order as when building them sequentially.
+         */
+        public void execute( String artifactType, MavenProject mavenProject, MavenProjectHelper mavenProjectHelper,
+                             final ScriptUtil.Strategy strategy, int parallelism )
+            throws MojoExecutionException, MojoFailureException
+        {
+            if ( parallelism <= 1 || packages.length() <= 1 )
+            {
+                for ( P3<UP, Package, List<AssemblyOperation>> p : packages )
                 {
-                    // -----------------------------------------------------------------------
-                    // Assemble all the files
-                    // -----------------------------------------------------------------------
+                    File packageFile = createPackage( p, strategy );
+
+                    attach( p._2().classifier, artifactType, packageFile, mavenProject, mavenProjectHelper,
+                            attachedMode );
+                }
+
+                saveCaches();
+
+                return;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool( Math.min( parallelism, packages.length() ) );
+
+            try
+            {
+                java.util.List<Future<File>> futures = new ArrayList<Future<File>>();
 
-                    for ( AssemblyOperation assemblyOperation : p._3() )
+                for ( final P3<UP, Package, List<AssemblyOperation>> p : packages )
+                {
+                    futures.add( executor.submit( new Callable<File>()
                     {
-                        assemblyOperation.perform( unixPackage );
-                    }
+                        public File call()
+                            throws Exception
+                        {
+                            return createPackage( p, strategy );
+                        }
+                    } ) );
+                }
 
-                    // -----------------------------------------------------------------------
-                    // Package the stuff
-                    // -----------------------------------------------------------------------
+                java.util.List<File> packageFiles = new ArrayList<File>();
 
-                    String version = unixPackage.getVersion().getMavenVersion();
+                for ( Future<File> future : futures )
+                {
+                    packageFiles.add( get( future ) );
+                }
 
-                    if(unixPackage.getPackageFileExtension().equals("rpm"))version=version.replace('-','_');
+                int i = 0;
+                for ( P3<UP, Package, List<AssemblyOperation>> p : packages )
+                {
+                    attach( p._2().classifier, artifactType, packageFiles.get( i++ ), mavenProject,
+                            mavenProjectHelper, attachedMode );
+                }
 
-                   //String name = project.artifactId +
+                saveCaches();
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
 
-                    String architecture ="";
-                    if (StringUtils.isNotEmpty(unixPackage.getArchitecture())){
-                        architecture = unixPackage.getArchitecture() + ".";
-                    }
+        private void saveCaches()
+            throws MojoExecutionException
+        {
+            try
+            {
+                blobStore.save();
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Unable to write the blob store index.", e );
+            }
 
-                    String baseName = null;
-                    if (StringUtils.isNotEmpty(unixPackage.getOutputFileName())){
-                        baseName=unixPackage.getOutputFileName();
-                    }else{
-                        baseName=project.outputFileName;
-                    }
+            if ( buildCache == null )
+            {
+                return;
+            }
+
+            try
+            {
+                buildCache.save();
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Unable to write the build cache.", e );
+            }
+        }
+
+        private static File get( Future<File> future )
+            throws MojoExecutionException, MojoFailureException
+        {
+            try
+            {
+                return future.get();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException( "Interrupted while creating packages.", e );
+            }
+            catch ( ExecutionException e )
+            {
+                Throwable cause = e.getCause();
+
+                if ( cause instanceof MojoExecutionException )
+                {
+                    throw (MojoExecutionException) cause;
+                }
+                else if ( cause instanceof MojoFailureException )
+                {
+                    throw (MojoFailureException) cause;
+                }
 
-                    String name = baseName +
-                        pakke.classifier.map( dashString ).orSome( "" ) +
-                        "-" + version +
-                        "." + architecture + unixPackage.getPackageFileExtension();
+                throw new MojoExecutionException( "Unable to create package.", cause );
+            }
+        }
 
+        private File createPackage( P3<UP, Package, List<AssemblyOperation>> p, ScriptUtil.Strategy strategy )
+            throws MojoExecutionException, MojoFailureException
+        {
+            UnixPackage unixPackage = p._1();
+            Package pakke = p._2();
 
-                    File packageFile = new File( project.buildDirectory, name );
+            try
+            {
+                // -----------------------------------------------------------------------
+                // Assemble all the files
+                // -----------------------------------------------------------------------
 
-                    unixPackage.prepare( strategy ).
-                        packageToFile( packageFile );
+                FileCollector fileCollector = unixPackage;
+                BuildCache.Recorder recorder = null;
 
-                    attach( pakke.classifier, artifactType, packageFile, mavenProject, mavenProjectHelper,
-                            attachedMode );
+                if ( buildCache != null )
+                {
+                    recorder = buildCache.recorder( unixPackage ).addInput( unixPackage.getScripts() );
+                    fileCollector = recorder;
                 }
-                catch ( MojoExecutionException e )
+
+                for ( AssemblyOperation assemblyOperation : p._3() )
                 {
-                    throw e;
+                    assemblyOperation.perform( fileCollector );
+                }
+
+                // -----------------------------------------------------------------------
+                // Package the stuff
+                // -----------------------------------------------------------------------
+
+                String version = unixPackage.getVersion().getMavenVersion();
+
+                if(unixPackage.getPackageFileExtension().equals("rpm"))version=version.replace('-','_');
+
+               //String name = project.artifactId +
+
+                String architecture ="";
+                if (StringUtils.isNotEmpty(unixPackage.getArchitecture())){
+                    architecture = unixPackage.getArchitecture() + ".";
+                }
+
+                String baseName = null;
+                if (StringUtils.isNotEmpty(unixPackage.getOutputFileName())){
+                    baseName=unixPackage.getOutputFileName();
+                }else{
+                    baseName=project.outputFileName;
                 }
-                catch ( MojoFailureException e )
+
+                String name = baseName +
+                    pakke.classifier.map( dashString ).orSome( "" ) +
+                    "-" + version +
+                    "." + architecture + unixPackage.getPackageFileExtension();
+
+
+                File packageFile = new File( project.buildDirectory, name );
+
+                String key = null;
+
+                if ( recorder != null )
+                {
+                    key = recorder.key( configuration + "\n" + formatType + "\n" + name + "\n" + strategy );
+
+                    if ( buildCache.isUpToDate( name, key, packageFile ) )
+                    {
+                        log.info( "Package is up to date: " + packageFile.getName() );
+
+                        return packageFile;
+                    }
+
+                    buildCache.remove( name );
+                }
+
+                unixPackage.prepare( strategy ).
+                    packageToFile( packageFile );
+
+                if ( log.isDebugEnabled() )
                 {
-                    throw e;
+                    LineFile decisions = new LineFile();
+                    unixPackage.getCompressionPolicy().streamTo( decisions );
+                    for ( String line : decisions )
+                    {
+                        log.debug( "Compression: " + line );
+                    }
                 }
-                catch ( Exception e )
+
+                if ( key != null )
                 {
-                    throw new MojoExecutionException( "Unable to create package.", e );
+                    buildCache.store( name, key, packageFile );
                 }
+
+                return packageFile;
+            }
+            catch ( MojoExecutionException e )
+            {
+                throw e;
+            }
+            catch ( MojoFailureException e )
+            {
+                throw e;
+            }
+            catch ( Exception e )
+            {
+                throw new MojoExecutionException( "Unable to create package.", e );
             }
         }
 
@@ -404,6 +609,30 @@ public abstract class MojoHelper
                                           pakke.directoryAttributes.create() ) );
     }
 
+    /**
+     * The encoding filtered files are read and written with, the platform encoding if none is configured.
+     */
+    public static Charset filterEncoding( Option<String> encoding, Log log )
+        throws MojoFailureException
+    {
+        if ( encoding.isNone() )
+        {
+            Charset charset = Charset.defaultCharset();
+            log.warn( "Using platform encoding (" + charset.name() + ") to filter files, i.e. build is platform " +
+                          "dependent!" );
+            return charset;
+        }
+
+        try
+        {
+            return Charset.forName( encoding.some() );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new MojoFailureException( "Unsupported encoding: '" + encoding.some() + "'." );
+        }
+    }
+
     public static FileAttributes calculateFileAttributes( FileAttributes platform,
                                                           FileAttributes mojo,
                                                           FileAttributes pakke )
@@ -28,6 +28,7 @@ import static fj.Function.*;
 import fj.data.*;
 import static fj.data.Option.*;
 import com.stratio.mojo.unix.*;
+import com.stratio.mojo.unix.deb.*;
 import com.stratio.mojo.unix.java.*;
 import com.stratio.mojo.unix.maven.plugin.*;
 
@@ -50,9 +51,22 @@ public class DebMojoUtil
             throw new MissingSettingException( "Section has to be specified." );
         }
 
+        DebCompression compression;
+        try
+        {
+            compression = DebCompression.valueOf( deb.compression );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new MissingSettingException( "Unsupported compression: '" + deb.compression + "', has to be one " +
+                                                   "of gzip, xz, zstd or none." );
+        }
+
+        int threads = deb.compressionThreads > 0 ? deb.compressionThreads : Runtime.getRuntime().availableProcessors();
+
         return unixPackage.
+            compression( compression, threads ).
             debParameters( fromNull( deb.priority.orSome( "standard" ) ), fromNull( deb.section.some() ),
-                           deb.useFakeroot, deb.dpkgDeb,
                            deb.depends.map( flip( StringF.split ).f( "," ) ).orSome( List.<String>nil() ),
                            deb.recommends.map( flip( StringF.split ).f( "," ) ).orSome( List.<String>nil() ),
                            deb.suggests.map( flip( StringF.split ).f( "," ) ).orSome( List.<String>nil() ),
@@ -29,23 +29,25 @@ import fj.data.*;
 import fj.data.List;
 
 import static fj.data.Option.*;
+import org.apache.commons.compress.archivers.tar.*;
 import com.stratio.mojo.unix.*;
-import com.stratio.mojo.unix.core.*;
+import static com.stratio.mojo.unix.BasicPackageFileSystemObject.*;
+import static com.stratio.mojo.unix.PackageFileSystem.*;
+import static com.stratio.mojo.unix.UnixFileMode.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.core.FsFileCollector.*;
 import com.stratio.mojo.unix.deb.*;
+import static com.stratio.mojo.unix.deb.DebWriter.*;
+import com.stratio.mojo.unix.io.*;
 import com.stratio.mojo.unix.io.fs.*;
 import com.stratio.mojo.unix.util.*;
-import com.stratio.mojo.unix.util.line.*;
 
-import static java.nio.file.Files.setPosixFilePermissions;
-import static com.stratio.mojo.unix.UnixFsObject.RegularFile;
-import static com.stratio.mojo.unix.util.RelativePath.relativePath;
+import static com.stratio.mojo.unix.util.RelativePath.*;
 import static com.stratio.mojo.unix.util.line.LineStreamWriter.*;
+import org.codehaus.plexus.util.*;
 import org.joda.time.*;
 
 import java.io.*;
-import java.nio.file.attribute.PosixFilePermission;
-import java.util.*;
-import java.util.Set;
 
 /**
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
@@ -55,16 +57,22 @@ public class DebUnixPackage
 {
     private ControlFile controlFile;
 
-    private FsFileCollector fileCollector;
+    private PackageFileSystem<F2<UnixFsObject, TarArchiveOutputStream, IoEffect>> fileSystem;
 
-    private boolean useFakeroot;
+    private Directory controlDirectory;
 
-    private Option<String> dpkgDeb;
+    private DebCompression compression = DebCompression.gzip;
 
-    private boolean debug;
+    private int compressionThreads = 1;
 
     private final static ScriptUtil scriptUtil = new ScriptUtil( "preinst", "postinst", "prerm", "postrm" );
 
+    /**
+     * Files that are assembled under this directory goes into <code>control.tar</code> instead of
+     * <code>data.tar</code>, like <code>DEBIAN/conffiles</code>.
+     */
+    private final static String DEBIAN = "DEBIAN";
+
     public DebUnixPackage()
     {
         super( "deb" );
@@ -82,10 +90,16 @@ public class DebUnixPackage
         return this;
     }
 
+    public DebUnixPackage compression( DebCompression compression, int threads )
+    {
+        this.compression = compression;
+        this.compressionThreads = threads;
+
+        return this;
+    }
+
     public DebUnixPackage debParameters( Option<String> priority,
                                          Option<String> section,
-                                         boolean useFakeroot,
-                                         Option<String> dpkgDeb,
                                          List<String> depends,
                                          List<String> recommends,
                                          List<String> suggests,
@@ -93,9 +107,6 @@ public class DebUnixPackage
                                          List<String> provides,
                                          List<String> replaces )
     {
-        this.useFakeroot = useFakeroot;
-        this.dpkgDeb = dpkgDeb;
-
         controlFile = controlFile.
             priority( priority ).
             section( section ).
@@ -109,38 +120,34 @@ public class DebUnixPackage
         return this;
     }
 
-    public DebUnixPackage debug( boolean debug )
-    {
-        this.debug = debug;
-        return this;
-    }
-
     public void beforeAssembly( FileAttributes defaultDirectoryAttributes, LocalDateTime timestamp )
         throws IOException
     {
-        fileCollector = new FsFileCollector( workingDirectory.resolve( relativePath( "assembly" ) ) );
+        controlDirectory = Directory.directory( BASE, timestamp, defaultDirectoryAttributes );
+
+        fileSystem = create( directory( controlDirectory ), directory( controlDirectory ) );
     }
 
-    public void addDirectory( UnixFsObject.Directory directory )
+    public void addDirectory( Directory directory )
     {
-        fileCollector.addDirectory( directory );
+        fileSystem = fileSystem.addDirectory( directory( directory ) );
     }
 
     public void addFile( Fs<?> fromFile, RegularFile file )
         throws IOException
     {
-        fileCollector.addFile( fromFile, file );
+        fileSystem = fileSystem.addFile( file( fromFile, file ) );
     }
 
-    public void addSymlink( UnixFsObject.Symlink symlink )
+    public void addSymlink( Symlink symlink )
         throws IOException
     {
-        fileCollector.addSymlink( symlink );
+        fileSystem = fileSystem.addSymlink( symlink( symlink ) );
     }
 
     public void apply( F<UnixFsObject, Option<UnixFsObject>> f )
     {
-        fileCollector.apply( f );
+        fileSystem = fileSystem.apply( f );
     }
 
     // -----------------------------------------------------------------------
@@ -150,29 +157,12 @@ public class DebUnixPackage
     public DebPreparedPackage prepare( ScriptUtil.Strategy strategy )
         throws Exception
     {
-        LocalFs debian = fileCollector.root.resolve( relativePath( "DEBIAN" ) );
-        LocalFs controlFilePath = debian.resolve( relativePath( "control" ) );
-
-        debian.mkdir();
-        LineStreamUtil.toFile(controlFile.toList(), controlFilePath.file);
-
-        fileCollector.collect();
+        LocalFs debian = workingDirectory.resolve( relativePath( DEBIAN ) );
 
         ScriptUtil.Result result = scriptUtil.
             createExecution( controlFile.packageName, "deb", getScripts(), debian.file, strategy ).
             execute();
 
-
-        try {
-            LocalFs conffilesFilePath = debian.resolve(relativePath("conffiles"));
-            conffilesFilePath.file.setExecutable(false, false);
-            conffilesFilePath.file.setReadable(true, false);
-            conffilesFilePath.file.setWritable(false, false);
-            conffilesFilePath.file.setWritable(true, true);
-        }catch(Exception e) {
-            System.out.println("conffiles is not accessible");
-        }
-
         return new DebPreparedPackage( result );
     }
 
@@ -199,19 +189,209 @@ public class DebUnixPackage
         public void packageToFile( File packageFile )
             throws Exception
         {
-            UnixUtil.chmodIf( result.preInstall, "0755" );
-            UnixUtil.chmodIf( result.postInstall, "0755" );
-            UnixUtil.chmodIf( result.preRemove, "0755" );
-            UnixUtil.chmodIf( result.postRemove, "0755" );
-
-            new DpkgDeb().
-                setDebug( debug ).
-                setPackageRoot( fileCollector.root.file ).
-                setDebFile( packageFile ).
-                setUseFakeroot( useFakeroot ).
-                setDpkgDeb( dpkgDeb ).
-                execute();
+            fileSystem = fileSystem.prettify();
+
+            Stream<PackageFileSystemObject<F2<UnixFsObject, TarArchiveOutputStream, IoEffect>>> items =
+                fileSystem.toList();
+
+            DebWriter writer = new DebWriter( packageFile, controlDirectory.lastModified, compression,
+                                              compressionThreads );
+            try
+            {
+                // The data is written first so the md5sums are calculated while the files are written. The data tar
+                // is compressed as a whole, so the policy only decides the level used for it
+                TarArchiveOutputStream data = writer.data( -1, compressionPolicy );
+                try
+                {
+                    for ( PackageFileSystemObject<F2<UnixFsObject, TarArchiveOutputStream, IoEffect>> item : items )
+                    {
+                        UnixFsObject object = item.getUnixFsObject();
+
+                        if ( !isControlPath( object.path ) )
+                        {
+                            item.getExtension().f( object, data ).run();
+                        }
+                    }
+                    data.close();
+                }
+                finally
+                {
+                    IOUtil.close( data );
+                }
+
+                if ( controlFile.installedSize.isNone() )
+                {
+                    long kilobytes = writer.installedSize().getKilobytes();
+                    controlFile = controlFile.installedSize( some( String.valueOf( kilobytes ) ) );
+                }
+
+                TarArchiveOutputStream control = writer.control();
+                try
+                {
+                    writeControl( writer, control, items );
+                    control.close();
+                }
+                finally
+                {
+                    IOUtil.close( control );
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
         }
+
+        private void writeControl( DebWriter writer, TarArchiveOutputStream control,
+                                   Stream<PackageFileSystemObject<F2<UnixFsObject, TarArchiveOutputStream, IoEffect>>> items )
+            throws Exception
+        {
+            LocalDateTime timestamp = controlDirectory.lastModified;
+
+            writeDirectory( control, controlDirectory );
+
+            byte[] bytes = controlFileBytes();
+            writeFile( control, regularFile( relativePath( "control" ), timestamp, bytes.length, controlAttributes( _0644 ) ),
+                       bytes.length, new ByteArrayInputStream( bytes ) );
+
+            RelativePath md5sums = relativePath( DEBIAN + "/md5sums" );
+            if ( !fileSystem.hasPath( md5sums ) )
+            {
+                writer.writeMd5sums( control, regularFile( relativePath( "md5sums" ), timestamp, 0,
+                                                           controlAttributes( _0644 ) ) );
+            }
+
+            for ( File script : result.preInstall.toList().
+                append( result.postInstall.toList() ).
+                append( result.preRemove.toList() ).
+                append( result.postRemove.toList() ).
+                append( result.customScripts ) )
+            {
+                InputStream is = null;
+                try
+                {
+                    is = new FileInputStream( script );
+                    writeFile( control, regularFile( relativePath( script.getName() ), timestamp, script.length(),
+                                                     controlAttributes( _0755 ) ), script.length(), is );
+                }
+                finally
+                {
+                    IOUtil.close( is );
+                }
+            }
+
+            for ( PackageFileSystemObject<F2<UnixFsObject, TarArchiveOutputStream, IoEffect>> item : items )
+            {
+                UnixFsObject object = item.getUnixFsObject();
+
+                if ( isControlPath( object.path ) && !object.path.string.equals( DEBIAN ) )
+                {
+                    UnixFsObject o = object.setPath( relativePath( object.path.string.substring( DEBIAN.length() + 1 ) ) );
+                    item.getExtension().f( o, control ).run();
+                }
+            }
+        }
+    }
+
+    private byte[] controlFileBytes()
+        throws UnsupportedEncodingException
+    {
+        StringBuilder buffer = new StringBuilder();
+
+        for ( String line : controlFile.toList() )
+        {
+            buffer.append( line ).append( '\n' );
+        }
+
+        return buffer.toString().getBytes( "UTF-8" );
+    }
+
+    private static FileAttributes controlAttributes( UnixFileMode mode )
+    {
+        return new FileAttributes( some( "root" ), some( "root" ), some( mode ) );
+    }
+
+    private static boolean isControlPath( RelativePath path )
+    {
+        return path.string.equals( DEBIAN ) || path.string.startsWith( DEBIAN + "/" );
+    }
+
+    // -----------------------------------------------------------------------
+    // Tar entries
+    // -----------------------------------------------------------------------
+
+    private BasicPackageFileSystemObject<F2<UnixFsObject, TarArchiveOutputStream, IoEffect>> directory( Directory directory )
+    {
+        F2<UnixFsObject, TarArchiveOutputStream, IoEffect> f = new F2<UnixFsObject, TarArchiveOutputStream, IoEffect>()
+        {
+            public IoEffect f( final UnixFsObject directory, final TarArchiveOutputStream tar )
+            {
+                return new IoEffect()
+                {
+                    public void run()
+                        throws IOException
+                    {
+                        writeDirectory( tar, directory );
+                    }
+                };
+            }
+        };
+
+        return basicPackageFSO( directory, f );
+    }
+
+    private BasicPackageFileSystemObject<F2<UnixFsObject, TarArchiveOutputStream, IoEffect>> symlink( Symlink symlink )
+    {
+        F2<UnixFsObject, TarArchiveOutputStream, IoEffect> f = new F2<UnixFsObject, TarArchiveOutputStream, IoEffect>()
+        {
+            public IoEffect f( final UnixFsObject symlink, final TarArchiveOutputStream tar )
+            {
+                return new IoEffect()
+                {
+                    public void run()
+                        throws IOException
+                    {
+                        writeSymlink( tar, (Symlink) symlink );
+                    }
+                };
+            }
+        };
+
+        return basicPackageFSO( symlink, f );
+    }
+
+    private BasicPackageFileSystemObject<F2<UnixFsObject, TarArchiveOutputStream, IoEffect>> file( final Fs<?> fromFile,
+                                                                                                UnixFsObject file )
+    {
+        F2<UnixFsObject, TarArchiveOutputStream, IoEffect> f = new F2<UnixFsObject, TarArchiveOutputStream, IoEffect>()
+        {
+            public IoEffect f( final UnixFsObject file, final TarArchiveOutputStream tar )
+            {
+                return new IoEffect()
+                {
+                    public void run()
+                        throws IOException
+                    {
+                        InputStream inputStream = null;
+                        try
+                        {
+                            P2<InputStream, Option<Long>> p =
+                                filtersAndLineEndingHandingInputStream( file, fromFile, blobStore, filterEncoding );
+
+                            inputStream = p._1();
+
+                            writeFile( tar, file, p._2().orSome( file.size ), inputStream );
+                        }
+                        finally
+                        {
+                            IOUtil.close( inputStream );
+                        }
+                    }
+                };
+            }
+        };
+
+        return basicPackageFSO( file, f );
     }
 
     // -----------------------------------------------------------------------
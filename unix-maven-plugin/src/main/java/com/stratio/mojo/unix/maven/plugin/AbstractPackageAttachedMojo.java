@@ -57,26 +57,34 @@ public abstract class AbstractPackageAttachedMojo<UP extends UnixPackage<UP, PP>
     public final void execute()
         throws MojoExecutionException, MojoFailureException
     {
-        MojoHelper.create( platforms,
-                           platformType,
-                           formatType,
-                           mavenProjectWrapper( project, session.get() ),
-                           debug,
-                           true,
-                           getValidateMojoSettingsAndApplyFormatSpecificSettingsToPackageF(),
-                           new PackagingMojoParameters( name,
-                                                        revision,
-                                                        description,
-                                                        contact,
-                                                        size,
-                                                        contactEmail,
-                                                        architecture,
-                                                        defaults,
-                                                        assembly,
-                                                        null,
-                                                        outputFileName,
-                                                        excludeDirectoryAttributes),
-                           getLog() ).
-            execute( artifactType, project, mavenProjectHelper, MULTIPLE );
+        MojoHelper.Execution execution = MojoHelper.create( platforms,
+                                                            platformType,
+                                                            formatType,
+                                                            mavenProjectWrapper( project, session.get() ),
+                                                            debug,
+                                                            true,
+                                                            getValidateMojoSettingsAndApplyFormatSpecificSettingsToPackageF(),
+                                                            new PackagingMojoParameters( name,
+                                                                                         revision,
+                                                                                         description,
+                                                                                         contact,
+                                                                                         size,
+                                                                                         contactEmail,
+                                                                                         architecture,
+                                                                                         defaults,
+                                                                                         assembly,
+                                                                                         null,
+                                                                                         outputFileName,
+                                                                                         excludeDirectoryAttributes,
+                                                                                         compression,
+                                                                                         encoding ),
+                                                            getLog() );
+
+        if ( buildCache )
+        {
+            execution.buildCache( buildCacheConfiguration() );
+        }
+
+        execution.execute( artifactType, project, mavenProjectHelper, MULTIPLE );
     }
 }
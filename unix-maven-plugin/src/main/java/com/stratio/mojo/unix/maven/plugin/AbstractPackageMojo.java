@@ -24,9 +24,7 @@
  * SOFTWARE.
  */
 
-import com.stratio.mojo.unix.util.FolderUtils;
 import fj.*;
-import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.*;
 import com.stratio.mojo.unix.*;
 import com.stratio.mojo.unix.maven.*;
@@ -47,6 +45,15 @@ public abstract class AbstractPackageMojo<UP extends UnixPackage<UP, PP>, PP ext
     @SuppressWarnings( {"UnusedDeclaration"} )
     private Package[] packages;
 
+    /**
+     * The number of packages to assemble and package at the same time. The packages are always attached to the
+     * project in the same order, no matter how many are built concurrently.
+     *
+     * @parameter property="maven.unix.parallelism" default-value="1"
+     */
+    @SuppressWarnings( {"UnusedDeclaration"} )
+    private int parallelism = 1;
+
     private final String platformType;
 
     private final String formatType;
@@ -67,37 +74,34 @@ public abstract class AbstractPackageMojo<UP extends UnixPackage<UP, PP>, PP ext
     public final void execute()
         throws MojoExecutionException, MojoFailureException
     {
+        MojoHelper.Execution execution = MojoHelper.create( platforms,
+                                                            platformType,
+                                                            formatType,
+                                                            mavenProjectWrapper( project, session.get() ),
+                                                            debug,
+                                                            false,
+                                                            getValidateMojoSettingsAndApplyFormatSpecificSettingsToPackageF(),
+                                                            new PackagingMojoParameters( name,
+                                                                                         revision,
+                                                                                         description,
+                                                                                         contact,
+                                                                                         size,
+                                                                                         contactEmail,
+                                                                                         architecture,
+                                                                                         defaults,
+                                                                                         assembly,
+                                                                                         packages,
+                                                                                         outputFileName,
+                                                                                         excludeDirectoryAttributes,
+                                                                                         compression,
+                                                                                         encoding ),
+                                                            getLog() );
 
-        if (StringUtils.isBlank(size)){
-            int realSize = 0;
-            for(AssemblyOp assemblyOp:assembly){
-                if (assemblyOp instanceof CopyDirectory){
-                    realSize +=FolderUtils.folderSize(((CopyDirectory)assemblyOp).getFrom());
-                }
-            }
-            size = Integer.toString(realSize/1024);
+        if ( buildCache )
+        {
+            execution.buildCache( buildCacheConfiguration() );
         }
 
-        MojoHelper.create( platforms,
-                           platformType,
-                           formatType,
-                           mavenProjectWrapper( project, session.get() ),
-                           debug,
-                           false,
-                           getValidateMojoSettingsAndApplyFormatSpecificSettingsToPackageF(),
-                           new PackagingMojoParameters( name,
-                                                        revision,
-                                                        description,
-                                                        contact,
-                                                        size,
-                                                        contactEmail,
-                                                        architecture,
-                                                        defaults,
-                                                        assembly,
-                                                        packages,
-                                                        outputFileName,
-                                                        excludeDirectoryAttributes ),
-                           getLog() ).
-            execute( artifactType, project, mavenProjectHelper, SINGLE );
+        execution.execute( artifactType, project, mavenProjectHelper, SINGLE, parallelism );
     }
 }
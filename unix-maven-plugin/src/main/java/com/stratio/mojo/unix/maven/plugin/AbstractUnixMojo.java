@@ -28,6 +28,8 @@ import org.apache.maven.execution.*;
 import org.apache.maven.plugin.*;
 import org.apache.maven.project.*;
 
+import java.io.*;
+import java.lang.reflect.*;
 import java.util.*;
 
 /**
@@ -36,6 +38,12 @@ import java.util.*;
 public abstract class AbstractUnixMojo
     extends AbstractMojo
 {
+    /**
+     * The fields that are not a part of the configuration of the packages.
+     */
+    private static final Set<String> internalFields = new HashSet<String>( Arrays.asList( "project", "session",
+        "mojoExecution", "platforms", "mavenProjectHelper", "buildCache" ) );
+
     /**
      * The assembly operations shared between all packages.
      *
@@ -50,6 +58,20 @@ public abstract class AbstractUnixMojo
      */
     protected Defaults defaults = new Defaults();
 
+    /**
+     * Decides which entries are not worth compressing.
+     *
+     * @parameter
+     */
+    protected Compression compression = new Compression();
+
+    /**
+     * The encoding of the files that are filtered. If not set the platform encoding is used.
+     *
+     * @parameter property="maven.unix.encoding" default-value="${project.build.sourceEncoding}"
+     */
+    protected String encoding;
+
     /**
      * Optional parameter to specify the name of the package. If not set it will use the artifact id of the Maven
      * project.
@@ -81,7 +103,7 @@ public abstract class AbstractUnixMojo
     protected String contact;
 
     /**
-     * The size of the package.
+     * The installed size of the package in kilobytes. If not set it is calculated from the assembled package.
      *
      * @parameter
      */
@@ -114,6 +136,14 @@ public abstract class AbstractUnixMojo
      */
     protected boolean debug;
 
+    /**
+     * Reuse the package from the previous build if its configuration and all of its input files are unchanged. The
+     * cache is kept in <code>target/unix/.cache</code>.
+     *
+     * @parameter property="maven.unix.buildCache" default-value="true"
+     */
+    protected boolean buildCache = true;
+
     // -----------------------------------------------------------------------
     // Internal
     // -----------------------------------------------------------------------
@@ -130,6 +160,12 @@ public abstract class AbstractUnixMojo
      */
     protected ThreadLocal<MavenSession> session = new ThreadLocal<MavenSession>();
 
+    /**
+     * @parameter default-value="${mojoExecution}"
+     * @readonly
+     */
+    protected MojoExecution mojoExecution;
+
     /**
      * @component role="com.stratio.mojo.unix.core.UnixPlatform"
      */
@@ -154,4 +190,124 @@ public abstract class AbstractUnixMojo
      */
     protected String[] excludeDirectoryAttributes;
 
+    /**
+     * Everything that can change the packages except the assembled files: the plugin version, the plugin
+     * configuration, the project's id and its properties, the user properties of the session and the resolved values
+     * of all of the mojo's parameters. The raw configuration still contains the <code>${...}</code> expressions, so
+     * the values they resolve to have to be a part of the key too.
+     */
+    protected String buildCacheConfiguration()
+    {
+        StringBuilder s = new StringBuilder();
+
+        if ( mojoExecution != null )
+        {
+            s.append( mojoExecution.getMojoDescriptor().getPluginDescriptor().getId() ).append( '\n' );
+            s.append( mojoExecution.getExecutionId() ).append( '\n' );
+            s.append( mojoExecution.getConfiguration() ).append( '\n' );
+        }
+
+        s.append( project.getId() ).append( '\n' );
+        s.append( new TreeMap<Object, Object>( project.getProperties() ) ).append( '\n' );
+
+        MavenSession session = this.session.get();
+        if ( session != null )
+        {
+            s.append( new TreeMap<Object, Object>( session.getUserProperties() ) ).append( '\n' );
+        }
+
+        describe( this, s, new IdentityHashMap<Object, Object>() );
+        s.append( '\n' );
+
+        return s.toString();
+    }
+
+    /**
+     * Writes the values of the fields of the object, and the objects they refer to that are a part of this plugin's
+     * configuration.
+     */
+    private static void describe( Object value, StringBuilder s, IdentityHashMap<Object, Object> seen )
+    {
+        if ( value == null || value instanceof String || value instanceof Number || value instanceof Boolean ||
+            value instanceof Character || value instanceof Enum || value instanceof File )
+        {
+            s.append( value );
+            return;
+        }
+
+        if ( seen.put( value, value ) != null )
+        {
+            s.append( "<cycle>" );
+            return;
+        }
+
+        if ( value.getClass().isArray() )
+        {
+            s.append( '[' );
+            for ( int i = 0; i < Array.getLength( value ); i++ )
+            {
+                describe( Array.get( value, i ), s, seen );
+                s.append( ',' );
+            }
+            s.append( ']' );
+        }
+        else if ( value instanceof Map )
+        {
+            s.append( '{' );
+            for ( Map.Entry<?, ?> entry : new TreeMap<Object, Object>( (Map<?, ?>) value ).entrySet() )
+            {
+                s.append( entry.getKey() ).append( '=' );
+                describe( entry.getValue(), s, seen );
+                s.append( ',' );
+            }
+            s.append( '}' );
+        }
+        else if ( value instanceof Iterable )
+        {
+            s.append( '[' );
+            for ( Object o : (Iterable<?>) value )
+            {
+                describe( o, s, seen );
+                s.append( ',' );
+            }
+            s.append( ']' );
+        }
+        else if ( value.getClass().getName().startsWith( "com.stratio.mojo.unix." ) )
+        {
+            s.append( value.getClass().getName() ).append( '{' );
+            for ( Class<?> c = value.getClass(); c.getName().startsWith( "com.stratio.mojo.unix." );
+                  c = c.getSuperclass() )
+            {
+                for ( Field field : c.getDeclaredFields() )
+                {
+                    int modifiers = field.getModifiers();
+                    if ( Modifier.isStatic( modifiers ) || Modifier.isTransient( modifiers ) || field.isSynthetic() ||
+                        value instanceof AbstractUnixMojo && internalFields.contains( field.getName() ) )
+                    {
+                        continue;
+                    }
+
+                    field.setAccessible( true );
+                    s.append( field.getName() ).append( '=' );
+                    try
+                    {
+                        describe( field.get( value ), s, seen );
+                    }
+                    catch ( IllegalAccessException e )
+                    {
+                        throw new RuntimeException( e );
+                    }
+                    s.append( ',' );
+                }
+            }
+            s.append( '}' );
+        }
+        else
+        {
+            // Maven's own objects, like the project, are described by what is taken from them above
+            s.append( value.getClass().getName() );
+        }
+
+        seen.remove( value );
+    }
 }
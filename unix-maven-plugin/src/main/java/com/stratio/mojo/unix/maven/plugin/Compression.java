@@ -0,0 +1,58 @@
+ package com.stratio.mojo.unix.maven.plugin;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.io.*;
+
+import java.util.*;
+
+/**
+ * Controls which entries are compressed. Entries that are already compressed are stored as is in zip files, and the
+ * fastest level is used for DEB and RPM payloads that are mostly made up of such entries.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class Compression
+{
+    /**
+     * Files with these extensions are never compressed. Defaults to common archive, compressed and media formats.
+     */
+    public String[] extensions = CompressionPolicy.DEFAULT_EXTENSIONS;
+
+    /**
+     * Look for the magic bytes of well known compressed formats.
+     */
+    public boolean magic = true;
+
+    /**
+     * Content with more entropy than this, in bits per byte, is not compressed. Set to 8 or more to disable.
+     */
+    public double maxEntropy = CompressionPolicy.DEFAULT_MAX_ENTROPY;
+
+    public CompressionPolicy policy()
+    {
+        return new CompressionPolicy( Arrays.asList( extensions ), magic, maxEntropy );
+    }
+}
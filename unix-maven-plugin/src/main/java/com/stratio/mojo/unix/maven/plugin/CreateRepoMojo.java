@@ -0,0 +1,143 @@
+ package com.stratio.mojo.unix.maven.plugin;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.maven.plugin.*;
+import com.stratio.mojo.unix.rpm.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Creates yum repository metadata like "createrepo", without running it.
+ * <p/>
+ * By default the entire local repository will be scanned. The headers of the packages are read in Java, and the
+ * metadata of unchanged packages are remembered in a cache file between runs.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ * @goal createrepo
+ * @requiresProject false
+ */
+public class CreateRepoMojo
+    extends AbstractMojo
+{
+    /**
+     * The base of where to scan. If not set, it will default to the entire local repository.
+     *
+     * @parameter property="maven.unix.createrepo.root"
+     */
+    private File root;
+
+    /**
+     * The directory where the "repodata" directory is written. If not set, it will default to the root.
+     *
+     * @parameter property="maven.unix.createrepo.outputDirectory"
+     */
+    private File outputDirectory;
+
+    /**
+     * Where the metadata of already scanned packages are remembered, keyed by path, size and modification time.
+     *
+     * @parameter property="maven.unix.createrepo.cacheFile" default-value="target/createrepo.cache"
+     */
+    protected File cacheFile;
+
+    /**
+     * The number of threads used to read packages. 0 means one thread per processor.
+     *
+     * @parameter property="maven.unix.createrepo.threads" default-value="0"
+     */
+    protected int threads;
+
+    /**
+     * Enabled more debugging information.
+     *
+     * @parameter property="maven.unix.debug" default-value="false"
+     */
+    protected boolean debug;
+
+    /**
+     * @parameter property="settings.localRepository"
+     * @readonly
+     */
+    private String localRepository;
+
+    /**
+     * @parameter property="basedir"
+     * @readonly
+     */
+    private File basedir;
+
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        if ( root == null )
+        {
+            root = new File( localRepository );
+        }
+
+        if ( outputDirectory == null )
+        {
+            outputDirectory = root;
+        }
+
+        if ( cacheFile != null && !cacheFile.isAbsolute() )
+        {
+            cacheFile = new File( basedir, cacheFile.getPath() );
+        }
+
+        CreateRepoTool tool = new CreateRepoTool( root ).
+            outputDirectory( outputDirectory ).
+            cacheFile( cacheFile ).
+            threads( threads > 0 ? threads : Runtime.getRuntime().availableProcessors() );
+
+        try
+        {
+            List<CreateRepoTool.Entry> entries = tool.scan();
+
+            if ( debug )
+            {
+                for ( CreateRepoTool.Entry entry : entries )
+                {
+                    getLog().info( entry.location + ": " + entry.pkgid );
+                }
+            }
+
+            tool.write( entries );
+
+            for ( String warning : tool.getWarnings() )
+            {
+                getLog().warn( warning );
+            }
+
+            getLog().info( "Wrote metadata for " + entries.size() + " packages to " +
+                               new File( outputDirectory, "repodata" ).getAbsolutePath() );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not create the repository metadata.", e );
+        }
+    }
+}
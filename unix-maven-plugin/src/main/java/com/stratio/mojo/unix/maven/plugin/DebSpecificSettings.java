@@ -49,9 +49,17 @@ public class DebSpecificSettings
 
     public Option<String> replaces = none();
 
-    public boolean useFakeroot = true;
-
-    public Option<String> dpkgDeb = none();
+    /**
+     * The compression of the control and data tars: <code>gzip</code>, <code>xz</code>, <code>zstd</code> or
+     * <code>none</code>.
+     */
+    public String compression = "gzip";
+
+    /**
+     * The number of threads used to compress the data tar. 0 means one thread per processor. Note that each xz
+     * thread needs about 100MB of memory with the default level.
+     */
+    public int compressionThreads;
 
     public void setPriority( String priority )
     {
@@ -93,14 +101,18 @@ public class DebSpecificSettings
         this.replaces = fromNull( replaces );
     }
 
+    /**
+     * Not used anymore, the package is written without using dpkg-deb. Kept so existing configurations still work.
+     */
     public void setUseFakeroot( boolean useFakeroot )
     {
-        this.useFakeroot = useFakeroot;
     }
 
+    /**
+     * Not used anymore, the package is written without using dpkg-deb. Kept so existing configurations still work.
+     */
     public void setDpkgDeb( String dpkgDeb )
     {
-        this.dpkgDeb = fromNull( dpkgDeb );
     }
 
 }
@@ -25,16 +25,17 @@
  */
 
 import org.apache.maven.plugin.*;
-import com.stratio.mojo.unix.util.*;
+import com.stratio.mojo.unix.deb.*;
 import org.codehaus.plexus.util.*;
 
 import java.io.*;
-import java.util.zip.*;
+import java.util.*;
 
 /**
- * Executes "dpkg-scanpackages".
+ * Creates a "Packages" file like "dpkg-scanpackages", without running it.
  * <p/>
- * By default the entire local repository will be scanned.
+ * By default the entire local repository will be scanned. Only the control member of each package is read, and the
+ * fields of unchanged packages are remembered in a cache file between runs.
  *
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
  * @goal dpkg-scanpackages
@@ -51,21 +52,22 @@ public class DpkgScanPackagesMojo
     private File root;
 
     /**
-     * Passed to dpkg-scanpackages.
+     * Prepended to the "Filename" field of every package.
      *
      * @parameter property="maven.unix.dpkg-scanpackages.prefix"
      */
     private String pathPrefix;
 
     /**
-     * Passed to dpkg-scanpackages.
+     * The override file, with lines of "package priority section [maintainer]".
      *
      * @parameter property="maven.unix.dpkg-scanpackages.override" default-value="/dev/null"
      */
     private String overrideFile;
 
     /**
-     * Passes '-m' to dpkg-scanpackages if true.
+     * Include all versions of a package, like '-m' to dpkg-scanpackages. If false, only the newest version of each
+     * package is included.
      *
      * @parameter property="maven.unix.dpkg-scanpackages.multiversion" default-value="true"
      */
@@ -79,12 +81,34 @@ public class DpkgScanPackagesMojo
     protected boolean debug;
 
     /**
-     * The name of the output file. If the filename ends with ".gz" it will be gzipped automatically.
+     * The name of the output file. If the filename ends with ".gz" or ".xz" it will be compressed automatically.
      *
      * @parameter property="maven.unix.dpkg-scanpackages.output" default-value="target/Packages"
      */
     protected File outputFile;
 
+    /**
+     * Compressed copies of the output file to write at the same time, as a comma separated list of "gz" and "xz". For
+     * example "gz,xz" writes Packages, Packages.gz and Packages.xz.
+     *
+     * @parameter property="maven.unix.dpkg-scanpackages.compressions"
+     */
+    protected String compressions;
+
+    /**
+     * Where the fields of already scanned packages are remembered, keyed by path, size and modification time.
+     *
+     * @parameter property="maven.unix.dpkg-scanpackages.cacheFile" default-value="target/dpkg-scanpackages.cache"
+     */
+    protected File cacheFile;
+
+    /**
+     * The number of threads used to read packages. 0 means one thread per processor.
+     *
+     * @parameter property="maven.unix.dpkg-scanpackages.threads" default-value="0"
+     */
+    protected int threads;
+
     /**
      * @parameter property="settings.localRepository"
      * @readonly
@@ -118,39 +142,110 @@ public class DpkgScanPackagesMojo
             }
         }
 
-        OutputStream output = null;
+        if ( cacheFile != null && !cacheFile.isAbsolute() )
+        {
+            cacheFile = new File( basedir, cacheFile.getPath() );
+        }
+
+        List<File> files = new ArrayList<File>();
+        files.add( outputFile );
+
+        if ( StringUtils.isNotEmpty( compressions ) )
+        {
+            for ( String compression : compressions.split( "," ) )
+            {
+                compression = compression.trim();
+
+                if ( !compression.equals( "gz" ) && !compression.equals( "xz" ) )
+                {
+                    throw new MojoFailureException( "Unsupported compression: '" + compression + "', has to be one " +
+                                                        "of gz or xz." );
+                }
+
+                files.add( new File( outputFile.getPath() + "." + compression ) );
+            }
+        }
+
+        DpkgScanPackagesTool tool = new DpkgScanPackagesTool( root ).
+            pathPrefix( pathPrefix ).
+            multiversion( multiversion ).
+            overrideFile( StringUtils.isEmpty( overrideFile ) ? null : new File( overrideFile ) ).
+            cacheFile( cacheFile ).
+            threads( threads > 0 ? threads : Runtime.getRuntime().availableProcessors() );
+
+        List<OutputStream> outputs = new ArrayList<OutputStream>();
 
         try
         {
-            if ( outputFile.getName().endsWith( ".gz" ) )
+            List<DpkgScanPackagesTool.Package> packages = tool.scan();
+
+            if ( debug )
             {
-                output = new GZIPOutputStream( new FileOutputStream( outputFile ) );
+                for ( DpkgScanPackagesTool.Package p : packages )
+                {
+                    getLog().info( p.path + ": " + p.name() + " " + p.version() );
+                }
             }
-            else
+
+            for ( File file : files )
             {
-                output = new FileOutputStream( outputFile );
+                OutputStream os = new FileOutputStream( file );
+                outputs.add( os );
+
+                if ( file.getName().endsWith( ".gz" ) )
+                {
+                    outputs.set( outputs.size() - 1, DebCompression.gzip.compress( os, -1, 1 ) );
+                }
+                else if ( file.getName().endsWith( ".xz" ) )
+                {
+                    outputs.set( outputs.size() - 1, DebCompression.xz.compress( os, -1, 1 ) );
+                }
             }
 
-            new SystemCommand().
-                dumpCommandIf( debug ).
-                withStdoutConsumer( output ).
-                withStderrConsumer( System.out ).
-                setCommand( "dpkg-scanpackages" ).
-                setBasedir( root ).
-                addArgumentIf( multiversion, "-m" ).
-                addArgument( "." ).
-                addArgument( overrideFile ).
-                addArgumentIfNotEmpty( pathPrefix ).
-                execute().
-                assertSuccess();
+            final List<OutputStream> targets = outputs;
+            tool.write( packages, new OutputStream()
+            {
+                public void write( int b )
+                    throws IOException
+                {
+                    for ( OutputStream target : targets )
+                    {
+                        target.write( b );
+                    }
+                }
+
+                public void write( byte[] b, int off, int len )
+                    throws IOException
+                {
+                    for ( OutputStream target : targets )
+                    {
+                        target.write( b, off, len );
+                    }
+                }
+            } );
+
+            for ( OutputStream os : outputs )
+            {
+                os.close();
+            }
+
+            for ( String warning : tool.getWarnings() )
+            {
+                getLog().warn( warning );
+            }
+
+            getLog().info( "Wrote " + packages.size() + " entries to output Packages file." );
         }
         catch ( IOException e )
         {
-            throw new MojoExecutionException( "Could not run dpkg-scanpackages.", e );
+            throw new MojoExecutionException( "Could not scan packages.", e );
         }
         finally
         {
-            IOUtil.close( output );
+            for ( OutputStream os : outputs )
+            {
+                IOUtil.close( os );
+            }
         }
     }
 }
@@ -25,8 +25,8 @@
  */
 
 import fj.*;
-import static fj.Function.*;
 import com.stratio.mojo.unix.*;
+import com.stratio.mojo.unix.maven.zip.*;
 
 /**
  * Creates a zip file, attached to the build.
@@ -40,6 +40,15 @@ import com.stratio.mojo.unix.*;
 public class PackageZipAttachedMojo
     extends AbstractPackageAttachedMojo
 {
+    /**
+     * The number of threads used to compress the entries of the zip file. The zip file is the same no matter how many
+     * threads are used. 0 means one thread per processor.
+     *
+     * @parameter property="maven.unix.zip.threads" default-value="0"
+     */
+    @SuppressWarnings( {"UnusedDeclaration"} )
+    private int threads;
+
     public PackageZipAttachedMojo()
     {
         super( "generic", "zip", "unix-zip" );
@@ -47,6 +56,13 @@ public class PackageZipAttachedMojo
 
     protected F<UnixPackage, UnixPackage> getValidateMojoSettingsAndApplyFormatSpecificSettingsToPackageF()
     {
-        return identity();
+        return new F<UnixPackage, UnixPackage>()
+        {
+            public UnixPackage f( UnixPackage unixPackage )
+            {
+                ZipUnixPackage zipPackage = (ZipUnixPackage) unixPackage;
+                return zipPackage.threads( threads > 0 ? threads : Runtime.getRuntime().availableProcessors() );
+            }
+        };
     }
 }
@@ -25,7 +25,6 @@
  */
 
 import fj.*;
-import static fj.Function.*;
 import com.stratio.mojo.unix.maven.zip.*;
 
 /**
@@ -40,6 +39,15 @@ import com.stratio.mojo.unix.maven.zip.*;
 public class PackageZipMojo
     extends AbstractPackageMojo<ZipUnixPackage, ZipUnixPackage.ZipPreparedPackage>
 {
+    /**
+     * The number of threads used to compress the entries of the zip file. The zip file is the same no matter how many
+     * threads are used. 0 means one thread per processor.
+     *
+     * @parameter property="maven.unix.zip.threads" default-value="0"
+     */
+    @SuppressWarnings( {"UnusedDeclaration"} )
+    private int threads;
+
     public PackageZipMojo()
     {
         super( "generic", "zip", "unix-zip" );
@@ -47,6 +55,12 @@ public class PackageZipMojo
 
     protected F<ZipUnixPackage, ZipUnixPackage> getValidateMojoSettingsAndApplyFormatSpecificSettingsToPackageF()
     {
-        return identity();
+        return new F<ZipUnixPackage, ZipUnixPackage>()
+        {
+            public ZipUnixPackage f( ZipUnixPackage unixPackage )
+            {
+                return unixPackage.threads( threads > 0 ? threads : Runtime.getRuntime().availableProcessors() );
+            }
+        };
     }
 }
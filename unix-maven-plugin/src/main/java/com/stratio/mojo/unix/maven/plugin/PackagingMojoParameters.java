@@ -48,6 +48,8 @@ public class PackagingMojoParameters
     public final List<Package> packages;
     public final Option<String> outputFileName;
     public final List<String> excludeDirs;
+    public final Compression compression;
+    public final Option<String> encoding;
 
     public PackagingMojoParameters( String name,
                                     String revision,
@@ -60,14 +62,16 @@ public class PackagingMojoParameters
                                     AssemblyOp[] assembly,
                                     Package[] packages,
                                     String outputFileName,
-                                    String[] excludeDirs)
+                                    String[] excludeDirs,
+                                    Compression compression,
+                                    String encoding )
     {
-        validateNotNull( defaults );
+        validateNotNull( defaults, compression );
         this.name = fromNull( name );
         this.revision = fromNull( revision );
         this.description = fromNull( description );
         this.contact = fromNull( contact );
-        this.size= fromNull( size );
+        this.size = Option.fromString( size );
         this.contactEmail = fromNull( contactEmail );
         this.architecture = fromNull( architecture );
         this.defaults = defaults;
@@ -75,5 +79,7 @@ public class PackagingMojoParameters
         this.packages = packages == null ? List.<Package>nil() : list( packages );
         this.outputFileName= fromNull( outputFileName );
         this.excludeDirs = excludeDirs == null ? List.<String>nil() : list( excludeDirs );
+        this.compression = compression;
+        this.encoding = Option.fromString( encoding );
     }
 }
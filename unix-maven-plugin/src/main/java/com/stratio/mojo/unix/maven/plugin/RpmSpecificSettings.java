@@ -36,8 +36,6 @@ public class RpmSpecificSettings
 {
     public Option<String> group = none();
 
-    public Option<String> rpmbuild = none();
-
     public Option<String> requires = none();
 
     public void setGroup( String group )
@@ -45,9 +43,11 @@ public class RpmSpecificSettings
         this.group = fromNull( group );
     }
 
+    /**
+     * Not used anymore, the package is written without using rpmbuild. Kept so existing configurations still work.
+     */
     public void setRpmbuild( String rpmbuild )
     {
-        this.rpmbuild = fromNull( rpmbuild );
     }
 
     public void setRequires(String requires) {
@@ -41,6 +41,6 @@ public class RpmMojoUtil
         }
 
         return unixPackage.
-            rpmParameters( rpm.group.some(), rpm.rpmbuild, rpm.requires.toNull() );
+            rpmParameters( rpm.group.some(), rpm.requires.toNull() );
     }
 }
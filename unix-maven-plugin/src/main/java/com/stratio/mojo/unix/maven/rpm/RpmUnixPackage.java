@@ -31,23 +31,25 @@ import static fj.P.*;
 import fj.data.*;
 import com.stratio.mojo.unix.*;
 
+import static com.stratio.mojo.unix.BasicPackageFileSystemObject.*;
+import static com.stratio.mojo.unix.PackageFileSystem.*;
 import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.core.FsFileCollector.*;
 
-import com.stratio.mojo.unix.core.*;
+import com.stratio.mojo.unix.io.*;
 import com.stratio.mojo.unix.io.fs.*;
 import com.stratio.mojo.unix.rpm.*;
 
 import static com.stratio.mojo.unix.util.RelativePath.*;
 
 import com.stratio.mojo.unix.util.*;
-import com.stratio.mojo.unix.util.line.*;
-
-import static org.codehaus.plexus.util.FileUtils.forceMkdir;
-
+import org.codehaus.plexus.util.*;
 import org.joda.time.*;
 
 import java.io.*;
-import java.util.Arrays;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.zip.Deflater;
 
 /**
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
@@ -56,11 +58,9 @@ public class RpmUnixPackage
         extends UnixPackage<RpmUnixPackage, RpmUnixPackage.RpmPreparedPackage> {
     private SpecFile specFile;
 
-    private FsFileCollector fileCollector;
-
-    private Option<String> rpmbuild;
+    private PackageFileSystem<F2<UnixFsObject, RpmWriter, IoEffect>> fileSystem;
 
-    private boolean debug;
+    private LocalDateTime timestamp;
 
     private final static ScriptUtil scriptUtil = new ScriptUtil("pre", "post", "preun", "postun");
 
@@ -82,76 +82,51 @@ public class RpmUnixPackage
         P2<String, String> rpmVersion = getRpmVersion(parameters.version);
         specFile.version = rpmVersion._1();
         specFile.release = rpmVersion._2();
-
-        //todo
-        SpecFile.excludedSysPaths.addAll(parameters.excludeDirs.toCollection());
-
+        specFile.excludedSysPaths.addAll(parameters.excludeDirs.toCollection());
 
         return this;
     }
 
-    public RpmUnixPackage rpmParameters(String group, Option<String> rpmbuild, String requires) {
+    public RpmUnixPackage rpmParameters(String group, String requires) {
         if (requires != null) {
             specFile.requires = List.single(requires);
         }
 
         specFile.group = group;
-        this.rpmbuild = rpmbuild;
-        return this;
-    }
-
-    public RpmUnixPackage debug(boolean debug) {
-        this.specFile.dump = debug;
-        this.debug = debug;
         return this;
     }
 
     public void beforeAssembly(FileAttributes defaultDirectoryAttributes, LocalDateTime timestamp)
             throws IOException {
-        specFile.beforeAssembly(directory(BASE, new LocalDateTime(), defaultDirectoryAttributes));
-        fileCollector = new FsFileCollector(workingDirectory.resolve(relativePath("assembly")));
+        this.timestamp = timestamp;
+
+        Directory root = directory(BASE, LocalDateTime.fromDateFields(new Date(0)), FileAttributes.EMPTY);
+        Directory defaultDirectory = directory(BASE, new LocalDateTime(), defaultDirectoryAttributes);
+
+        fileSystem = create(directoryObject(root), directoryObject(defaultDirectory));
     }
 
     public void addDirectory(UnixFsObject.Directory directory)
             throws IOException {
-        specFile.addDirectory(directory);
-        fileCollector.addDirectory(directory);
+        fileSystem = fileSystem.addDirectory(directoryObject(directory));
     }
 
     public void addFile(Fs<?> fromFile, RegularFile file)
             throws IOException {
-        specFile.addFile(file);
-        fileCollector.addFile(fromFile, file);
+        fileSystem = fileSystem.addFile(fileObject(fromFile, file, blobStore, filterEncoding));
     }
 
     public void addSymlink(UnixFsObject.Symlink symlink)
             throws IOException {
-        specFile.addSymlink(symlink);
-        fileCollector.addSymlink(symlink);
+        fileSystem = fileSystem.addSymlink(symlinkObject(symlink));
     }
 
     public void apply(F<UnixFsObject, Option<UnixFsObject>> f) {
-        specFile.apply(f);
-        fileCollector.apply(f);
+        fileSystem = fileSystem.apply(f);
     }
 
     public RpmPreparedPackage prepare(ScriptUtil.Strategy strategy)
             throws Exception {
-        File rpms = new File(workingDirectory.file, "RPMS");
-        File specsDir = new File(workingDirectory.file, "SPECS");
-        File tmp = new File(workingDirectory.file, "tmp");
-
-        File specFilePath = new File(specsDir, specFile.name + ".spec");
-
-        forceMkdir(new File(workingDirectory.file, "BUILD"));
-        forceMkdir(rpms);
-        forceMkdir(new File(workingDirectory.file, "SOURCES"));
-        forceMkdir(specsDir);
-        forceMkdir(new File(workingDirectory.file, "SRPMS"));
-        forceMkdir(tmp);
-
-        fileCollector.collect();
-
         ScriptUtil.Result result = scriptUtil.
                 createExecution(specFile.name, "rpm", getScripts(), workingDirectory.file, strategy).
                 execute();
@@ -160,39 +135,95 @@ public class RpmUnixPackage
         specFile.includePost = result.postInstall;
         specFile.includePreun = result.preRemove;
         specFile.includePostun = result.postRemove;
-        specFile.buildRoot = fileCollector.root.file;
 
-        LineStreamUtil.toFile(specFile, specFilePath);
-
-        return new RpmPreparedPackage(tmp, specFilePath);
+        return new RpmPreparedPackage();
     }
 
     public class RpmPreparedPackage
             extends UnixPackage.PreparedPackage {
-        private final File tmp;
-
-        private final File specFilePath;
-
-        RpmPreparedPackage(File tmp, File specFilePath) {
-            this.tmp = tmp;
-            this.specFilePath = specFilePath;
-        }
-
         public void packageToFile(File packageFile)
                 throws Exception {
-            new Rpmbuild().
-                    setDebug(debug).
-                    setBuildroot(specFile.buildRoot).
-                    define("_tmppath " + tmp.getAbsolutePath()).
-                    define("_topdir " + workingDirectory.file.getAbsolutePath()).
-                    define("_rpmdir " + packageFile.getParentFile().getAbsolutePath()).
-                    define("_rpmfilename " + packageFile.getName()).
-                    setSpecFile(specFilePath).
-                    setRpmbuild(rpmbuild).
-                    buildBinary();
+            RpmWriter writer = new RpmWriter(specFile, packageFile, timestamp,
+                    Deflater.DEFAULT_COMPRESSION, compressionPolicy);
+
+            boolean closed = false;
+            try {
+                for (PackageFileSystemObject<F2<UnixFsObject, RpmWriter, IoEffect>> object : fileSystem.prettify().toList()) {
+                    object.getExtension().f(object.getUnixFsObject(), writer).run();
+                }
+
+                closed = true;
+                writer.close();
+            } finally {
+                if (!closed) {
+                    writer.abort();
+                }
+            }
         }
     }
 
+    // -----------------------------------------------------------------------
+    // Payload entries
+    // -----------------------------------------------------------------------
+
+    private static BasicPackageFileSystemObject<F2<UnixFsObject, RpmWriter, IoEffect>> directoryObject(Directory directory) {
+        F2<UnixFsObject, RpmWriter, IoEffect> f = new F2<UnixFsObject, RpmWriter, IoEffect>() {
+            public IoEffect f(final UnixFsObject directory, final RpmWriter writer) {
+                return new IoEffect() {
+                    public void run()
+                            throws IOException {
+                        writer.addDirectory(directory);
+                    }
+                };
+            }
+        };
+
+        return basicPackageFSO(directory, f);
+    }
+
+    private static BasicPackageFileSystemObject<F2<UnixFsObject, RpmWriter, IoEffect>> symlinkObject(Symlink symlink) {
+        F2<UnixFsObject, RpmWriter, IoEffect> f = new F2<UnixFsObject, RpmWriter, IoEffect>() {
+            public IoEffect f(final UnixFsObject symlink, final RpmWriter writer) {
+                return new IoEffect() {
+                    public void run()
+                            throws IOException {
+                        writer.addSymlink((Symlink) symlink);
+                    }
+                };
+            }
+        };
+
+        return basicPackageFSO(symlink, f);
+    }
+
+    private static BasicPackageFileSystemObject<F2<UnixFsObject, RpmWriter, IoEffect>> fileObject(final Fs<?> fromFile,
+                                                                                             UnixFsObject file,
+                                                                                             final BlobStore blobStore,
+                                                                                             final Charset filterEncoding) {
+        F2<UnixFsObject, RpmWriter, IoEffect> f = new F2<UnixFsObject, RpmWriter, IoEffect>() {
+            public IoEffect f(final UnixFsObject file, final RpmWriter writer) {
+                return new IoEffect() {
+                    public void run()
+                            throws IOException {
+                        InputStream inputStream = null;
+                        try {
+                            P2<InputStream, Option<Long>> p =
+                                    filtersAndLineEndingHandingInputStream(file, fromFile, blobStore, filterEncoding);
+
+                            inputStream = p._1();
+
+                            writer.addFile(file, p._2().orSome(fromFile.size()), inputStream);
+                        } finally {
+                            IOUtil.close(inputStream);
+                        }
+                    }
+                };
+            }
+        };
+
+        return basicPackageFSO(file, f);
+    }
+
     // -----------------------------------------------------------------------
     // Static
     // -----------------------------------------------------------------------
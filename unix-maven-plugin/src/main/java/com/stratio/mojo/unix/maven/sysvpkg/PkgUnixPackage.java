@@ -163,6 +163,11 @@ public class PkgUnixPackage
             createExecution( classifier.orSome( "default" ), "pkg", getScripts(), workingDirectory.file, strategy ).
             execute();
 
+        if ( pkginfo.size.isNone() )
+        {
+            pkginfo = pkginfo.size( some( String.valueOf( prototypeFile.installedSize().getKilobytes() ) ) );
+        }
+
         LineStreamUtil.toFile( pkginfo.toList(), pkginfoFile.file );
 
         prototypeFile.addIFileIf( pkginfoFile.file, "pkginfo" );
@@ -268,14 +273,17 @@ public class PkgUnixPackage
             public void run()
                 throws IOException
             {
+                if ( blobStore != null )
+                {
+                    tmpFile.linkFrom( blob( blobStore, fromFile, file, filterEncoding ) );
+                    return;
+                }
+
                 OutputStream outputStream = null;
                 try
                 {
-                    P2<InputStream, Option<Long>> p2 =
-                        filtersAndLineEndingHandingInputStream( file, fromFile.inputStream() );
-
                     tmpFile.parent().mkdir();
-                    tmpFile.copyFrom( fromFile, p2._1() );
+                    tmpFile.copyFrom( fromFile, filteringInputStream( file, fromFile.inputStream(), filterEncoding ) );
                 }
                 finally
                 {
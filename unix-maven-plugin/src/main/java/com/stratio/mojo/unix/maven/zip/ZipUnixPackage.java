@@ -37,6 +37,7 @@ import static com.stratio.mojo.unix.UnixFsObject.*;
 import static com.stratio.mojo.unix.core.FsFileCollector.*;
 import com.stratio.mojo.unix.io.*;
 import com.stratio.mojo.unix.io.fs.Fs;
+import com.stratio.mojo.unix.io.fs.BlobStore;
 import com.stratio.mojo.unix.java.*;
 import com.stratio.mojo.unix.util.*;
 import static com.stratio.mojo.unix.util.RelativePath.*;
@@ -45,15 +46,27 @@ import static org.codehaus.plexus.util.IOUtil.*;
 import org.joda.time.*;
 
 import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 public class ZipUnixPackage
     extends UnixPackage<ZipUnixPackage, ZipUnixPackage.ZipPreparedPackage>
 {
-    private PackageFileSystem<F2<UnixFsObject, ZipArchiveOutputStream, IoEffect>> fileSystem;
+    /**
+     * Entries that are deflated in parallel are kept in memory if their source is smaller than this.
+     */
+    private static final long SPILL_THRESHOLD = 1024 * 1024;
+
+    private static final int LEVEL = Deflater.BEST_COMPRESSION;
+
+    private PackageFileSystem<Option<Fs<?>>> fileSystem;
 
     private final Log log;
 
+    private int threads = 1;
+
     public ZipUnixPackage(Log log)
     {
         super( "zip" );
@@ -65,6 +78,15 @@ public class ZipUnixPackage
         return this;
     }
 
+    /**
+     * The number of threads used to deflate the entries. The archive is the same no matter how many threads are used.
+     */
+    public ZipUnixPackage threads( int threads )
+    {
+        this.threads = threads;
+        return this;
+    }
+
     // -----------------------------------------------------------------------
     // FileCollector Implementation
     // -----------------------------------------------------------------------
@@ -72,13 +94,13 @@ public class ZipUnixPackage
     public void addDirectory( final Directory directory )
         throws IOException
     {
-        fileSystem = fileSystem.addDirectory( directory( directory ) );
+        fileSystem = fileSystem.addDirectory( basicPackageFSO( directory, Option.<Fs<?>>none() ) );
     }
 
     public void addFile( Fs<?> fromFile, RegularFile file )
         throws IOException
     {
-        fileSystem = fileSystem.addFile( file( fromFile, file ) );
+        fileSystem = fileSystem.addFile( basicPackageFSO( file, Option.<Fs<?>>some( fromFile ) ) );
     }
 
     public void addSymlink( Symlink symlink )
@@ -101,7 +123,8 @@ public class ZipUnixPackage
     {
         Directory rootDirectory = Directory.directory( BASE, timestamp, EMPTY );
 
-        fileSystem = create( directory( rootDirectory ), directory( rootDirectory ) );
+        fileSystem = create( basicPackageFSO( rootDirectory, Option.<Fs<?>>none() ),
+                             basicPackageFSO( rootDirectory, Option.<Fs<?>>none() ) );
     }
 
     public ZipPreparedPackage prepare( ScriptUtil.Strategy strategy )
@@ -116,12 +139,11 @@ public class ZipUnixPackage
         public void packageToFile( File packageFile )
             throws Exception
         {
-            F2<RelativePath, PackageFileSystemObject<F2<UnixFsObject, ZipArchiveOutputStream, IoEffect>>, Boolean>
-                pathFilter = pathFilter();
+            F2<RelativePath, PackageFileSystemObject<Option<Fs<?>>>, Boolean> pathFilter = pathFilter();
 
             fileSystem = fileSystem.prettify();
 
-            Stream<PackageFileSystemObject<F2<UnixFsObject, ZipArchiveOutputStream, IoEffect>>> items = fileSystem.
+            Stream<PackageFileSystemObject<Option<Fs<?>>>> items = fileSystem.
                 toList().
                 filter( compose( BooleanF.invert, curry( pathFilter, BASE ) ) );
 
@@ -129,11 +151,19 @@ public class ZipUnixPackage
             try
             {
                 zos = new ZipArchiveOutputStream( packageFile );
-                zos.setLevel( Deflater.BEST_COMPRESSION );
+                zos.setLevel( LEVEL );
 
-                for ( PackageFileSystemObject<F2<UnixFsObject, ZipArchiveOutputStream, IoEffect>> fileSystemObject : items )
+                if ( threads > 1 )
+                {
+                    writeParallel( zos, items );
+                }
+                else
                 {
-                    fileSystemObject.getExtension().f( fileSystemObject.getUnixFsObject(), zos ).run();
+                    for ( PackageFileSystemObject<Option<Fs<?>>> item : items )
+                    {
+                        write( zos, item.getUnixFsObject(), item.getExtension(), compressionPolicy, blobStore,
+                               filterEncoding );
+                    }
                 }
             }
             finally
@@ -141,95 +171,299 @@ public class ZipUnixPackage
                 IOUtil.close( zos );
             }
         }
+
+        /**
+         * Deflates up to two entries per thread ahead of the one being written, and writes the pre-deflated entries
+         * in order. Each entry is deflated from the start with its own deflater so the result is the same as when
+         * the archive stream deflates it. Entries that are not worth compressing are stored as they are.
+         */
+        private void writeParallel( ZipArchiveOutputStream zos,
+                                    Stream<PackageFileSystemObject<Option<Fs<?>>>> items )
+            throws Exception
+        {
+            ExecutorService executor = Executors.newFixedThreadPool( threads );
+            LinkedList<Future<DeflatedEntry>> window = new LinkedList<Future<DeflatedEntry>>();
+            try
+            {
+                Iterator<PackageFileSystemObject<Option<Fs<?>>>> it = items.iterator();
+
+                while ( it.hasNext() || !window.isEmpty() )
+                {
+                    while ( it.hasNext() && window.size() < threads * 2 )
+                    {
+                        PackageFileSystemObject<Option<Fs<?>>> item = it.next();
+                        window.add( executor.submit( new DeflateTask( item.getUnixFsObject(), item.getExtension(),
+                                                                      compressionPolicy, blobStore,
+                                                                      filterEncoding ) ) );
+                    }
+
+                    DeflatedEntry deflated = get( window.removeFirst() );
+                    InputStream is = deflated.inputStream();
+                    try
+                    {
+                        zos.addRawArchiveEntry( deflated.entry, is );
+                    }
+                    finally
+                    {
+                        IOUtil.close( is );
+                        deflated.delete();
+                    }
+                }
+            }
+            finally
+            {
+                executor.shutdownNow();
+
+                for ( Future<DeflatedEntry> future : window )
+                {
+                    try
+                    {
+                        future.get().delete();
+                    }
+                    catch ( Exception e )
+                    {
+                        // ignore, the first failure is already being reported
+                    }
+                }
+            }
+        }
     }
 
-    public static <A> F2<RelativePath, PackageFileSystemObject<A>, Boolean> pathFilter()
+    /**
+     * Entries that the compression policy says are already compressed are stored instead of deflated.
+     */
+    private static void write( ZipArchiveOutputStream zos, UnixFsObject file, Option<Fs<?>> fromFile,
+                               CompressionPolicy compressionPolicy, BlobStore blobStore, Charset filterEncoding )
+        throws IOException
     {
-        return new F2<RelativePath, PackageFileSystemObject<A>, Boolean>()
+        if ( fromFile.isNone() )
         {
-            public Boolean f( RelativePath path, PackageFileSystemObject object )
+            zos.putArchiveEntry( entry( file, file.size ) );
+            zos.closeArchiveEntry();
+            return;
+        }
+
+        InputStream inputStream = null;
+        try
+        {
+            P2<InputStream, Option<Long>> p = filtersAndLineEndingHandingInputStream( file, fromFile.some(), blobStore,
+                                                                                      filterEncoding );
+
+            long size = p._2().orSome( file.size );
+            inputStream = new BufferedInputStream( p._1(), 1024 * 128 );
+
+            ZipArchiveEntry entry = entry( file, size );
+            if ( !compressionPolicy.compress( file.path.asAbsolutePath( "/" ), size, inputStream ) )
             {
-                return object.getUnixFsObject().path.equals( path );
+                entry.setMethod( ZipEntry.STORED );
             }
-        };
+
+            zos.putArchiveEntry( entry );
+            copy( inputStream, zos, 1024 * 128 );
+            zos.closeArchiveEntry();
+        }
+        finally
+        {
+            IOUtil.close( inputStream );
+        }
     }
 
-    private BasicPackageFileSystemObject<F2<UnixFsObject, ZipArchiveOutputStream, IoEffect>> directory( Directory directory )
+    private static ZipArchiveEntry entry( UnixFsObject file, long size )
     {
-        F2<UnixFsObject, ZipArchiveOutputStream, IoEffect> f = new F2<UnixFsObject, ZipArchiveOutputStream, IoEffect>()
+        String path;
+        if ( file instanceof Directory )
+        {
+            path = file.path.isBase() ? "." : file.path.asAbsolutePath( "./" ) + "/";
+        }
+        else
         {
-            public IoEffect f( final UnixFsObject file, final ZipArchiveOutputStream zos )
+            path = file.path.asAbsolutePath( "./" );
+        }
+
+        ZipArchiveEntry entry = new ZipArchiveEntry( path );
+        entry.setSize( size );
+        entry.setTime( file.lastModified.toDateTime().getMillis() );
+        if ( file.attributes.mode.isSome() )
+        {
+            entry.setUnixMode( file.attributes.mode.some().toInt() );
+        }
+        return entry;
+    }
+
+    private static <T> T get( Future<T> future )
+        throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+
+            if ( cause instanceof Exception )
             {
-                return new IoEffect()
-                {
-                    public void run()
-                        throws IOException
-                    {
-                        String path = file.path.isBase() ? "." : file.path.asAbsolutePath( "./" ) + "/";
-
-                        ZipArchiveEntry entry = new ZipArchiveEntry( path );
-                        entry.setSize( file.size );
-                        entry.setTime( file.lastModified.toDateTime().getMillis() );
-                        if ( file.attributes.mode.isSome() )
-                        {
-                            entry.setUnixMode( file.attributes.mode.some().toInt() );
-                        }
-                        zos.putArchiveEntry( entry );
-                        zos.closeArchiveEntry();
-                    }
-                };
+                throw (Exception) cause;
             }
-        };
 
-        return basicPackageFSO( directory, f );
+            throw (Error) cause;
+        }
     }
 
-    private BasicPackageFileSystemObject<F2<UnixFsObject, ZipArchiveOutputStream, IoEffect>> file( final Fs<?> fromFile,
-                                                                                            UnixFsObject file )
+    private static class DeflateTask
+        implements Callable<DeflatedEntry>
     {
-        F2<UnixFsObject, ZipArchiveOutputStream, IoEffect> f = new F2<UnixFsObject, ZipArchiveOutputStream, IoEffect>()
+        private final UnixFsObject file;
+
+        private final Option<Fs<?>> fromFile;
+
+        private final CompressionPolicy compressionPolicy;
+
+        private final BlobStore blobStore;
+
+        private final Charset filterEncoding;
+
+        private DeflateTask( UnixFsObject file, Option<Fs<?>> fromFile, CompressionPolicy compressionPolicy,
+                             BlobStore blobStore, Charset filterEncoding )
+        {
+            this.file = file;
+            this.fromFile = fromFile;
+            this.compressionPolicy = compressionPolicy;
+            this.blobStore = blobStore;
+            this.filterEncoding = filterEncoding;
+        }
+
+        public DeflatedEntry call()
+            throws Exception
         {
-            public IoEffect f( final UnixFsObject file, final ZipArchiveOutputStream zos )
+            InputStream is = null;
+
+            // The size of the entry as it is written, which is not the size of the source file if it is filtered
+            long expectedSize = file.size;
+
+            if ( fromFile.isSome() )
+            {
+                P2<InputStream, Option<Long>> p =
+                    filtersAndLineEndingHandingInputStream( file, fromFile.some(), blobStore, filterEncoding );
+                expectedSize = p._2().orSome( file.size );
+                is = new BufferedInputStream( p._1(), 1024 * 128 );
+            }
+
+            File tmp = null;
+            ByteArrayOutputStream buffer = null;
+            OutputStream os = null;
+            Deflater deflater = new Deflater( LEVEL, true );
+            CRC32 crc = new CRC32();
+            long size = 0;
+            long compressedSize;
+            boolean compress = true;
+            try
             {
-                return new IoEffect()
+                if ( is != null && expectedSize > SPILL_THRESHOLD )
                 {
-                    public void run()
-                        throws IOException
+                    tmp = File.createTempFile( "unix-zip-", ".tmp" );
+                    tmp.deleteOnExit();
+                    os = new BufferedOutputStream( new FileOutputStream( tmp ), 1024 * 128 );
+                }
+                else
+                {
+                    buffer = new ByteArrayOutputStream();
+                    os = buffer;
+                }
+
+                DeflaterOutputStream dos = new DeflaterOutputStream( os, deflater, 1024 * 128 );
+
+                if ( is != null )
+                {
+                    compress = compressionPolicy.compress( file.path.asAbsolutePath( "/" ), expectedSize, is );
+                    OutputStream out = compress ? dos : os;
+
+                    byte[] bytes = new byte[1024 * 128];
+                    int read;
+                    while ( ( read = is.read( bytes ) ) != -1 )
                     {
-                        InputStream inputStream = null;
-                        BufferedReader reader = null;
-                        try
-                        {
-                            P2<InputStream, Option<Long>> p =
-                                filtersAndLineEndingHandingInputStream( file, fromFile.inputStream() );
-
-                            inputStream = p._1();
-
-                            long size = p._2().orSome( file.size );
-
-                            ZipArchiveEntry entry = new ZipArchiveEntry( file.path.asAbsolutePath( "./" ) );
-                            entry.setSize( size );
-                            entry.setTime( file.lastModified.toDateTime().getMillis() );
-                            if ( file.attributes.mode.isSome() )
-                            {
-                                entry.setUnixMode( file.attributes.mode.some().toInt() );
-                            }
-
-                            zos.putArchiveEntry( entry );
-                            copy( inputStream, zos, 1024 * 128 );
-                            zos.closeArchiveEntry();
-                        }
-                        finally
-                        {
-                            IOUtil.close( inputStream );
-                            IOUtil.close( reader );
-                        }
+                        crc.update( bytes, 0, read );
+                        out.write( bytes, 0, read );
+                        size += read;
                     }
-                };
+                }
+
+                if ( compress )
+                {
+                    dos.finish();
+                    compressedSize = deflater.getBytesWritten();
+                }
+                else
+                {
+                    compressedSize = size;
+                }
+                os.flush();
             }
-        };
+            catch ( Exception e )
+            {
+                IOUtil.close( os );
+                if ( tmp != null )
+                {
+                    tmp.delete();
+                }
+                throw e;
+            }
+            finally
+            {
+                IOUtil.close( is );
+                deflater.end();
+            }
+
+            IOUtil.close( os );
+
+            ZipArchiveEntry entry = entry( file, size );
+            entry.setMethod( compress ? ZipEntry.DEFLATED : ZipEntry.STORED );
+            entry.setCrc( crc.getValue() );
+            entry.setCompressedSize( compressedSize );
+
+            return new DeflatedEntry( entry, buffer == null ? null : buffer.toByteArray(), tmp );
+        }
+    }
+
+    private static class DeflatedEntry
+    {
+        final ZipArchiveEntry entry;
+
+        private final byte[] bytes;
+
+        private final File file;
+
+        private DeflatedEntry( ZipArchiveEntry entry, byte[] bytes, File file )
+        {
+            this.entry = entry;
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        public InputStream inputStream()
+            throws IOException
+        {
+            return bytes != null ? new ByteArrayInputStream( bytes ) : new FileInputStream( file );
+        }
 
-        return basicPackageFSO( file, f );
+        public void delete()
+        {
+            if ( file != null )
+            {
+                file.delete();
+            }
+        }
+    }
+
+    public static <A> F2<RelativePath, PackageFileSystemObject<A>, Boolean> pathFilter()
+    {
+        return new F2<RelativePath, PackageFileSystemObject<A>, Boolean>()
+        {
+            public Boolean f( RelativePath path, PackageFileSystemObject object )
+            {
+                return object.getUnixFsObject().path.equals( path );
+            }
+        };
     }
 
     @Override
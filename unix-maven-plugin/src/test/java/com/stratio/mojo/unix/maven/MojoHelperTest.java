@@ -43,6 +43,7 @@ import com.stratio.mojo.unix.PackageParameters;
 import com.stratio.mojo.unix.PackageVersion;
 import com.stratio.mojo.unix.core.SolarisUnixPlatform;
 import com.stratio.mojo.unix.maven.plugin.AssemblyOp;
+import com.stratio.mojo.unix.maven.plugin.Compression;
 import com.stratio.mojo.unix.maven.plugin.Defaults;
 import com.stratio.mojo.unix.maven.plugin.MavenProjectWrapper;
 import com.stratio.mojo.unix.maven.plugin.Package;
@@ -220,7 +221,8 @@ public class MojoHelperTest
 
         PackagingMojoParameters mojoParameters = new PackagingMojoParameters( mojoName, null, "Description", "A B",
                                                                               "1024","a@b.com", "all", new Defaults(),
-                                                                              new AssemblyOp[0], new Package[0], "filename", new String[]{"/etc"} );
+                                                                              new AssemblyOp[0], new Package[0], "filename", new String[]{"/etc"},
+                                                                              new Compression(), null );
 
         Package pakke = new Package();
         pakke.id = fromNull( packageName );
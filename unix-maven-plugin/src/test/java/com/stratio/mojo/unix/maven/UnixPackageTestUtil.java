@@ -75,8 +75,14 @@ public class UnixPackageTestUtil<UP extends UnixPackage<UP, PP>, PP extends Unix
             regularFile( relativePath( "/config.properties" ), now, 0, EMPTY, replacers, unix );
         pkg.addFile( resources.resolve( "config.properties" ), file );
 
-        pkg.prepare( SINGLE );
+        PP preparedPackage = pkg.prepare( SINGLE );
 
+        assertFiltered( root, workingDirectory, preparedPackage );
+    }
+
+    protected void assertFiltered( LocalFs root, LocalFs workingDirectory, PP preparedPackage )
+        throws Exception
+    {
         LocalFs config = workingDirectory.resolve( "assembly" ).resolve( "config.properties" );
         assertTrue( config.isFile() );
         assertEquals( 12, config.size() );
@@ -34,6 +34,8 @@ import static com.stratio.mojo.unix.PackageVersion.*;
 import com.stratio.mojo.unix.deb.*;
 import com.stratio.mojo.unix.io.fs.*;
 import com.stratio.mojo.unix.maven.*;
+import com.stratio.mojo.unix.util.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
 import static com.stratio.mojo.unix.util.ScriptUtil.Strategy.*;
 import org.codehaus.plexus.*;
 import org.joda.time.*;
@@ -67,22 +69,29 @@ public class DebUnixPackageTest
         List<String> nil = List.nil();
         UnixPackage pkg = packagingFormat.start( new SystemStreamLog() ).
             parameters( parameters ).
-            debParameters( Option.<String>none(), some( "devel" ), false, Option.<String>none(), nil, nil, nil, nil,
-                           nil, nil ).
+            debParameters( Option.<String>none(), some( "devel" ), nil, nil, nil, nil, nil, nil ).
             debug( true ).
             workingDirectory( root.resolve( "working-directory" ) );
         pkg.beforeAssembly( EMPTY, now );
         UnixPackage.PreparedPackage preparedPackage = pkg.prepare( SINGLE );
 
+        preparedPackage.packageToFile( packageFile );
+
+        assertTrue( packageFile.canRead() );
+
+        java.util.List<UnixFsObject> contents = DpkgDebTool.contents( packageFile );
+        assertEquals( 1, contents.size() );
+        assertEquals( RelativePath.BASE, contents.get( 0 ).path );
+
         if ( !new DpkgDeb().available() )
         {
-            System.err.println( "Skipping test: " + super.getName() );
+            System.err.println( "Skipping dpkg-deb validation: " + super.getName() );
             return;
         }
 
-        preparedPackage.packageToFile( packageFile );
-
-        assertTrue( packageFile.canRead() );
+        ControlFile controlFile = DpkgDebUtil.getControlFile( packageFile );
+        assertEquals( "id", controlFile.packageName );
+        assertEquals( "devel", controlFile.section.some() );
     }
 
     public void testFiltering()
@@ -90,6 +99,30 @@ public class DebUnixPackageTest
     {
         DebPackagingFormat packagingFormat = new DebPackagingFormat();
 
-        new UnixPackageTestUtil<DebUnixPackage, DebUnixPackage.DebPreparedPackage>( "deb", packagingFormat ).testFiltering();
+        new UnixPackageTestUtil<DebUnixPackage, DebUnixPackage.DebPreparedPackage>( "deb", packagingFormat )
+        {
+            protected void assertFiltered( LocalFs root, LocalFs workingDirectory,
+                                           DebUnixPackage.DebPreparedPackage preparedPackage )
+                throws Exception
+            {
+                File packageFile = root.resolve( "file.deb" ).file;
+                preparedPackage.packageToFile( packageFile );
+
+                UnixFsObject config = null;
+                for ( UnixFsObject object : DpkgDebTool.contents( packageFile ) )
+                {
+                    if ( object.path.equals( relativePath( "config.properties" ) ) )
+                    {
+                        config = object;
+                    }
+                }
+
+                assertNotNull( config );
+                assertEquals( 12, config.size );
+
+                // The installed size is calculated from the filtered file
+                assertTrue( DpkgDebTool.control( packageFile ).contains( "Installed-Size: 1\n" ) );
+            }
+        }.testFiltering();
     }
 }
@@ -0,0 +1,72 @@
+ package com.stratio.mojo.unix.maven.plugin;
+
+import com.stratio.mojo.unix.*;
+import com.stratio.mojo.unix.core.*;
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.io.fs.*;
+import org.apache.maven.execution.*;
+import org.apache.maven.project.*;
+import org.codehaus.plexus.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+
+public class AbstractUnixMojoTest
+    extends PlexusTestCase
+{
+    public void testBuildCacheConfigurationIncludesResolvedValues()
+        throws Exception
+    {
+        MavenProject project = new MavenProject();
+        MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        request.getUserProperties().setProperty( "revision", "1" );
+
+        PackageDebMojo mojo = new PackageDebMojo();
+        mojo.project = project;
+        mojo.session.set( new MavenSession( null, request, new DefaultMavenExecutionResult(), project ) );
+        mojo.revision = "1";
+
+        String configuration = mojo.buildCacheConfiguration();
+        assertEquals( configuration, mojo.buildCacheConfiguration() );
+
+        File dir = getTestFile( "target/abstract-unix-mojo" );
+        FileUtils.deleteDirectory( dir );
+        File packageFile = new File( dir, "package.deb" );
+        packageFile.getParentFile().mkdirs();
+        FileUtils.fileWrite( packageFile.getAbsolutePath(), "package" );
+
+        BuildCache cache = new BuildCache( new LocalFs( new File( dir, "cache" ) ) );
+        cache.store( "package", key( cache, dir, configuration ), packageFile );
+        assertTrue( cache.isUpToDate( "package", key( cache, dir, mojo.buildCacheConfiguration() ), packageFile ) );
+
+        // -Drevision=2
+        request.getUserProperties().setProperty( "revision", "2" );
+        assertFalse( cache.isUpToDate( "package", key( cache, dir, mojo.buildCacheConfiguration() ), packageFile ) );
+
+        // The value that the expression in the configuration resolved to
+        request.getUserProperties().setProperty( "revision", "1" );
+        mojo.revision = "2";
+        assertFalse( cache.isUpToDate( "package", key( cache, dir, mojo.buildCacheConfiguration() ), packageFile ) );
+
+        // Nested parameters
+        mojo.revision = "1";
+        mojo.compression.maxEntropy = 0.5;
+        assertFalse( cache.isUpToDate( "package", key( cache, dir, mojo.buildCacheConfiguration() ), packageFile ) );
+
+        mojo.compression.maxEntropy = CompressionPolicy.DEFAULT_MAX_ENTROPY;
+        assertTrue( cache.isUpToDate( "package", key( cache, dir, mojo.buildCacheConfiguration() ), packageFile ) );
+    }
+
+    private static String key( BuildCache cache, File dir, String configuration )
+        throws IOException
+    {
+        BuildCache.Recorder recorder = cache.recorder( new FsFileCollector( new LocalFs( new File( dir, "assembly" ) ) ) );
+        recorder.addDirectory( directory( relativePath( "opt" ), new LocalDateTime( 2012, 1, 1, 0, 0 ),
+                                          FileAttributes.EMPTY ) );
+        return recorder.key( configuration );
+    }
+}
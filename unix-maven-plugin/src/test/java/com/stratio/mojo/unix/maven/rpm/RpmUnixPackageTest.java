@@ -25,6 +25,7 @@
  */
 
 import fj.data.*;
+import org.apache.commons.compress.archivers.cpio.*;
 import org.apache.maven.plugin.logging.*;
 import com.stratio.mojo.unix.*;
 import static com.stratio.mojo.unix.FileAttributes.*;
@@ -43,6 +44,9 @@ import org.codehaus.plexus.*;
 import org.joda.time.*;
 
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.*;
 
 /**
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
@@ -75,7 +79,7 @@ public class RpmUnixPackageTest
 
         RpmUnixPackage unixPackage = packagingFormat.start( new SystemStreamLog() ).
             parameters( parameters ).
-            rpmParameters( "Fun", Option.<String>none(), "wget" ).
+            rpmParameters( "Fun", "wget" ).
             workingDirectory( root.resolve( "working-directory" ) );
 
         unixPackage.beforeAssembly( EMPTY, now );
@@ -88,16 +92,15 @@ public class RpmUnixPackageTest
             debug( true ).
             prepare( SINGLE );
 
-        if ( !new Rpmbuild().available() )
-        {
-            System.err.println( "Skipping test: " + super.getName() );
-            return;
-        }
-
         preparedPackage.
             packageToFile( packageFile );
 
         assertTrue( packageFile.canRead() );
+
+        Map<String, Long> payload = payload( packageFile );
+        assertEquals( pomXml.size(), payload.get( "./pom.xml" ).longValue() );
+        assertEquals( fooLicense.size(), payload.get( "./foo-license.txt" ).longValue() );
+        assertEquals( barLicense.size(), payload.get( "./bar-license.txt" ).longValue() );
     }
 
     public void testFiltering()
@@ -110,9 +113,46 @@ public class RpmUnixPackageTest
             {
                 protected RpmUnixPackage extraStuff( RpmUnixPackage rpmUnixPackage )
                 {
-                    return rpmUnixPackage.rpmParameters( "my-group", Option.<String>none(), "wget" );
+                    return rpmUnixPackage.rpmParameters( "my-group", "wget" );
+                }
+
+                protected void assertFiltered( LocalFs root, LocalFs workingDirectory,
+                                               RpmUnixPackage.RpmPreparedPackage preparedPackage )
+                    throws Exception
+                {
+                    File packageFile = root.resolve( "file.rpm" ).file;
+                    preparedPackage.packageToFile( packageFile );
+
+                    assertEquals( 12, payload( packageFile ).get( "./config.properties" ).longValue() );
                 }
             };
         unixPackageTestUtil.testFiltering();
     }
+
+    /**
+     * Reads the names and sizes of the entries in the payload of a package.
+     */
+    private static Map<String, Long> payload( File packageFile )
+        throws IOException
+    {
+        DataInputStream input = new DataInputStream( new BufferedInputStream( new FileInputStream( packageFile ) ) );
+        try
+        {
+            // Leaves the stream at the start of the payload
+            RpmPackage.read( input );
+
+            Map<String, Long> entries = new HashMap<String, Long>();
+            CpioArchiveInputStream cpio = new CpioArchiveInputStream( new GZIPInputStream( input ) );
+            CpioArchiveEntry entry;
+            while ( ( entry = cpio.getNextCPIOEntry() ) != null )
+            {
+                entries.put( entry.getName(), entry.getSize() );
+            }
+            return entries;
+        }
+        finally
+        {
+            input.close();
+        }
+    }
 }
@@ -38,15 +38,18 @@ import static com.stratio.mojo.unix.FileAttributes.*;
 import static com.stratio.mojo.unix.UnixFileMode._0777;
 import static com.stratio.mojo.unix.UnixFsObject.*;
 import com.stratio.mojo.unix.core.*;
+import com.stratio.mojo.unix.io.CompressionPolicy;
 import com.stratio.mojo.unix.io.LineEnding;
 import com.stratio.mojo.unix.io.fs.*;
 import static com.stratio.mojo.unix.util.RelativePath.*;
 import com.stratio.mojo.unix.util.*;
 import static com.stratio.mojo.unix.util.ScriptUtil.Strategy.SINGLE;
+import org.codehaus.plexus.util.*;
 import org.joda.time.*;
 
 import java.io.*;
 import java.nio.charset.*;
+import java.nio.file.Files;
 import java.util.*;
 
 /**
@@ -70,12 +73,98 @@ public class ZipPackageTest
     // Zip has a resolution of two seconds
     LocalDateTime timestamp = new LocalDateTime( 2012, 1, 2, 3, 4, 6 );
 
-    @SuppressWarnings( "OctalInteger" )
     public void testBasic()
         throws Exception
     {
-        File zip1 = testUtil.getTestFile( "src/test/resources/zip/zip-1" );
         File zip = testUtil.getTestFile( "target/zip/zip-1/test.zip" );
+        createZip( zip, 1, null );
+
+        ZipFile file = new ZipFile( zip );
+        Enumeration<ZipArchiveEntry> enumeration = file.getEntriesInPhysicalOrder();
+        assertDirectory( enumeration.nextElement(), "./dirs/", dirsTimestamp );
+        // Is it really correct that filtered files should retain the old timestamp?
+        assertFile( file, enumeration.nextElement(), "./dirs/bar.txt", 8, dirsBarTxtTimestamp, "awesome\n", fileMode );
+        assertDirectory( enumeration.nextElement(), "./file/", fileTimestamp );
+        assertFile( file, enumeration.nextElement(), "./file/foo.txt", 6, fileFooTxtTimestamp, "@foo@\n", fileMode );
+        assertDirectory( enumeration.nextElement(), "./opt/", timestamp );
+        assertDirectory( enumeration.nextElement(), "./opt/hudson/", timestamp );
+        assertFalse( enumeration.hasMoreElements() );
+        file.close();
+    }
+
+    public void testParallelZipIsIdenticalToSerialZip()
+        throws Exception
+    {
+        File serial = testUtil.getTestFile( "target/zip/zip-1/serial.zip" );
+        File parallel = testUtil.getTestFile( "target/zip/zip-1/parallel.zip" );
+
+        // Big enough to be spilled to disk while deflating
+        File big = testUtil.getTestFile( "target/zip/big.bin" );
+        Random random = new Random( 0 );
+        byte[] bytes = new byte[3 * 1024 * 1024];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            bytes[i] = (byte) ( 'a' + random.nextInt( 4 ) );
+        }
+        Files.write( big.toPath(), bytes );
+
+        // Already compressed, should be stored
+        File jar = testUtil.getTestFile( "target/zip/lib.jar" );
+        random.nextBytes( bytes );
+        Files.write( jar.toPath(), bytes );
+
+        // Below the spill threshold before it is filtered, above it after
+        File filtered = testUtil.getTestFile( "target/zip/filtered.txt" );
+        FileUtils.fileWrite( filtered.getAbsolutePath(), StringUtils.repeat( "@bar@\n", 150000 ) );
+        long filteredSize = "awesome\n".length() * 150000;
+
+        File blobs = testUtil.getTestFile( "target/zip/zip-1/blobs" );
+        FileUtils.deleteDirectory( blobs );
+
+        RecordingCompressionPolicy serialPolicy = createZip( serial, 1, null, big, jar, filtered );
+        RecordingCompressionPolicy parallelPolicy =
+            createZip( parallel, 4, new BlobStore( new LocalFs( blobs ) ), big, jar, filtered );
+
+        // Both paths decide from the size of the filtered file
+        assertEquals( Long.valueOf( filteredSize ), serialPolicy.sizes.get( "/opt/filtered.txt" ) );
+        assertEquals( serialPolicy.sizes, parallelPolicy.sizes );
+
+        assertTrue( Arrays.equals( Files.readAllBytes( serial.toPath() ), Files.readAllBytes( parallel.toPath() ) ) );
+
+        // The filtered files are filtered into the blob store when deflating in parallel too
+        assertTrue( blobs.isDirectory() && blobs.list().length > 0 );
+
+        ZipFile file = new ZipFile( parallel );
+        assertEquals( ZipArchiveEntry.DEFLATED, file.getEntry( "./opt/big.bin" ).getMethod() );
+        assertEquals( ZipArchiveEntry.STORED, file.getEntry( "./opt/lib.jar" ).getMethod() );
+        assertTrue( Arrays.equals( bytes, IOUtil.toByteArray( file.getInputStream( file.getEntry( "./opt/lib.jar" ) ) ) ) );
+        assertEquals( filteredSize, file.getEntry( "./opt/filtered.txt" ).getSize() );
+        file.close();
+    }
+
+    /**
+     * Remembers the size each entry was decided with.
+     */
+    private static class RecordingCompressionPolicy
+        extends CompressionPolicy
+    {
+        final Map<String, Long> sizes = Collections.synchronizedMap( new java.util.TreeMap<String, Long>() );
+
+        public boolean compress( String path, long size, InputStream content )
+            throws IOException
+        {
+            sizes.put( path, size );
+            return super.compress( path, size, content );
+        }
+    }
+
+    @SuppressWarnings( "OctalInteger" )
+    private final UnixFileMode fileMode = UnixFileMode.fromInt( 0600 );
+
+    private RecordingCompressionPolicy createZip( File zip, int threads, BlobStore blobStore, File... extras )
+        throws Exception
+    {
+        File zip1 = testUtil.getTestFile( "src/test/resources/zip/zip-1" );
         if ( !zip.getParentFile().isDirectory() )
         {
             assertTrue( zip.getParentFile().mkdirs() );
@@ -83,7 +172,10 @@ public class ZipPackageTest
 
         LocalFs basedir = new LocalFs( zip1 );
 
-        ZipUnixPackage zipPackage = new ZipUnixPackage( new SystemStreamLog() );
+        RecordingCompressionPolicy compressionPolicy = new RecordingCompressionPolicy();
+        ZipUnixPackage zipPackage = new ZipUnixPackage( new SystemStreamLog() ).threads( threads ).
+            blobStore( blobStore ).
+            compressionPolicy( compressionPolicy );
 
         zipPackage.beforeAssembly( EMPTY.mode( UnixFileMode._0755 ), timestamp );
 
@@ -107,13 +199,19 @@ public class ZipPackageTest
         new CopyFileOperation( EMPTY, basedir.resolve( "file/foo.txt" ), relativePath( "/file/foo.txt" ) ).
             perform( zipPackage );
 
+        for ( File extra : extras )
+        {
+            new CopyFileOperation( EMPTY, new LocalFs( extra ), relativePath( "/opt/" + extra.getName() ) ).
+                perform( zipPackage );
+        }
+
         new SymlinkOperation( relativePath( "/var/log/hudson" ), "/var/opt/hudson/log", Option.<String>none(), Option.<String>none() ).
             perform( zipPackage );
 
-        new FilterFilesOperation( single( "dirs/**" ), List.<String>nil(), single( replacer ), LineEnding.unix ).
+        new FilterFilesOperation( list( "dirs/**", "opt/*.txt" ), List.<String>nil(), single( replacer ),
+                                  LineEnding.unix ).
             perform( zipPackage );
 
-        UnixFileMode fileMode = UnixFileMode.fromInt( 0600 );
         UnixFileMode dirMode = _0777;
 
         FileAttributes fileAttributes = new FileAttributes( "root", "root", fileMode );
@@ -126,17 +224,7 @@ public class ZipPackageTest
             prepare( SINGLE ).
             packageToFile( zip );
 
-        ZipFile file = new ZipFile( zip );
-        Enumeration<ZipArchiveEntry> enumeration = file.getEntriesInPhysicalOrder();
-        assertDirectory( enumeration.nextElement(), "./dirs/", dirsTimestamp );
-        // Is it really correct that filtered files should retain the old timestamp?
-        assertFile( file, enumeration.nextElement(), "./dirs/bar.txt", 8, dirsBarTxtTimestamp, "awesome\n", fileMode );
-        assertDirectory( enumeration.nextElement(), "./file/", fileTimestamp );
-        assertFile( file, enumeration.nextElement(), "./file/foo.txt", 6, fileFooTxtTimestamp, "@foo@\n", fileMode );
-        assertDirectory( enumeration.nextElement(), "./opt/", timestamp );
-        assertDirectory( enumeration.nextElement(), "./opt/hudson/", timestamp );
-        assertFalse( enumeration.hasMoreElements() );
-        file.close();
+        return compressionPolicy;
     }
 
     private void assertDirectory( ZipArchiveEntry entry, String name, LocalDateTime time )
@@ -0,0 +1,805 @@
+ package com.stratio.mojo.unix.rpm;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.io.fs.*;
+import org.apache.commons.compress.utils.*;
+import org.codehaus.plexus.util.*;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static com.stratio.mojo.unix.rpm.RpmHeader.*;
+import static java.util.Collections.*;
+
+/**
+ * Creates yum repository metadata like <code>createrepo</code>: <code>repodata/primary.xml.gz</code>,
+ * <code>filelists.xml.gz</code>, <code>other.xml.gz</code> and <code>repomd.xml</code>.
+ * <p/>
+ * The headers of the packages are read in Java by a pool of threads. If a cache file is given, the metadata of every
+ * package is remembered by path, size and modification time, and unchanged packages are not read again on the next
+ * run.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class CreateRepoTool
+{
+    private static final String NS_COMMON = "http://linux.duke.edu/metadata/common";
+    private static final String NS_RPM = "http://linux.duke.edu/metadata/rpm";
+    private static final String NS_FILELISTS = "http://linux.duke.edu/metadata/filelists";
+    private static final String NS_OTHER = "http://linux.duke.edu/metadata/other";
+    private static final String NS_REPO = "http://linux.duke.edu/metadata/repo";
+
+    private static final int RPMSENSE_LESS = 1 << 1;
+    private static final int RPMSENSE_GREATER = 1 << 2;
+    private static final int RPMSENSE_EQUAL = 1 << 3;
+    private static final int RPMSENSE_PREREQ = 1 << 6;
+    private static final int RPMSENSE_SCRIPT_PRE = 1 << 9;
+    private static final int RPMSENSE_SCRIPT_POST = 1 << 10;
+
+    private static final IncludeExcludeFilter rpms = IncludeExcludeFilter.includeExcludeFilter().
+        addStringIncludes( singletonList( "**/*.rpm" ) ).
+        create();
+
+    private final File root;
+
+    private File outputDirectory;
+
+    private File cacheFile;
+
+    private int threads = 1;
+
+    private final List<String> warnings = synchronizedList( new ArrayList<String>() );
+
+    /**
+     * @param root The directory to scan for packages. The locations in the metadata are relative to this directory.
+     */
+    public CreateRepoTool( File root )
+    {
+        this.root = root;
+        this.outputDirectory = root;
+    }
+
+    /**
+     * The directory where the <code>repodata</code> directory is written, defaults to the root.
+     */
+    public CreateRepoTool outputDirectory( File outputDirectory )
+    {
+        this.outputDirectory = outputDirectory;
+        return this;
+    }
+
+    public CreateRepoTool cacheFile( File cacheFile )
+    {
+        this.cacheFile = cacheFile;
+        return this;
+    }
+
+    public CreateRepoTool threads( int threads )
+    {
+        this.threads = Math.max( 1, threads );
+        return this;
+    }
+
+    public List<String> getWarnings()
+    {
+        return unmodifiableList( warnings );
+    }
+
+    /**
+     * Scans the root directory and returns the packages sorted by location.
+     */
+    public List<Entry> scan()
+        throws IOException
+    {
+        Map<String, Entry> cache = cacheFile != null && cacheFile.isFile() ? readCache( cacheFile ) :
+            new HashMap<String, Entry>();
+
+        List<Future<Entry>> futures = new ArrayList<Future<Entry>>();
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            for ( LocalFs file : new LocalFs( root ).find( rpms, true ) )
+            {
+                final String location = file.relativePath().string;
+                final File f = file.file;
+                final long size = f.length();
+                final long lastModified = f.lastModified();
+
+                final Entry cached = cache.get( location );
+
+                futures.add( executor.submit( new Callable<Entry>()
+                {
+                    public Entry call()
+                        throws Exception
+                    {
+                        if ( cached != null && cached.size == size && cached.lastModified == lastModified )
+                        {
+                            return cached;
+                        }
+
+                        return read( f, location, size, lastModified );
+                    }
+                } ) );
+            }
+
+            List<Entry> entries = new ArrayList<Entry>();
+            for ( Future<Entry> future : futures )
+            {
+                Entry entry = get( future );
+
+                if ( entry != null )
+                {
+                    entries.add( entry );
+                }
+            }
+
+            Collections.sort( entries, new Comparator<Entry>()
+            {
+                public int compare( Entry a, Entry b )
+                {
+                    return a.location.compareTo( b.location );
+                }
+            } );
+
+            if ( cacheFile != null )
+            {
+                writeCache( entries, cacheFile );
+            }
+
+            return entries;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the metadata files. Each file is written next to its final name and renamed when complete, with
+     * <code>repomd.xml</code> last.
+     */
+    public void write( List<Entry> entries )
+        throws IOException
+    {
+        File repodata = new File( outputDirectory, "repodata" );
+
+        if ( !repodata.isDirectory() && !repodata.mkdirs() )
+        {
+            throw new IOException( "Could not create directory: " + repodata.getAbsolutePath() );
+        }
+
+        MetadataWriter primary = new MetadataWriter( repodata, "primary" );
+        MetadataWriter filelists = new MetadataWriter( repodata, "filelists" );
+        MetadataWriter other = new MetadataWriter( repodata, "other" );
+        try
+        {
+            primary.write( "<metadata xmlns=\"" + NS_COMMON + "\" xmlns:rpm=\"" + NS_RPM + "\" packages=\"" +
+                               entries.size() + "\">\n" );
+            filelists.write( "<filelists xmlns=\"" + NS_FILELISTS + "\" packages=\"" + entries.size() + "\">\n" );
+            other.write( "<otherdata xmlns=\"" + NS_OTHER + "\" packages=\"" + entries.size() + "\">\n" );
+
+            for ( Entry entry : entries )
+            {
+                primary.write( entry.primary );
+                filelists.write( entry.filelists );
+                other.write( entry.other );
+            }
+
+            primary.write( "</metadata>\n" );
+            filelists.write( "</filelists>\n" );
+            other.write( "</otherdata>\n" );
+
+            primary.close();
+            filelists.close();
+            other.close();
+        }
+        finally
+        {
+            primary.abort();
+            filelists.abort();
+            other.abort();
+        }
+
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        StringBuilder repomd = new StringBuilder();
+        repomd.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+        repomd.append( "<repomd xmlns=\"" ).append( NS_REPO ).append( "\" xmlns:rpm=\"" ).append( NS_RPM ).
+            append( "\">\n" );
+        repomd.append( "  <revision>" ).append( timestamp ).append( "</revision>\n" );
+        primary.appendTo( repomd, timestamp );
+        filelists.appendTo( repomd, timestamp );
+        other.appendTo( repomd, timestamp );
+        repomd.append( "</repomd>\n" );
+
+        File tmp = new File( repodata, "repomd.xml.tmp" );
+        FileUtils.fileWrite( tmp.getAbsolutePath(), "UTF-8", repomd.toString() );
+        rename( tmp, new File( repodata, "repomd.xml" ) );
+    }
+
+    // -----------------------------------------------------------------------
+    // Reading packages
+    // -----------------------------------------------------------------------
+
+    private Entry read( File file, String location, long size, long lastModified )
+        throws IOException
+    {
+        RpmPackage rpm;
+
+        try
+        {
+            rpm = RpmPackage.read( file );
+        }
+        catch ( IOException e )
+        {
+            warnings.add( "Could not read the headers of " + location + ", skipping package: " + e.getMessage() );
+            return null;
+        }
+
+        MessageDigest sha256 = sha256();
+        InputStream is = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[128 * 1024];
+            int count;
+            while ( ( count = is.read( buffer ) ) != -1 )
+            {
+                sha256.update( buffer, 0, count );
+            }
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+
+        String pkgid = hex( sha256.digest() );
+
+        return new Entry( location, size, lastModified, pkgid, primary( rpm, pkgid, location, size, lastModified ),
+                          filelists( rpm, pkgid ), other( rpm, pkgid ) );
+    }
+
+    private static String primary( RpmPackage rpm, String pkgid, String location, long size, long lastModified )
+    {
+        RpmHeader h = rpm.header;
+        StringBuilder s = new StringBuilder();
+
+        s.append( "<package type=\"rpm\">\n" );
+        element( s, "  ", "name", rpm.getName() );
+        element( s, "  ", "arch", rpm.getArch() );
+        version( s, rpm );
+        s.append( "  <checksum type=\"sha256\" pkgid=\"YES\">" ).append( pkgid ).append( "</checksum>\n" );
+        element( s, "  ", "summary", h.getString( SUMMARY ) );
+        element( s, "  ", "description", h.getString( DESCRIPTION ) );
+        element( s, "  ", "packager", h.getString( PACKAGER ) );
+        element( s, "  ", "url", h.getString( URL ) );
+        s.append( "  <time file=\"" ).append( lastModified / 1000 ).
+            append( "\" build=\"" ).append( h.getLong( BUILDTIME, 0 ) ).append( "\"/>\n" );
+        s.append( "  <size package=\"" ).append( size ).
+            append( "\" installed=\"" ).append( h.getLong( LONGSIZE, h.getLong( SIZE, 0 ) ) ).
+            append( "\" archive=\"" ).
+            append( h.getLong( ARCHIVESIZE, rpm.signature.getLong( SIGTAG_PAYLOADSIZE, 0 ) ) ).append( "\"/>\n" );
+        s.append( "  <location href=\"" ).append( escape( location ) ).append( "\"/>\n" );
+        s.append( "  <format>\n" );
+        element( s, "    ", "rpm:license", h.getString( LICENSE ) );
+        element( s, "    ", "rpm:vendor", h.getString( VENDOR ) );
+        element( s, "    ", "rpm:group", h.getString( GROUP ) );
+        element( s, "    ", "rpm:buildhost", h.getString( BUILDHOST ) );
+        element( s, "    ", "rpm:sourcerpm", h.getString( SOURCERPM ) );
+        s.append( "    <rpm:header-range start=\"" ).append( rpm.headerStart ).
+            append( "\" end=\"" ).append( rpm.headerEnd ).append( "\"/>\n" );
+        dependencies( s, "rpm:provides", h, PROVIDENAME, PROVIDEFLAGS, PROVIDEVERSION );
+        dependencies( s, "rpm:requires", h, REQUIRENAME, REQUIREFLAGS, REQUIREVERSION );
+        dependencies( s, "rpm:conflicts", h, CONFLICTNAME, CONFLICTFLAGS, CONFLICTVERSION );
+        dependencies( s, "rpm:obsoletes", h, OBSOLETENAME, OBSOLETEFLAGS, OBSOLETEVERSION );
+
+        // Like createrepo, only the files that are commonly depended on are in the primary metadata
+        List<String> names = rpm.getFileNames();
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            String name = names.get( i );
+            if ( name.startsWith( "/etc/" ) || name.contains( "bin/" ) || name.equals( "/usr/lib/sendmail" ) )
+            {
+                file( s, "    ", h, i, name );
+            }
+        }
+
+        s.append( "  </format>\n" );
+        s.append( "</package>\n" );
+        return s.toString();
+    }
+
+    private static String filelists( RpmPackage rpm, String pkgid )
+    {
+        StringBuilder s = new StringBuilder();
+
+        s.append( "<package pkgid=\"" ).append( pkgid ).
+            append( "\" name=\"" ).append( escape( rpm.getName() ) ).
+            append( "\" arch=\"" ).append( escape( rpm.getArch() ) ).append( "\">\n" );
+        version( s, rpm );
+
+        List<String> names = rpm.getFileNames();
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            file( s, "  ", rpm.header, i, names.get( i ) );
+        }
+
+        s.append( "</package>\n" );
+        return s.toString();
+    }
+
+    private static String other( RpmPackage rpm, String pkgid )
+    {
+        RpmHeader h = rpm.header;
+        StringBuilder s = new StringBuilder();
+
+        s.append( "<package pkgid=\"" ).append( pkgid ).
+            append( "\" name=\"" ).append( escape( rpm.getName() ) ).
+            append( "\" arch=\"" ).append( escape( rpm.getArch() ) ).append( "\">\n" );
+        version( s, rpm );
+
+        long[] times = h.getLongs( CHANGELOGTIME );
+        List<String> authors = h.getStrings( CHANGELOGNAME );
+        List<String> texts = h.getStrings( CHANGELOGTEXT );
+        for ( int i = 0; i < times.length && i < authors.size() && i < texts.size(); i++ )
+        {
+            s.append( "  <changelog author=\"" ).append( escape( authors.get( i ) ) ).
+                append( "\" date=\"" ).append( times[i] ).append( "\">" ).
+                append( escape( texts.get( i ) ) ).append( "</changelog>\n" );
+        }
+
+        s.append( "</package>\n" );
+        return s.toString();
+    }
+
+    private static void version( StringBuilder s, RpmPackage rpm )
+    {
+        s.append( "  <version epoch=\"" ).append( rpm.getEpoch() ).
+            append( "\" ver=\"" ).append( escape( rpm.getVersion() ) ).
+            append( "\" rel=\"" ).append( escape( rpm.getRelease() ) ).append( "\"/>\n" );
+    }
+
+    private static void file( StringBuilder s, String indent, RpmHeader h, int i, String name )
+    {
+        long[] modes = h.getLongs( FILEMODES );
+        long[] flags = h.getLongs( FILEFLAGS );
+
+        String type = "";
+        if ( i < flags.length && ( flags[i] & RPMFILE_GHOST ) != 0 )
+        {
+            type = " type=\"ghost\"";
+        }
+        else if ( i < modes.length && ( modes[i] & 0170000 ) == 0040000 )
+        {
+            type = " type=\"dir\"";
+        }
+
+        s.append( indent ).append( "<file" ).append( type ).append( '>' ).append( escape( name ) ).
+            append( "</file>\n" );
+    }
+
+    private static void dependencies( StringBuilder s, String element, RpmHeader h, int nameTag, int flagsTag,
+                                      int versionTag )
+    {
+        List<String> names = h.getStrings( nameTag );
+        long[] flags = h.getLongs( flagsTag );
+        List<String> versions = h.getStrings( versionTag );
+
+        StringBuilder entries = new StringBuilder();
+        Set<String> seen = new HashSet<String>();
+
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            String name = names.get( i );
+            int sense = i < flags.length ? (int) flags[i] : 0;
+            String version = i < versions.size() ? versions.get( i ) : "";
+
+            // rpmlib() dependencies are satisfied by rpm itself
+            if ( name.startsWith( "rpmlib(" ) || !seen.add( name + " " + sense + " " + version ) )
+            {
+                continue;
+            }
+
+            entries.append( "      <rpm:entry name=\"" ).append( escape( name ) ).append( '"' );
+
+            String operator = operator( sense );
+            if ( operator != null && version.length() > 0 )
+            {
+                String epoch = "0";
+                int colon = version.indexOf( ':' );
+                if ( colon != -1 )
+                {
+                    epoch = version.substring( 0, colon );
+                    version = version.substring( colon + 1 );
+                }
+
+                String release = null;
+                int dash = version.lastIndexOf( '-' );
+                if ( dash != -1 )
+                {
+                    release = version.substring( dash + 1 );
+                    version = version.substring( 0, dash );
+                }
+
+                entries.append( " flags=\"" ).append( operator ).
+                    append( "\" epoch=\"" ).append( escape( epoch ) ).
+                    append( "\" ver=\"" ).append( escape( version ) ).append( '"' );
+
+                if ( release != null )
+                {
+                    entries.append( " rel=\"" ).append( escape( release ) ).append( '"' );
+                }
+            }
+
+            if ( ( sense & ( RPMSENSE_PREREQ | RPMSENSE_SCRIPT_PRE | RPMSENSE_SCRIPT_POST ) ) != 0 )
+            {
+                entries.append( " pre=\"1\"" );
+            }
+
+            entries.append( "/>\n" );
+        }
+
+        if ( entries.length() > 0 )
+        {
+            s.append( "    <" ).append( element ).append( ">\n" ).
+                append( entries ).
+                append( "    </" ).append( element ).append( ">\n" );
+        }
+    }
+
+    private static String operator( int sense )
+    {
+        switch ( sense & ( RPMSENSE_LESS | RPMSENSE_GREATER | RPMSENSE_EQUAL ) )
+        {
+            case RPMSENSE_LESS:
+                return "LT";
+            case RPMSENSE_LESS | RPMSENSE_EQUAL:
+                return "LE";
+            case RPMSENSE_EQUAL:
+                return "EQ";
+            case RPMSENSE_GREATER | RPMSENSE_EQUAL:
+                return "GE";
+            case RPMSENSE_GREATER:
+                return "GT";
+            default:
+                return null;
+        }
+    }
+
+    private static void element( StringBuilder s, String indent, String name, String value )
+    {
+        s.append( indent ).append( '<' ).append( name );
+
+        if ( value == null || value.length() == 0 )
+        {
+            s.append( "/>\n" );
+            return;
+        }
+
+        s.append( '>' ).append( escape( value ) ).append( "</" ).append( name ).append( ">\n" );
+    }
+
+    /**
+     * Escapes text for XML, dropping the control characters that XML 1.0 can't represent.
+     */
+    static String escape( String value )
+    {
+        if ( value == null )
+        {
+            return "";
+        }
+
+        StringBuilder s = new StringBuilder( value.length() );
+
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+
+            switch ( c )
+            {
+                case '&':
+                    s.append( "&amp;" );
+                    break;
+                case '<':
+                    s.append( "&lt;" );
+                    break;
+                case '>':
+                    s.append( "&gt;" );
+                    break;
+                case '"':
+                    s.append( "&quot;" );
+                    break;
+                default:
+                    if ( c >= 0x20 || c == '\t' || c == '\n' || c == '\r' )
+                    {
+                        s.append( c );
+                    }
+            }
+        }
+
+        return s.toString();
+    }
+
+    // -----------------------------------------------------------------------
+    // Writing metadata
+    // -----------------------------------------------------------------------
+
+    /**
+     * Writes a gzipped metadata file while calculating the checksums and sizes of both the compressed and
+     * uncompressed content.
+     */
+    private static class MetadataWriter
+    {
+        private final String type;
+
+        private final File file;
+
+        private final File tmp;
+
+        private final DigestOutputStream compressed;
+
+        private final CountingOutputStream compressedCounter;
+
+        private final DigestOutputStream open;
+
+        private final CountingOutputStream openCounter;
+
+        private final Writer writer;
+
+        private boolean closed;
+
+        MetadataWriter( File directory, String type )
+            throws IOException
+        {
+            this.type = type;
+            this.file = new File( directory, type + ".xml.gz" );
+            this.tmp = new File( directory, type + ".xml.gz.tmp" );
+
+            compressed = new DigestOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ), sha256() );
+            compressedCounter = new CountingOutputStream( compressed );
+            open = new DigestOutputStream( new GZIPOutputStream( compressedCounter, 64 * 1024 ), sha256() );
+            openCounter = new CountingOutputStream( open );
+            writer = new OutputStreamWriter( openCounter, "UTF-8" );
+
+            write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+        }
+
+        void write( String s )
+            throws IOException
+        {
+            writer.write( s );
+        }
+
+        void close()
+            throws IOException
+        {
+            writer.close();
+            closed = true;
+            rename( tmp, file );
+        }
+
+        void abort()
+        {
+            if ( !closed )
+            {
+                IOUtil.close( writer );
+                tmp.delete();
+            }
+        }
+
+        void appendTo( StringBuilder s, long timestamp )
+        {
+            s.append( "  <data type=\"" ).append( type ).append( "\">\n" );
+            s.append( "    <checksum type=\"sha256\">" ).append( hex( compressed.getMessageDigest().digest() ) ).
+                append( "</checksum>\n" );
+            s.append( "    <open-checksum type=\"sha256\">" ).append( hex( open.getMessageDigest().digest() ) ).
+                append( "</open-checksum>\n" );
+            s.append( "    <location href=\"repodata/" ).append( file.getName() ).append( "\"/>\n" );
+            s.append( "    <timestamp>" ).append( timestamp ).append( "</timestamp>\n" );
+            s.append( "    <size>" ).append( compressedCounter.getBytesWritten() ).append( "</size>\n" );
+            s.append( "    <open-size>" ).append( openCounter.getBytesWritten() ).append( "</open-size>\n" );
+            s.append( "  </data>\n" );
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    // Cache
+    // -----------------------------------------------------------------------
+
+    private static Map<String, Entry> readCache( File file )
+        throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream is = new FileInputStream( file );
+        try
+        {
+            properties.load( is );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+
+        Map<String, Entry> cache = new HashMap<String, Entry>();
+
+        for ( String key : properties.stringPropertyNames() )
+        {
+            if ( !key.endsWith( ".stamp" ) )
+            {
+                continue;
+            }
+
+            String location = key.substring( 0, key.length() - ".stamp".length() );
+            String[] stamp = properties.getProperty( key ).split( " " );
+            String pkgid = properties.getProperty( location + ".pkgid" );
+            String primary = properties.getProperty( location + ".primary" );
+            String filelists = properties.getProperty( location + ".filelists" );
+            String other = properties.getProperty( location + ".other" );
+
+            if ( stamp.length != 2 || pkgid == null || primary == null || filelists == null || other == null )
+            {
+                continue;
+            }
+
+            cache.put( location, new Entry( location, Long.parseLong( stamp[0] ), Long.parseLong( stamp[1] ), pkgid,
+                                            primary, filelists, other ) );
+        }
+
+        return cache;
+    }
+
+    private static void writeCache( List<Entry> entries, File file )
+        throws IOException
+    {
+        Properties properties = new Properties();
+
+        for ( Entry entry : entries )
+        {
+            properties.setProperty( entry.location + ".stamp", entry.size + " " + entry.lastModified );
+            properties.setProperty( entry.location + ".pkgid", entry.pkgid );
+            properties.setProperty( entry.location + ".primary", entry.primary );
+            properties.setProperty( entry.location + ".filelists", entry.filelists );
+            properties.setProperty( entry.location + ".other", entry.other );
+        }
+
+        file.getAbsoluteFile().getParentFile().mkdirs();
+
+        File tmp = new File( file.getPath() + ".tmp" );
+        OutputStream os = new BufferedOutputStream( new FileOutputStream( tmp ) );
+        try
+        {
+            properties.store( os, null );
+        }
+        finally
+        {
+            IOUtil.close( os );
+        }
+
+        rename( tmp, file );
+    }
+
+    // -----------------------------------------------------------------------
+    // Utils
+    // -----------------------------------------------------------------------
+
+    private static void rename( File from, File to )
+        throws IOException
+    {
+        if ( !from.renameTo( to ) )
+        {
+            to.delete();
+            if ( !from.renameTo( to ) )
+            {
+                throw new IOException( "Could not rename " + from.getAbsolutePath() + " to " + to.getAbsolutePath() );
+            }
+        }
+    }
+
+    private static MessageDigest sha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static String hex( byte[] bytes )
+    {
+        StringBuilder s = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            s.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return s.toString();
+    }
+
+    private static <T> T get( Future<T> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new InterruptedIOException();
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new RuntimeException( e.getCause() );
+        }
+    }
+
+    /**
+     * The metadata of a single package.
+     */
+    public static class Entry
+    {
+        /**
+         * The path of the package relative to the root.
+         */
+        public final String location;
+
+        public final long size;
+
+        public final long lastModified;
+
+        /**
+         * The SHA-256 digest of the package file.
+         */
+        public final String pkgid;
+
+        final String primary;
+
+        final String filelists;
+
+        final String other;
+
+        Entry( String location, long size, long lastModified, String pkgid, String primary, String filelists,
+               String other )
+        {
+            this.location = location;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.pkgid = pkgid;
+            this.primary = primary;
+            this.filelists = filelists;
+            this.other = other;
+        }
+    }
+}
@@ -0,0 +1,540 @@
+ package com.stratio.mojo.unix.rpm;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * An RPM header structure; a set of tagged, typed values that is serialized into an index and a data store. Both
+ * the signature header and the main header of a package uses this format.
+ * <p/>
+ * The headers are always written as a single immutable region, the same way rpmbuild writes them. Headers written by
+ * other tools are read with {@link #read(DataInputStream)}.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class RpmHeader
+{
+    public static final int CHAR = 1;
+    public static final int INT8 = 2;
+    public static final int INT16 = 3;
+    public static final int INT32 = 4;
+    public static final int INT64 = 5;
+    public static final int STRING = 6;
+    public static final int BIN = 7;
+    public static final int STRING_ARRAY = 8;
+    public static final int I18NSTRING = 9;
+
+    // -----------------------------------------------------------------------
+    // Region tags
+    // -----------------------------------------------------------------------
+
+    public static final int HEADERIMAGE = 61;
+    public static final int HEADERSIGNATURES = 62;
+    public static final int HEADERIMMUTABLE = 63;
+    public static final int HEADERI18NTABLE = 100;
+
+    // -----------------------------------------------------------------------
+    // Signature tags
+    // -----------------------------------------------------------------------
+
+    public static final int SIGTAG_SIZE = 1000;
+    public static final int SIGTAG_MD5 = 1004;
+    public static final int SIGTAG_PAYLOADSIZE = 1007;
+    public static final int SIGTAG_SHA1 = 269;
+    public static final int SIGTAG_LONGSIZE = 270;
+    public static final int SIGTAG_LONGARCHIVESIZE = 271;
+
+    // -----------------------------------------------------------------------
+    // Header tags
+    // -----------------------------------------------------------------------
+
+    public static final int NAME = 1000;
+    public static final int VERSION = 1001;
+    public static final int RELEASE = 1002;
+    public static final int EPOCH = 1003;
+    public static final int SUMMARY = 1004;
+    public static final int DESCRIPTION = 1005;
+    public static final int BUILDTIME = 1006;
+    public static final int BUILDHOST = 1007;
+    public static final int SIZE = 1009;
+    public static final int DISTRIBUTION = 1010;
+    public static final int VENDOR = 1011;
+    public static final int LICENSE = 1014;
+    public static final int PACKAGER = 1015;
+    public static final int GROUP = 1016;
+    public static final int URL = 1020;
+    public static final int OS = 1021;
+    public static final int ARCH = 1022;
+    public static final int PREIN = 1023;
+    public static final int POSTIN = 1024;
+    public static final int PREUN = 1025;
+    public static final int POSTUN = 1026;
+    public static final int OLDFILENAMES = 1027;
+    public static final int FILESIZES = 1028;
+    public static final int FILEMODES = 1030;
+    public static final int FILERDEVS = 1033;
+    public static final int FILEMTIMES = 1034;
+    public static final int FILEDIGESTS = 1035;
+    public static final int FILELINKTOS = 1036;
+    public static final int FILEFLAGS = 1037;
+    public static final int FILEUSERNAME = 1039;
+    public static final int FILEGROUPNAME = 1040;
+    public static final int SOURCERPM = 1044;
+    public static final int FILEVERIFYFLAGS = 1045;
+    public static final int ARCHIVESIZE = 1046;
+    public static final int PROVIDENAME = 1047;
+    public static final int REQUIREFLAGS = 1048;
+    public static final int REQUIRENAME = 1049;
+    public static final int REQUIREVERSION = 1050;
+    public static final int CONFLICTFLAGS = 1053;
+    public static final int CONFLICTNAME = 1054;
+    public static final int CONFLICTVERSION = 1055;
+    public static final int RPMVERSION = 1064;
+    public static final int CHANGELOGTIME = 1080;
+    public static final int CHANGELOGNAME = 1081;
+    public static final int CHANGELOGTEXT = 1082;
+    public static final int PREINPROG = 1085;
+    public static final int POSTINPROG = 1086;
+    public static final int PREUNPROG = 1087;
+    public static final int POSTUNPROG = 1088;
+    public static final int OBSOLETENAME = 1090;
+    public static final int FILEDEVICES = 1095;
+    public static final int FILEINODES = 1096;
+    public static final int FILELANGS = 1097;
+    public static final int PROVIDEFLAGS = 1112;
+    public static final int PROVIDEVERSION = 1113;
+    public static final int OBSOLETEFLAGS = 1114;
+    public static final int OBSOLETEVERSION = 1115;
+    public static final int DIRINDEXES = 1116;
+    public static final int BASENAMES = 1117;
+    public static final int DIRNAMES = 1118;
+    public static final int PAYLOADFORMAT = 1124;
+    public static final int PAYLOADCOMPRESSOR = 1125;
+    public static final int PAYLOADFLAGS = 1126;
+    public static final int LONGFILESIZES = 5008;
+    public static final int LONGSIZE = 5009;
+
+    // -----------------------------------------------------------------------
+    // File flags
+    // -----------------------------------------------------------------------
+
+    public static final int RPMFILE_CONFIG = 1;
+    public static final int RPMFILE_DOC = 1 << 1;
+    public static final int RPMFILE_MISSINGOK = 1 << 3;
+    public static final int RPMFILE_NOREPLACE = 1 << 4;
+    public static final int RPMFILE_GHOST = 1 << 6;
+
+    private static final byte[] MAGIC = {(byte) 0x8e, (byte) 0xad, (byte) 0xe8, 1, 0, 0, 0, 0};
+
+    private static final int ENTRY_SIZE = 16;
+
+    private final SortedMap<Integer, Entry> entries = new TreeMap<Integer, Entry>();
+
+    private int size;
+
+    private static class Entry
+    {
+        final int type;
+
+        final int count;
+
+        final byte[] data;
+
+        Entry( int type, int count, byte[] data )
+        {
+            this.type = type;
+            this.count = count;
+            this.data = data;
+        }
+    }
+
+    public RpmHeader string( int tag, String value )
+    {
+        return add( tag, STRING, 1, stringBytes( value ) );
+    }
+
+    public RpmHeader i18nString( int tag, String value )
+    {
+        return add( tag, I18NSTRING, 1, stringBytes( value ) );
+    }
+
+    public RpmHeader stringArray( int tag, List<String> values )
+    {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        for ( String value : values )
+        {
+            byte[] bytes = stringBytes( value );
+            data.write( bytes, 0, bytes.length );
+        }
+
+        return add( tag, STRING_ARRAY, values.size(), data.toByteArray() );
+    }
+
+    public RpmHeader int32( int tag, int... values )
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( values.length * 4 );
+
+        for ( int value : values )
+        {
+            buffer.putInt( value );
+        }
+
+        return add( tag, INT32, values.length, buffer.array() );
+    }
+
+    public RpmHeader int64( int tag, long... values )
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( values.length * 8 );
+
+        for ( long value : values )
+        {
+            buffer.putLong( value );
+        }
+
+        return add( tag, INT64, values.length, buffer.array() );
+    }
+
+    public RpmHeader int16( int tag, short... values )
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( values.length * 2 );
+
+        for ( short value : values )
+        {
+            buffer.putShort( value );
+        }
+
+        return add( tag, INT16, values.length, buffer.array() );
+    }
+
+    public RpmHeader bin( int tag, byte[] value )
+    {
+        return add( tag, BIN, value.length, value );
+    }
+
+    public boolean contains( int tag )
+    {
+        return entries.containsKey( tag );
+    }
+
+    // -----------------------------------------------------------------------
+    // Reading
+    // -----------------------------------------------------------------------
+
+    /**
+     * Reads a header, starting at the magic. The region tags are skipped, and the stream is left right after the data
+     * store, so the caller has to skip the padding after a signature header.
+     */
+    public static RpmHeader read( DataInputStream input )
+        throws IOException
+    {
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully( magic );
+
+        if ( !Arrays.equals( Arrays.copyOf( magic, 3 ), Arrays.copyOf( MAGIC, 3 ) ) )
+        {
+            throw new IOException( "Invalid header magic." );
+        }
+
+        int count = input.readInt();
+        int size = input.readInt();
+
+        if ( count < 0 || count > 0x10000 || size < 0 || size > 0x10000000 )
+        {
+            throw new IOException( "Invalid header size: entries=" + count + ", data=" + size + "." );
+        }
+
+        byte[] index = new byte[count * ENTRY_SIZE];
+        input.readFully( index );
+        byte[] data = new byte[size];
+        input.readFully( data );
+
+        RpmHeader header = new RpmHeader();
+        header.size = MAGIC.length + 8 + index.length + data.length;
+
+        ByteBuffer buffer = ByteBuffer.wrap( index );
+        for ( int i = 0; i < count; i++ )
+        {
+            int tag = buffer.getInt();
+            int type = buffer.getInt();
+            int offset = buffer.getInt();
+            int n = buffer.getInt();
+
+            if ( tag == HEADERIMAGE || tag == HEADERSIGNATURES || tag == HEADERIMMUTABLE )
+            {
+                continue;
+            }
+
+            if ( offset < 0 || offset > data.length )
+            {
+                throw new IOException( "Invalid offset of tag " + tag + ": " + offset + "." );
+            }
+
+            int end = offset + length( type, n, data, offset );
+
+            if ( end > data.length )
+            {
+                throw new IOException( "The value of tag " + tag + " extends past the data store." );
+            }
+
+            header.add( tag, type, n, Arrays.copyOfRange( data, offset, end ) );
+        }
+
+        return header;
+    }
+
+    /**
+     * The number of bytes this header used when it was read.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the first value of a string tag, or null if the header doesn't have the tag.
+     */
+    public String getString( int tag )
+    {
+        List<String> strings = getStrings( tag );
+
+        return strings.isEmpty() ? null : strings.get( 0 );
+    }
+
+    public List<String> getStrings( int tag )
+    {
+        Entry entry = entries.get( tag );
+
+        if ( entry == null || ( entry.type != STRING && entry.type != STRING_ARRAY && entry.type != I18NSTRING ) )
+        {
+            return Collections.emptyList();
+        }
+
+        List<String> strings = new ArrayList<String>( entry.count );
+        int start = 0;
+        for ( int i = 0; i < entry.data.length; i++ )
+        {
+            if ( entry.data[i] == 0 )
+            {
+                strings.add( utf8( entry.data, start, i - start ) );
+                start = i + 1;
+            }
+        }
+        return strings;
+    }
+
+    /**
+     * Returns the values of an integer tag of any size, or an empty array if the header doesn't have the tag. INT16
+     * values are read as unsigned, as they are used for file modes.
+     */
+    public long[] getLongs( int tag )
+    {
+        Entry entry = entries.get( tag );
+
+        if ( entry == null )
+        {
+            return new long[0];
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap( entry.data );
+        long[] values = new long[entry.count];
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            switch ( entry.type )
+            {
+                case CHAR:
+                case INT8:
+                    values[i] = buffer.get() & 0xff;
+                    break;
+                case INT16:
+                    values[i] = buffer.getShort() & 0xffff;
+                    break;
+                case INT32:
+                    values[i] = buffer.getInt();
+                    break;
+                case INT64:
+                    values[i] = buffer.getLong();
+                    break;
+                default:
+                    return new long[0];
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Returns the first value of an integer tag, or <code>defaultValue</code> if the header doesn't have the tag.
+     */
+    public long getLong( int tag, long defaultValue )
+    {
+        long[] values = getLongs( tag );
+
+        return values.length == 0 ? defaultValue : values[0];
+    }
+
+    public byte[] getBin( int tag )
+    {
+        Entry entry = entries.get( tag );
+
+        return entry == null || entry.type != BIN ? null : entry.data.clone();
+    }
+
+    private static int length( int type, int count, byte[] data, int offset )
+        throws IOException
+    {
+        switch ( type )
+        {
+            case CHAR:
+            case INT8:
+            case BIN:
+                return count;
+            case INT16:
+                return count * 2;
+            case INT32:
+                return count * 4;
+            case INT64:
+                return count * 8;
+            case STRING:
+                count = 1;
+                // fall through
+            case STRING_ARRAY:
+            case I18NSTRING:
+                int i = offset;
+                while ( count > 0 )
+                {
+                    if ( i >= data.length )
+                    {
+                        throw new IOException( "Unterminated string." );
+                    }
+
+                    if ( data[i++] == 0 )
+                    {
+                        count--;
+                    }
+                }
+                return i - offset;
+            default:
+                throw new IOException( "Unknown header type: " + type + "." );
+        }
+    }
+
+    private static String utf8( byte[] bytes, int offset, int length )
+    {
+        try
+        {
+            return new String( bytes, offset, length, "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Serializes the header. The entries are written ordered by their tag, each value aligned to its natural size,
+     * with the region tag first in the index and its trailer last in the data store.
+     */
+    public byte[] toBytes( int regionTag )
+    {
+        int count = entries.size() + 1;
+
+        ByteBuffer index = ByteBuffer.allocate( count * ENTRY_SIZE );
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        index.position( ENTRY_SIZE );
+
+        for ( Map.Entry<Integer, Entry> e : entries.entrySet() )
+        {
+            Entry entry = e.getValue();
+
+            int alignment = alignment( entry.type );
+            while ( data.size() % alignment != 0 )
+            {
+                data.write( 0 );
+            }
+
+            index.putInt( e.getKey() ).putInt( entry.type ).putInt( data.size() ).putInt( entry.count );
+            data.write( entry.data, 0, entry.data.length );
+        }
+
+        int trailerOffset = data.size();
+
+        index.position( 0 );
+        index.putInt( regionTag ).putInt( BIN ).putInt( trailerOffset ).putInt( ENTRY_SIZE );
+
+        ByteBuffer trailer = ByteBuffer.allocate( ENTRY_SIZE );
+        trailer.putInt( regionTag ).putInt( BIN ).putInt( -count * ENTRY_SIZE ).putInt( ENTRY_SIZE );
+        data.write( trailer.array(), 0, ENTRY_SIZE );
+
+        ByteBuffer header = ByteBuffer.allocate( MAGIC.length + 8 + index.capacity() + data.size() );
+        header.put( MAGIC );
+        header.putInt( count );
+        header.putInt( data.size() );
+        header.put( index.array() );
+        header.put( data.toByteArray() );
+        return header.array();
+    }
+
+    private RpmHeader add( int tag, int type, int count, byte[] data )
+    {
+        entries.put( tag, new Entry( type, count, data ) );
+        return this;
+    }
+
+    private static int alignment( int type )
+    {
+        switch ( type )
+        {
+            case INT16:
+                return 2;
+            case INT32:
+                return 4;
+            case INT64:
+                return 8;
+            default:
+                return 1;
+        }
+    }
+
+    private static byte[] stringBytes( String value )
+    {
+        try
+        {
+            byte[] bytes = value.getBytes( "UTF-8" );
+            byte[] terminated = new byte[bytes.length + 1];
+            System.arraycopy( bytes, 0, terminated, 0, bytes.length );
+            return terminated;
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+}
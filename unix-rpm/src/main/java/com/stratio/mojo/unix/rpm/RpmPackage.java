@@ -0,0 +1,280 @@
+ package com.stratio.mojo.unix.rpm;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The headers of a binary or source RPM package, read without running <code>rpm</code>.
+ * <p/>
+ * Only the lead, signature header and main header are read, the payload is never touched.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class RpmPackage
+{
+    private static final int LEAD_MAGIC = 0xedabeedb;
+
+    private static final int LEAD_SIZE = 96;
+
+    public final RpmHeader signature;
+
+    public final RpmHeader header;
+
+    /**
+     * True if the lead says this is a source package.
+     */
+    public final boolean source;
+
+    /**
+     * The offset of the main header in the file.
+     */
+    public final long headerStart;
+
+    /**
+     * The offset of the first byte after the main header, which is where the payload starts.
+     */
+    public final long headerEnd;
+
+    private RpmPackage( RpmHeader signature, RpmHeader header, boolean source, long headerStart )
+    {
+        this.signature = signature;
+        this.header = header;
+        this.source = source;
+        this.headerStart = headerStart;
+        this.headerEnd = headerStart + header.getSize();
+    }
+
+    public static RpmPackage read( File file )
+        throws IOException
+    {
+        DataInputStream input = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 64 * 1024 ) );
+        try
+        {
+            return read( input );
+        }
+        catch ( EOFException e )
+        {
+            throw new IOException( "Unexpected end of file while reading the headers of " + file.getAbsolutePath() );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+    public static RpmPackage read( DataInputStream input )
+        throws IOException
+    {
+        if ( input.readInt() != LEAD_MAGIC )
+        {
+            throw new IOException( "Not an RPM package." );
+        }
+
+        input.readShort(); // major and minor version
+        boolean source = input.readShort() == 1;
+        input.readFully( new byte[LEAD_SIZE - 8] );
+
+        RpmHeader signature = RpmHeader.read( input );
+
+        // The signature is padded to an 8 byte boundary
+        int padding = ( 8 - signature.getSize() % 8 ) % 8;
+        input.readFully( new byte[padding] );
+
+        long headerStart = LEAD_SIZE + signature.getSize() + padding;
+
+        return new RpmPackage( signature, RpmHeader.read( input ), source, headerStart );
+    }
+
+    public String getName()
+    {
+        return header.getString( RpmHeader.NAME );
+    }
+
+    public long getEpoch()
+    {
+        return header.getLong( RpmHeader.EPOCH, 0 );
+    }
+
+    public String getVersion()
+    {
+        return header.getString( RpmHeader.VERSION );
+    }
+
+    public String getRelease()
+    {
+        return header.getString( RpmHeader.RELEASE );
+    }
+
+    /**
+     * The architecture, or "src" for source packages.
+     */
+    public String getArch()
+    {
+        return source || !header.contains( RpmHeader.SOURCERPM ) ? "src" : header.getString( RpmHeader.ARCH );
+    }
+
+    /**
+     * The full paths of all files in the package, in the order of the header.
+     */
+    public List<String> getFileNames()
+    {
+        List<String> baseNames = header.getStrings( RpmHeader.BASENAMES );
+
+        if ( baseNames.isEmpty() )
+        {
+            return header.getStrings( RpmHeader.OLDFILENAMES );
+        }
+
+        List<String> dirNames = header.getStrings( RpmHeader.DIRNAMES );
+        long[] dirIndexes = header.getLongs( RpmHeader.DIRINDEXES );
+
+        List<String> names = new ArrayList<String>( baseNames.size() );
+        for ( int i = 0; i < baseNames.size(); i++ )
+        {
+            names.add( dirNames.get( (int) dirIndexes[i] ) + baseNames.get( i ) );
+        }
+        return names;
+    }
+
+    /**
+     * The files of the package with their attributes as recorded in the header, in the order of the header.
+     */
+    public List<FileEntry> getFiles()
+    {
+        List<String> names = getFileNames();
+        long[] sizes = header.getLongs( RpmHeader.LONGFILESIZES );
+        if ( sizes.length == 0 )
+        {
+            // FILESIZES is a signed 32 bit integer
+            sizes = header.getLongs( RpmHeader.FILESIZES );
+            for ( int i = 0; i < sizes.length; i++ )
+            {
+                sizes[i] &= 0xffffffffL;
+            }
+        }
+        long[] modes = header.getLongs( RpmHeader.FILEMODES );
+        long[] mtimes = header.getLongs( RpmHeader.FILEMTIMES );
+        long[] flags = header.getLongs( RpmHeader.FILEFLAGS );
+        List<String> digests = header.getStrings( RpmHeader.FILEDIGESTS );
+        List<String> linkTos = header.getStrings( RpmHeader.FILELINKTOS );
+        List<String> users = header.getStrings( RpmHeader.FILEUSERNAME );
+        List<String> groups = header.getStrings( RpmHeader.FILEGROUPNAME );
+
+        List<FileEntry> files = new ArrayList<FileEntry>( names.size() );
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            files.add( new FileEntry( names.get( i ),
+                                      i < sizes.length ? sizes[i] : 0,
+                                      i < modes.length ? (int) modes[i] : 0,
+                                      new LocalDateTime( ( i < mtimes.length ? mtimes[i] & 0xffffffffL : 0 ) * 1000 ),
+                                      i < digests.size() ? digests.get( i ) : "",
+                                      i < linkTos.size() ? linkTos.get( i ) : "",
+                                      i < users.size() ? users.get( i ) : "root",
+                                      i < groups.size() ? groups.get( i ) : "root",
+                                      i < flags.length ? (int) flags[i] : 0 ) );
+        }
+        return files;
+    }
+
+    /**
+     * A file as described by the header of a package.
+     */
+    public static final class FileEntry
+    {
+        public final String path;
+
+        public final long size;
+
+        /**
+         * The mode including the file type bits, like <code>0100644</code>.
+         */
+        public final int mode;
+
+        public final LocalDateTime lastModified;
+
+        /**
+         * The hex encoded digest of the content, empty for anything but regular files.
+         */
+        public final String digest;
+
+        /**
+         * The target of a symlink, empty for anything but symlinks.
+         */
+        public final String linkTo;
+
+        public final String user;
+
+        public final String group;
+
+        /**
+         * The <code>RPMFILE_*</code> flags.
+         */
+        public final int flags;
+
+        public FileEntry( String path, long size, int mode, LocalDateTime lastModified, String digest, String linkTo,
+                          String user, String group, int flags )
+        {
+            this.path = path;
+            this.size = size;
+            this.mode = mode;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.linkTo = linkTo;
+            this.user = user;
+            this.group = group;
+            this.flags = flags;
+        }
+
+        public boolean isDirectory()
+        {
+            return ( mode & 0170000 ) == 0040000;
+        }
+
+        public boolean isSymlink()
+        {
+            return ( mode & 0170000 ) == 0120000;
+        }
+
+        public boolean isConfig()
+        {
+            return ( flags & RpmHeader.RPMFILE_CONFIG ) != 0;
+        }
+
+        public boolean isDoc()
+        {
+            return ( flags & RpmHeader.RPMFILE_DOC ) != 0;
+        }
+
+        public String toString()
+        {
+            return path;
+        }
+    }
+}
@@ -32,19 +32,21 @@ import com.stratio.mojo.unix.util.*;
 import static com.stratio.mojo.unix.util.RelativePath.*;
 import com.stratio.mojo.unix.util.line.*;
 import org.joda.time.*;
+import org.joda.time.format.*;
 
 import java.io.*;
-import java.text.*;
 import java.util.*;
 
 /**
+ * Reads the contents of RPM packages. The headers are parsed with {@link RpmPackage}, so the <code>rpm</code>
+ * command isn't needed.
+ *
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
  */
 public class RpmUtil
 {
-    public static final SimpleDateFormat DATE_FORMAT_SHORTER = new SimpleDateFormat( "MMM dd HH:mm" );
-
-    public static final SimpleDateFormat DATE_FORMAT_LONGER = new SimpleDateFormat( "MMM dd yyyy" );
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormat.forPattern( "MMM dd HH:mm" ).
+        withLocale( Locale.ENGLISH );
 
     public static final class FileInfo
         implements EqualsIgnoreNull<FileInfo>, LineProducer
@@ -109,160 +111,91 @@ public class RpmUtil
                 append( user ).append( " " ).
                 append( group ).append( " " ).
                 append( size ).append( " " ).
-                append( date != null ? DATE_FORMAT_SHORTER.format( date ) : "<not set>" ).append( " " ).
+                append( date != null ? DATE_FORMAT.print( date.getTime() ) : "<not set>" ).append( " " ).
                 append( path ).toString() );
         }
     }
 
+    /**
+     * Lists the files of the package like <code>rpm --query --list --verbose</code> does.
+     */
     public static List<FileInfo> queryPackageForFileInfo( File rpm )
         throws IOException
     {
-        RpmQueryParser parser = new RpmQueryParser();
-        new SystemCommand().
-            withStdoutConsumer( parser ).
-            setCommand( "rpm" ).
-            addArgument( "--package" ).
-            addArgument( rpm.getAbsolutePath() ).
-            addArgument( "-q" ).
-            addArgument( "-l" ).
-            addArgument( "-v" ).
-            execute().
-            assertSuccess();
-
-        return parser.getList();
+        List<FileInfo> list = new ArrayList<FileInfo>();
+
+        for ( RpmPackage.FileEntry file : RpmPackage.read( rpm ).getFiles() )
+        {
+            char type = file.isDirectory() ? 'd' : file.isSymlink() ? 'l' : '-';
+            String mode = type + UnixFileMode.fromInt( file.mode & 07777 ).toString();
+
+            list.add( new FileInfo( file.path, file.user, file.group, mode, (int) file.size,
+                                    file.lastModified.toDateTime().toDate() ) );
+        }
+
+        return list;
     }
 
     public static SpecFile getSpecFileFromRpm( File rpm )
         throws IOException
     {
-        // rpm -q --queryformat "%{NAME}\n%{SIZE}" -p ./unix-maven-plugin/src/it/jetty/target/jetty-1.1-2.rpm
+        RpmPackage rpmPackage = RpmPackage.read( rpm );
+        RpmHeader header = rpmPackage.header;
 
         SpecFile specFile = new SpecFile();
+        specFile.beforeAssembly( directory( BASE, new LocalDateTime( 0 ), EMPTY ) );
+        specFile.name = rpmPackage.getName();
+        specFile.version = rpmPackage.getVersion();
+        specFile.release = rpmPackage.getRelease();
+        specFile.summary = header.getString( RpmHeader.SUMMARY );
+        specFile.license = header.getString( RpmHeader.LICENSE );
+        specFile.group = header.getString( RpmHeader.GROUP );
+        specFile.description = header.getString( RpmHeader.DESCRIPTION );
+
+        for ( RpmPackage.FileEntry file : rpmPackage.getFiles() )
+        {
+            addFile( specFile, relativePath( file.path ), file.size, file.lastModified, file.mode, file.user,
+                     file.group, file.isConfig(), file.isDoc(), file.isSymlink() ? file.linkTo : null );
+        }
 
-        RpmSpecParser parser = new RpmSpecParser( specFile );
-        new SystemCommand().
-            dumpCommandIf( true ).
-            withStdoutConsumer( parser ).
-            withStderrConsumer( System.err ).
-            setCommand( "rpm" ).
-            addArgument( "--query" ).
-            addArgument( "--queryformat" ).
-            addArgument( "%{NAME}\\n%{VERSION}\\n%{RELEASE}\\n%{SUMMARY}\\n%{LICENSE}\\n%{GROUP}\\n" ).
-            addArgument( "--package" ).
-            addArgument( rpm.getAbsolutePath() ).
-            execute().
-            assertSuccess();
-
-        ByteArrayOutputStream description = new ByteArrayOutputStream();
-
-        new SystemCommand().
-            dumpCommandIf( true ).
-            withStdoutConsumer( description ).
-            withStderrConsumer( System.err ).
-            setCommand( "rpm" ).
-            addArgument( "--query" ).
-            addArgument( "--queryformat" ).
-            addArgument( "%{DESCRIPTION}" ).
-            addArgument( "--package" ).
-            addArgument( rpm.getAbsolutePath() ).
-            execute().
-            assertSuccess();
-
-        RpmDumpParser rpmDumpParser = new RpmDumpParser( specFile );
-        new SystemCommand().
-            dumpCommandIf( true ).
-            withStdoutConsumer( rpmDumpParser ).
-            setCommand( "rpm" ).
-            addArgument( "--query" ).
-            addArgument( "--dump" ).
-            addArgument( "--package" ).
-            addArgument( rpm.getAbsolutePath() ).
-            execute().
-            assertSuccess();
-
-        specFile.description = description.toString();
         return specFile;
     }
 
-    private static class RpmQueryParser
-        implements SystemCommand.LineConsumer
+    private static void addFile( SpecFile specFile, RelativePath path, long size, LocalDateTime lastModified,
+                                 int mode, String user, String group, boolean config, boolean doc, String linkTo )
     {
-        private List<FileInfo> list = new ArrayList<FileInfo>();
+        FileAttributes attributes = EMPTY.
+            user( user ).
+            group( group ).
+            mode( UnixFileMode.fromInt( mode ) );
 
-        public void onLine( String line )
-            throws IOException
+        if ( config )
         {
-            String[] parts = line.replaceAll( " +", " " ).split( " " );
-
-            // Dunno what the second element is
-
-            Date date;
-            try
-            {
-                date = DATE_FORMAT_SHORTER.parse( parts[5] + " " + parts[6] + " " + parts[7] );
-            }
-            catch ( ParseException e )
-            {
-                try
-                {
-                    date = DATE_FORMAT_LONGER.parse( parts[5] + " " + parts[6] + " " + parts[7] );
-                }
-                catch ( Exception e2 )
-                {
-                    e2.printStackTrace();
-                    return;
-                }
-            }
-
-            list.add( new FileInfo( parts[8].trim(), parts[2].trim(), parts[3].trim(), parts[0].trim(),
-                                    Integer.parseInt( parts[4].trim() ), date ) );
+            attributes = attributes.addTag( "config" );
         }
 
-        public List<FileInfo> getList()
+        if ( doc )
         {
-            return list;
+            attributes = attributes.addTag( "doc" );
         }
-    }
 
-    private static class RpmSpecParser
-        implements SystemCommand.LineConsumer
-    {
-        private final SpecFile specFile;
-
-        private int count;
-
-        public RpmSpecParser( SpecFile specFile )
+        if ( ( mode & 0170000 ) == 0040000 )
         {
-            this.specFile = specFile;
+            specFile.addDirectory( directory( path, lastModified, attributes ) );
         }
-
-        public void onLine( String line )
-            throws IOException
+        else if ( linkTo == null )
         {
-            switch ( count++ )
-            {
-                case 0:
-                    specFile.name = line;
-                    break;
-                case 1:
-                    specFile.version = line;
-                    break;
-                case 2:
-                    specFile.release = line;
-                    break;
-                case 3:
-                    specFile.summary = line;
-                    break;
-                case 4:
-                    specFile.license = line;
-                    break;
-                case 5:
-                    specFile.group = line;
-                    break;
-            }
+            specFile.addFile( regularFile( path, lastModified, size, attributes ) );
+        }
+        else
+        {
+            specFile.addSymlink( symlink( path, lastModified, attributes.user, attributes.group, linkTo ) );
         }
     }
 
+    /**
+     * Parses the output of <code>rpm --query --dump</code>.
+     */
     public static class RpmDumpParser
         implements SystemCommand.LineConsumer
     {
@@ -286,41 +219,14 @@ public class RpmUtil
 
             long size = parseLong( parts[1] );
 
-            LocalDateTime lastModified = new LocalDateTime( parseLong( parts[2] ) );
+            LocalDateTime lastModified = new LocalDateTime( parseLong( parts[2] ) * 1000 );
 
             // #4 is the md5
 
             int mode = Integer.parseInt( parts[4], 8 );
-            FileAttributes attributes = EMPTY.
-                user( parts[5] ).
-                group( parts[6] ).
-                mode( UnixFileMode.fromInt( mode ) );
 
-            if ( "1".equals( parts[7] ) )
-            {
-                attributes = attributes.addTag( "config" );
-            }
-
-            if ( "1".equals( parts[8] ) )
-            {
-                attributes = attributes.addTag( "doc" );
-            }
-
-            if ( (mode & 0x4000) != 0 )
-            {
-                specFile.addDirectory( directory( path, lastModified, attributes ) );
-            }
-            else
-            {
-                if ( "X".equals( parts[10] ) )
-                {
-                    specFile.addFile( regularFile( path, lastModified, size, attributes ) );
-                }
-                else
-                {
-                    specFile.addSymlink( symlink( path, lastModified, attributes.user, attributes.group, parts[10] ) );
-                }
-            }
+            addFile( specFile, path, size, lastModified, mode, parts[5], parts[6], "1".equals( parts[7] ),
+                     "1".equals( parts[8] ), "X".equals( parts[10] ) ? null : parts[10] );
         }
     }
 }
@@ -0,0 +1,805 @@
+ package com.stratio.mojo.unix.rpm;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import fj.data.Option;
+import org.apache.commons.compress.archivers.cpio.*;
+import org.apache.commons.compress.utils.*;
+import com.stratio.mojo.unix.*;
+import static com.stratio.mojo.unix.UnixFileMode.*;
+import static com.stratio.mojo.unix.rpm.RpmHeader.*;
+import com.stratio.mojo.unix.io.*;
+import com.stratio.mojo.unix.util.*;
+import org.codehaus.plexus.util.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.*;
+import java.util.*;
+import java.util.List;
+import java.util.zip.*;
+
+/**
+ * Writes a binary RPM package directly, without staging the files in a build root and running rpmbuild.
+ * <p/>
+ * The meta data is taken from a {@link SpecFile} while the files are streamed into the writer. Each file is written
+ * once to a gzip compressed cpio payload and its digest is calculated while it is being written. When the writer is
+ * closed the lead, signature header, main header and payload are written to the package file.
+ * <p/>
+ * Sizes of 4 GiB or more are written with the 64 bit tags, like rpmbuild does it. The cpio payload can't hold files
+ * that big, so only ghost files may be that big.
+ *
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class RpmWriter
+{
+    private static final byte[] LEAD_MAGIC = {(byte) 0xed, (byte) 0xab, (byte) 0xee, (byte) 0xdb};
+
+    private static final int LEAD_SIZE = 96;
+
+    private static final int RPMSENSE_LESS = 1 << 1;
+    private static final int RPMSENSE_GREATER = 1 << 2;
+    private static final int RPMSENSE_EQUAL = 1 << 3;
+    private static final int RPMSENSE_RPMLIB = 1 << 24;
+
+    /**
+     * Sizes from this and up don't fit in the 32 bit tags.
+     */
+    static final long LARGE_SIZE = 1L << 32;
+
+    private final SpecFile specFile;
+
+    private final File rpmFile;
+
+    private final LocalDateTime buildTime;
+
+    private final int level;
+
+    private final CompressionPolicy policy;
+
+    /**
+     * The level the payload is compressed with at the moment, it is changed by the policy.
+     */
+    private int currentLevel;
+
+    /**
+     * The number of bytes of file content written at each level, indexed by the level plus one.
+     */
+    private final long[] bytesAtLevel = new long[Deflater.BEST_COMPRESSION + 2];
+
+    private final File payloadFile;
+
+    private final LeveledGZIPOutputStream gzip;
+
+    private final CountingOutputStream payloadCounter;
+
+    private final CpioArchiveOutputStream cpio;
+
+    private final List<FileEntry> files = new ArrayList<FileEntry>();
+
+    private static class FileEntry
+    {
+        String path;
+        int mode;
+        long size;
+        int mtime;
+        String digest = "";
+        String linkTo = "";
+        int flags;
+        String user;
+        String group;
+        int inode;
+    }
+
+    public RpmWriter( SpecFile specFile, File rpmFile, LocalDateTime buildTime )
+        throws IOException
+    {
+        this( specFile, rpmFile, buildTime, Deflater.DEFAULT_COMPRESSION );
+    }
+
+    /**
+     * @param level The gzip compression level of the payload.
+     */
+    public RpmWriter( SpecFile specFile, File rpmFile, LocalDateTime buildTime, int level )
+        throws IOException
+    {
+        this( specFile, rpmFile, buildTime, level, null );
+    }
+
+    /**
+     * @param level  The gzip compression level of the payload.
+     * @param policy Looks at the first block of each file as it is added. When nearly all of the payload written so
+     *               far is already compressed the rest of it is written with the fastest level instead of
+     *               <code>level</code>.
+     */
+    public RpmWriter( SpecFile specFile, File rpmFile, LocalDateTime buildTime, int level, CompressionPolicy policy )
+        throws IOException
+    {
+        this.specFile = specFile;
+        this.rpmFile = rpmFile;
+        this.buildTime = buildTime;
+        this.level = level;
+        this.policy = policy;
+        this.currentLevel = level;
+
+        File parent = rpmFile.getAbsoluteFile().getParentFile();
+        if ( !parent.isDirectory() && !parent.mkdirs() )
+        {
+            throw new IOException( "Unable to create directory: " + parent.getAbsolutePath() );
+        }
+
+        payloadFile = File.createTempFile( rpmFile.getName(), ".cpio.gz", parent );
+        gzip = new LeveledGZIPOutputStream( new FileOutputStream( payloadFile ), 1024 * 128, level );
+        payloadCounter = new CountingOutputStream( gzip );
+        cpio = new CpioArchiveOutputStream( payloadCounter, CpioConstants.FORMAT_NEW );
+    }
+
+    // -----------------------------------------------------------------------
+    // Payload
+    // -----------------------------------------------------------------------
+
+    public void addDirectory( UnixFsObject directory )
+        throws IOException
+    {
+        if ( isExcluded( directory ) )
+        {
+            return;
+        }
+
+        FileEntry entry = entry( directory, CpioConstants.C_ISDIR, _0755 );
+
+        writeEntry( entry );
+        cpio.closeArchiveEntry();
+    }
+
+    public void addSymlink( UnixFsObject.Symlink symlink )
+        throws IOException
+    {
+        if ( isExcluded( symlink ) )
+        {
+            return;
+        }
+
+        byte[] value = symlink.value.getBytes( "UTF-8" );
+
+        FileEntry entry = entry( symlink, CpioConstants.C_ISLNK, _0777 );
+        entry.mode = CpioConstants.C_ISLNK | _0777.toInt();
+        entry.size = value.length;
+        entry.linkTo = symlink.value;
+
+        writeEntry( entry );
+        cpio.write( value );
+        cpio.closeArchiveEntry();
+    }
+
+    /**
+     * Adds a regular file. The <code>size</code> has to be the number of bytes that will be read from
+     * <code>content</code>.
+     */
+    public void addFile( UnixFsObject file, long size, InputStream content )
+        throws IOException
+    {
+        if ( isExcluded( file ) )
+        {
+            return;
+        }
+
+        FileEntry entry = entry( file, CpioConstants.C_ISREG, _0644 );
+        entry.size = size;
+
+        // Ghost files are only listed in the header, they're not a part of the payload
+        if ( ( entry.flags & RPMFILE_GHOST ) != 0 )
+        {
+            files.add( entry );
+            return;
+        }
+
+        if ( size >= LARGE_SIZE )
+        {
+            throw new IOException( "Files of 4 GiB or more can't be stored in the cpio payload of an RPM: " +
+                                       entry.path + " is " + size + " bytes." );
+        }
+
+        MessageDigest md5 = md5();
+
+        writeEntry( entry );
+
+        byte[] buffer = new byte[1024 * 128];
+        byte[] sample = new byte[CompressionPolicy.SAMPLE_SIZE];
+        int sampleLength = 0;
+        int n;
+        while ( ( n = content.read( buffer ) ) != -1 )
+        {
+            md5.update( buffer, 0, n );
+            cpio.write( buffer, 0, n );
+
+            if ( sampleLength < sample.length )
+            {
+                int length = Math.min( n, sample.length - sampleLength );
+                System.arraycopy( buffer, 0, sample, sampleLength, length );
+                sampleLength += length;
+            }
+        }
+
+        cpio.closeArchiveEntry();
+
+        entry.digest = toHex( md5.digest() );
+        bytesAtLevel[currentLevel + 1] += size;
+
+        // The payload is compressed as a whole, so the policy only decides the level used for the rest of it
+        if ( policy != null )
+        {
+            policy.compress( entry.path, size, sample, sampleLength );
+            currentLevel = policy.streamLevel( level );
+            gzip.setLevel( currentLevel );
+        }
+    }
+
+    /**
+     * The level that most of the file content in the payload was compressed with, as the policy might have changed
+     * it while the payload was written.
+     */
+    int payloadLevel()
+    {
+        int payloadLevel = level;
+        long most = 0;
+
+        for ( int i = 0; i < bytesAtLevel.length; i++ )
+        {
+            if ( bytesAtLevel[i] > most )
+            {
+                most = bytesAtLevel[i];
+                payloadLevel = i - 1;
+            }
+        }
+
+        return payloadLevel == Deflater.DEFAULT_COMPRESSION ? 6 : payloadLevel;
+    }
+
+    private boolean isExcluded( UnixFsObject object )
+    {
+        return object.path.isBase() || specFile.excludedSysPaths.contains( object.path.asAbsolutePath( "/" ) );
+    }
+
+    private FileEntry entry( UnixFsObject object, int type, UnixFileMode defaultMode )
+    {
+        FileAttributes attributes = object.attributes;
+
+        FileEntry entry = new FileEntry();
+        entry.path = object.path.asAbsolutePath( "/" );
+        entry.mode = type | attributes.mode.orSome( defaultMode ).toInt();
+        entry.mtime = (int) ( object.lastModified.toDateTime().getMillis() / 1000 );
+        entry.flags = fileFlags( attributes.tags );
+        entry.user = attributes.user.orSome( "root" );
+        entry.group = attributes.group.orSome( "root" );
+        entry.inode = files.size() + 1;
+        return entry;
+    }
+
+    private void writeEntry( FileEntry entry )
+        throws IOException
+    {
+        files.add( entry );
+
+        CpioArchiveEntry cpioEntry = new CpioArchiveEntry( CpioConstants.FORMAT_NEW, "." + entry.path );
+        cpioEntry.setInode( entry.inode );
+        cpioEntry.setMode( entry.mode );
+        cpioEntry.setNumberOfLinks( 1 );
+        cpioEntry.setTime( entry.mtime );
+        cpioEntry.setSize( entry.size );
+        cpio.putArchiveEntry( cpioEntry );
+    }
+
+    // -----------------------------------------------------------------------
+    // Package
+    // -----------------------------------------------------------------------
+
+    /**
+     * Writes the package file. The signature is written with a placeholder for the MD5 digest of the header and
+     * payload, which is filled in when the payload has been copied into the package. If writing the package fails the
+     * partial package file is deleted.
+     */
+    public void close()
+        throws IOException
+    {
+        FileOutputStream output = null;
+        InputStream payload = null;
+        boolean written = false;
+        try
+        {
+            cpio.close();
+
+            long payloadSize = payloadCounter.getBytesWritten();
+            byte[] header = header().toBytes( HEADERIMMUTABLE );
+
+            long size = header.length + payloadFile.length();
+            String sha1 = toHex( digest( "SHA-1" ).digest( header ) );
+
+            output = new FileOutputStream( rpmFile );
+            output.write( lead() );
+
+            long signaturePosition = output.getChannel().position();
+            output.write( signature( size, new byte[16], sha1, payloadSize ) );
+
+            MessageDigest md5 = md5();
+            md5.update( header );
+            output.write( header );
+
+            payload = new FileInputStream( payloadFile );
+            byte[] buffer = new byte[1024 * 128];
+            int n;
+            while ( ( n = payload.read( buffer ) ) != -1 )
+            {
+                md5.update( buffer, 0, n );
+                output.write( buffer, 0, n );
+            }
+
+            FileChannel channel = output.getChannel();
+            channel.position( signaturePosition );
+            output.write( signature( size, md5.digest(), sha1, payloadSize ) );
+            output.close();
+            written = true;
+        }
+        finally
+        {
+            IOUtil.close( payload );
+            IOUtil.close( output );
+            IOUtil.close( cpio );
+            payloadFile.delete();
+
+            if ( !written )
+            {
+                rpmFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Gives up writing the package, for when adding the files failed. The payload is thrown away and no package file
+     * is left behind.
+     */
+    public void abort()
+    {
+        IOUtil.close( cpio );
+        payloadFile.delete();
+        rpmFile.delete();
+    }
+
+    private byte[] lead()
+        throws IOException
+    {
+        ByteBuffer lead = ByteBuffer.allocate( LEAD_SIZE );
+        lead.put( LEAD_MAGIC );
+        lead.put( (byte) 3 ).put( (byte) 0 );
+        lead.putShort( (short) 0 ); // Binary package
+        lead.putShort( (short) 1 );
+        byte[] name = ( specFile.name + "-" + specFile.version + "-" + specFile.release ).getBytes( "UTF-8" );
+        lead.put( name, 0, Math.min( name.length, 65 ) );
+        lead.position( 76 );
+        lead.putShort( (short) 1 ); // Linux
+        lead.putShort( (short) 5 ); // Header style signature
+        return lead.array();
+    }
+
+    static byte[] signature( long size, byte[] md5, String sha1, long payloadSize )
+    {
+        RpmHeader signature = new RpmHeader().
+            bin( SIGTAG_MD5, md5 ).
+            string( SIGTAG_SHA1, sha1 );
+
+        if ( size >= LARGE_SIZE )
+        {
+            signature.int64( SIGTAG_LONGSIZE, size );
+        }
+        else
+        {
+            signature.int32( SIGTAG_SIZE, (int) size );
+        }
+
+        if ( payloadSize >= LARGE_SIZE )
+        {
+            signature.int64( SIGTAG_LONGARCHIVESIZE, payloadSize );
+        }
+        else
+        {
+            signature.int32( SIGTAG_PAYLOADSIZE, (int) payloadSize );
+        }
+
+        byte[] bytes = signature.toBytes( HEADERSIGNATURES );
+
+        // The signature is padded to an 8 byte boundary
+        byte[] padded = new byte[( bytes.length + 7 ) / 8 * 8];
+        System.arraycopy( bytes, 0, padded, 0, bytes.length );
+        return padded;
+    }
+
+    private RpmHeader header()
+        throws IOException
+    {
+        String name = specFile.name;
+        String version = specFile.version;
+        String release = specFile.release;
+
+        RpmHeader header = new RpmHeader().
+            stringArray( HEADERI18NTABLE, Collections.singletonList( "C" ) ).
+            string( NAME, name ).
+            string( VERSION, version ).
+            string( RELEASE, release ).
+            i18nString( SUMMARY, UnixUtil.getField( "summary", specFile.summary ) ).
+            i18nString( DESCRIPTION, StringUtils.isNotEmpty( specFile.description ) ? specFile.description : "" ).
+            int32( BUILDTIME, (int) ( buildTime.toDateTime().getMillis() / 1000 ) ).
+            string( BUILDHOST, "localhost" ).
+            string( LICENSE, UnixUtil.getField( "license", specFile.license ) ).
+            i18nString( GROUP, UnixUtil.getField( "group", specFile.group ) ).
+            string( OS, "linux" ).
+            string( ARCH, specFile.buildArch ).
+            string( SOURCERPM, name + "-" + version + "-" + release + ".src.rpm" ).
+            string( RPMVERSION, "4.4.2" ).
+            string( PAYLOADFORMAT, "cpio" ).
+            string( PAYLOADCOMPRESSOR, "gzip" ).
+            string( PAYLOADFLAGS, String.valueOf( payloadLevel() ) );
+
+        stringIfNotEmpty( header, DISTRIBUTION, specFile.distribution );
+        stringIfNotEmpty( header, VENDOR, specFile.vendor );
+        stringIfNotEmpty( header, PACKAGER, specFile.packager );
+        stringIfNotEmpty( header, URL, specFile.url );
+
+        script( header, PREIN, PREINPROG, specFile.includePre );
+        script( header, POSTIN, POSTINPROG, specFile.includePost );
+        script( header, PREUN, PREUNPROG, specFile.includePreun );
+        script( header, POSTUN, POSTUNPROG, specFile.includePostun );
+
+        Dependencies provides = new Dependencies( specFile.provides );
+        provides.add( name, RPMSENSE_EQUAL, version + "-" + release );
+        provides.addTo( header, PROVIDENAME, PROVIDEFLAGS, PROVIDEVERSION );
+
+        Dependencies requires = new Dependencies( specFile.requires );
+        if ( header.contains( PREIN ) || header.contains( POSTIN ) || header.contains( PREUN ) ||
+            header.contains( POSTUN ) )
+        {
+            requires.add( "/bin/sh", 0, "" );
+        }
+        requires.add( "rpmlib(CompressedFileNames)", RPMSENSE_LESS | RPMSENSE_EQUAL | RPMSENSE_RPMLIB, "3.0.4-1" );
+        requires.add( "rpmlib(PayloadFilesHavePrefix)", RPMSENSE_LESS | RPMSENSE_EQUAL | RPMSENSE_RPMLIB, "4.0-1" );
+        if ( hasLargeFiles() )
+        {
+            requires.add( "rpmlib(LargeFiles)", RPMSENSE_LESS | RPMSENSE_EQUAL | RPMSENSE_RPMLIB, "4.12.0-1" );
+        }
+        requires.addTo( header, REQUIRENAME, REQUIREFLAGS, REQUIREVERSION );
+
+        Dependencies conflicts = new Dependencies( specFile.conflicts );
+        conflicts.addTo( header, CONFLICTNAME, CONFLICTFLAGS, CONFLICTVERSION );
+
+        fileList( header );
+
+        return header;
+    }
+
+    /**
+     * Adds the file list. rpm looks up files with a binary search so the list is sorted on the full path.
+     */
+    private void fileList( RpmHeader header )
+    {
+        List<FileEntry> sorted = new ArrayList<FileEntry>( files );
+        Collections.sort( sorted, new Comparator<FileEntry>()
+        {
+            public int compare( FileEntry a, FileEntry b )
+            {
+                return a.path.compareTo( b.path );
+            }
+        } );
+
+        int count = sorted.size();
+        long totalSize = 0;
+        long[] sizes = new long[count];
+        short[] modes = new short[count];
+        short[] rdevs = new short[count];
+        int[] mtimes = new int[count];
+        List<String> digests = new ArrayList<String>();
+        List<String> linkTos = new ArrayList<String>();
+        int[] flags = new int[count];
+        List<String> users = new ArrayList<String>();
+        List<String> groups = new ArrayList<String>();
+        int[] verifyFlags = new int[count];
+        int[] devices = new int[count];
+        int[] inodes = new int[count];
+        List<String> langs = new ArrayList<String>();
+        int[] dirIndexes = new int[count];
+        List<String> baseNames = new ArrayList<String>();
+        List<String> dirNames = new ArrayList<String>();
+        Map<String, Integer> dirNameIndexes = new HashMap<String, Integer>();
+
+        for ( int i = 0; i < count; i++ )
+        {
+            FileEntry entry = sorted.get( i );
+            totalSize += entry.size;
+            sizes[i] = entry.size;
+            modes[i] = (short) entry.mode;
+            mtimes[i] = entry.mtime;
+            digests.add( entry.digest );
+            linkTos.add( entry.linkTo );
+            flags[i] = entry.flags;
+            users.add( entry.user );
+            groups.add( entry.group );
+            verifyFlags[i] = -1;
+            devices[i] = 1;
+            inodes[i] = entry.inode;
+            langs.add( "" );
+
+            int slash = entry.path.lastIndexOf( '/' );
+            String dirName = entry.path.substring( 0, slash + 1 );
+            Integer dirIndex = dirNameIndexes.get( dirName );
+            if ( dirIndex == null )
+            {
+                dirIndex = dirNames.size();
+                dirNames.add( dirName );
+                dirNameIndexes.put( dirName, dirIndex );
+            }
+            dirIndexes[i] = dirIndex;
+            baseNames.add( entry.path.substring( slash + 1 ) );
+        }
+
+        if ( totalSize >= LARGE_SIZE )
+        {
+            header.int64( LONGSIZE, totalSize );
+        }
+        else
+        {
+            header.int32( SIZE, (int) totalSize );
+        }
+
+        // rpm doesn't accept empty arrays
+        if ( count == 0 )
+        {
+            return;
+        }
+
+        if ( hasLargeFiles() )
+        {
+            header.int64( LONGFILESIZES, sizes );
+        }
+        else
+        {
+            int[] ints = new int[count];
+            for ( int i = 0; i < count; i++ )
+            {
+                ints[i] = (int) sizes[i];
+            }
+            header.int32( FILESIZES, ints );
+        }
+
+        header.
+            int16( FILEMODES, modes ).
+            int16( FILERDEVS, rdevs ).
+            int32( FILEMTIMES, mtimes ).
+            stringArray( FILEDIGESTS, digests ).
+            stringArray( FILELINKTOS, linkTos ).
+            int32( FILEFLAGS, flags ).
+            stringArray( FILEUSERNAME, users ).
+            stringArray( FILEGROUPNAME, groups ).
+            int32( FILEVERIFYFLAGS, verifyFlags ).
+            int32( FILEDEVICES, devices ).
+            int32( FILEINODES, inodes ).
+            stringArray( FILELANGS, langs ).
+            int32( DIRINDEXES, dirIndexes ).
+            stringArray( BASENAMES, baseNames ).
+            stringArray( DIRNAMES, dirNames );
+    }
+
+    private boolean hasLargeFiles()
+    {
+        for ( FileEntry entry : files )
+        {
+            if ( entry.size >= LARGE_SIZE )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void stringIfNotEmpty( RpmHeader header, int tag, String value )
+    {
+        if ( StringUtils.isNotEmpty( value ) )
+        {
+            header.string( tag, value );
+        }
+    }
+
+    private static void script( RpmHeader header, int tag, int progTag, Option<File> file )
+        throws IOException
+    {
+        if ( file.isNone() )
+        {
+            return;
+        }
+
+        header.string( tag, FileUtils.fileRead( file.some(), "UTF-8" ) );
+        header.string( progTag, "/bin/sh" );
+    }
+
+    /**
+     * Same precedence as the %files tags in {@link SpecFile}.
+     */
+    private static int fileFlags( fj.data.List<String> list )
+    {
+        Collection<String> tags = list.toCollection();
+
+        if ( tags.contains( "config" ) )
+        {
+            return RPMFILE_CONFIG;
+        }
+
+        if ( tags.contains( "rpm:noreplace" ) )
+        {
+            return RPMFILE_CONFIG | RPMFILE_NOREPLACE;
+        }
+
+        if ( tags.contains( "rpm:missingok" ) )
+        {
+            return RPMFILE_CONFIG | RPMFILE_MISSINGOK;
+        }
+
+        if ( tags.contains( "doc" ) )
+        {
+            return RPMFILE_DOC;
+        }
+
+        if ( tags.contains( "rpm:ghost" ) )
+        {
+            return RPMFILE_GHOST;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Parses dependency lists in the spec file format, like <code>foo, bar &gt;= 1.0</code>.
+     */
+    private static class Dependencies
+    {
+        private final List<String> names = new ArrayList<String>();
+
+        private final List<Integer> flags = new ArrayList<Integer>();
+
+        private final List<String> versions = new ArrayList<String>();
+
+        Dependencies( fj.data.List<String> lines )
+        {
+            for ( String line : lines )
+            {
+                String[] tokens = line.trim().split( "[,\\s]+" );
+
+                for ( int i = 0; i < tokens.length; i++ )
+                {
+                    if ( tokens[i].length() == 0 )
+                    {
+                        continue;
+                    }
+
+                    int sense = i + 2 < tokens.length ? sense( tokens[i + 1] ) : 0;
+
+                    if ( sense != 0 )
+                    {
+                        add( tokens[i], sense, tokens[i + 2] );
+                        i += 2;
+                    }
+                    else
+                    {
+                        add( tokens[i], 0, "" );
+                    }
+                }
+            }
+        }
+
+        void add( String name, int sense, String version )
+        {
+            names.add( name );
+            flags.add( sense );
+            versions.add( version );
+        }
+
+        void addTo( RpmHeader header, int nameTag, int flagsTag, int versionTag )
+        {
+            if ( names.isEmpty() )
+            {
+                return;
+            }
+
+            int[] f = new int[flags.size()];
+            for ( int i = 0; i < f.length; i++ )
+            {
+                f[i] = flags.get( i );
+            }
+
+            header.
+                stringArray( nameTag, names ).
+                int32( flagsTag, f ).
+                stringArray( versionTag, versions );
+        }
+
+        private static int sense( String operator )
+        {
+            if ( operator.equals( "<" ) )
+            {
+                return RPMSENSE_LESS;
+            }
+            else if ( operator.equals( "<=" ) )
+            {
+                return RPMSENSE_LESS | RPMSENSE_EQUAL;
+            }
+            else if ( operator.equals( "=" ) || operator.equals( "==" ) )
+            {
+                return RPMSENSE_EQUAL;
+            }
+            else if ( operator.equals( ">=" ) )
+            {
+                return RPMSENSE_GREATER | RPMSENSE_EQUAL;
+            }
+            else if ( operator.equals( ">" ) )
+            {
+                return RPMSENSE_GREATER;
+            }
+
+            return 0;
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    //
+    // -----------------------------------------------------------------------
+
+    private static MessageDigest md5()
+    {
+        return digest( "MD5" );
+    }
+
+    private static MessageDigest digest( String algorithm )
+    {
+        try
+        {
+            return MessageDigest.getInstance( algorithm );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static String toHex( byte[] bytes )
+    {
+        StringBuilder s = new StringBuilder( bytes.length * 2 );
+
+        for ( byte b : bytes )
+        {
+            s.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+
+        return s.toString();
+    }
+}
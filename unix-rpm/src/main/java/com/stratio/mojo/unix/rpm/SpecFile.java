@@ -58,10 +58,10 @@ public class SpecFile
     implements LineProducer
 {
 
-    /*
-    Really ugly...
+    /**
+     * Paths that are owned by the system and left out of the package, like <code>/usr</code>.
      */
-    public static java.util.List<String> excludedSysPaths  = new ArrayList();
+    public final java.util.List<String> excludedSysPaths = new ArrayList<String>();
 
     public String version;
 
@@ -188,7 +188,7 @@ public class SpecFile
 
         spec.
             add( "%files" ).
-            addAllLines( fileSystem.prettify().toList().filter( excludePaths ).map( SpecFile.showUnixFsObject() ) );
+            addAllLines( fileSystem.prettify().toList().filter( excludePaths ).map( this.showUnixFsObject() ) );
 
         spec.addIf( includePre.isSome() || includePost.isSome() || includePreun.isSome() || includePostun.isSome(), "" );
         if ( includePre.isSome() )
@@ -219,7 +219,7 @@ public class SpecFile
     //
     // -----------------------------------------------------------------------
 
-    private static <A extends UnixFsObject> F<PackageFileSystemObject<Object>, String> showUnixFsObject()
+    private <A extends UnixFsObject> F<PackageFileSystemObject<Object>, String> showUnixFsObject()
     {
         return new F<PackageFileSystemObject<Object>, String>()
         {
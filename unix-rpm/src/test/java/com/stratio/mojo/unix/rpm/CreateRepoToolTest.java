@@ -0,0 +1,174 @@
+ package com.stratio.mojo.unix.rpm;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import junit.framework.*;
+import org.codehaus.plexus.util.*;
+import org.w3c.dom.*;
+
+import javax.xml.parsers.*;
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.zip.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class CreateRepoToolTest
+    extends TestCase
+{
+    private final File root = new File( System.getProperty( "basedir" ), "target/createrepo" );
+
+    private final File cache = new File( System.getProperty( "basedir" ), "target/createrepo.cache" );
+
+    protected void setUp()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( root );
+        cache.delete();
+
+        RpmPackageTest.writeRpm( new File( root, "b/myapp-2.0-1.noarch.rpm" ), "myapp", "2.0" );
+        RpmPackageTest.writeRpm( new File( root, "a/other-1.0-1.noarch.rpm" ), "other", "1.0" );
+    }
+
+    public void testCreateRepo()
+        throws Exception
+    {
+        CreateRepoTool tool = new CreateRepoTool( root ).threads( 4 ).cacheFile( cache );
+        tool.write( tool.scan() );
+
+        File repodata = new File( root, "repodata" );
+        Document repomd = parse( new FileInputStream( new File( repodata, "repomd.xml" ) ) );
+        NodeList data = repomd.getElementsByTagName( "data" );
+        assertEquals( 3, data.getLength() );
+
+        for ( int i = 0; i < data.getLength(); i++ )
+        {
+            Element element = (Element) data.item( i );
+            String type = element.getAttribute( "type" );
+            File file = new File( repodata, type + ".xml.gz" );
+            byte[] compressed = Files.readAllBytes( file.toPath() );
+            byte[] open = IOUtil.toByteArray( new GZIPInputStream( new FileInputStream( file ) ) );
+
+            assertEquals( "repodata/" + type + ".xml.gz",
+                          ( (Element) element.getElementsByTagName( "location" ).item( 0 ) ).getAttribute( "href" ) );
+            assertEquals( sha256( compressed ), text( element, "checksum" ) );
+            assertEquals( sha256( open ), text( element, "open-checksum" ) );
+            assertEquals( String.valueOf( compressed.length ), text( element, "size" ) );
+            assertEquals( String.valueOf( open.length ), text( element, "open-size" ) );
+        }
+
+        Document primary = parse( new GZIPInputStream( new FileInputStream( new File( repodata, "primary.xml.gz" ) ) ) );
+        assertEquals( "2", primary.getDocumentElement().getAttribute( "packages" ) );
+        NodeList packages = primary.getElementsByTagName( "package" );
+        Element other = (Element) packages.item( 0 );
+        Element myapp = (Element) packages.item( 1 );
+        assertEquals( "other", text( other, "name" ) );
+        assertEquals( "myapp", text( myapp, "name" ) );
+        assertEquals( "noarch", text( myapp, "arch" ) );
+        assertEquals( "A <long> description & more.", text( myapp, "description" ) );
+        assertEquals( sha256( Files.readAllBytes( new File( root, "b/myapp-2.0-1.noarch.rpm" ).toPath() ) ),
+                      text( myapp, "checksum" ) );
+        assertEquals( "b/myapp-2.0-1.noarch.rpm",
+                      ( (Element) myapp.getElementsByTagName( "location" ).item( 0 ) ).getAttribute( "href" ) );
+        Element version = (Element) myapp.getElementsByTagName( "version" ).item( 0 );
+        assertEquals( "2.0", version.getAttribute( "ver" ) );
+        assertEquals( "1", version.getAttribute( "rel" ) );
+
+        // rpmlib() dependencies are left out
+        NodeList requires = ( (Element) myapp.getElementsByTagName( "rpm:requires" ).item( 0 ) ).
+            getElementsByTagName( "rpm:entry" );
+        assertEquals( 2, requires.getLength() );
+        Element java = (Element) requires.item( 1 );
+        assertEquals( "java", java.getAttribute( "name" ) );
+        assertEquals( "GE", java.getAttribute( "flags" ) );
+        assertEquals( "1.6", java.getAttribute( "ver" ) );
+
+        Document filelists =
+            parse( new GZIPInputStream( new FileInputStream( new File( repodata, "filelists.xml.gz" ) ) ) );
+        NodeList files = ( (Element) filelists.getElementsByTagName( "package" ).item( 1 ) ).
+            getElementsByTagName( "file" );
+        assertEquals( 3, files.getLength() );
+        assertEquals( "/opt/myapp", files.item( 0 ).getTextContent() );
+        assertEquals( "dir", ( (Element) files.item( 0 ) ).getAttribute( "type" ) );
+        assertEquals( "/opt/myapp/hello.txt", files.item( 2 ).getTextContent() );
+
+        Document otherdata = parse( new GZIPInputStream( new FileInputStream( new File( repodata, "other.xml.gz" ) ) ) );
+        assertEquals( 2, otherdata.getElementsByTagName( "package" ).getLength() );
+    }
+
+    public void testCache()
+        throws Exception
+    {
+        CreateRepoTool.Entry first = new CreateRepoTool( root ).cacheFile( cache ).scan().get( 1 );
+
+        // Prove that the cache is used by changing it
+        String s = FileUtils.fileRead( cache, "ISO-8859-1" );
+        FileUtils.fileWrite( cache.getAbsolutePath(), "ISO-8859-1", s.replace( first.pkgid, "cached" ) );
+
+        assertEquals( "cached", new CreateRepoTool( root ).cacheFile( cache ).scan().get( 1 ).pkgid );
+
+        // A package with another modification time is read again
+        File rpm = new File( root, first.location );
+        assertTrue( rpm.setLastModified( rpm.lastModified() - 10000 ) );
+
+        assertEquals( first.pkgid, new CreateRepoTool( root ).cacheFile( cache ).scan().get( 1 ).pkgid );
+    }
+
+    public void testEscape()
+    {
+        assertEquals( "a &amp; b &lt;c&gt; &quot;d&quot;", CreateRepoTool.escape( "a & b <c> \"d\"\u0001" ) );
+    }
+
+    private static Document parse( InputStream is )
+        throws Exception
+    {
+        try
+        {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( is );
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    private static String text( Element element, String name )
+    {
+        return element.getElementsByTagName( name ).item( 0 ).getTextContent();
+    }
+
+    private static String sha256( byte[] bytes )
+        throws Exception
+    {
+        StringBuilder s = new StringBuilder();
+        for ( byte b : MessageDigest.getInstance( "SHA-256" ).digest( bytes ) )
+        {
+            s.append( String.format( "%02x", b ) );
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,192 @@
+ package com.stratio.mojo.unix.rpm;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static fj.data.Option.*;
+import junit.framework.*;
+import com.stratio.mojo.unix.*;
+import static com.stratio.mojo.unix.FileAttributes.*;
+import static com.stratio.mojo.unix.UnixFileMode.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class RpmPackageTest
+    extends TestCase
+{
+    static final LocalDateTime lastModified = new LocalDateTime( 2009, 2, 24, 9, 42 );
+
+    public void testRead()
+        throws Exception
+    {
+        File rpm = new File( System.getProperty( "basedir" ), "target/rpm-package/myapp.rpm" );
+        writeRpm( rpm, "myapp", "1.0" );
+
+        RpmPackage p = RpmPackage.read( rpm );
+
+        assertEquals( "myapp", p.getName() );
+        assertEquals( "1.0", p.getVersion() );
+        assertEquals( "1", p.getRelease() );
+        assertEquals( 0, p.getEpoch() );
+        assertEquals( "noarch", p.getArch() );
+        assertFalse( p.source );
+        assertEquals( "My summary", p.header.getString( RpmHeader.SUMMARY ) );
+        assertEquals( "BSD", p.header.getString( RpmHeader.LICENSE ) );
+        assertEquals( lastModified.toDateTime().getMillis() / 1000, p.header.getLong( RpmHeader.BUILDTIME, 0 ) );
+        assertEquals( Arrays.asList( "wget", "java", "rpmlib(CompressedFileNames)", "rpmlib(PayloadFilesHavePrefix)" ),
+                      p.header.getStrings( RpmHeader.REQUIRENAME ) );
+
+        assertEquals( Arrays.asList( "/opt/myapp", "/opt/myapp/current", "/opt/myapp/hello.txt" ), p.getFileNames() );
+        long[] modes = p.header.getLongs( RpmHeader.FILEMODES );
+        assertEquals( 040755, modes[0] );
+        assertEquals( 0100644, modes[2] );
+        assertEquals( 12 + "hello.txt".length(), p.header.getLong( RpmHeader.SIZE, 0 ) );
+
+        // The payload starts right after the main header
+        assertTrue( p.headerEnd < rpm.length() );
+        InputStream is = new FileInputStream( rpm );
+        try
+        {
+            assertEquals( p.headerEnd, is.skip( p.headerEnd ) );
+            assertEquals( 0x1f, is.read() );
+            assertEquals( 0x8b, is.read() );
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    public void testFiles()
+        throws Exception
+    {
+        File rpm = new File( System.getProperty( "basedir" ), "target/rpm-package/files.rpm" );
+        writeRpm( rpm, "files", "1.0" );
+
+        List<RpmPackage.FileEntry> files = RpmPackage.read( rpm ).getFiles();
+        assertEquals( 3, files.size() );
+
+        RpmPackage.FileEntry dir = files.get( 0 );
+        assertEquals( "/opt/myapp", dir.path );
+        assertTrue( dir.isDirectory() );
+        assertEquals( "myapp", dir.user );
+        assertEquals( "myapp", dir.group );
+        assertEquals( 040755, dir.mode );
+        assertEquals( lastModified, dir.lastModified );
+
+        RpmPackage.FileEntry link = files.get( 1 );
+        assertEquals( "/opt/myapp/current", link.path );
+        assertTrue( link.isSymlink() );
+        assertEquals( "hello.txt", link.linkTo );
+
+        RpmPackage.FileEntry file = files.get( 2 );
+        assertEquals( "/opt/myapp/hello.txt", file.path );
+        assertFalse( file.isDirectory() );
+        assertFalse( file.isSymlink() );
+        assertFalse( file.isConfig() );
+        assertEquals( 12, file.size );
+        assertEquals( 0100644, file.mode );
+        assertEquals( lastModified, file.lastModified );
+        assertEquals( 32, file.digest.length() );
+    }
+
+    public void testRpmUtil()
+        throws Exception
+    {
+        File rpm = new File( System.getProperty( "basedir" ), "target/rpm-package/util.rpm" );
+        writeRpm( rpm, "util", "1.0" );
+
+        List<RpmUtil.FileInfo> files = RpmUtil.queryPackageForFileInfo( rpm );
+        assertEquals( 3, files.size() );
+        assertTrue( new RpmUtil.FileInfo( "/opt/myapp", "myapp", "myapp", "drwxr-xr-x", 0, null ).
+            equalsIgnoreNull( files.get( 0 ) ) );
+        assertEquals( "lrwxrwxrwx", files.get( 1 ).mode );
+        assertTrue( new RpmUtil.FileInfo( "/opt/myapp/hello.txt", "root", "root", "-rw-r--r--", 12, null ).
+            equalsIgnoreNull( files.get( 2 ) ) );
+        assertEquals( lastModified.toDateTime().toDate(), files.get( 2 ).date );
+
+        SpecFile specFile = RpmUtil.getSpecFileFromRpm( rpm );
+        assertEquals( "util", specFile.name );
+        assertEquals( "1.0", specFile.version );
+        assertEquals( "1", specFile.release );
+        assertEquals( "My summary", specFile.summary );
+        assertEquals( "BSD", specFile.license );
+        assertEquals( "Fun", specFile.group );
+        assertEquals( "A <long> description & more.", specFile.description );
+        assertTrue( specFile.getFileSystem().hasPath( relativePath( "/opt/myapp/hello.txt" ) ) );
+        assertTrue( specFile.getFileSystem().getObject( relativePath( "/opt/myapp/current" ) ).some().
+            getUnixFsObject() instanceof Symlink );
+    }
+
+    public void testNotAnRpm()
+        throws Exception
+    {
+        File file = new File( System.getProperty( "basedir" ), "pom.xml" );
+
+        try
+        {
+            RpmPackage.read( file );
+            fail( "Expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    static void writeRpm( File rpm, String name, String version )
+        throws IOException
+    {
+        SpecFile specFile = new SpecFile();
+        specFile.name = name;
+        specFile.version = version;
+        specFile.release = "1";
+        specFile.summary = "My summary";
+        specFile.description = "A <long> description & more.";
+        specFile.license = "BSD";
+        specFile.group = "Fun";
+        specFile.buildArch = "noarch";
+        specFile.requires = fj.data.List.single( "wget, java >= 1.6" );
+
+        rpm.getParentFile().mkdirs();
+
+        byte[] content = "Hello World!".getBytes( "UTF-8" );
+
+        RpmWriter writer = new RpmWriter( specFile, rpm, lastModified );
+        writer.addDirectory( directory( relativePath( "/opt/myapp" ), lastModified,
+                                        new FileAttributes( "myapp", "myapp", _0755 ) ) );
+        writer.addFile( regularFile( relativePath( "/opt/myapp/hello.txt" ), lastModified, content.length, EMPTY ),
+                        content.length, new ByteArrayInputStream( content ) );
+        writer.addSymlink( symlink( relativePath( "/opt/myapp/current" ), lastModified, some( "myapp" ),
+                                    some( "myapp" ), "hello.txt" ) );
+        writer.close();
+    }
+}
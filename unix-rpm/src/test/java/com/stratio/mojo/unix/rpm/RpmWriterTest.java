@@ -0,0 +1,317 @@
+ package com.stratio.mojo.unix.rpm;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static fj.data.Option.*;
+import junit.framework.*;
+import org.apache.commons.compress.archivers.cpio.*;
+import com.stratio.mojo.unix.*;
+import com.stratio.mojo.unix.io.*;
+import static com.stratio.mojo.unix.FileAttributes.*;
+import static com.stratio.mojo.unix.UnixFileMode.*;
+import static com.stratio.mojo.unix.UnixFsObject.*;
+import static com.stratio.mojo.unix.util.RelativePath.*;
+import org.joda.time.*;
+
+import java.io.*;
+import java.nio.*;
+import java.security.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
+ */
+public class RpmWriterTest
+    extends TestCase
+{
+    final LocalDateTime lastModified = new LocalDateTime( 2009, 2, 24, 9, 42 );
+
+    public void testPackage()
+        throws Exception
+    {
+        SpecFile specFile = new SpecFile();
+        specFile.name = "myapp";
+        specFile.version = "1.0";
+        specFile.release = "1";
+        specFile.summary = "My summary";
+        specFile.license = "BSD";
+        specFile.group = "Fun";
+        specFile.buildArch = "noarch";
+        specFile.requires = fj.data.List.single( "wget, java >= 1.6" );
+
+        File rpm = new File( System.getProperty( "basedir" ), "target/rpm-writer/myapp.rpm" );
+        rpm.getParentFile().mkdirs();
+
+        byte[] content = "Hello World!".getBytes( "UTF-8" );
+
+        RpmWriter writer = new RpmWriter( specFile, rpm, lastModified );
+        writer.addDirectory( directory( relativePath( "/opt/myapp" ), lastModified,
+                                        new FileAttributes( "myapp", "myapp", _0755 ) ) );
+        writer.addFile( regularFile( relativePath( "/opt/myapp/hello.txt" ), lastModified, content.length, EMPTY ),
+                        content.length, new ByteArrayInputStream( content ) );
+        writer.addSymlink( symlink( relativePath( "/opt/myapp/current" ), lastModified, some( "myapp" ),
+                                    some( "myapp" ), "hello.txt" ) );
+        writer.close();
+
+        ByteBuffer buffer = ByteBuffer.wrap( readFully( rpm ) );
+
+        assertEquals( 0xedabeedb, buffer.getInt( 0 ) );
+
+        int signatureStart = 96;
+        int headerStart = signatureStart + headerSize( buffer, signatureStart );
+        headerStart += ( 8 - headerStart % 8 ) % 8;
+        int payloadStart = headerStart + headerSize( buffer, headerStart );
+
+        // The signature's size and digests covers the main header and payload
+        MessageDigest md5 = MessageDigest.getInstance( "MD5" );
+        md5.update( buffer.array(), headerStart, buffer.capacity() - headerStart );
+        byte[] signature = new byte[headerStart - signatureStart];
+        System.arraycopy( buffer.array(), signatureStart, signature, 0, signature.length );
+        assertTrue( contains( signature, md5.digest() ) );
+        assertEquals( buffer.capacity() - headerStart, findInt32( buffer, signatureStart, RpmHeader.SIGTAG_SIZE ) );
+
+        InputStream payload = new GZIPInputStream(
+            new ByteArrayInputStream( buffer.array(), payloadStart, buffer.capacity() - payloadStart ) );
+        CpioArchiveInputStream cpio = new CpioArchiveInputStream( payload );
+
+        CpioArchiveEntry entry = cpio.getNextCPIOEntry();
+        assertEquals( "./opt/myapp", entry.getName() );
+        assertEquals( CpioConstants.C_ISDIR | 0755, entry.getMode() );
+        entry = cpio.getNextCPIOEntry();
+        assertEquals( "./opt/myapp/hello.txt", entry.getName() );
+        assertEquals( content.length, entry.getSize() );
+        entry = cpio.getNextCPIOEntry();
+        assertEquals( "./opt/myapp/current", entry.getName() );
+        assertEquals( CpioConstants.C_ISLNK | 0777, entry.getMode() );
+        assertNull( cpio.getNextCPIOEntry() );
+    }
+
+    public void testPayloadLevel()
+        throws Exception
+    {
+        File rpm = new File( System.getProperty( "basedir" ), "target/rpm-writer/payload-level.rpm" );
+        byte[] jar = new byte[10000];
+        byte[] text = new byte[100];
+
+        RpmWriter writer = new RpmWriter( specFile( "payload-level" ), rpm, lastModified, 9,
+                                          new CompressionPolicy() );
+        writer.addFile( regularFile( relativePath( "/opt/a.txt" ), lastModified, text.length, EMPTY ),
+                        text.length, new ByteArrayInputStream( text ) );
+        assertEquals( 9, writer.payloadLevel() );
+
+        // The jar is written with the requested level, everything after it with the fastest level
+        writer.addFile( regularFile( relativePath( "/opt/a.jar" ), lastModified, jar.length, EMPTY ),
+                        jar.length, new ByteArrayInputStream( jar ) );
+        writer.addFile( regularFile( relativePath( "/opt/b.jar" ), lastModified, jar.length, EMPTY ),
+                        jar.length, new ByteArrayInputStream( jar ) );
+        writer.addFile( regularFile( relativePath( "/opt/c.jar" ), lastModified, jar.length, EMPTY ),
+                        jar.length, new ByteArrayInputStream( jar ) );
+        assertEquals( Deflater.BEST_SPEED, writer.payloadLevel() );
+        writer.close();
+    }
+
+    public void testExcludedPathsArePerPackage()
+        throws Exception
+    {
+        SpecFile excluding = specFile( "excluding" );
+        excluding.excludedSysPaths.add( "/opt" );
+        SpecFile including = specFile( "including" );
+
+        assertEquals( Arrays.asList( "/opt/hello.txt" ), writeHelloWorld( excluding ).getFileNames() );
+        assertEquals( Arrays.asList( "/opt", "/opt/hello.txt" ), writeHelloWorld( including ).getFileNames() );
+    }
+
+    private SpecFile specFile( String name )
+    {
+        SpecFile specFile = new SpecFile();
+        specFile.name = name;
+        specFile.version = "1.0";
+        specFile.release = "1";
+        specFile.summary = "My summary";
+        specFile.license = "BSD";
+        specFile.group = "Fun";
+        specFile.buildArch = "noarch";
+        return specFile;
+    }
+
+    private RpmPackage writeHelloWorld( SpecFile specFile )
+        throws IOException
+    {
+        File rpm = new File( System.getProperty( "basedir" ), "target/rpm-writer/" + specFile.name + ".rpm" );
+        byte[] content = "Hello World!".getBytes( "UTF-8" );
+
+        RpmWriter writer = new RpmWriter( specFile, rpm, lastModified );
+        writer.addDirectory( directory( relativePath( "/opt" ), lastModified, EMPTY ) );
+        writer.addFile( regularFile( relativePath( "/opt/hello.txt" ), lastModified, content.length, EMPTY ),
+                        content.length, new ByteArrayInputStream( content ) );
+        writer.close();
+
+        return RpmPackage.read( rpm );
+    }
+
+    public void testLargeSizes()
+        throws Exception
+    {
+        long large = 5L * 1024 * 1024 * 1024;
+
+        RpmHeader signature = RpmHeader.read( new DataInputStream( new ByteArrayInputStream(
+            RpmWriter.signature( large, new byte[16], "", large + 1 ) ) ) );
+        assertEquals( large, signature.getLong( RpmHeader.SIGTAG_LONGSIZE, -1 ) );
+        assertEquals( large + 1, signature.getLong( RpmHeader.SIGTAG_LONGARCHIVESIZE, -1 ) );
+        assertFalse( signature.contains( RpmHeader.SIGTAG_SIZE ) );
+        assertFalse( signature.contains( RpmHeader.SIGTAG_PAYLOADSIZE ) );
+
+        signature = RpmHeader.read( new DataInputStream( new ByteArrayInputStream(
+            RpmWriter.signature( 100, new byte[16], "", 50 ) ) ) );
+        assertEquals( 100, signature.getLong( RpmHeader.SIGTAG_SIZE, -1 ) );
+        assertEquals( 50, signature.getLong( RpmHeader.SIGTAG_PAYLOADSIZE, -1 ) );
+        assertFalse( signature.contains( RpmHeader.SIGTAG_LONGSIZE ) );
+
+        SpecFile specFile = new SpecFile();
+        specFile.name = "large";
+        specFile.version = "1.0";
+        specFile.release = "1";
+        specFile.summary = "Large";
+        specFile.license = "BSD";
+        specFile.group = "Fun";
+        specFile.buildArch = "noarch";
+
+        File rpm = new File( System.getProperty( "basedir" ), "target/rpm-writer/large.rpm" );
+        rpm.getParentFile().mkdirs();
+
+        // Ghost files are only in the header so they can be as large as they want
+        RpmWriter writer = new RpmWriter( specFile, rpm, lastModified );
+        writer.addFile( regularFile( relativePath( "/var/lib/large/data" ), lastModified, large,
+                                     EMPTY.addTag( "rpm:ghost" ) ), large, new ByteArrayInputStream( new byte[0] ) );
+        try
+        {
+            writer.addFile( regularFile( relativePath( "/var/lib/large/payload" ), lastModified, large, EMPTY ),
+                            large, new ByteArrayInputStream( new byte[0] ) );
+            fail( "Expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+        writer.close();
+
+        RpmPackage rpmPackage = RpmPackage.read( rpm );
+        assertEquals( large, rpmPackage.header.getLong( RpmHeader.LONGSIZE, -1 ) );
+        assertFalse( rpmPackage.header.contains( RpmHeader.SIZE ) );
+        assertFalse( rpmPackage.header.contains( RpmHeader.FILESIZES ) );
+        assertEquals( large, rpmPackage.getFiles().get( 0 ).size );
+        assertTrue( rpmPackage.header.getStrings( RpmHeader.REQUIRENAME ).contains( "rpmlib(LargeFiles)" ) );
+    }
+
+    public void testAbort()
+        throws Exception
+    {
+        SpecFile specFile = new SpecFile();
+        specFile.name = "aborted";
+        specFile.version = "1.0";
+        specFile.release = "1";
+
+        File dir = new File( System.getProperty( "basedir" ), "target/rpm-writer/abort" );
+        dir.mkdirs();
+        File rpm = new File( dir, "aborted.rpm" );
+        rpm.createNewFile();
+
+        RpmWriter writer = new RpmWriter( specFile, rpm, lastModified );
+        try
+        {
+            writer.addFile( regularFile( relativePath( "/opt/broken.txt" ), lastModified, 10, EMPTY ), 10,
+                            new InputStream()
+                            {
+                                public int read()
+                                    throws IOException
+                                {
+                                    throw new IOException( "broken" );
+                                }
+                            } );
+            fail( "Expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            writer.abort();
+        }
+
+        assertFalse( rpm.exists() );
+        assertEquals( 0, dir.list().length );
+    }
+
+    private static int headerSize( ByteBuffer buffer, int start )
+    {
+        assertEquals( 0x8eade801, buffer.getInt( start ) );
+        return 16 + buffer.getInt( start + 8 ) * 16 + buffer.getInt( start + 12 );
+    }
+
+    private static int findInt32( ByteBuffer buffer, int start, int tag )
+    {
+        int count = buffer.getInt( start + 8 );
+        int data = start + 16 + count * 16;
+
+        for ( int i = 0; i < count; i++ )
+        {
+            int entry = start + 16 + i * 16;
+            if ( buffer.getInt( entry ) == tag )
+            {
+                assertEquals( RpmHeader.INT32, buffer.getInt( entry + 4 ) );
+                return buffer.getInt( data + buffer.getInt( entry + 8 ) );
+            }
+        }
+
+        throw new AssertionFailedError( "Could not find tag " + tag );
+    }
+
+    private static boolean contains( byte[] bytes, byte[] value )
+    {
+        for ( int i = 0; i + value.length <= bytes.length; i++ )
+        {
+            if ( Arrays.equals( value, Arrays.copyOfRange( bytes, i, i + value.length ) ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static byte[] readFully( File file )
+        throws IOException
+    {
+        DataInputStream input = new DataInputStream( new FileInputStream( file ) );
+        try
+        {
+            byte[] bytes = new byte[(int) file.length()];
+            input.readFully( bytes );
+            return bytes;
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+}
@@ -117,6 +117,21 @@ public class PrototypeFile
         fileSystem = fileSystem.apply( f );
     }
 
+    /**
+     * The installed size of the objects in the package, not including the installation files.
+     */
+    public InstalledSize installedSize()
+    {
+        InstalledSize installedSize = new InstalledSize();
+
+        for ( PackageFileSystemObject<PrototypeEntry> object : fileSystem.prettify().toList() )
+        {
+            installedSize.add( object.getUnixFsObject() );
+        }
+
+        return installedSize;
+    }
+
     public void streamTo( final LineStreamWriter stream )
     {
         stream.